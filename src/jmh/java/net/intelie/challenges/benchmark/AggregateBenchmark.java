@@ -0,0 +1,75 @@
+package net.intelie.challenges.benchmark;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import net.intelie.challenges.AggregatingEventStore;
+
+/**
+ * <p>
+ * Counting the events of a type over a random time window, through
+ * {@link AggregatingEventStore#count} against walking the result of a query,
+ * and a histogram of the window in minute-like bins.
+ */
+@State(Scope.Benchmark)
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class AggregateBenchmark {
+
+	@Param({ "SORTED", "COLUMNAR", "BUCKETED" })
+	public StoreType store;
+
+	@Param({ "100", "25000" })
+	public int window;
+
+	@Param({ "8" })
+	public int types;
+
+	@Param({ "50000" })
+	public int events;
+
+	private AggregatingEventStore eventStore;
+
+	@Setup(Level.Trial)
+	public void setUp() {
+		eventStore = (AggregatingEventStore) store.create();
+		Workloads.fill(eventStore, events, types);
+	}
+
+	@Benchmark
+	public long count() {
+		ThreadLocalRandom random = ThreadLocalRandom.current();
+		long start = random.nextInt(events - window);
+		return eventStore.count(Workloads.TYPE_PREFIX + random.nextInt(types), start, start + window);
+	}
+
+	@Benchmark
+	public int countByQuery() {
+		ThreadLocalRandom random = ThreadLocalRandom.current();
+		long start = random.nextInt(events - window);
+		return Workloads.drain(eventStore.query(Workloads.TYPE_PREFIX + random.nextInt(types), start, start + window));
+	}
+
+	@Benchmark
+	public long[] histogram() {
+		ThreadLocalRandom random = ThreadLocalRandom.current();
+		long start = random.nextInt(events - window);
+		return eventStore.histogram(Workloads.TYPE_PREFIX + random.nextInt(types), start, start + window, 60);
+	}
+}
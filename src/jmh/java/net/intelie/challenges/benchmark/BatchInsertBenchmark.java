@@ -0,0 +1,82 @@
+package net.intelie.challenges.benchmark;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import net.intelie.challenges.Event;
+import net.intelie.challenges.EventStore;
+
+/**
+ * <p>
+ * Inserting a batch of events through {@link EventStore#insertAll} versus
+ * looping over {@link EventStore#insert}. Batches hold consecutive time slices
+ * shuffled by up to {@link #lateness} units, as delivered by a collector.
+ */
+@State(Scope.Benchmark)
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class BatchInsertBenchmark {
+
+	@Param
+	public StoreType store;
+
+	@Param({ "1000" })
+	public int batchSize;
+
+	@Param({ "16" })
+	public int types;
+
+	@Param({ "100" })
+	public int lateness;
+
+	private EventStore eventStore;
+	private AtomicLong clock;
+
+	@Setup(Level.Iteration)
+	public void setUp() {
+		eventStore = store.create();
+		clock = new AtomicLong();
+	}
+
+	private List<Event> nextBatch() {
+		ThreadLocalRandom random = ThreadLocalRandom.current();
+		long start = clock.getAndAdd(batchSize);
+		List<Event> batch = new ArrayList<Event>(batchSize);
+		for (int i = 0; i < batchSize; i++) {
+			long timestamp = start + i - random.nextInt(lateness);
+			batch.add(new Event(Workloads.TYPE_PREFIX + random.nextInt(types), timestamp));
+		}
+		return batch;
+	}
+
+	@Benchmark
+	public void insertAll() {
+		eventStore.insertAll(nextBatch());
+	}
+
+	@Benchmark
+	public void insertLoop() {
+		for (Event event : nextBatch()) {
+			eventStore.insert(event);
+		}
+	}
+}
@@ -0,0 +1,47 @@
+package net.intelie.challenges.benchmark;
+
+import net.intelie.challenges.EventStore;
+
+/**
+ * <p>
+ * Prints the heap retained per stored event by each {@link StoreType}. It is a
+ * plain program rather than a JMH benchmark since it measures memory, not
+ * time:
+ * 
+ * <pre>
+ * mvn test-compile exec:java -Dexec.classpathScope=test \
+ *     -Dexec.mainClass=net.intelie.challenges.benchmark.FootprintReport -Dexec.args="[events] [types]"
+ * </pre>
+ * 
+ * The figure is the difference of used heap after full collections, so it
+ * includes everything the store retains: nodes, locks, indexes and the
+ * {@link net.intelie.challenges.Event} objects themselves when the store keeps
+ * them.
+ */
+public class FootprintReport {
+
+	public static void main(String[] args) throws InterruptedException {
+		int events = args.length > 0 ? Integer.parseInt(args[0]) : 200000;
+		int types = args.length > 1 ? Integer.parseInt(args[1]) : 16;
+
+		System.out.printf("%-24s %12s%n", "store", "bytes/event");
+		for (StoreType type : StoreType.values()) {
+			long before = usedHeap();
+			EventStore store = type.create();
+			Workloads.fill(store, events, types);
+			long after = usedHeap();
+			System.out.printf("%-24s %12.1f%n", type, (after - before) / (double) events);
+			// keeps the store reachable until measured.
+			store.removeAll(Workloads.TYPE_PREFIX + 0);
+		}
+	}
+
+	private static long usedHeap() throws InterruptedException {
+		Runtime runtime = Runtime.getRuntime();
+		for (int i = 0; i < 4; i++) {
+			System.gc();
+			Thread.sleep(50);
+		}
+		return runtime.totalMemory() - runtime.freeMemory();
+	}
+}
@@ -0,0 +1,74 @@
+package net.intelie.challenges.benchmark;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import net.intelie.challenges.Event;
+import net.intelie.challenges.EventStore;
+
+/**
+ * <p>
+ * Single event inserts into a store that starts empty on every iteration.
+ * <p>
+ * <br>
+ * {@link Arrival#IN_ORDER} timestamps always grow, which is the common case
+ * for collectors. {@link Arrival#OUT_OF_ORDER} timestamps arrive up to
+ * {@link #lateness} units behind the newest one.
+ */
+@State(Scope.Benchmark)
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@BenchmarkMode({ Mode.Throughput, Mode.SampleTime })
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class InsertBenchmark {
+
+	public enum Arrival {
+		IN_ORDER, OUT_OF_ORDER
+	}
+
+	@Param
+	public StoreType store;
+
+	@Param
+	public Arrival arrival;
+
+	@Param({ "16" })
+	public int types;
+
+	@Param({ "1000" })
+	public int lateness;
+
+	private EventStore eventStore;
+	private AtomicLong clock;
+
+	@Setup(Level.Iteration)
+	public void setUp() {
+		eventStore = store.create();
+		clock = new AtomicLong();
+	}
+
+	@Benchmark
+	public void insert() {
+		ThreadLocalRandom random = ThreadLocalRandom.current();
+		long timestamp = clock.getAndIncrement();
+		if (arrival == Arrival.OUT_OF_ORDER) {
+			timestamp -= random.nextInt(lateness);
+		}
+		eventStore.insert(new Event(Workloads.TYPE_PREFIX + random.nextInt(types), timestamp));
+	}
+}
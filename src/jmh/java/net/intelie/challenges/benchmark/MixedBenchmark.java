@@ -0,0 +1,102 @@
+package net.intelie.challenges.benchmark;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import net.intelie.challenges.Event;
+import net.intelie.challenges.EventStore;
+
+/**
+ * <p>
+ * Readers querying the most recent events while writers append new ones.
+ * <p>
+ * <br>
+ * Two fixed mixes are provided, {@code readHeavy} (3 readers, 1 writer) and
+ * {@code writeHeavy} (1 reader, 3 writers). Other thread counts can be run
+ * with JMH's {@code -tg} option, e.g. {@code -tg 8,2}.
+ */
+@State(Scope.Group)
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@BenchmarkMode({ Mode.Throughput, Mode.SampleTime })
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class MixedBenchmark {
+
+	@Param
+	public StoreType store;
+
+	@Param({ "8" })
+	public int types;
+
+	@Param({ "20000" })
+	public int events;
+
+	@Param({ "500" })
+	public int window;
+
+	private EventStore eventStore;
+	private AtomicLong clock;
+
+	@Setup(Level.Iteration)
+	public void setUp() {
+		eventStore = store.create();
+		Workloads.fill(eventStore, events, types);
+		clock = new AtomicLong(events);
+	}
+
+	private void write() {
+		String type = Workloads.TYPE_PREFIX + ThreadLocalRandom.current().nextInt(types);
+		eventStore.insert(new Event(type, clock.getAndIncrement()));
+	}
+
+	private int read() {
+		String type = Workloads.TYPE_PREFIX + ThreadLocalRandom.current().nextInt(types);
+		long end = clock.get();
+		return Workloads.drain(eventStore.query(type, end - window, end));
+	}
+
+	@Benchmark
+	@Group("readHeavy")
+	@GroupThreads(3)
+	public int readHeavyReader() {
+		return read();
+	}
+
+	@Benchmark
+	@Group("readHeavy")
+	@GroupThreads(1)
+	public void readHeavyWriter() {
+		write();
+	}
+
+	@Benchmark
+	@Group("writeHeavy")
+	@GroupThreads(1)
+	public int writeHeavyReader() {
+		return read();
+	}
+
+	@Benchmark
+	@Group("writeHeavy")
+	@GroupThreads(3)
+	public void writeHeavyWriter() {
+		write();
+	}
+}
@@ -0,0 +1,69 @@
+package net.intelie.challenges.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import net.intelie.challenges.EventIterator;
+import net.intelie.challenges.EventStore;
+import net.intelie.challenges.concurrent.ConcurrentSortedEventStore;
+import net.intelie.challenges.concurrent.PartitionedEventStore;
+
+/**
+ * <p>
+ * Compares {@link ConcurrentSortedEventStore} with {@link PartitionedEventStore}
+ * when many types share the same time range: a query and a removeAll of a
+ * single type.
+ */
+@State(Scope.Benchmark)
+@Fork(1)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class PartitionedEventStoreBenchmark {
+
+	@Param({ "SORTED", "PARTITIONED" })
+	public StoreType store;
+
+	@Param({ "10", "200" })
+	public int types;
+
+	@Param({ "50000" })
+	public int events;
+
+	private EventStore eventStore;
+
+	@Setup(Level.Iteration)
+	public void fill() {
+		eventStore = store.create();
+		Workloads.fill(eventStore, events, types);
+	}
+
+	@Benchmark
+	@BenchmarkMode(Mode.AverageTime)
+	public void queryOneType(Blackhole bh) {
+		EventIterator it = eventStore.query("type0", events / 4, events / 2);
+		while (it.moveNext()) {
+			bh.consume(it.current());
+		}
+	}
+
+	@Benchmark
+	@BenchmarkMode(Mode.SingleShotTime)
+	@Measurement(iterations = 20)
+	public void removeAllOneType() {
+		eventStore.removeAll("type0");
+	}
+}
@@ -0,0 +1,94 @@
+package net.intelie.challenges.benchmark;
+
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import net.intelie.challenges.EventStore;
+import net.intelie.challenges.Order;
+
+/**
+ * <p>
+ * Queries of a single type, and of a timeline of several types, over a random
+ * time window of a pre-filled store. Each operation walks the whole result.
+ * The newest query asks for the last {@link #NEWEST} events of the window.
+ */
+@State(Scope.Benchmark)
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@BenchmarkMode({ Mode.Throughput, Mode.SampleTime })
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class QueryBenchmark {
+
+	static final int NEWEST = 10;
+
+	@Param
+	public StoreType store;
+
+	/**
+	 * Width of the queried window in timestamp units: narrow and wide.
+	 */
+	@Param({ "100", "25000" })
+	public int window;
+
+	@Param({ "8" })
+	public int types;
+
+	@Param({ "50000" })
+	public int events;
+
+	/**
+	 * How many types the timeline query asks for.
+	 */
+	@Param({ "5" })
+	public int timeline;
+
+	private EventStore eventStore;
+	private Set<String> timelineTypes;
+
+	@Setup(Level.Trial)
+	public void setUp() {
+		eventStore = store.create();
+		Workloads.fill(eventStore, events, types);
+		timelineTypes = new HashSet<String>();
+		for (int i = 0; i < timeline; i++) {
+			timelineTypes.add(Workloads.TYPE_PREFIX + i);
+		}
+	}
+
+	@Benchmark
+	public int query() {
+		ThreadLocalRandom random = ThreadLocalRandom.current();
+		long start = random.nextInt(events - window);
+		return Workloads.drain(eventStore.query(Workloads.TYPE_PREFIX + random.nextInt(types), start, start + window));
+	}
+
+	@Benchmark
+	public int queryTimeline() {
+		long start = ThreadLocalRandom.current().nextInt(events - window);
+		return Workloads.drain(eventStore.query(timelineTypes, start, start + window));
+	}
+
+	@Benchmark
+	public int queryNewest() {
+		ThreadLocalRandom random = ThreadLocalRandom.current();
+		long start = random.nextInt(events - window);
+		return Workloads.drain(eventStore.query(Workloads.TYPE_PREFIX + random.nextInt(types), start, start + window,
+				Order.DESCENDING, NEWEST));
+	}
+}
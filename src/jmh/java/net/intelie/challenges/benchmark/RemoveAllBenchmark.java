@@ -0,0 +1,71 @@
+package net.intelie.challenges.benchmark;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import net.intelie.challenges.Event;
+import net.intelie.challenges.EventStore;
+
+/**
+ * <p>
+ * {@link EventStore#removeAll(String)} of a type while other threads keep
+ * inserting events of every type, the removed one included.
+ */
+@State(Scope.Group)
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@BenchmarkMode({ Mode.Throughput, Mode.SampleTime })
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class RemoveAllBenchmark {
+
+	@Param
+	public StoreType store;
+
+	@Param({ "8" })
+	public int types;
+
+	@Param({ "20000" })
+	public int events;
+
+	private EventStore eventStore;
+	private AtomicLong clock;
+
+	@Setup(Level.Iteration)
+	public void setUp() {
+		eventStore = store.create();
+		Workloads.fill(eventStore, events, types);
+		clock = new AtomicLong(events);
+	}
+
+	@Benchmark
+	@Group("underLoad")
+	@GroupThreads(3)
+	public void insert() {
+		String type = Workloads.TYPE_PREFIX + ThreadLocalRandom.current().nextInt(types);
+		eventStore.insert(new Event(type, clock.getAndIncrement()));
+	}
+
+	@Benchmark
+	@Group("underLoad")
+	@GroupThreads(1)
+	public void removeAll() {
+		eventStore.removeAll(Workloads.TYPE_PREFIX + ThreadLocalRandom.current().nextInt(types));
+	}
+}
@@ -0,0 +1,39 @@
+package net.intelie.challenges.benchmark;
+
+import java.util.function.Supplier;
+
+import net.intelie.challenges.EventStore;
+import net.intelie.challenges.concurrent.BucketedEventStore;
+import net.intelie.challenges.concurrent.ColumnarEventStore;
+import net.intelie.challenges.concurrent.ConcurrentSortedEventStore;
+import net.intelie.challenges.concurrent.OffHeapEventStore;
+import net.intelie.challenges.concurrent.PartitionedEventStore;
+import net.intelie.challenges.concurrent.RecordingStoreMetrics;
+import net.intelie.challenges.concurrent.SkipListEventStore;
+
+/**
+ * <p>
+ * The {@link EventStore} implementations every benchmark runs against. Used as
+ * a JMH {@code @Param}, so a new implementation only needs a constant here to
+ * be covered by all workloads.
+ */
+public enum StoreType {
+	SORTED(ConcurrentSortedEventStore::new),
+	SORTED_INSTRUMENTED(() -> new ConcurrentSortedEventStore(10000, 0, new RecordingStoreMetrics())),
+	PARTITIONED(PartitionedEventStore::new),
+	SKIP_LIST(SkipListEventStore::new),
+	PARTITIONED_SKIP_LIST(() -> new PartitionedEventStore(SkipListEventStore::new)),
+	COLUMNAR(ColumnarEventStore::new),
+	OFF_HEAP(OffHeapEventStore::new),
+	BUCKETED(() -> new BucketedEventStore(1000));
+
+	private final Supplier<EventStore> factory;
+
+	private StoreType(Supplier<EventStore> factory) {
+		this.factory = factory;
+	}
+
+	public EventStore create() {
+		return factory.get();
+	}
+}
@@ -0,0 +1,38 @@
+package net.intelie.challenges.benchmark;
+
+import net.intelie.challenges.Event;
+import net.intelie.challenges.EventIterator;
+import net.intelie.challenges.EventStore;
+
+/**
+ * Helpers shared by the benchmarks.
+ */
+final class Workloads {
+
+	static final String TYPE_PREFIX = "type";
+
+	private Workloads() {
+	}
+
+	/**
+	 * Fills the store with {@param events} events spread over {@param types}
+	 * types, one timestamp per event starting at zero.
+	 */
+	static void fill(EventStore store, int events, int types) {
+		for (int i = 0; i < events; i++) {
+			store.insert(new Event(TYPE_PREFIX + (i % types), i));
+		}
+	}
+
+	/**
+	 * Walks the whole iterator and returns how many events it had.
+	 */
+	static int drain(EventIterator it) {
+		int count = 0;
+		while (it.moveNext()) {
+			it.current();
+			++count;
+		}
+		return count;
+	}
+}
@@ -0,0 +1,82 @@
+package net.intelie.challenges;
+
+import java.util.OptionalLong;
+
+/**
+ * An {@link EventStore} able to aggregate events without handing them out.
+ * <p>
+ * Every range goes from {@code startTime} (inclusive) to {@code endTime}
+ * (exclusive), as in {@link EventStore#query(String, long, long)}, and no
+ * {@link Event} or {@link EventIterator} is created to answer.
+ */
+public interface AggregatingEventStore extends EventStore {
+    /**
+     * Counts the events of a type in a range.
+     *
+     * @param type
+     * @param startTime Start timestamp (inclusive).
+     * @param endTime   End timestamp (exclusive).
+     * @return the number of events of the given {@param type} in the range.
+     */
+    long count(String type, long startTime, long endTime);
+
+    /**
+     * @param type
+     * @param startTime Start timestamp (inclusive).
+     * @param endTime   End timestamp (exclusive).
+     * @return the oldest timestamp of the given {@param type} in the range, if
+     * any.
+     */
+    OptionalLong first(String type, long startTime, long endTime);
+
+    /**
+     * @param type
+     * @param startTime Start timestamp (inclusive).
+     * @param endTime   End timestamp (exclusive).
+     * @return the newest timestamp of the given {@param type} in the range, if
+     * any.
+     */
+    OptionalLong last(String type, long startTime, long endTime);
+
+    /**
+     * Counts the events of a type per fixed interval. Bin {@code i} covers
+     * {@code startTime + i * interval} (inclusive) to
+     * {@code startTime + (i + 1) * interval} (exclusive), the last one being
+     * cut at {@param endTime}. By default each bin is a {@link #count}, which
+     * is sub-linear for indexed stores.
+     *
+     * @param type
+     * @param startTime Start timestamp (inclusive).
+     * @param endTime   End timestamp (exclusive).
+     * @param interval  The width of each bin.
+     * @return the count of each bin.
+     */
+    default long[] histogram(String type, long startTime, long endTime, long interval) {
+        long[] bins = new long[bins(startTime, endTime, interval)];
+        long from = startTime;
+        for (int i = 0; i < bins.length; i++) {
+            long to = i == bins.length - 1 ? endTime : from + interval;
+            bins[i] = count(type, from, to);
+            from = to;
+        }
+        return bins;
+    }
+
+    /**
+     * @return the number of bins of a {@link #histogram}.
+     */
+    static int bins(long startTime, long endTime, long interval) {
+        if (startTime > endTime) {
+            throw new IllegalArgumentException("startTime greater than endTime");
+        } else if (interval <= 0) {
+            throw new IllegalArgumentException("Interval must be positive");
+        }
+        long span = endTime - startTime;
+        // unsigned, as the span of the whole timestamp range overflows.
+        long bins = Long.divideUnsigned(span, interval) + (Long.remainderUnsigned(span, interval) == 0 ? 0 : 1);
+        if (bins < 0 || bins > Integer.MAX_VALUE - 8) {
+            throw new IllegalArgumentException("Too many bins");
+        }
+        return (int) bins;
+    }
+}
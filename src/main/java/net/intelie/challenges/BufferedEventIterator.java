@@ -0,0 +1,57 @@
+package net.intelie.challenges;
+
+import java.util.function.Consumer;
+
+/**
+ * An {@link EventIterator} over events already read from a store, for orders
+ * the store cannot walk lazily. {@link #remove()} hands the current event back
+ * to the store through a <i>remover</i>.
+ */
+public class BufferedEventIterator implements EventIterator {
+
+    private final Event[] events;
+    private final Consumer<Event> remover;
+    private int position = -1;
+    private boolean positioned;
+
+    /**
+     * @param events  the events, in the order they are returned.
+     * @param remover removes an event of {@param events} from the store.
+     */
+    public BufferedEventIterator(Event[] events, Consumer<Event> remover) {
+        this.events = events;
+        this.remover = remover;
+    }
+
+    @Override
+    public boolean moveNext() {
+        if (position < events.length) {
+            ++position;
+        }
+        positioned = position < events.length;
+        return positioned;
+    }
+
+    @Override
+    public Event current() {
+        if (!positioned) {
+            throw new IllegalStateException();
+        }
+        return events[position];
+    }
+
+    @Override
+    public void remove() {
+        if (!positioned) {
+            throw new IllegalStateException();
+        }
+        positioned = false;
+        remover.accept(events[position]);
+    }
+
+    @Override
+    public void close() {
+        position = events.length;
+        positioned = false;
+    }
+}
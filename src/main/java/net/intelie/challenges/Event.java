@@ -2,14 +2,26 @@ package net.intelie.challenges;
 
 /**
  * This is just an event stub, feel free to expand it if needed.
+ * <p>
+ * Besides its type and timestamp, an event may carry a {@link Payload} of
+ * attributes.
  */
 public class Event {
     private final String type;
     private final long timestamp;
+    private final Payload payload;
 
     public Event(String type, long timestamp) {
+        this(type, timestamp, Payload.EMPTY);
+    }
+
+    public Event(String type, long timestamp, Payload payload) {
+        if (payload == null) {
+            throw new IllegalArgumentException("Payload cannot be null");
+        }
         this.type = type;
         this.timestamp = timestamp;
+        this.payload = payload;
     }
 
     public String type() {
@@ -20,6 +32,13 @@ public class Event {
         return timestamp;
     }
 
+    /**
+     * @return the attributes of this event, {@link Payload#EMPTY} if none.
+     */
+    public Payload payload() {
+        return payload;
+    }
+
 	@Override
 	public String toString() {
 		return "Event [timestamp=" + timestamp + "]";
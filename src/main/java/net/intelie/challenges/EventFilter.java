@@ -0,0 +1,82 @@
+package net.intelie.challenges;
+
+/**
+ * A condition on the {@link Payload} of events, evaluated by a store while it
+ * scans a query instead of by the caller once the events are copied out.
+ * <p>
+ * Filters are built from the factories below and combined with
+ * {@link #and(EventFilter)}, {@link #or(EventFilter)} and {@link #negate()}.
+ * A store holding a secondary index on an attribute asks the filter, through
+ * {@link #requiredValue(String)}, whether it pins that attribute to a single
+ * value, and then reads only the events indexed under it.
+ */
+public interface EventFilter {
+
+    boolean test(Payload payload);
+
+    /**
+     * @return the value the given attribute must have for an event to match,
+     *         or {@code null} if the filter does not pin it.
+     */
+    default Object requiredValue(String name) {
+        return null;
+    }
+
+    default EventFilter and(EventFilter other) {
+        return new EventFilters.And(this, other);
+    }
+
+    default EventFilter or(EventFilter other) {
+        return new EventFilters.Or(this, other);
+    }
+
+    default EventFilter negate() {
+        return payload -> !test(payload);
+    }
+
+    /**
+     * Matches the events whose attribute {@param name} is the {@code long}
+     * {@param value}.
+     */
+    static EventFilter equalTo(String name, long value) {
+        return new EventFilters.EqualTo(name, value);
+    }
+
+    static EventFilter equalTo(String name, double value) {
+        return new EventFilters.EqualTo(name, value);
+    }
+
+    static EventFilter equalTo(String name, String value) {
+        if (value == null) {
+            throw new IllegalArgumentException("Value cannot be null");
+        }
+        return new EventFilters.EqualTo(name, value);
+    }
+
+    static EventFilter equalTo(String name, boolean value) {
+        return new EventFilters.EqualTo(name, value);
+    }
+
+    /**
+     * Matches the events whose attribute {@param name} is a {@code long} from
+     * {@param min} (inclusive) to {@param max} (exclusive).
+     */
+    static EventFilter between(String name, long min, long max) {
+        EventFilters.checkName(name);
+        if (min > max) {
+            throw new IllegalArgumentException("min greater than max");
+        }
+        return payload -> {
+            Object value = payload.get(name);
+            return value instanceof Long && (Long) value >= min && (Long) value < max;
+        };
+    }
+
+    /**
+     * Matches the events which have the attribute {@param name}.
+     */
+    static EventFilter has(String name) {
+        EventFilters.checkName(name);
+        return payload -> payload.has(name);
+    }
+}
@@ -0,0 +1,107 @@
+package net.intelie.challenges;
+
+/**
+ * The {@link EventFilter} which tell a store what they require of an
+ * attribute.
+ */
+final class EventFilters {
+
+    private EventFilters() {
+    }
+
+    static void checkName(String name) {
+        if (name == null || name.isEmpty()) {
+            throw new IllegalArgumentException("Name cannot be null or empty");
+        }
+    }
+
+    static final class EqualTo implements EventFilter {
+        private final String name;
+        private final Object value;
+
+        EqualTo(String name, Object value) {
+            checkName(name);
+            this.name = name;
+            this.value = value;
+        }
+
+        @Override
+        public boolean test(Payload payload) {
+            return value.equals(payload.get(name));
+        }
+
+        @Override
+        public Object requiredValue(String name) {
+            return this.name.equals(name) ? value : null;
+        }
+
+        @Override
+        public String toString() {
+            return name + " = " + value;
+        }
+    }
+
+    static final class And implements EventFilter {
+        private final EventFilter left;
+        private final EventFilter right;
+
+        And(EventFilter left, EventFilter right) {
+            if (right == null) {
+                throw new IllegalArgumentException("Filter cannot be null");
+            }
+            this.left = left;
+            this.right = right;
+        }
+
+        @Override
+        public boolean test(Payload payload) {
+            return left.test(payload) && right.test(payload);
+        }
+
+        /**
+         * Both sides must hold, so either one pinning the attribute does.
+         */
+        @Override
+        public Object requiredValue(String name) {
+            Object value = left.requiredValue(name);
+            return value != null ? value : right.requiredValue(name);
+        }
+
+        @Override
+        public String toString() {
+            return "(" + left + " and " + right + ")";
+        }
+    }
+
+    static final class Or implements EventFilter {
+        private final EventFilter left;
+        private final EventFilter right;
+
+        Or(EventFilter left, EventFilter right) {
+            if (right == null) {
+                throw new IllegalArgumentException("Filter cannot be null");
+            }
+            this.left = left;
+            this.right = right;
+        }
+
+        @Override
+        public boolean test(Payload payload) {
+            return left.test(payload) || right.test(payload);
+        }
+
+        /**
+         * Only pinned if both sides pin the attribute to the same value.
+         */
+        @Override
+        public Object requiredValue(String name) {
+            Object value = left.requiredValue(name);
+            return value != null && value.equals(right.requiredValue(name)) ? value : null;
+        }
+
+        @Override
+        public String toString() {
+            return "(" + left + " or " + right + ")";
+        }
+    }
+}
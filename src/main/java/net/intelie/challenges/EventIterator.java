@@ -20,6 +20,18 @@ public interface EventIterator extends AutoCloseable {
      */
     Event current();
 
+    /**
+     * Gets the payload of the current event. Stores keeping payloads in their
+     * own buffers return a view over them, without creating the event.
+     *
+     * @return the payload of {@link #current()}.
+     * @throws IllegalStateException if {@link #moveNext} was never called
+     *                               or its last result was {@code false}.
+     */
+    default Payload payload() {
+        return current().payload();
+    }
+
     /**
      * Remove current event from its store.
      *
@@ -1,5 +1,11 @@
 package net.intelie.challenges;
 
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Set;
+
 /**
  * An abstraction of an event store.
  * <p>
@@ -15,6 +21,17 @@ public interface EventStore {
      */
     void insert(Event event);
 
+    /**
+     * Stores a batch of events. Implementations may sort the batch once and
+     * merge it into their order instead of inserting events one by one.
+     *
+     * @param events
+     */
+    default void insertAll(Collection<Event> events) {
+        for (Event event : events) {
+            insert(event);
+        }
+    }
 
     /**
      * Removes all events of specific type.
@@ -34,4 +51,123 @@ public interface EventStore {
      * (inclusive) and {@param endTime} (exclusive).
      */
     EventIterator query(String type, long startTime, long endTime);
+
+    /**
+     * Retrieves a single iterator for events of several types, ordered by
+     * timestamp.
+     * <p>
+     * By default each type is queried on its own and the results are merged
+     * lazily by a {@link MergingEventIterator}. Implementations keeping all
+     * types in one ordered structure may walk it once instead.
+     *
+     * @param types     The types we are querying for.
+     * @param startTime Start timestamp (inclusive).
+     * @param endTime   End timestamp (exclusive).
+     * @return An iterator over the events of any of the {@param types} with
+     * timestamp between {@param startTime} (inclusive) and {@param endTime}
+     * (exclusive), ordered by timestamp.
+     */
+    default EventIterator query(Set<String> types, long startTime, long endTime) {
+        if (types == null) {
+            throw new IllegalArgumentException("Types cannot be null");
+        }
+        List<EventIterator> iterators = new ArrayList<EventIterator>(types.size());
+        for (String type : types) {
+            iterators.add(query(type, startTime, endTime));
+        }
+        return new MergingEventIterator(iterators);
+    }
+
+    /**
+     * Retrieves an iterator for the events of several types which match a
+     * filter on their payloads, ordered by timestamp.
+     * <p>
+     * By default the filter is applied to {@link #query(Set, long, long)} as
+     * it moves, reading only {@link EventIterator#payload()}. Implementations
+     * may evaluate it inside their scan, or read an index instead.
+     *
+     * @param types     The types we are querying for.
+     * @param startTime Start timestamp (inclusive).
+     * @param endTime   End timestamp (exclusive).
+     * @param filter    The condition the payload of each event must meet.
+     * @return An iterator over the events of {@link #query(Set, long, long)}
+     * matching the {@param filter}.
+     */
+    default EventIterator query(Set<String> types, long startTime, long endTime, EventFilter filter) {
+        if (filter == null) {
+            throw new IllegalArgumentException("Filter cannot be null");
+        }
+        return new FilteredEventIterator(query(types, startTime, endTime), filter);
+    }
+
+    /**
+     * Retrieves a single iterator for events of every type, ordered by
+     * timestamp.
+     *
+     * @param startTime Start timestamp (inclusive).
+     * @param endTime   End timestamp (exclusive).
+     * @return An iterator over all events with timestamp between
+     * {@param startTime} (inclusive) and {@param endTime} (exclusive),
+     * ordered by timestamp.
+     */
+    EventIterator queryAll(long startTime, long endTime);
+
+    /**
+     * Retrieves an iterator for at most {@code limit} events of a type, in the
+     * given order. A descending query with a limit returns the newest events
+     * before {@code endTime}.
+     * <p>
+     * By default an ascending query stops the plain query after
+     * {@code limit} events, while a descending one reads the whole range
+     * keeping only the newest {@code limit} events. Removing through it queries
+     * the timestamp of the event again, and removes an event of the same type,
+     * timestamp and payload. Implementations able to seek backwards from
+     * {@code endTime} may read only what they return.
+     *
+     * @param type      The type we are querying for.
+     * @param startTime Start timestamp (inclusive).
+     * @param endTime   End timestamp (exclusive).
+     * @param order     The order of the events.
+     * @param limit     The maximum number of events, {@link Integer#MAX_VALUE}
+     *                  for no limit.
+     * @return An iterator over the events of {@link #query(String, long, long)}
+     * in the given {@param order}, stopping after {@param limit} events.
+     */
+    default EventIterator query(String type, long startTime, long endTime, Order order, int limit) {
+        if (order == null) {
+            throw new IllegalArgumentException("Order cannot be null");
+        } else if (limit <= 0) {
+            throw new IllegalArgumentException("Limit must be positive");
+        }
+
+        EventIterator it = query(type, startTime, endTime);
+        if (order == Order.ASCENDING) {
+            return new LimitedEventIterator(it, limit);
+        }
+
+        ArrayDeque<Event> newest = new ArrayDeque<Event>();
+        while (it.moveNext()) {
+            if (newest.size() == limit) {
+                newest.pollLast();
+            }
+            newest.addFirst(it.current());
+        }
+        return new BufferedEventIterator(newest.toArray(new Event[newest.size()]), event -> {
+            // no query returns an event at Long.MAX_VALUE, so none can be removed.
+            long timestamp = event.timestamp();
+            if (timestamp == Long.MAX_VALUE) {
+                return;
+            }
+            // the very same instance if the store keeps it, or else one with the
+            // same payload, which cannot be told apart from it.
+            EventIterator same = query(event.type(), timestamp, timestamp + 1);
+            while (same.moveNext()) {
+                Event candidate = same.current();
+                if (candidate == event || candidate.payload().equals(event.payload())) {
+                    same.remove();
+                    return;
+                }
+            }
+        });
+    }
 }
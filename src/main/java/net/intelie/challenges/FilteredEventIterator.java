@@ -0,0 +1,48 @@
+package net.intelie.challenges;
+
+/**
+ * An {@link EventIterator} skipping the events of another one which do not
+ * match an {@link EventFilter}. The filter reads {@link EventIterator#payload()},
+ * so stores keeping payloads in their own buffers do not create the skipped
+ * events.
+ */
+public class FilteredEventIterator implements EventIterator {
+
+    private final EventIterator iterator;
+    private final EventFilter filter;
+
+    public FilteredEventIterator(EventIterator iterator, EventFilter filter) {
+        this.iterator = iterator;
+        this.filter = filter;
+    }
+
+    @Override
+    public boolean moveNext() {
+        while (iterator.moveNext()) {
+            if (filter.test(iterator.payload())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public Event current() {
+        return iterator.current();
+    }
+
+    @Override
+    public Payload payload() {
+        return iterator.payload();
+    }
+
+    @Override
+    public void remove() {
+        iterator.remove();
+    }
+
+    @Override
+    public void close() throws Exception {
+        iterator.close();
+    }
+}
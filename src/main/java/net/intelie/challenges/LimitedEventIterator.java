@@ -0,0 +1,44 @@
+package net.intelie.challenges;
+
+/**
+ * An {@link EventIterator} stopping after a given number of events of
+ * another one. The other iterator is not moved past the limit.
+ */
+public class LimitedEventIterator implements EventIterator {
+
+    private final EventIterator iterator;
+    private int left;
+
+    public LimitedEventIterator(EventIterator iterator, int limit) {
+        this.iterator = iterator;
+        this.left = limit;
+    }
+
+    @Override
+    public boolean moveNext() {
+        if (left == 0) {
+            return false;
+        }
+        --left;
+        if (!iterator.moveNext()) {
+            left = 0;
+            return false;
+        }
+        return true;
+    }
+
+    @Override
+    public Event current() {
+        return iterator.current();
+    }
+
+    @Override
+    public void remove() {
+        iterator.remove();
+    }
+
+    @Override
+    public void close() throws Exception {
+        iterator.close();
+    }
+}
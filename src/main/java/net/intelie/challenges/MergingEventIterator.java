@@ -0,0 +1,112 @@
+package net.intelie.challenges;
+
+import java.util.Collection;
+import java.util.PriorityQueue;
+
+/**
+ * An {@link EventIterator} merging timestamp-ordered iterators into a single
+ * timestamp-ordered one.
+ * <p>
+ * The merge is lazy: a {@link PriorityQueue} holds the current event of each
+ * source and every {@link #moveNext()} advances only the source the last event
+ * came from, so each step costs O(log k) for k sources. Events sharing a
+ * timestamp come in the order of the sources. {@link #remove()} removes the
+ * current event through its source.
+ */
+public class MergingEventIterator implements EventIterator {
+
+    private final PriorityQueue<Source> queue;
+    private final Collection<? extends EventIterator> sources;
+    private Source current;
+    private boolean started;
+
+    /**
+     * @param sources iterators positioned before their first event, each one
+     *                ordered by timestamp.
+     */
+    public MergingEventIterator(Collection<? extends EventIterator> sources) {
+        this.sources = sources;
+        this.queue = new PriorityQueue<Source>(Math.max(1, sources.size()));
+    }
+
+    @Override
+    public boolean moveNext() {
+        if (!started) {
+            started = true;
+            int order = 0;
+            for (EventIterator iterator : sources) {
+                Source source = new Source(iterator, order++);
+                if (source.advance()) {
+                    queue.add(source);
+                }
+            }
+        } else if (current != null && current.advance()) {
+            queue.add(current);
+        }
+
+        current = queue.poll();
+        return current != null;
+    }
+
+    @Override
+    public Event current() {
+        if (current == null || current.event == null) {
+            throw new IllegalStateException();
+        }
+        return current.event;
+    }
+
+    @Override
+    public void remove() {
+        if (current == null || current.event == null) {
+            throw new IllegalStateException();
+        }
+        current.iterator.remove();
+        // the source stays current, so the next move advances it.
+        current.event = null;
+    }
+
+    @Override
+    public void close() throws Exception {
+        Exception failure = null;
+        for (EventIterator iterator : sources) {
+            try {
+                iterator.close();
+            } catch (Exception e) {
+                failure = failure == null ? e : failure;
+            }
+        }
+        queue.clear();
+        current = null;
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    private static final class Source implements Comparable<Source> {
+
+        private final EventIterator iterator;
+        private final int order;
+        private Event event;
+
+        Source(EventIterator iterator, int order) {
+            this.iterator = iterator;
+            this.order = order;
+        }
+
+        boolean advance() {
+            if (iterator.moveNext()) {
+                event = iterator.current();
+                return true;
+            }
+            event = null;
+            return false;
+        }
+
+        @Override
+        public int compareTo(Source other) {
+            int compare = Long.compare(event.timestamp(), other.event.timestamp());
+            return compare != 0 ? compare : Integer.compare(order, other.order);
+        }
+    }
+}
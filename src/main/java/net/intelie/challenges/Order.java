@@ -0,0 +1,15 @@
+package net.intelie.challenges;
+
+/**
+ * The order in which a query returns events.
+ */
+public enum Order {
+    /**
+     * Oldest first.
+     */
+    ASCENDING,
+    /**
+     * Newest first.
+     */
+    DESCENDING
+}
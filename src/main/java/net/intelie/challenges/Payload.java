@@ -0,0 +1,488 @@
+package net.intelie.challenges;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The attributes of an {@link Event}, kept in a compact binary encoding.
+ * <p>
+ * Each attribute is its name, as a varint length and UTF-8 bytes, a tag byte
+ * and its value: a zigzag varint for a {@code long}, 8 bytes for a
+ * {@code double}, a varint length and UTF-8 bytes for a {@link String}, one
+ * byte for a {@code boolean}. Nothing is decoded up front: an accessor walks
+ * the encoding, skipping the other attributes by their lengths, and decodes
+ * only the value asked for, so a reader pays only for the attributes it
+ * touches.
+ * <p>
+ * A payload may be a view over the buffers of a store, so it is read-only and
+ * never copies its bytes unless asked to, see {@link #toByteArray()}.
+ */
+public final class Payload {
+
+    public static final Payload EMPTY = new Payload(ByteBuffer.allocate(0), 0, 0);
+
+    private static final byte LONG = 1;
+    private static final byte DOUBLE = 2;
+    private static final byte STRING = 3;
+    private static final byte BOOLEAN = 4;
+
+    private final ByteBuffer buffer;
+    private final int offset;
+    private final int length;
+
+    private Payload(ByteBuffer buffer, int offset, int length) {
+        this.buffer = buffer;
+        this.offset = offset;
+        this.length = length;
+    }
+
+    /**
+     * @param encoded the encoding of a payload, as given by
+     *                {@link #toByteArray()}. It is not copied.
+     */
+    public static Payload wrap(byte[] encoded) {
+        return encoded.length == 0 ? EMPTY : new Payload(ByteBuffer.wrap(encoded), 0, encoded.length);
+    }
+
+    /**
+     * @return a view over {@param length} bytes of {@param buffer} from
+     *         {@param offset}, which must hold the encoding of a payload and
+     *         must not change while the view is in use. Only absolute reads are
+     *         made, so the position of the buffer does not matter.
+     */
+    public static Payload wrap(ByteBuffer buffer, int offset, int length) {
+        if (offset < 0 || length < 0 || offset + length > buffer.capacity()) {
+            throw new IllegalArgumentException("Range out of buffer");
+        }
+        return length == 0 ? EMPTY : new Payload(buffer, offset, length);
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    public boolean isEmpty() {
+        return length == 0;
+    }
+
+    /**
+     * @return the number of bytes of the encoding.
+     */
+    public int encodedSize() {
+        return length;
+    }
+
+    /**
+     * Copies the encoding into {@param target}, at its position.
+     */
+    public void writeTo(ByteBuffer target) {
+        target.put(encoding());
+    }
+
+    /**
+     * @return a copy of the encoding.
+     */
+    public byte[] toByteArray() {
+        byte[] bytes = new byte[length];
+        encoding().get(bytes);
+        return bytes;
+    }
+
+    /**
+     * @return a view over the encoding, so it is copied in bulk without moving
+     *         the position of the buffer.
+     */
+    private ByteBuffer encoding() {
+        ByteBuffer encoding = buffer.duplicate();
+        encoding.limit(offset + length).position(offset);
+        return encoding;
+    }
+
+    public boolean has(String name) {
+        return find(name) >= 0;
+    }
+
+    /**
+     * @return the value of the given attribute, or {@param defaultValue} if
+     *         there is none.
+     * @throws IllegalArgumentException if the attribute is not a {@code long}.
+     */
+    public long getLong(String name, long defaultValue) {
+        int tag = find(name);
+        if (tag < 0) {
+            return defaultValue;
+        }
+        check(tag, LONG, name);
+        return longAt(tag);
+    }
+
+    /**
+     * @return the value of the given attribute, or {@param defaultValue} if
+     *         there is none.
+     * @throws IllegalArgumentException if the attribute is not a
+     *                                  {@code double}.
+     */
+    public double getDouble(String name, double defaultValue) {
+        int tag = find(name);
+        if (tag < 0) {
+            return defaultValue;
+        }
+        check(tag, DOUBLE, name);
+        return doubleAt(tag);
+    }
+
+    /**
+     * @return the value of the given attribute, or {@code null} if there is
+     *         none.
+     * @throws IllegalArgumentException if the attribute is not a
+     *                                  {@link String}.
+     */
+    public String getString(String name) {
+        int tag = find(name);
+        if (tag < 0) {
+            return null;
+        }
+        check(tag, STRING, name);
+        return stringAt(tag);
+    }
+
+    /**
+     * @return the value of the given attribute, or {@param defaultValue} if
+     *         there is none.
+     * @throws IllegalArgumentException if the attribute is not a
+     *                                  {@code boolean}.
+     */
+    public boolean getBoolean(String name, boolean defaultValue) {
+        int tag = find(name);
+        if (tag < 0) {
+            return defaultValue;
+        }
+        check(tag, BOOLEAN, name);
+        return buffer.get(tag + 1) != 0;
+    }
+
+    /**
+     * @return the value of the given attribute, boxed as a {@link Long},
+     *         {@link Double}, {@link String} or {@link Boolean}, or
+     *         {@code null} if there is none.
+     */
+    public Object get(String name) {
+        int tag = find(name);
+        if (tag < 0) {
+            return null;
+        }
+        switch (buffer.get(tag)) {
+        case LONG:
+            return longAt(tag);
+        case DOUBLE:
+            return doubleAt(tag);
+        case STRING:
+            return stringAt(tag);
+        default:
+            return buffer.get(tag + 1) != 0;
+        }
+    }
+
+    /**
+     * @return the names of the attributes, in encoding order.
+     */
+    public List<String> names() {
+        List<String> names = new ArrayList<String>();
+        int pos = offset;
+        int end = offset + length;
+        while (pos < end) {
+            long header = readInt(pos);
+            int nameLength = value(header);
+            int tag = position(header) + nameLength;
+            names.add(decode(position(header), nameLength));
+            pos = skipValue(tag);
+        }
+        return names;
+    }
+
+    /**
+     * @return the position of the tag of the given attribute, or -1.
+     */
+    private int find(String name) {
+        if (name == null) {
+            throw new IllegalArgumentException("Name cannot be null");
+        }
+        int pos = offset;
+        int end = offset + length;
+        while (pos < end) {
+            long header = readInt(pos);
+            int nameLength = value(header);
+            int tag = position(header) + nameLength;
+            if (nameEquals(position(header), nameLength, name)) {
+                return tag;
+            }
+            pos = skipValue(tag);
+        }
+        return -1;
+    }
+
+    /**
+     * Compares without decoding the stored name, byte by byte while the given
+     * {@param name} is ASCII.
+     */
+    private boolean nameEquals(int pos, int nameLength, String name) {
+        if (name.length() > nameLength) {
+            return false;
+        }
+        for (int i = 0; i < name.length(); i++) {
+            char c = name.charAt(i);
+            if (c >= 0x80) {
+                byte[] bytes = name.getBytes(StandardCharsets.UTF_8);
+                if (bytes.length != nameLength) {
+                    return false;
+                }
+                for (int j = i; j < bytes.length; j++) {
+                    if (buffer.get(pos + j) != bytes[j]) {
+                        return false;
+                    }
+                }
+                return true;
+            }
+            if (buffer.get(pos + i) != c) {
+                return false;
+            }
+        }
+        return name.length() == nameLength;
+    }
+
+    /**
+     * @return the position following the value of the attribute whose tag is
+     *         at {@param tag}.
+     */
+    private int skipValue(int tag) {
+        switch (buffer.get(tag)) {
+        case LONG:
+            int pos = tag + 1;
+            while ((buffer.get(pos++) & 0x80) != 0) {
+            }
+            return pos;
+        case DOUBLE:
+            return tag + 1 + Double.BYTES;
+        case STRING:
+            long header = readInt(tag + 1);
+            return position(header) + value(header);
+        case BOOLEAN:
+            return tag + 2;
+        default:
+            throw new IllegalStateException("Corrupt payload");
+        }
+    }
+
+    private long longAt(int tag) {
+        long zigzag = readLong(tag + 1);
+        return (zigzag >>> 1) ^ -(zigzag & 1);
+    }
+
+    private double doubleAt(int tag) {
+        long bits = 0L;
+        // big-endian whatever the order of the buffer.
+        for (int i = 1; i <= Double.BYTES; i++) {
+            bits = (bits << 8) | (buffer.get(tag + i) & 0xFF);
+        }
+        return Double.longBitsToDouble(bits);
+    }
+
+    private String stringAt(int tag) {
+        long header = readInt(tag + 1);
+        return decode(position(header), value(header));
+    }
+
+    private void check(int tag, byte expected, String name) {
+        if (buffer.get(tag) != expected) {
+            throw new IllegalArgumentException("Attribute " + name + " has another type");
+        }
+    }
+
+    private long readLong(int pos) {
+        long value = 0L;
+        for (int shift = 0;; shift += 7) {
+            byte b = buffer.get(pos++);
+            value |= (long) (b & 0x7F) << shift;
+            if (b >= 0) {
+                return value;
+            }
+        }
+    }
+
+    /**
+     * @return a varint below 2^31 and the position following it, packed so no
+     *         object is created.
+     */
+    private long readInt(int pos) {
+        int value = 0;
+        for (int shift = 0;; shift += 7) {
+            byte b = buffer.get(pos++);
+            value |= (b & 0x7F) << shift;
+            if (b >= 0) {
+                return ((long) value << 32) | pos;
+            }
+        }
+    }
+
+    private static int value(long header) {
+        return (int) (header >>> 32);
+    }
+
+    private static int position(long header) {
+        return (int) header;
+    }
+
+    private String decode(int pos, int size) {
+        if (buffer.hasArray()) {
+            return new String(buffer.array(), buffer.arrayOffset() + pos, size, StandardCharsets.UTF_8);
+        }
+        byte[] bytes = new byte[size];
+        for (int i = 0; i < size; i++) {
+            bytes[i] = buffer.get(pos + i);
+        }
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Payloads are equal when their encodings are.
+     */
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj) {
+            return true;
+        }
+        if (!(obj instanceof Payload)) {
+            return false;
+        }
+        Payload other = (Payload) obj;
+        if (length != other.length) {
+            return false;
+        }
+        for (int i = 0; i < length; i++) {
+            if (buffer.get(offset + i) != other.buffer.get(other.offset + i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public int hashCode() {
+        int hash = 1;
+        for (int i = 0; i < length; i++) {
+            hash = 31 * hash + buffer.get(offset + i);
+        }
+        return hash;
+    }
+
+    @Override
+    public String toString() {
+        return "Payload " + names();
+    }
+
+    /**
+     * Collects attributes and encodes them once, in insertion order. Putting a
+     * name again replaces its value.
+     */
+    public static final class Builder {
+        private final Map<String, Object> attributes = new LinkedHashMap<String, Object>();
+
+        private Builder() {
+        }
+
+        public Builder put(String name, long value) {
+            return add(name, value);
+        }
+
+        public Builder put(String name, double value) {
+            return add(name, value);
+        }
+
+        public Builder put(String name, String value) {
+            if (value == null) {
+                throw new IllegalArgumentException("Value cannot be null");
+            }
+            return add(name, value);
+        }
+
+        public Builder put(String name, boolean value) {
+            return add(name, value);
+        }
+
+        private Builder add(String name, Object value) {
+            if (name == null || name.isEmpty()) {
+                throw new IllegalArgumentException("Name cannot be null or empty");
+            }
+            attributes.put(name, value);
+            return this;
+        }
+
+        public Payload build() {
+            if (attributes.isEmpty()) {
+                return EMPTY;
+            }
+            Encoder encoder = new Encoder();
+            for (Map.Entry<String, Object> attribute : attributes.entrySet()) {
+                encoder.bytes(attribute.getKey().getBytes(StandardCharsets.UTF_8));
+                Object value = attribute.getValue();
+                if (value instanceof Long) {
+                    long v = (Long) value;
+                    encoder.put(LONG);
+                    encoder.varint((v << 1) ^ (v >> 63));
+                } else if (value instanceof Double) {
+                    encoder.put(DOUBLE);
+                    long bits = Double.doubleToRawLongBits((Double) value);
+                    for (int shift = 56; shift >= 0; shift -= 8) {
+                        encoder.put((byte) (bits >>> shift));
+                    }
+                } else if (value instanceof String) {
+                    encoder.put(STRING);
+                    encoder.bytes(((String) value).getBytes(StandardCharsets.UTF_8));
+                } else {
+                    encoder.put(BOOLEAN);
+                    encoder.put((byte) ((Boolean) value ? 1 : 0));
+                }
+            }
+            return wrap(encoder.toByteArray());
+        }
+    }
+
+    private static final class Encoder {
+        private byte[] bytes = new byte[64];
+        private int size;
+
+        void put(byte b) {
+            if (size == bytes.length) {
+                bytes = Arrays.copyOf(bytes, size * 2);
+            }
+            bytes[size++] = b;
+        }
+
+        void varint(long value) {
+            while ((value & ~0x7FL) != 0) {
+                put((byte) ((value & 0x7F) | 0x80));
+                value >>>= 7;
+            }
+            put((byte) value);
+        }
+
+        /**
+         * Writes a length followed by the given {@param data}.
+         */
+        void bytes(byte[] data) {
+            varint(data.length);
+            for (byte b : data) {
+                put(b);
+            }
+        }
+
+        byte[] toByteArray() {
+            return size == bytes.length ? bytes : Arrays.copyOf(bytes, size);
+        }
+    }
+}
@@ -0,0 +1,391 @@
+package net.intelie.challenges.concurrent;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import net.intelie.challenges.Event;
+import net.intelie.challenges.EventIterator;
+import net.intelie.challenges.EventStore;
+
+/**
+ *
+ * <p>
+ * A non-blocking facade over an {@link EventStore}: every operation returns a
+ * {@link CompletableFuture} instead of waiting for the locks of the store.
+ *
+ * <p>
+ * <br>
+ * Inserts and removals are queued and applied by a small set of writer
+ * threads. Each type is routed to one writer, so the operations on a type are
+ * applied in the order they were submitted, and a removal applies after the
+ * inserts of its type submitted before it. A writer drains up to
+ * {@link #DEFAULT_BATCH_SIZE} queued operations at a time and hands the
+ * consecutive inserts among them to {@link EventStore#insertAll} as one
+ * batch.
+ *
+ * <p>
+ * <br>
+ * The queues are bounded. When the queue of a writer is full, an insert is
+ * rejected, blocked or dropped according to the {@link Backpressure} of this
+ * store. Removals and {@link #flush()} always wait for room, since losing them
+ * would change what the store holds. Futures are completed by the writers,
+ * so a dependent stage which submits to a full queue under
+ * {@link Backpressure#BLOCK} must be an async one.
+ *
+ * <p>
+ * <br>
+ * Queries do not go through the queues: they run on an {@link Executor} and
+ * see the store as it is, so they may miss inserts still queued. Call
+ * {@link #flush()} first to read them.
+ *
+ */
+public class AsyncEventStore implements AutoCloseable {
+
+	public static final int DEFAULT_CAPACITY = 8192;
+	public static final int DEFAULT_WRITERS = 2;
+	public static final int DEFAULT_BATCH_SIZE = 256;
+
+	private enum Kind {
+		INSERT, REMOVE_ALL, BARRIER, STOP
+	}
+
+	private static final class Task {
+		private final Kind kind;
+		private final Event event;
+		private final String type;
+		private final CompletableFuture<Boolean> inserted;
+		private final CompletableFuture<Void> done;
+
+		private Task(Kind kind, Event event, String type, CompletableFuture<Boolean> inserted,
+				CompletableFuture<Void> done) {
+			this.kind = kind;
+			this.event = event;
+			this.type = type;
+			this.inserted = inserted;
+			this.done = done;
+		}
+	}
+
+	private final EventStore store;
+	private final Backpressure backpressure;
+	private final Executor queryExecutor;
+	private final List<BlockingQueue<Task>> queues;
+	private final Thread[] writers;
+
+	/**
+	 * Held to submit, so {@link #close()} cannot stop the writers between the
+	 * check of {@link #closed} and the submission.
+	 */
+	private final ReentrantReadWriteLock closing = new ReentrantReadWriteLock();
+	private boolean closed;
+
+	private final LongAdder rejected = new LongAdder();
+	private final LongAdder dropped = new LongAdder();
+
+	/**
+	 * This constructor uses {@link #DEFAULT_CAPACITY}, {@link #DEFAULT_WRITERS},
+	 * blocks when a queue is full and runs queries on the common
+	 * {@link ForkJoinPool}.
+	 */
+	public AsyncEventStore(EventStore store) {
+		this(store, DEFAULT_CAPACITY, DEFAULT_WRITERS, Backpressure.BLOCK, ForkJoinPool.commonPool());
+	}
+
+	/**
+	 *
+	 * @param capacity      the number of operations which may be queued, split
+	 *                      among the writers.
+	 * @param writers       the number of writer threads.
+	 * @param backpressure  what to do with an insert when a queue is full.
+	 * @param queryExecutor runs the queries.
+	 */
+	public AsyncEventStore(EventStore store, int capacity, int writers, Backpressure backpressure,
+			Executor queryExecutor) {
+		if (store == null || backpressure == null || queryExecutor == null) {
+			throw new IllegalArgumentException("Store, backpressure and executor cannot be null");
+		} else if (writers <= 0 || capacity < writers) {
+			throw new IllegalArgumentException("Writers must be positive and at most capacity");
+		}
+		this.store = store;
+		this.backpressure = backpressure;
+		this.queryExecutor = queryExecutor;
+		this.queues = new ArrayList<BlockingQueue<Task>>(writers);
+		this.writers = new Thread[writers];
+		for (int i = 0; i < writers; i++) {
+			BlockingQueue<Task> queue = new ArrayBlockingQueue<Task>(capacity / writers);
+			queues.add(queue);
+			this.writers[i] = new Thread(() -> drain(queue), "async-event-store-writer-" + i);
+			this.writers[i].setDaemon(true);
+			this.writers[i].start();
+		}
+	}
+
+	/**
+	 * Queues the insert of the given {@param event}.
+	 *
+	 * @return completes with true once the event is in the store, or with false
+	 *         if it was dropped by {@link Backpressure#DROP}.
+	 */
+	public CompletableFuture<Boolean> insert(Event event) {
+		if (event == null) {
+			throw new IllegalArgumentException("Event cannot be null");
+		} else if (event.type() == null || event.type().trim().isEmpty()) {
+			throw new IllegalArgumentException("Type cannot be null or empty");
+		}
+
+		CompletableFuture<Boolean> inserted = new CompletableFuture<Boolean>();
+		submit(new Task(Kind.INSERT, event, event.type(), inserted, null), backpressure);
+		return inserted;
+	}
+
+	/**
+	 * Queues the removal of every event of the given {@param type}, after the
+	 * inserts of this type already queued.
+	 */
+	public CompletableFuture<Void> removeAll(String type) {
+		if (type == null || type.trim().isEmpty()) {
+			throw new IllegalArgumentException("Type cannot be null or empty");
+		}
+
+		CompletableFuture<Void> done = new CompletableFuture<Void>();
+		submit(new Task(Kind.REMOVE_ALL, null, type, null, done), Backpressure.BLOCK);
+		return done;
+	}
+
+	/**
+	 * Reads the events of the given {@param type} in the range from
+	 * {@param startTime} (inclusive) to {@param endTime} (exclusive), in
+	 * timestamp order.
+	 *
+	 * @return completes with a copy of the events, since the iterators of the
+	 *         stores are not meant to cross threads.
+	 */
+	public CompletableFuture<List<Event>> query(String type, long startTime, long endTime) {
+		if (startTime > endTime) {
+			throw new IllegalArgumentException("startTime greater than endTime");
+		} else if (type == null || type.trim().isEmpty()) {
+			throw new IllegalArgumentException("Type cannot be null or empty");
+		}
+
+		return CompletableFuture.supplyAsync(() -> {
+			List<Event> events = new ArrayList<Event>();
+			try (EventIterator it = store.query(type, startTime, endTime)) {
+				while (it.moveNext()) {
+					events.add(it.current());
+				}
+			} catch (RuntimeException e) {
+				throw e;
+			} catch (Exception e) {
+				throw new IllegalStateException(e);
+			}
+			return events;
+		}, queryExecutor);
+	}
+
+	/**
+	 * @return completes once every operation queued before this call was
+	 *         applied.
+	 */
+	public CompletableFuture<Void> flush() {
+		CompletableFuture<?>[] barriers = new CompletableFuture<?>[queues.size()];
+		closing.readLock().lock();
+		try {
+			checkOpen();
+			for (int i = 0; i < queues.size(); i++) {
+				CompletableFuture<Void> done = new CompletableFuture<Void>();
+				put(queues.get(i), new Task(Kind.BARRIER, null, null, null, done));
+				barriers[i] = done;
+			}
+		} finally {
+			closing.readLock().unlock();
+		}
+		return CompletableFuture.allOf(barriers);
+	}
+
+	/**
+	 * @return the number of operations waiting in the queues.
+	 */
+	public int pending() {
+		int pending = 0;
+		for (BlockingQueue<Task> queue : queues) {
+			pending += queue.size();
+		}
+		return pending;
+	}
+
+	/**
+	 * @return how many inserts were rejected by {@link Backpressure#REJECT}.
+	 */
+	public long rejected() {
+		return rejected.sum();
+	}
+
+	/**
+	 * @return how many inserts were dropped by {@link Backpressure#DROP}.
+	 */
+	public long dropped() {
+		return dropped.sum();
+	}
+
+	/**
+	 * Stops accepting operations, applies the ones already queued and stops the
+	 * writers. The underlying store is not closed.
+	 */
+	@Override
+	public void close() {
+		closing.writeLock().lock();
+		try {
+			if (closed) {
+				return;
+			}
+			closed = true;
+			for (BlockingQueue<Task> queue : queues) {
+				put(queue, new Task(Kind.STOP, null, null, null, null));
+			}
+		} finally {
+			closing.writeLock().unlock();
+		}
+
+		boolean interrupted = false;
+		for (Thread writer : writers) {
+			while (writer.isAlive()) {
+				try {
+					writer.join();
+				} catch (InterruptedException e) {
+					interrupted = true;
+				}
+			}
+		}
+		if (interrupted) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	private void submit(Task task, Backpressure policy) {
+		BlockingQueue<Task> queue = queues.get(Math.floorMod(task.type.hashCode(), queues.size()));
+		closing.readLock().lock();
+		try {
+			checkOpen();
+			switch (policy) {
+			case BLOCK:
+				put(queue, task);
+				break;
+			case REJECT:
+				if (!queue.offer(task)) {
+					rejected.increment();
+					task.inserted.completeExceptionally(new RejectedExecutionException("Queue is full"));
+				}
+				break;
+			default:
+				if (!queue.offer(task)) {
+					dropped.increment();
+					task.inserted.complete(false);
+				}
+			}
+		} finally {
+			closing.readLock().unlock();
+		}
+	}
+
+	private void checkOpen() {
+		if (closed) {
+			throw new IllegalStateException("Store is closed");
+		}
+	}
+
+	/**
+	 * Puts the given {@param task} in the given {@param queue}, waiting for room
+	 * without giving up on interrupts, which are restored once done.
+	 */
+	private static void put(BlockingQueue<Task> queue, Task task) {
+		boolean interrupted = false;
+		while (true) {
+			try {
+				queue.put(task);
+				break;
+			} catch (InterruptedException e) {
+				interrupted = true;
+			}
+		}
+		if (interrupted) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	/**
+	 * The loop of a writer thread, until it takes a {@link Kind#STOP} task.
+	 */
+	private void drain(BlockingQueue<Task> queue) {
+		List<Task> tasks = new ArrayList<Task>(DEFAULT_BATCH_SIZE);
+		List<Task> inserts = new ArrayList<Task>(DEFAULT_BATCH_SIZE);
+		while (true) {
+			try {
+				tasks.add(queue.take());
+			} catch (InterruptedException e) {
+				// only close() stops a writer.
+				continue;
+			}
+			queue.drainTo(tasks, DEFAULT_BATCH_SIZE - 1);
+
+			boolean stop = false;
+			for (Task task : tasks) {
+				if (task.kind == Kind.INSERT) {
+					inserts.add(task);
+					continue;
+				}
+				insertAll(inserts);
+				if (task.kind == Kind.REMOVE_ALL) {
+					try {
+						store.removeAll(task.type);
+						task.done.complete(null);
+					} catch (RuntimeException e) {
+						task.done.completeExceptionally(e);
+					}
+				} else if (task.kind == Kind.BARRIER) {
+					task.done.complete(null);
+				} else {
+					stop = true;
+				}
+			}
+			insertAll(inserts);
+			tasks.clear();
+
+			if (stop) {
+				return;
+			}
+		}
+	}
+
+	/**
+	 * Inserts the events of the given {@param inserts} as one batch, completes
+	 * their futures and clears the list.
+	 */
+	private void insertAll(List<Task> inserts) {
+		if (inserts.isEmpty()) {
+			return;
+		}
+		List<Event> events = new ArrayList<Event>(inserts.size());
+		for (Task task : inserts) {
+			events.add(task.event);
+		}
+		try {
+			store.insertAll(events);
+			for (Task task : inserts) {
+				task.inserted.complete(true);
+			}
+		} catch (RuntimeException e) {
+			for (Task task : inserts) {
+				task.inserted.completeExceptionally(e);
+			}
+		}
+		inserts.clear();
+	}
+}
@@ -0,0 +1,120 @@
+package net.intelie.challenges.concurrent;
+
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+import net.intelie.challenges.Event;
+
+/**
+ *
+ * <p>
+ * A secondary index of a {@link ConcurrentSortedEventStore} over one
+ * attribute of the payloads of one type.
+ *
+ * <p>
+ * <br>
+ * Each value of the attribute maps to the chain nodes of the events holding
+ * it, split into time segments of a fixed width, so a query reads only the
+ * segments overlapping its range and sorts one segment at a time. Nodes are
+ * held by identity, from before they are linked until they are unlinked, so
+ * readers filter them by version, see
+ * {@link ConcurrentEventIterator#visibleAt(long)}. The events without the
+ * attribute are not indexed.
+ *
+ * <p>
+ * <br>
+ * Reads take no lock. Updates of a value are serialized on its postings, so
+ * the segment an event is added to is never dropped under it.
+ *
+ */
+final class AttributeIndex {
+
+	private static final class Postings {
+		private final ConcurrentSkipListMap<Long, Set<ConcurrentEventIterator>> segments = new ConcurrentSkipListMap<Long, Set<ConcurrentEventIterator>>();
+		/**
+		 * Set once the postings are dropped from the index, after which an add
+		 * looks them up again.
+		 */
+		private boolean dropped;
+	}
+
+	private final String attribute;
+	private final long segmentWidth;
+	private final ConcurrentHashMap<Object, Postings> values = new ConcurrentHashMap<Object, Postings>();
+
+	AttributeIndex(String attribute, long segmentWidth) {
+		this.attribute = attribute;
+		this.segmentWidth = segmentWidth;
+	}
+
+	String attribute() {
+		return attribute;
+	}
+
+	void add(ConcurrentEventIterator node) {
+		Event event = node.value;
+		Object value = event.payload().get(attribute);
+		if (value == null) {
+			return;
+		}
+		Long segment = segmentOf(event.timestamp());
+		while (true) {
+			Postings postings = values.computeIfAbsent(value, v -> new Postings());
+			synchronized (postings) {
+				if (!postings.dropped) {
+					postings.segments.computeIfAbsent(segment, s -> ConcurrentHashMap.<ConcurrentEventIterator>newKeySet()).add(node);
+					return;
+				}
+			}
+		}
+	}
+
+	void remove(ConcurrentEventIterator node) {
+		Event event = node.value;
+		Object value = event.payload().get(attribute);
+		if (value == null) {
+			return;
+		}
+		Postings postings = values.get(value);
+		if (postings == null) {
+			return;
+		}
+		synchronized (postings) {
+			Long segment = segmentOf(event.timestamp());
+			Set<ConcurrentEventIterator> nodes = postings.segments.get(segment);
+			if (nodes != null && nodes.remove(node) && nodes.isEmpty()) {
+				postings.segments.remove(segment);
+				if (postings.segments.isEmpty()) {
+					postings.dropped = true;
+					values.remove(value, postings);
+				}
+			}
+		}
+	}
+
+	/**
+	 * @return the segments of the nodes holding the given {@param value} which
+	 *         overlap the range from {@param startTime} to {@param endTime}, both
+	 *         inclusive, in time order. They are live views.
+	 */
+	NavigableMap<Long, Set<ConcurrentEventIterator>> segments(Object value, long startTime, long endTime) {
+		Postings postings = values.get(value);
+		if (postings == null) {
+			return new ConcurrentSkipListMap<Long, Set<ConcurrentEventIterator>>();
+		}
+		return postings.segments.subMap(segmentOf(startTime), true, segmentOf(endTime), true);
+	}
+
+	/**
+	 * @return the number of distinct values indexed.
+	 */
+	int cardinality() {
+		return values.size();
+	}
+
+	private long segmentOf(long timestamp) {
+		return Math.floorDiv(timestamp, segmentWidth);
+	}
+}
@@ -0,0 +1,21 @@
+package net.intelie.challenges.concurrent;
+
+/**
+ * What {@link AsyncEventStore} does with an insert when its ingest queue is
+ * full.
+ */
+public enum Backpressure {
+	/**
+	 * The insert fails at once: its future completes exceptionally with a
+	 * {@link java.util.concurrent.RejectedExecutionException}.
+	 */
+	REJECT,
+	/**
+	 * The caller waits until there is room in the queue.
+	 */
+	BLOCK,
+	/**
+	 * The event is discarded: its future completes with {@code false}.
+	 */
+	DROP
+}
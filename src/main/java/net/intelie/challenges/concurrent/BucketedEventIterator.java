@@ -0,0 +1,88 @@
+package net.intelie.challenges.concurrent;
+
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentNavigableMap;
+
+import net.intelie.challenges.Event;
+import net.intelie.challenges.EventIterator;
+
+/**
+ * 
+ * <p>
+ * {@link EventIterator} over the buckets of a {@link BucketedEventStore}
+ * overlapping a time range.
+ * 
+ * <p>
+ * <br>
+ * Buckets are visited in order through the weakly consistent iterator of the
+ * bucket map, and each bucket is read by a {@link ColumnarEventIterator}.
+ * A bucket created ahead of the iterator while it is open may or may not be
+ * seen.
+ *
+ */
+class BucketedEventIterator implements EventIterator {
+
+	private final Iterator<TimestampColumn> buckets;
+	private final String type;
+	private final long startTime;
+	private final long endTime;
+	private final boolean descending;
+
+	private ColumnarEventIterator bucket;
+	private boolean positioned;
+
+	BucketedEventIterator(ConcurrentNavigableMap<Long, TimestampColumn> buckets, String type, long startTime,
+			long endTime) {
+		this(buckets, type, startTime, endTime, false);
+	}
+
+	/**
+	 * @param descending if the events are returned newest first, walking the
+	 *                   buckets backwards.
+	 */
+	BucketedEventIterator(ConcurrentNavigableMap<Long, TimestampColumn> buckets, String type, long startTime,
+			long endTime, boolean descending) {
+		this.buckets = (descending ? buckets.descendingMap() : buckets).values().iterator();
+		this.type = type;
+		this.startTime = startTime;
+		this.endTime = endTime;
+		this.descending = descending;
+	}
+
+	@Override
+	public boolean moveNext() {
+		while (bucket == null || !bucket.moveNext()) {
+			if (!buckets.hasNext()) {
+				bucket = null;
+				positioned = false;
+				return false;
+			}
+			bucket = new ColumnarEventIterator(buckets.next(), type, startTime, endTime, descending);
+		}
+		positioned = true;
+		return true;
+	}
+
+	@Override
+	public Event current() {
+		if (!positioned) {
+			throw new IllegalStateException();
+		}
+		return bucket.current();
+	}
+
+	@Override
+	public void remove() {
+		if (!positioned) {
+			throw new IllegalStateException();
+		}
+		positioned = false;
+		bucket.remove();
+	}
+
+	@Override
+	public void close() {
+		positioned = false;
+		bucket = null;
+	}
+}
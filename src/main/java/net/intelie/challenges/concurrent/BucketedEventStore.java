@@ -0,0 +1,369 @@
+package net.intelie.challenges.concurrent;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.OptionalLong;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+import net.intelie.challenges.AggregatingEventStore;
+import net.intelie.challenges.Event;
+import net.intelie.challenges.EventIterator;
+import net.intelie.challenges.EventStore;
+import net.intelie.challenges.LimitedEventIterator;
+import net.intelie.challenges.Order;
+import net.intelie.challenges.Payload;
+
+/**
+ * 
+ * <p>
+ * An {@link EventStore} sharded by type and by fixed-width time buckets.
+ * 
+ * <p>
+ * <br>
+ * Each type owns a {@link ConcurrentSkipListMap} from bucket number
+ * (<i>timestamp</i> divided by the bucket width) to a {@link TimestampColumn}
+ * holding the timestamps of that bucket. Every bucket has its own lock, so
+ * writers of different types, or of the same type in different buckets, never
+ * contend. In-order writers of one type do share the newest bucket; a
+ * narrower bucket spreads late events over more locks.
+ * 
+ * <p>
+ * <br>
+ * A query seeks the first bucket overlapping its range in O(log buckets) and
+ * then reads bucket after bucket. {@link #removeAll(String)} detaches all the
+ * buckets of the type in O(1). As in {@link ColumnarEventStore}, only
+ * timestamps are stored and {@link Event} instances are created by the
+ * iterators.
+ *
+ */
+public class BucketedEventStore implements AggregatingEventStore {
+
+	static final int DEFAULT_CHUNK_CAPACITY = 256;
+
+	private final ConcurrentHashMap<String, ConcurrentSkipListMap<Long, TimestampColumn>> types = new ConcurrentHashMap<String, ConcurrentSkipListMap<Long, TimestampColumn>>();
+
+	private final long bucketWidth;
+	private final int chunkCapacity;
+
+	/**
+	 * 
+	 * @param bucketWidth the time span of each bucket, in the unit of the
+	 *                    timestamps.
+	 */
+	public BucketedEventStore(long bucketWidth) {
+		this(bucketWidth, DEFAULT_CHUNK_CAPACITY);
+	}
+
+	/**
+	 * 
+	 * @param bucketWidth   the time span of each bucket, in the unit of the
+	 *                      timestamps.
+	 * @param chunkCapacity the number of timestamps of each chunk of a bucket.
+	 */
+	public BucketedEventStore(long bucketWidth, int chunkCapacity) {
+		if (bucketWidth <= 0) {
+			throw new IllegalArgumentException("Bucket width must be positive");
+		} else if (chunkCapacity < 2) {
+			throw new IllegalArgumentException("Chunk capacity must be at least 2");
+		}
+		this.bucketWidth = bucketWidth;
+		this.chunkCapacity = chunkCapacity;
+	}
+
+	@Override
+	public void insert(Event event) {
+		if (event == null) {
+			throw new IllegalArgumentException("Event cannot be null");
+		} else if (event.type() == null || event.type().trim().isEmpty()) {
+			throw new IllegalArgumentException("Type cannot be null or empty");
+		}
+
+		bucket(buckets(event.type()), event.timestamp()).insert(event.timestamp(), event.payload());
+	}
+
+	/**
+	 * <p>
+	 * Groups the batch by type, sorts it and inserts each run of timestamps of
+	 * the same bucket under a single lock acquisition.
+	 */
+	@Override
+	public void insertAll(Collection<Event> events) {
+		Map<String, List<Event>> groups = new HashMap<String, List<Event>>();
+		for (Event event : events) {
+			if (event == null) {
+				throw new IllegalArgumentException("Event cannot be null");
+			} else if (event.type() == null || event.type().trim().isEmpty()) {
+				throw new IllegalArgumentException("Type cannot be null or empty");
+			}
+			groups.computeIfAbsent(event.type(), type -> new ArrayList<Event>()).add(event);
+		}
+
+		for (Map.Entry<String, List<Event>> group : groups.entrySet()) {
+			List<Event> list = group.getValue();
+			list.sort(Comparator.comparingLong(Event::timestamp));
+			long[] timestamps = new long[list.size()];
+			Payload[] payloads = TimestampColumn.payloads(list);
+			for (int i = 0; i < timestamps.length; i++) {
+				timestamps[i] = list.get(i).timestamp();
+			}
+
+			ConcurrentSkipListMap<Long, TimestampColumn> buckets = buckets(group.getKey());
+			int from = 0;
+			while (from < timestamps.length) {
+				long number = bucketOf(timestamps[from]);
+				int to = from + 1;
+				while (to < timestamps.length && bucketOf(timestamps[to]) == number) {
+					to++;
+				}
+				bucket(buckets, timestamps[from]).insertAll(Arrays.copyOfRange(timestamps, from, to),
+						payloads == null ? null : Arrays.copyOfRange(payloads, from, to));
+				from = to;
+			}
+		}
+	}
+
+	@Override
+	public void removeAll(String type) {
+		if (type == null || type.trim().isEmpty()) {
+			throw new IllegalArgumentException("Type cannot be null or empty");
+		}
+
+		types.remove(type);
+	}
+
+	/**
+	 * Returns an {@link EventIterator} positioned before the first {@link Event}
+	 * of the given {@param type} with <i>timestamp</i> in the range from
+	 * {@param startTime} (inclusive) to {@param endTime} (exclusive).
+	 */
+	@Override
+	public EventIterator query(String type, long startTime, long endTime) {
+		if (startTime > endTime) {
+			throw new IllegalArgumentException("startTime greater than endTime");
+		} else if (type == null || type.trim().isEmpty()) {
+			throw new IllegalArgumentException("Type cannot be null or empty");
+		}
+
+		ConcurrentSkipListMap<Long, TimestampColumn> buckets = types.get(type);
+		if (buckets == null || startTime == endTime) {
+			return EmptyEventIterator.INSTANCE;
+		}
+		return new BucketedEventIterator(overlapping(buckets, startTime, endTime), type, startTime, endTime);
+	}
+
+	/**
+	 * <p>
+	 * Buckets entirely inside the range are counted by their size; only the
+	 * first and the last overlapping buckets are searched. The cost depends on
+	 * the number of buckets in the range, not on the number of events.
+	 */
+	@Override
+	public long count(String type, long startTime, long endTime) {
+		ConcurrentSkipListMap<Long, TimestampColumn> buckets = aggregated(type, startTime, endTime);
+		if (buckets == null) {
+			return 0;
+		}
+
+		long first = bucketOf(startTime);
+		long last = bucketOf(endTime - 1);
+		long count = 0;
+		for (Map.Entry<Long, TimestampColumn> bucket : overlapping(buckets, startTime, endTime).entrySet()) {
+			long number = bucket.getKey();
+			if (number == first || number == last) {
+				count += bucket.getValue().count(startTime, endTime);
+			} else {
+				count += bucket.getValue().size();
+			}
+		}
+		return count;
+	}
+
+	@Override
+	public OptionalLong first(String type, long startTime, long endTime) {
+		ConcurrentSkipListMap<Long, TimestampColumn> buckets = aggregated(type, startTime, endTime);
+		if (buckets != null) {
+			for (TimestampColumn bucket : overlapping(buckets, startTime, endTime).values()) {
+				OptionalLong first = bucket.first(startTime, endTime);
+				if (first.isPresent()) {
+					return first;
+				}
+			}
+		}
+		return OptionalLong.empty();
+	}
+
+	@Override
+	public OptionalLong last(String type, long startTime, long endTime) {
+		ConcurrentSkipListMap<Long, TimestampColumn> buckets = aggregated(type, startTime, endTime);
+		if (buckets != null) {
+			for (TimestampColumn bucket : overlapping(buckets, startTime, endTime).descendingMap().values()) {
+				OptionalLong last = bucket.last(startTime, endTime);
+				if (last.isPresent()) {
+					return last;
+				}
+			}
+		}
+		return OptionalLong.empty();
+	}
+
+	/**
+	 * @return the buckets of the given {@param type}, or {@code null} when the
+	 *         range is certainly empty.
+	 */
+	private ConcurrentSkipListMap<Long, TimestampColumn> aggregated(String type, long startTime, long endTime) {
+		if (startTime > endTime) {
+			throw new IllegalArgumentException("startTime greater than endTime");
+		} else if (type == null || type.trim().isEmpty()) {
+			throw new IllegalArgumentException("Type cannot be null or empty");
+		}
+		return startTime == endTime ? null : types.get(type);
+	}
+
+	/**
+	 * <p>
+	 * A descending query walks the buckets backwards from the one holding
+	 * {@param endTime} and reads each of them backwards, so the newest events
+	 * of a range cost a seek plus what is returned.
+	 */
+	@Override
+	public EventIterator query(String type, long startTime, long endTime, Order order, int limit) {
+		if (startTime > endTime) {
+			throw new IllegalArgumentException("startTime greater than endTime");
+		} else if (type == null || type.trim().isEmpty()) {
+			throw new IllegalArgumentException("Type cannot be null or empty");
+		} else if (order == null) {
+			throw new IllegalArgumentException("Order cannot be null");
+		} else if (limit <= 0) {
+			throw new IllegalArgumentException("Limit must be positive");
+		}
+
+		ConcurrentSkipListMap<Long, TimestampColumn> buckets = types.get(type);
+		if (buckets == null || startTime == endTime) {
+			return EmptyEventIterator.INSTANCE;
+		}
+		return new LimitedEventIterator(new BucketedEventIterator(overlapping(buckets, startTime, endTime), type,
+				startTime, endTime, order == Order.DESCENDING), limit);
+	}
+
+	/**
+	 * <p>
+	 * Merges the types present when called.
+	 */
+	@Override
+	public EventIterator queryAll(long startTime, long endTime) {
+		return query(new HashSet<String>(types.keySet()), startTime, endTime);
+	}
+
+	public int length() {
+		int length = 0;
+		for (ConcurrentSkipListMap<Long, TimestampColumn> buckets : types.values()) {
+			for (TimestampColumn bucket : buckets.values()) {
+				length += bucket.size();
+			}
+		}
+		return length;
+	}
+
+	/**
+	 * @return the number of buckets of the given {@param type}.
+	 */
+	public int bucketCount(String type) {
+		ConcurrentSkipListMap<Long, TimestampColumn> buckets = types.get(type);
+		return buckets == null ? 0 : buckets.size();
+	}
+
+	Set<String> types() {
+		return types.keySet();
+	}
+
+	/**
+	 * Evicts the events of the given {@param type} older than {@param cutoff}:
+	 * buckets entirely before it are dropped at once, and the bucket holding it
+	 * is trimmed.
+	 */
+	void evictBefore(String type, long cutoff, Eviction eviction) {
+		ConcurrentSkipListMap<Long, TimestampColumn> buckets = types.get(type);
+		if (buckets == null) {
+			return;
+		}
+
+		ConcurrentNavigableMap<Long, TimestampColumn> aged = buckets.headMap(bucketOf(cutoff));
+		for (Map.Entry<Long, TimestampColumn> bucket : aged.entrySet()) {
+			drop(buckets, bucket, eviction);
+		}
+
+		TimestampColumn last = buckets.get(bucketOf(cutoff));
+		if (last != null) {
+			last.removeBefore(cutoff, eviction);
+		}
+	}
+
+	/**
+	 * Evicts the oldest events of the given {@param type} until at most
+	 * {@param maxCount} are left, dropping whole buckets first.
+	 */
+	void evictOldest(String type, long maxCount, Eviction eviction) {
+		ConcurrentSkipListMap<Long, TimestampColumn> buckets = types.get(type);
+		if (buckets == null) {
+			return;
+		}
+
+		long excess = -maxCount;
+		for (TimestampColumn bucket : buckets.values()) {
+			excess += bucket.size();
+		}
+
+		for (Map.Entry<Long, TimestampColumn> bucket : buckets.entrySet()) {
+			if (excess <= 0) {
+				break;
+			}
+			int size = bucket.getValue().size();
+			if (size <= excess) {
+				drop(buckets, bucket, eviction);
+				excess -= size;
+			} else {
+				bucket.getValue().removeFirst((int) excess, eviction);
+				excess = 0;
+			}
+		}
+	}
+
+	private void drop(ConcurrentSkipListMap<Long, TimestampColumn> buckets, Map.Entry<Long, TimestampColumn> bucket,
+			Eviction eviction) {
+		if (buckets.remove(bucket.getKey(), bucket.getValue())) {
+			TimestampColumn column = bucket.getValue();
+			eviction.add(column.size(), column.footprint());
+		}
+	}
+
+	/**
+	 * @return the buckets of the given type overlapping the range from
+	 *         {@param startTime} (inclusive) to {@param endTime} (exclusive), which
+	 *         must not be empty.
+	 */
+	ConcurrentNavigableMap<Long, TimestampColumn> overlapping(ConcurrentSkipListMap<Long, TimestampColumn> buckets,
+			long startTime, long endTime) {
+		return buckets.subMap(bucketOf(startTime), true, bucketOf(endTime - 1), true);
+	}
+
+	private ConcurrentSkipListMap<Long, TimestampColumn> buckets(String type) {
+		return types.computeIfAbsent(type, t -> new ConcurrentSkipListMap<Long, TimestampColumn>());
+	}
+
+	private TimestampColumn bucket(ConcurrentSkipListMap<Long, TimestampColumn> buckets, long timestamp) {
+		return buckets.computeIfAbsent(bucketOf(timestamp), number -> new TimestampColumn(chunkCapacity));
+	}
+
+	long bucketOf(long timestamp) {
+		return Math.floorDiv(timestamp, bucketWidth);
+	}
+}
@@ -0,0 +1,248 @@
+package net.intelie.challenges.concurrent;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import net.intelie.challenges.Event;
+import net.intelie.challenges.Payload;
+
+/**
+ *
+ * <p>
+ * An immutable, compressed run of sealed events of a {@link ColdTier},
+ * sorted by <i>timestamp</i>.
+ *
+ * <p>
+ * <br>
+ * Each event is the varint index of its type in the dictionary of the block,
+ * its <i>timestamp</i> as the zigzag varint of its delta-of-delta, the
+ * difference between its delta to the previous timestamp and the previous
+ * delta, and its {@link Payload} as a varint length and its encoding. Events
+ * arriving at a steady rate have a delta-of-delta of zero, which takes a
+ * single byte, so an event without payload usually takes three bytes.
+ *
+ * <p>
+ * <br>
+ * The first and last timestamps and the number of events of each type are
+ * kept apart, so a query skips the blocks out of its range or without its
+ * types, and counts the blocks within its range without decoding them. A
+ * block is read sequentially by a {@link Reader}; payloads are views over
+ * its bytes.
+ *
+ */
+final class ColdBlock {
+
+	final long minTime;
+	final long maxTime;
+	final int count;
+	final String[] types;
+	private final int[] typeCounts;
+	private final byte[] data;
+	private final ByteBuffer view;
+
+	private ColdBlock(long minTime, long maxTime, int count, String[] types, int[] typeCounts, byte[] data) {
+		this.minTime = minTime;
+		this.maxTime = maxTime;
+		this.count = count;
+		this.types = types;
+		this.typeCounts = typeCounts;
+		this.data = data;
+		this.view = ByteBuffer.wrap(data);
+	}
+
+	/**
+	 * @param events sorted by <i>timestamp</i>, at least one.
+	 */
+	static ColdBlock encode(List<Event> events) {
+		Map<String, Integer> dictionary = new HashMap<String, Integer>();
+		List<String> types = new ArrayList<String>();
+		int[] typeCounts = new int[4];
+		Encoder encoder = new Encoder(events.size() * 3);
+
+		long previous = events.get(0).timestamp();
+		long previousDelta = 0L;
+		for (Event event : events) {
+			Integer index = dictionary.get(event.type());
+			if (index == null) {
+				index = types.size();
+				dictionary.put(event.type(), index);
+				types.add(event.type());
+				if (index == typeCounts.length) {
+					typeCounts = Arrays.copyOf(typeCounts, index * 2);
+				}
+			}
+			typeCounts[index]++;
+			encoder.varint(index);
+
+			// wrapping arithmetic, which decoding undoes exactly.
+			long delta = event.timestamp() - previous;
+			long dod = delta - previousDelta;
+			encoder.varint((dod << 1) ^ (dod >> 63));
+			previous = event.timestamp();
+			previousDelta = delta;
+
+			Payload payload = event.payload();
+			encoder.varint(payload.encodedSize());
+			encoder.payload(payload);
+		}
+
+		return new ColdBlock(events.get(0).timestamp(), previous, events.size(), types.toArray(new String[types.size()]),
+				Arrays.copyOf(typeCounts, types.size()), encoder.toByteArray());
+	}
+
+	/**
+	 * @return the events of this block, in order.
+	 */
+	List<Event> decode() {
+		List<Event> events = new ArrayList<Event>(count);
+		Reader reader = reader();
+		while (reader.next()) {
+			events.add(reader.event());
+		}
+		return events;
+	}
+
+	Reader reader() {
+		return new Reader();
+	}
+
+	/**
+	 * @return for each type of the dictionary, whether it is one of the given
+	 *         {@param wanted} types, or {@code null} if none is.
+	 */
+	boolean[] matches(Set<String> wanted) {
+		boolean[] matches = new boolean[types.length];
+		boolean any = false;
+		for (int i = 0; i < types.length; i++) {
+			matches[i] = wanted == null || wanted.contains(types[i]);
+			any |= matches[i];
+		}
+		return any ? matches : null;
+	}
+
+	/**
+	 * @return the number of events of the given {@param type}.
+	 */
+	int count(String type) {
+		for (int i = 0; i < types.length; i++) {
+			if (types[i].equals(type)) {
+				return typeCounts[i];
+			}
+		}
+		return 0;
+	}
+
+	/**
+	 * @return an estimate of the heap taken by this block.
+	 */
+	long footprint() {
+		// the block, its arrays and the buffer viewing the data; type names are
+		// shared with the events they came from.
+		return 48 + 16 + data.length + 16 + 4L * types.length + 16 + 4L * typeCounts.length + 48;
+	}
+
+	/**
+	 * Decodes a block one event at a time.
+	 */
+	final class Reader {
+		private int position;
+		private int index = -1;
+		private long timestamp;
+		private long delta;
+		private int typeIndex;
+		private int payloadOffset;
+		private int payloadLength;
+
+		boolean next() {
+			if (index + 1 == count) {
+				return false;
+			}
+			typeIndex = (int) varint();
+			long zigzag = varint();
+			delta += (zigzag >>> 1) ^ -(zigzag & 1);
+			timestamp = ++index == 0 ? minTime : timestamp + delta;
+			payloadLength = (int) varint();
+			payloadOffset = position;
+			position += payloadLength;
+			return true;
+		}
+
+		long timestamp() {
+			return timestamp;
+		}
+
+		int typeIndex() {
+			return typeIndex;
+		}
+
+		String type() {
+			return types[typeIndex];
+		}
+
+		Payload payload() {
+			return Payload.wrap(view, payloadOffset, payloadLength);
+		}
+
+		Event event() {
+			return new Event(types[typeIndex], timestamp, payload());
+		}
+
+		private long varint() {
+			long value = 0L;
+			for (int shift = 0;; shift += 7) {
+				byte b = data[position++];
+				value |= (long) (b & 0x7F) << shift;
+				if (b >= 0) {
+					return value;
+				}
+			}
+		}
+	}
+
+	private static final class Encoder {
+		private byte[] bytes;
+		private int size;
+
+		Encoder(int capacity) {
+			this.bytes = new byte[Math.max(capacity, 16)];
+		}
+
+		void varint(long value) {
+			while ((value & ~0x7FL) != 0) {
+				put((byte) ((value & 0x7F) | 0x80));
+				value >>>= 7;
+			}
+			put((byte) value);
+		}
+
+		void payload(Payload payload) {
+			int length = payload.encodedSize();
+			if (length > 0) {
+				ensure(length);
+				ByteBuffer target = ByteBuffer.wrap(bytes, size, length);
+				payload.writeTo(target);
+				size += length;
+			}
+		}
+
+		byte[] toByteArray() {
+			return Arrays.copyOf(bytes, size);
+		}
+
+		private void put(byte b) {
+			ensure(1);
+			bytes[size++] = b;
+		}
+
+		private void ensure(int more) {
+			if (size + more > bytes.length) {
+				bytes = Arrays.copyOf(bytes, Math.max(bytes.length * 2, size + more));
+			}
+		}
+	}
+}
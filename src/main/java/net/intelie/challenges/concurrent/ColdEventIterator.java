@@ -0,0 +1,164 @@
+package net.intelie.challenges.concurrent;
+
+import java.util.Set;
+
+import net.intelie.challenges.Event;
+import net.intelie.challenges.EventFilter;
+import net.intelie.challenges.EventIterator;
+import net.intelie.challenges.Payload;
+
+/**
+ *
+ * <p>
+ * {@link EventIterator} over the blocks of a {@link ColdTier}.
+ *
+ * <p>
+ * <br>
+ * Blocks out of the range, or without any of the queried types, are skipped
+ * by their first and last timestamps and their dictionary, and the others
+ * are decoded one event at a time. The {@link Payload} of an event is a view
+ * over its block.
+ *
+ * <p>
+ * <br>
+ * The iterator reads the blocks of the {@link ColdTier.State} it was given,
+ * which never change, so it sees the tier as of the version of that state
+ * whatever is sealed or removed meanwhile.
+ *
+ */
+class ColdEventIterator implements EventIterator {
+
+	private final ColdTier tier;
+	private final ColdBlock[] blocks;
+	private final Set<String> types;
+	private final EventFilter predicate;
+	private final long startTime;
+	private final long endTime;
+
+	private int block;
+	private ColdBlock.Reader reader;
+	private boolean[] matches;
+
+	private boolean finished;
+	private boolean positioned;
+	private Event event;
+
+	/**
+	 * @param state     the state of the {@param tier} to read.
+	 * @param types     the types of the events to return, or {@code null} for
+	 *                  all of them.
+	 * @param endTime   inclusive, as in {@link ConcurrentEventCursor}.
+	 * @param predicate the condition the payloads of the events must meet, or
+	 *                  {@code null} for none.
+	 */
+	ColdEventIterator(ColdTier tier, ColdTier.State state, Set<String> types, long startTime, long endTime,
+			EventFilter predicate) {
+		this.tier = tier;
+		this.blocks = state.blocks;
+		this.types = types;
+		this.predicate = predicate;
+		this.startTime = startTime;
+		this.endTime = endTime;
+		this.block = Math.max(ColdTier.floor(blocks, startTime), 0);
+		// blocks ending at the timestamp may come before.
+		while (block > 0 && blocks[block - 1].maxTime >= startTime) {
+			block--;
+		}
+	}
+
+	@Override
+	public boolean moveNext() {
+		positioned = false;
+		event = null;
+		if (finished) {
+			return false;
+		}
+		positioned = next();
+		return positioned;
+	}
+
+	/**
+	 * Moves to the next matching event, and finishes the iterator when there
+	 * is none.
+	 *
+	 * @return false if finished.
+	 */
+	private boolean next() {
+		while (true) {
+			if (reader == null) {
+				for (; block < blocks.length && blocks[block].minTime <= endTime; block++) {
+					ColdBlock candidate = blocks[block];
+					if (candidate.maxTime >= startTime && (matches = candidate.matches(types)) != null) {
+						break;
+					}
+				}
+				if (block == blocks.length || blocks[block].minTime > endTime) {
+					return finish();
+				}
+				reader = blocks[block].reader();
+			}
+
+			while (reader.next()) {
+				long timestamp = reader.timestamp();
+				if (timestamp > endTime) {
+					return finish();
+				}
+				if (timestamp >= startTime && matches[reader.typeIndex()]
+						&& (predicate == null || predicate.test(reader.payload()))) {
+					return true;
+				}
+			}
+			reader = null;
+			block++;
+		}
+	}
+
+	private boolean finish() {
+		finished = true;
+		reader = null;
+		return false;
+	}
+
+	@Override
+	public Event current() {
+		if (!positioned) {
+			throw new IllegalStateException();
+		}
+		if (event == null) {
+			event = reader.event();
+		}
+		return event;
+	}
+
+	@Override
+	public Payload payload() {
+		if (!positioned) {
+			throw new IllegalStateException();
+		}
+		return reader.payload();
+	}
+
+	/**
+	 * <p>
+	 * Removes the current event from its block, which is re-encoded. The
+	 * iterator keeps reading the blocks it was given.
+	 */
+	@Override
+	public void remove() {
+		if (!positioned) {
+			throw new IllegalStateException();
+		}
+		Event removed = current();
+		positioned = false;
+		event = null;
+		tier.remove(removed);
+	}
+
+	@Override
+	public void close() {
+		finished = true;
+		positioned = false;
+		event = null;
+		reader = null;
+	}
+}
@@ -0,0 +1,96 @@
+package net.intelie.challenges.concurrent;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+/**
+ * 
+ * <p>
+ * Seals the events of a {@link ConcurrentSortedEventStore} once they are
+ * older than a maximum age, see {@link ConcurrentSortedEventStore#seal(long)}.
+ * 
+ * <p>
+ * <br>
+ * Runs happen on a single daemon thread once {@link #start(long, TimeUnit)}
+ * is called, or on demand through {@link #run()}.
+ *
+ */
+public class ColdSealer implements Runnable, AutoCloseable {
+
+	private final ConcurrentSortedEventStore store;
+	private final long maxHotAge;
+	private final LongSupplier clock;
+
+	private final LongAdder runs = new LongAdder();
+	private final LongAdder sealedEvents = new LongAdder();
+
+	private ScheduledExecutorService scheduler;
+
+	/**
+	 * This constructor measures ages against {@link System#currentTimeMillis()}.
+	 */
+	public ColdSealer(ConcurrentSortedEventStore store, long maxHotAge) {
+		this(store, maxHotAge, System::currentTimeMillis);
+	}
+
+	/**
+	 * 
+	 * @param maxHotAge how old an event gets before being sealed, in the unit of
+	 *                  the event timestamps.
+	 * @param clock     gives the current time, in the unit of the event
+	 *                  timestamps.
+	 */
+	public ColdSealer(ConcurrentSortedEventStore store, long maxHotAge, LongSupplier clock) {
+		if (store == null || clock == null) {
+			throw new IllegalArgumentException("Store and clock cannot be null");
+		} else if (maxHotAge < 0) {
+			throw new IllegalArgumentException("Max hot age cannot be negative");
+		}
+		this.store = store;
+		this.maxHotAge = maxHotAge;
+		this.clock = clock;
+	}
+
+	/**
+	 * Starts running this sealer periodically.
+	 */
+	public synchronized void start(long period, TimeUnit unit) {
+		if (scheduler != null) {
+			throw new IllegalStateException("Already started");
+		}
+		scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+			Thread thread = new Thread(runnable, "cold-sealer");
+			thread.setDaemon(true);
+			return thread;
+		});
+		scheduler.scheduleWithFixedDelay(this, period, period, unit);
+	}
+
+	/**
+	 * Seals once, in the calling thread.
+	 */
+	@Override
+	public void run() {
+		sealedEvents.add(store.seal(clock.getAsLong() - maxHotAge));
+		runs.increment();
+	}
+
+	@Override
+	public synchronized void close() {
+		if (scheduler != null) {
+			scheduler.shutdownNow();
+			scheduler = null;
+		}
+	}
+
+	public long runs() {
+		return runs.sum();
+	}
+
+	public long sealedEvents() {
+		return sealedEvents.sum();
+	}
+}
@@ -0,0 +1,405 @@
+package net.intelie.challenges.concurrent;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.function.LongPredicate;
+
+import net.intelie.challenges.Event;
+
+/**
+ *
+ * <p>
+ * The sealed events of a {@link ConcurrentSortedEventStore}, held in
+ * {@link ColdBlock} instead of chain nodes.
+ *
+ * <p>
+ * <br>
+ * Blocks are sorted by <i>timestamp</i> and do not overlap: the last
+ * timestamp of a block is never greater than the first of the next one.
+ * Sealed events are merged into the blocks holding their timestamps, so late
+ * events re-encode only the blocks they fall into, and the last block is
+ * refilled before a new one is started.
+ *
+ * <p>
+ * <br>
+ * The tier is copy-on-write: every change publishes a new {@link State} with
+ * the version of the change, see {@link Versions}, and keeps the previous one
+ * for the readers of older versions, so readers take no lock and always see
+ * the blocks of the version they pinned. Changes are serialized on the tier.
+ *
+ */
+final class ColdTier {
+
+	/**
+	 * The blocks of the tier as of a version, and the reads over them.
+	 */
+	static final class State {
+		final ColdBlock[] blocks;
+		final long version;
+		final long count;
+		final long bytes;
+		/**
+		 * The state before this one, until no reader may see it.
+		 */
+		volatile State previous;
+
+		State(ColdBlock[] blocks, long version, State previous) {
+			this.blocks = blocks;
+			this.version = version;
+			this.previous = previous;
+			long count = 0L;
+			long bytes = 0L;
+			for (ColdBlock block : blocks) {
+				count += block.count;
+				bytes += block.footprint();
+			}
+			this.count = count;
+			this.bytes = bytes;
+		}
+
+		boolean isEmpty() {
+			return blocks.length == 0;
+		}
+
+		/**
+		 * @return the number of events of the given {@param type}, without
+		 *         decoding any block.
+		 */
+		long count(String type) {
+			long count = 0L;
+			for (ColdBlock block : blocks) {
+				count += block.count(type);
+			}
+			return count;
+		}
+
+		/**
+		 * Counts the events of the given {@param type} from {@param startTime}
+		 * (inclusive) to {@param endTime} (exclusive). Blocks entirely within the
+		 * range are counted without being decoded.
+		 */
+		long count(String type, long startTime, long endTime) {
+			long count = 0L;
+			for (ColdBlock block : blocks) {
+				if (block.maxTime < startTime || block.count(type) == 0) {
+					continue;
+				} else if (block.minTime >= endTime) {
+					break;
+				} else if (block.minTime >= startTime && block.maxTime < endTime) {
+					count += block.count(type);
+				} else {
+					ColdBlock.Reader reader = block.reader();
+					while (reader.next()) {
+						if (reader.timestamp() >= startTime && reader.timestamp() < endTime
+								&& reader.type().equals(type)) {
+							count++;
+						}
+					}
+				}
+			}
+			return count;
+		}
+
+		/**
+		 * Hands the <i>timestamp</i> of each event of the given {@param type} from
+		 * {@param startTime} (inclusive) to {@param endTime} (exclusive) to
+		 * {@param visitor}, in order, until it returns false.
+		 */
+		void forEach(String type, long startTime, long endTime, LongPredicate visitor) {
+			for (ColdBlock block : blocks) {
+				if (block.maxTime < startTime || block.count(type) == 0) {
+					continue;
+				} else if (block.minTime >= endTime) {
+					return;
+				}
+				ColdBlock.Reader reader = block.reader();
+				while (reader.next()) {
+					if (reader.timestamp() >= endTime) {
+						return;
+					}
+					if (reader.timestamp() >= startTime && reader.type().equals(type)
+							&& !visitor.test(reader.timestamp())) {
+						return;
+					}
+				}
+			}
+		}
+
+		/**
+		 * @return the newest {@param limit} events of the given {@param type} from
+		 *         {@param startTime} (inclusive) to {@param endTime} (exclusive),
+		 *         newest first. Blocks are decoded from the last one backwards.
+		 */
+		List<Event> newest(String type, long startTime, long endTime, int limit) {
+			List<Event> newest = new ArrayList<Event>();
+			for (int i = blocks.length - 1; i >= 0 && newest.size() < limit; i--) {
+				ColdBlock block = blocks[i];
+				if (block.minTime >= endTime || block.count(type) == 0) {
+					continue;
+				} else if (block.maxTime < startTime) {
+					break;
+				}
+				List<Event> matching = new ArrayList<Event>();
+				ColdBlock.Reader reader = block.reader();
+				while (reader.next() && reader.timestamp() < endTime) {
+					if (reader.timestamp() >= startTime && reader.type().equals(type)) {
+						matching.add(reader.event());
+					}
+				}
+				for (int j = matching.size() - 1; j >= 0 && newest.size() < limit; j--) {
+					newest.add(matching.get(j));
+				}
+			}
+			return newest;
+		}
+	}
+
+	private final int blockSize;
+	private final Versions versions;
+	private volatile State state = new State(new ColdBlock[0], 0L, null);
+
+	ColdTier(int blockSize, Versions versions) {
+		this.blockSize = blockSize;
+		this.versions = versions;
+	}
+
+	/**
+	 * @return the last state.
+	 */
+	State state() {
+		return state;
+	}
+
+	/**
+	 * @return the state as of the given {@param version}.
+	 */
+	State state(long version) {
+		State state = this.state;
+		while (state.version > version) {
+			state = state.previous;
+		}
+		return state;
+	}
+
+	boolean isEmpty() {
+		return state.isEmpty();
+	}
+
+	/**
+	 * Drops the states no reader may see anymore: those before the last one
+	 * as of the {@param oldest} version.
+	 */
+	synchronized void prune(long oldest) {
+		State state = this.state;
+		while (state.version > oldest) {
+			state = state.previous;
+		}
+		state.previous = null;
+	}
+
+	/**
+	 * Merges the given events into the blocks.
+	 *
+	 * @param batch   sorted by <i>timestamp</i>, at least one.
+	 * @param version the version in which they were removed from the chain,
+	 *                taken while holding the tier.
+	 */
+	synchronized void seal(List<Event> batch, long version) {
+		ColdBlock[] blocks = state.blocks;
+		long first = batch.get(0).timestamp();
+		long last = batch.get(batch.size() - 1).timestamp();
+
+		// the blocks whose first timestamp is within the batch, and the one before.
+		int from = Math.max(floor(blocks, first), 0);
+		int to = Math.max(floor(blocks, last), 0);
+		if (from == blocks.length - 1 && blocks[from].maxTime <= first && blocks[from].count >= blockSize) {
+			// appends after a full block, which is kept as it is.
+			from = to = blocks.length;
+		}
+
+		List<Event> merged = new ArrayList<Event>();
+		if (from < blocks.length) {
+			List<Event> sealed = new ArrayList<Event>();
+			for (int i = from; i <= to; i++) {
+				sealed.addAll(blocks[i].decode());
+			}
+			int i = 0;
+			int j = 0;
+			while (i < sealed.size() || j < batch.size()) {
+				// sealed events come first among equal timestamps.
+				if (j == batch.size()
+						|| (i < sealed.size() && sealed.get(i).timestamp() <= batch.get(j).timestamp())) {
+					merged.add(sealed.get(i++));
+				} else {
+					merged.add(batch.get(j++));
+				}
+			}
+		} else {
+			merged.addAll(batch);
+			to = from - 1;
+		}
+
+		List<ColdBlock> replacement = new ArrayList<ColdBlock>();
+		for (int i = 0; i < merged.size(); i += blockSize) {
+			replacement.add(ColdBlock.encode(merged.subList(i, Math.min(i + blockSize, merged.size()))));
+		}
+		state = new State(splice(blocks, from, to, replacement), version, state);
+		prune(versions.oldest());
+	}
+
+	/**
+	 * Removes an event equal to the given {@param event}: of the same type,
+	 * <i>timestamp</i> and payload.
+	 *
+	 * @return false if there was none.
+	 */
+	synchronized boolean remove(Event event) {
+		ColdBlock[] blocks = state.blocks;
+		long timestamp = event.timestamp();
+		// the blocks before the last one starting before the timestamp end before it.
+		int from = timestamp == Long.MIN_VALUE ? 0 : Math.max(floor(blocks, timestamp - 1), 0);
+		for (int i = from; i < blocks.length && blocks[i].minTime <= timestamp; i++) {
+			if (blocks[i].maxTime < timestamp || blocks[i].count(event.type()) == 0) {
+				continue;
+			}
+			List<Event> events = blocks[i].decode();
+			for (int j = 0; j < events.size(); j++) {
+				Event candidate = events.get(j);
+				if (candidate.timestamp() == timestamp && candidate.type().equals(event.type())
+						&& candidate.payload().equals(event.payload())) {
+					events.remove(j);
+					List<ColdBlock> replacement = events.isEmpty() ? Collections.<ColdBlock>emptyList()
+							: Collections.singletonList(ColdBlock.encode(events));
+					long version = versions.begin();
+					state = new State(splice(blocks, i, i, replacement), version, state);
+					versions.commit(version);
+					prune(versions.oldest());
+					return true;
+				}
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Removes every event of the given {@param type}, re-encoding only the
+	 * blocks holding any.
+	 *
+	 * @param version the version of the removal, taken while holding the tier.
+	 */
+	synchronized void removeAll(String type, long version) {
+		ColdBlock[] blocks = state.blocks;
+		List<ColdBlock> kept = new ArrayList<ColdBlock>(blocks.length);
+		boolean changed = false;
+		for (ColdBlock block : blocks) {
+			if (block.count(type) == 0) {
+				kept.add(block);
+				continue;
+			}
+			changed = true;
+			List<Event> events = block.decode();
+			events.removeIf(event -> event.type().equals(type));
+			if (!events.isEmpty()) {
+				kept.add(ColdBlock.encode(events));
+			}
+		}
+		if (changed) {
+			state = new State(kept.toArray(new ColdBlock[kept.size()]), version, state);
+			prune(versions.oldest());
+		}
+	}
+
+	/**
+	 * Evicts the oldest events of the given {@param type}, up to
+	 * {@param lastTime} (inclusive) and at most {@param limit} of them. Blocks
+	 * holding only evicted events are dropped without being decoded, and only
+	 * the blocks keeping some of their events are re-encoded.
+	 *
+	 * @param version the version of the eviction, taken while holding the tier.
+	 * @return the number of events evicted.
+	 */
+	synchronized long evict(String type, long lastTime, long limit, long version, Eviction eviction) {
+		ColdBlock[] blocks = state.blocks;
+		List<ColdBlock> kept = new ArrayList<ColdBlock>(blocks.length);
+		long evicted = 0L;
+		for (ColdBlock block : blocks) {
+			int count = block.count(type);
+			if (count == 0 || evicted == limit || block.minTime > lastTime) {
+				kept.add(block);
+				continue;
+			} else if (count == block.count && block.maxTime <= lastTime && count <= limit - evicted) {
+				evicted += count;
+				eviction.add(count, block.footprint());
+				continue;
+			}
+			List<Event> events = block.decode();
+			int removed = 0;
+			for (Iterator<Event> it = events.iterator(); it.hasNext() && evicted + removed < limit;) {
+				Event event = it.next();
+				if (event.timestamp() > lastTime) {
+					break;
+				} else if (event.type().equals(type)) {
+					it.remove();
+					removed++;
+				}
+			}
+			evicted += removed;
+			if (events.isEmpty()) {
+				eviction.add(removed, block.footprint());
+			} else {
+				ColdBlock encoded = ColdBlock.encode(events);
+				kept.add(encoded);
+				eviction.add(removed, block.footprint() - encoded.footprint());
+			}
+		}
+		if (evicted > 0) {
+			state = new State(kept.toArray(new ColdBlock[kept.size()]), version, state);
+			prune(versions.oldest());
+		}
+		return evicted;
+	}
+
+	/**
+	 * @return the number of sealed events.
+	 */
+	long count() {
+		return state.count;
+	}
+
+	/**
+	 * @return an estimate of the heap taken by the sealed events.
+	 */
+	long bytes() {
+		return state.bytes;
+	}
+
+	/**
+	 * @return the index of the last block whose first <i>timestamp</i> is not
+	 *         greater than the given {@param timestamp}, or -1.
+	 */
+	static int floor(ColdBlock[] blocks, long timestamp) {
+		int low = 0;
+		int high = blocks.length - 1;
+		while (low <= high) {
+			int mid = (low + high) >>> 1;
+			if (blocks[mid].minTime <= timestamp) {
+				low = mid + 1;
+			} else {
+				high = mid - 1;
+			}
+		}
+		return low - 1;
+	}
+
+	private static ColdBlock[] splice(ColdBlock[] blocks, int from, int to, Collection<ColdBlock> replacement) {
+		List<ColdBlock> spliced = new ArrayList<ColdBlock>(blocks.length + replacement.size());
+		spliced.addAll(Arrays.asList(blocks).subList(0, from));
+		spliced.addAll(replacement);
+		spliced.addAll(Arrays.asList(blocks).subList(to + 1, blocks.length));
+		return spliced.toArray(new ColdBlock[spliced.size()]);
+	}
+}
@@ -0,0 +1,144 @@
+package net.intelie.challenges.concurrent;
+
+import net.intelie.challenges.Event;
+import net.intelie.challenges.EventIterator;
+import net.intelie.challenges.Payload;
+
+/**
+ * 
+ * <p>
+ * {@link EventIterator} over a {@link TimestampColumn} of a
+ * {@link ColumnarEventStore}.
+ * 
+ * <p>
+ * <br>
+ * Timestamps are copied from the column in batches of {@value #BATCH_SIZE}, so
+ * the column lock is taken once per batch, and the memory of an open iterator
+ * is fixed. The {@link Event} returned by {@link #current()} is created on
+ * demand from the current timestamp and its {@link Payload}, which is shared
+ * with the column rather than copied.
+ * 
+ * <p>
+ * <br>
+ * Iteration is weakly consistent: each batch is a consistent read of the
+ * column, and the next batch resumes after the last timestamp returned and
+ * the number of equal timestamps already seen. A descending iterator reads
+ * the column backwards from the end of its range in the same way.
+ *
+ */
+class ColumnarEventIterator implements EventIterator {
+
+	static final int BATCH_SIZE = 64;
+
+	private final TimestampColumn column;
+	private final String type;
+	private final long startTime;
+	private final long endTime;
+	private final boolean descending;
+
+	private final long[] batch = new long[BATCH_SIZE];
+	private final Payload[] payloads = new Payload[BATCH_SIZE];
+	private int batchSize;
+	private int batchPos;
+
+	/**
+	 * The last timestamp returned, and how many times it was returned.
+	 */
+	private long fromTime;
+	private int skip;
+
+	private boolean positioned;
+	private long timestamp;
+	private Payload payload;
+	private Event event;
+
+	ColumnarEventIterator(TimestampColumn column, String type, long startTime, long endTime) {
+		this(column, type, startTime, endTime, false);
+	}
+
+	/**
+	 * @param descending if the timestamps are returned newest first, in which
+	 *                   case the range must not be empty.
+	 */
+	ColumnarEventIterator(TimestampColumn column, String type, long startTime, long endTime, boolean descending) {
+		this.column = column;
+		this.type = type;
+		this.startTime = startTime;
+		this.endTime = endTime;
+		this.descending = descending;
+		this.fromTime = descending ? endTime - 1 : startTime;
+	}
+
+	@Override
+	public boolean moveNext() {
+		if (batchPos == batchSize) {
+			batchSize = descending ? column.readBackward(fromTime, skip, startTime, batch, payloads)
+					: column.read(fromTime, skip, endTime, batch, payloads);
+			batchPos = 0;
+			if (batchSize == 0) {
+				positioned = false;
+				event = null;
+				return false;
+			}
+		}
+
+		payload = payloads[batchPos];
+		payloads[batchPos] = null;
+		timestamp = batch[batchPos++];
+		event = null;
+		positioned = true;
+
+		// remembers where the next batch starts.
+		if (timestamp == fromTime) {
+			++skip;
+		} else {
+			fromTime = timestamp;
+			skip = 1;
+		}
+		return true;
+	}
+
+	@Override
+	public Event current() {
+		if (!positioned) {
+			throw new IllegalStateException();
+		}
+		if (event == null) {
+			event = new Event(type, timestamp, payload);
+		}
+		return event;
+	}
+
+	@Override
+	public Payload payload() {
+		if (!positioned) {
+			throw new IllegalStateException();
+		}
+		return payload;
+	}
+
+	/**
+	 * <p>
+	 * Removes the current timestamp from the column.
+	 */
+	@Override
+	public void remove() {
+		if (!positioned) {
+			throw new IllegalStateException();
+		}
+		positioned = false;
+		event = null;
+
+		if (descending ? column.removeFromEnd(timestamp, skip - 1) : column.remove(timestamp, skip - 1)) {
+			--skip;
+		}
+	}
+
+	@Override
+	public void close() {
+		positioned = false;
+		event = null;
+		payload = null;
+		batchPos = batchSize;
+	}
+}
@@ -0,0 +1,222 @@
+package net.intelie.challenges.concurrent;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.OptionalLong;
+import java.util.concurrent.ConcurrentHashMap;
+
+import net.intelie.challenges.AggregatingEventStore;
+import net.intelie.challenges.Event;
+import net.intelie.challenges.EventIterator;
+import net.intelie.challenges.EventStore;
+import net.intelie.challenges.LimitedEventIterator;
+import net.intelie.challenges.Order;
+import net.intelie.challenges.Payload;
+
+/**
+ * 
+ * <p>
+ * A memory-compact {@link EventStore} which keeps, for each type, only a
+ * sorted column of primitive <i>timestamps</i>.
+ * 
+ * <p>
+ * <br>
+ * {@link ConcurrentSortedEventStore} spends an {@link Event}, a chain node and
+ * a {@link java.util.concurrent.locks.ReentrantLock} on every event, around 100
+ * bytes for a single {@code long}. Here the type is stored once per
+ * {@link TimestampColumn} and each event costs the 8 bytes of its timestamp in
+ * a {@code long[]} chunk. {@link Event} instances are only created when an
+ * iterator's {@code current()} is called, so the events returned by a query
+ * are equal but not the same instances that were inserted.
+ * 
+ * <p>
+ * <br>
+ * As in {@link PartitionedEventStore}, a query only reads the column of its
+ * type and {@link #removeAll(String)} detaches the column in O(1). Writers of
+ * different types never contend; writers of the same type serialize on the
+ * column lock.
+ *
+ */
+public class ColumnarEventStore implements AggregatingEventStore {
+
+	private final ConcurrentHashMap<String, TimestampColumn> columns = new ConcurrentHashMap<String, TimestampColumn>();
+
+	private final int chunkCapacity;
+
+	public ColumnarEventStore() {
+		this(TimestampColumn.DEFAULT_CHUNK_CAPACITY);
+	}
+
+	/**
+	 * 
+	 * @param chunkCapacity the number of timestamps of each chunk. Bigger chunks
+	 *                      waste less memory in headers and make appends cheaper,
+	 *                      smaller chunks make out-of-order inserts cheaper.
+	 */
+	public ColumnarEventStore(int chunkCapacity) {
+		if (chunkCapacity < 2) {
+			throw new IllegalArgumentException("Chunk capacity must be at least 2");
+		}
+		this.chunkCapacity = chunkCapacity;
+	}
+
+	@Override
+	public void insert(Event event) {
+		if (event == null) {
+			throw new IllegalArgumentException("Event cannot be null");
+		} else if (event.type() == null || event.type().trim().isEmpty()) {
+			throw new IllegalArgumentException("Type cannot be null or empty");
+		}
+
+		columns.computeIfAbsent(event.type(), type -> new TimestampColumn(chunkCapacity)).insert(event.timestamp(),
+				event.payload());
+	}
+
+	/**
+	 * <p>
+	 * Groups the batch by type, sorts the timestamps of each group and merges
+	 * them into the column under a single lock acquisition.
+	 */
+	@Override
+	public void insertAll(Collection<Event> events) {
+		Map<String, List<Event>> groups = new HashMap<String, List<Event>>();
+		for (Event event : events) {
+			if (event == null) {
+				throw new IllegalArgumentException("Event cannot be null");
+			} else if (event.type() == null || event.type().trim().isEmpty()) {
+				throw new IllegalArgumentException("Type cannot be null or empty");
+			}
+			groups.computeIfAbsent(event.type(), type -> new ArrayList<Event>()).add(event);
+		}
+
+		for (Map.Entry<String, List<Event>> group : groups.entrySet()) {
+			List<Event> list = group.getValue();
+			list.sort(Comparator.comparingLong(Event::timestamp));
+			long[] timestamps = new long[list.size()];
+			Payload[] payloads = TimestampColumn.payloads(list);
+			for (int i = 0; i < timestamps.length; i++) {
+				timestamps[i] = list.get(i).timestamp();
+			}
+			columns.computeIfAbsent(group.getKey(), type -> new TimestampColumn(chunkCapacity)).insertAll(timestamps, payloads);
+		}
+	}
+
+	@Override
+	public void removeAll(String type) {
+		if (type == null || type.trim().isEmpty()) {
+			throw new IllegalArgumentException("Type cannot be null or empty");
+		}
+
+		columns.remove(type);
+	}
+
+	/**
+	 * Returns an {@link EventIterator} positioned before the first {@link Event}
+	 * of the given {@param type} with <i>timestamp</i> in the range from
+	 * {@param startTime} (inclusive) to {@param endTime} (exclusive).
+	 */
+	@Override
+	public EventIterator query(String type, long startTime, long endTime) {
+		if (startTime > endTime) {
+			throw new IllegalArgumentException("startTime greater than endTime");
+		} else if (type == null || type.trim().isEmpty()) {
+			throw new IllegalArgumentException("Type cannot be null or empty");
+		}
+
+		TimestampColumn column = columns.get(type);
+		if (column == null) {
+			return EmptyEventIterator.INSTANCE;
+		}
+		return new ColumnarEventIterator(column, type, startTime, endTime);
+	}
+
+	/**
+	 * <p>
+	 * Answered by two binary searches over the column of the type.
+	 */
+	@Override
+	public long count(String type, long startTime, long endTime) {
+		TimestampColumn column = aggregated(type, startTime, endTime);
+		return column == null ? 0 : column.count(startTime, endTime);
+	}
+
+	@Override
+	public OptionalLong first(String type, long startTime, long endTime) {
+		TimestampColumn column = aggregated(type, startTime, endTime);
+		return column == null ? OptionalLong.empty() : column.first(startTime, endTime);
+	}
+
+	@Override
+	public OptionalLong last(String type, long startTime, long endTime) {
+		TimestampColumn column = aggregated(type, startTime, endTime);
+		return column == null ? OptionalLong.empty() : column.last(startTime, endTime);
+	}
+
+	private TimestampColumn aggregated(String type, long startTime, long endTime) {
+		if (startTime > endTime) {
+			throw new IllegalArgumentException("startTime greater than endTime");
+		} else if (type == null || type.trim().isEmpty()) {
+			throw new IllegalArgumentException("Type cannot be null or empty");
+		}
+		return columns.get(type);
+	}
+
+	/**
+	 * <p>
+	 * A descending query reads the column backwards from {@param endTime}, so
+	 * the newest events of a range cost a binary search plus what is returned.
+	 */
+	@Override
+	public EventIterator query(String type, long startTime, long endTime, Order order, int limit) {
+		if (startTime > endTime) {
+			throw new IllegalArgumentException("startTime greater than endTime");
+		} else if (type == null || type.trim().isEmpty()) {
+			throw new IllegalArgumentException("Type cannot be null or empty");
+		} else if (order == null) {
+			throw new IllegalArgumentException("Order cannot be null");
+		} else if (limit <= 0) {
+			throw new IllegalArgumentException("Limit must be positive");
+		}
+
+		TimestampColumn column = columns.get(type);
+		if (column == null || startTime == endTime) {
+			return EmptyEventIterator.INSTANCE;
+		}
+		return new LimitedEventIterator(
+				new ColumnarEventIterator(column, type, startTime, endTime, order == Order.DESCENDING), limit);
+	}
+
+	/**
+	 * <p>
+	 * Merges the types present when called.
+	 */
+	@Override
+	public EventIterator queryAll(long startTime, long endTime) {
+		return query(new HashSet<String>(columns.keySet()), startTime, endTime);
+	}
+
+	public int length() {
+		int length = 0;
+		for (TimestampColumn column : columns.values()) {
+			length += column.size();
+		}
+		return length;
+	}
+
+	/**
+	 * @return an estimate, in bytes, of the heap used by the stored timestamps.
+	 */
+	public long footprint() {
+		long footprint = 0;
+		for (TimestampColumn column : columns.values()) {
+			footprint += column.footprint();
+		}
+		return footprint;
+	}
+}
@@ -0,0 +1,168 @@
+package net.intelie.challenges.concurrent;
+
+import java.util.Set;
+
+import net.intelie.challenges.Event;
+import net.intelie.challenges.EventFilter;
+import net.intelie.challenges.EventIterator;
+
+/**
+ * 
+ * <p>
+ * A lazy {@link EventIterator} over the chain of a
+ * {@link ConcurrentSortedEventStore}.
+ * 
+ * <p>
+ * <br>
+ * Instead of copying the result of a query, the cursor keeps a reference to
+ * the chain node of its current {@link Event} and walks the chain on each
+ * {@link #moveNext()} until the next matching event. It takes no lock, and
+ * its memory does not depend on the size of the result.
+ * 
+ * <p>
+ * <br>
+ * The cursor is a snapshot: it pins the last committed version of the store
+ * when created, see {@link Versions}, and returns exactly the events visible
+ * in it, in timestamp order, whatever is inserted, removed or sealed while it
+ * is open. Writers never wait for it: removed nodes stay linked, and keep
+ * their next node once unlinked, until the pin is released, which happens
+ * when the cursor is exhausted or closed, or when it is garbage collected.
+ * 
+ * <p>
+ * <br>
+ * An {@link EventFilter} is evaluated on each visible node of a matching
+ * type, so events failing it are skipped inside the walk and never returned.
+ *
+ */
+class ConcurrentEventCursor implements EventIterator {
+
+	private final ConcurrentSortedEventStore store;
+	private final Set<String> types;
+	private final TypeFilter filter;
+	private final EventFilter predicate;
+	private final long startTime;
+	private final long endTime;
+	private final Versions.Pin pin;
+
+	/**
+	 * The node of the last event returned, or {@code null} before the first
+	 * move.
+	 */
+	private ConcurrentEventIterator node;
+
+	/**
+	 * The event returned by {@link #current()}.
+	 */
+	private Event event;
+
+	private boolean finished;
+
+	/**
+	 * @param types   the types of the events to return, or {@code null} for all
+	 *                of them.
+	 * @param endTime inclusive, as in {@link ConcurrentSortedEventStore#query}.
+	 */
+	ConcurrentEventCursor(ConcurrentSortedEventStore store, Set<String> types, long startTime, long endTime) {
+		this(store, types, startTime, endTime, null);
+	}
+
+	/**
+	 * @param predicate the condition the payloads of the events must meet, or
+	 *                  {@code null} for none.
+	 */
+	ConcurrentEventCursor(ConcurrentSortedEventStore store, Set<String> types, long startTime, long endTime,
+			EventFilter predicate) {
+		this.store = store;
+		this.types = types;
+		this.filter = new TypeFilter(store.registry, types);
+		this.predicate = predicate;
+		this.startTime = startTime;
+		this.endTime = endTime;
+		this.pin = store.versions.pin(this);
+	}
+
+	/**
+	 * @return the version this cursor reads.
+	 */
+	long version() {
+		return pin.version;
+	}
+
+	@Override
+	public boolean moveNext() {
+		event = null;
+		if (finished) {
+			return false;
+		}
+
+		// the first move is what the query costs, later ones depend on the caller.
+		boolean first = node == null;
+		long start = first ? store.startTimer() : 0L;
+		long nodes = 0L;
+
+		ConcurrentEventIterator current = first ? store.entry(startTime) : node.next;
+		for (; current != null; current = current.next) {
+			nodes++;
+			Event value = current.value;
+			// only the head of an empty chain has no value.
+			if (value == null || value.timestamp() > endTime) {
+				break;
+			}
+			if (value.timestamp() >= startTime && filter.matches(current.typeId) && current.visibleAt(pin.version)
+					&& (predicate == null || predicate.test(value.payload()))) {
+				node = current;
+				event = value;
+				break;
+			}
+		}
+
+		if (first) {
+			store.queried(start, nodes);
+		}
+		if (event == null) {
+			finish();
+			return false;
+		}
+		return true;
+	}
+
+	private void finish() {
+		finished = true;
+		node = null;
+		event = null;
+		pin.release();
+	}
+
+	@Override
+	public Event current() {
+		if (event == null) {
+			throw new IllegalStateException();
+		}
+		return event;
+	}
+
+	/**
+	 * <p>
+	 * Removes the current event from the store. The node stays linked for this
+	 * cursor, which moves on from it, and {@link #current()} fails until the
+	 * next {@link #moveNext()}.
+	 */
+	@Override
+	public void remove() {
+		if (event == null) {
+			throw new IllegalStateException();
+		}
+		event = null;
+		store.removeNode(node);
+	}
+
+	@Override
+	public void close() {
+		finish();
+	}
+
+	@Override
+	public String toString() {
+		return "ConcurrentEventCursor [types=" + types + ", event=" + event + "]";
+	}
+}
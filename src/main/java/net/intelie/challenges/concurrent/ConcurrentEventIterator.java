@@ -7,10 +7,41 @@ import net.intelie.challenges.EventIterator;
 
 public class ConcurrentEventIterator implements EventIterator {
 
-	protected ConcurrentEventIterator next;
+	/**
+	 * Volatile, as snapshot reads walk the chain without locking it. An
+	 * unlinked node keeps its next node, so a reader standing on it still
+	 * finds the rest of the chain.
+	 */
+	protected volatile ConcurrentEventIterator next;
 	protected Event value;
 	protected final ReentrantLock lock = new ReentrantLock();
-	protected boolean isValid = true;
+	protected volatile boolean isValid = true;
+
+	/**
+	 * The version in which this node was linked to the chain, and the one in
+	 * which it was removed from the store, or zero while it was not. See
+	 * {@link Versions}.
+	 */
+	protected volatile long linkedAt = Long.MAX_VALUE;
+	protected volatile long removedAt;
+
+	/**
+	 * If it was removed by being sealed into the cold tier, so removing it
+	 * again removes it from there.
+	 */
+	protected boolean sealed;
+
+	/**
+	 * The id of the type of {@link #value}, interned by the store, so walks
+	 * compare it instead of the type name.
+	 */
+	protected int typeId = TypeRegistry.UNKNOWN;
+
+	/**
+	 * The counts of the span of this node once it is a checkpoint, see
+	 * {@link SpanCounts}.
+	 */
+	volatile SpanCounts span;
 
 	public ConcurrentEventIterator() {
 	}
@@ -27,6 +58,24 @@ public class ConcurrentEventIterator implements EventIterator {
 		this.value = value;
 	}
 
+	ConcurrentEventIterator(ConcurrentEventIterator next, Event value, int typeId) {
+		this(next, value);
+		this.typeId = typeId;
+	}
+
+	ConcurrentEventIterator(Event value, int typeId) {
+		this(value);
+		this.typeId = typeId;
+	}
+
+	/**
+	 * @return whether a reader of the given {@param version} sees this node.
+	 */
+	boolean visibleAt(long version) {
+		long removedAt = this.removedAt;
+		return linkedAt <= version && (removedAt == 0L || removedAt > version);
+	}
+
 	@Override
 	public void close() throws Exception {
 		next = null;
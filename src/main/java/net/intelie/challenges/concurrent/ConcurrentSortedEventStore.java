@@ -1,14 +1,37 @@
 package net.intelie.challenges.concurrent;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Collection;
 import java.util.Comparator;
+import java.util.IdentityHashMap;
 import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.OptionalLong;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
 import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
+import net.intelie.challenges.AggregatingEventStore;
+import net.intelie.challenges.BufferedEventIterator;
 import net.intelie.challenges.Event;
+import net.intelie.challenges.EventFilter;
 import net.intelie.challenges.EventIterator;
 import net.intelie.challenges.EventStore;
+import net.intelie.challenges.LimitedEventIterator;
+import net.intelie.challenges.MergingEventIterator;
+import net.intelie.challenges.Order;
 
 /**
  * 
@@ -32,7 +55,9 @@ import net.intelie.challenges.EventStore;
  * each ten thousand {@link Event} stored a checkpoint is created. <br>
  * You can limit the number of the checkpoints. If you don't limit, the limit
  * will be the number of elements in this store divided by pagination number did
- * you set or the default number ten thousand.
+ * you set or the default number ten thousand. Each checkpoint also keeps the
+ * counts of the events of its span by type, see {@link SpanCounts}, so the
+ * aggregates only walk the spans at both ends of their range.
  * 
  * <p>
  * <br>
@@ -40,11 +65,49 @@ import net.intelie.challenges.EventStore;
  * query operations on {@link Event}. insert operation of an {@link Event} or
  * remove all {@link Event} by type or search for a {@link Event} by type
  * between two timestamps.
+ * 
+ * <p>
+ * <br>
+ * Old events can be sealed, see {@link #seal(long)}: they are unlinked from
+ * the chain and kept compressed in immutable blocks, see {@link ColdBlock},
+ * which every query and aggregate reads along with the chain. Events past
+ * their retention can be evicted by a {@link RetentionEvictor}.
+ * 
+ * <p>
+ * <br>
+ * Reads are snapshots: every query and aggregate pins the last committed
+ * version of the store, see {@link Versions}, and walks the chain without
+ * locking it, seeing exactly the events visible in that version. Writers lock
+ * nodes among themselves only, and never wait for readers: a removed node
+ * stays linked for the readers of older versions, and is unlinked once the
+ * oldest pinned version no longer sees it.
  *
  */
-public class ConcurrentSortedEventStore implements EventStore {
+public class ConcurrentSortedEventStore implements AggregatingEventStore {
 	private static final int DEFAULT_PAGINATION_CHECKPOINT = 10000;
 
+	/**
+	 * The number of events a {@link Subscription} buffers by default.
+	 */
+	public static final int DEFAULT_SUBSCRIPTION_BUFFER = 1024;
+
+	/**
+	 * The width of the time segments of a secondary index by default, in units
+	 * of <i>timestamp</i>.
+	 */
+	public static final long DEFAULT_INDEX_SEGMENT_WIDTH = 60_000L;
+
+	/**
+	 * The number of events of a sealed block, see {@link #seal(long)}.
+	 */
+	public static final int COLD_BLOCK_SIZE = 4096;
+
+	/**
+	 * An estimate of the heap taken by a chain node, its lock and its event,
+	 * payload excluded.
+	 */
+	private static final long NODE_BYTES = 128L;
+
 	private final int paginationCheckPoint;
 	private final int maxCheckPoints;
 
@@ -55,17 +118,63 @@ public class ConcurrentSortedEventStore implements EventStore {
 	 */
 	private AtomicInteger length;
 
+	/**
+	 * The last node of the chain. It is only changed by the holder of the lock of
+	 * the node it points to, and is only a hint: inserts check that the node is
+	 * still valid and last before appending to it.
+	 */
+	private volatile ConcurrentEventIterator tail;
+
+	/**
+	 * Counts calls to {@link #insert(Event)} and how many of them were appended
+	 * through the tail.
+	 */
+	private final LongAdder inserts = new LongAdder();
+	private final LongAdder appendHits = new LongAdder();
+
+	/**
+	 * Clocks are read only when instrumented, so disabled metrics cost a field
+	 * check per operation.
+	 */
+	final StoreMetrics metrics;
+	private final boolean instrumented;
+
+	/**
+	 * Interns the types of the stored events, so each node keeps an id and walks
+	 * compare ids instead of type names. A type is retired by
+	 * {@link #removeAll(String)}.
+	 */
+	final TypeRegistry registry = new TypeRegistry();
+
+	private final Subscriptions subscriptions = new Subscriptions();
+
+	private final SecondaryIndexes indexes = new SecondaryIndexes();
+
+	/**
+	 * The version clock of this store. Queries and aggregates pin a version and
+	 * see the events as of it, see {@link Versions}.
+	 */
+	final Versions versions = new Versions(this::reclaim);
+
+	/**
+	 * The nodes removed but still linked, since a reader of an older version
+	 * may still see them, and the lock of the single thread unlinking them.
+	 */
+	private final ConcurrentLinkedQueue<ConcurrentEventIterator> retired = new ConcurrentLinkedQueue<ConcurrentEventIterator>();
+	private final ReentrantLock reclaiming = new ReentrantLock();
+
+	/**
+	 * The sealed events, see {@link #seal(long)}.
+	 */
+	final ColdTier cold = new ColdTier(COLD_BLOCK_SIZE, versions);
+
 	/**
 	 * <p>
 	 * This constructor doesn't limit the amount of checkpoints and is based on
 	 * pagination's default configuration, which is valued at 10000.
 	 */
 	public ConcurrentSortedEventStore() {
-		this.length = new AtomicInteger(0);
-		this.checkPoint = new ConcurrentSkipListSet<ConcurrentEventIterator>(new EventComparator());
-		this.checkPoint.add(new ConcurrentEventIterator());
-		this.paginationCheckPoint = DEFAULT_PAGINATION_CHECKPOINT;
-		this.maxCheckPoints = 0;
+		this(DEFAULT_PAGINATION_CHECKPOINT, 0);
 	}
 
 	/**
@@ -78,11 +187,7 @@ public class ConcurrentSortedEventStore implements EventStore {
 	 *                             divided by <b>paginationCheckPoint</b>.
 	 */
 	public ConcurrentSortedEventStore(int paginationCheckPoint, int maxCheckPoints) {
-		this.length = new AtomicInteger(0);
-		this.checkPoint = new ConcurrentSkipListSet<ConcurrentEventIterator>(new EventComparator());
-		this.checkPoint.add(new ConcurrentEventIterator());
-		this.paginationCheckPoint = paginationCheckPoint;
-		this.maxCheckPoints = maxCheckPoints;
+		this(paginationCheckPoint, maxCheckPoints, StoreMetrics.NONE);
 	}
 
 	/**
@@ -96,11 +201,31 @@ public class ConcurrentSortedEventStore implements EventStore {
 	 *                       (default).
 	 */
 	public ConcurrentSortedEventStore(int maxCheckPoints) {
+		this(DEFAULT_PAGINATION_CHECKPOINT, maxCheckPoints);
+	}
+
+	/**
+	 * 
+	 * @param paginationCheckPoint as in
+	 *                             {@link #ConcurrentSortedEventStore(int, int)}.
+	 * @param maxCheckPoints       as in
+	 *                             {@link #ConcurrentSortedEventStore(int, int)}.
+	 * @param metrics              receives the latencies, lock waits and
+	 *                             checkpoint changes of this store.
+	 *                             {@link StoreMetrics#NONE} disables them.
+	 */
+	public ConcurrentSortedEventStore(int paginationCheckPoint, int maxCheckPoints, StoreMetrics metrics) {
+		if (metrics == null) {
+			throw new IllegalArgumentException("Metrics cannot be null");
+		}
 		this.length = new AtomicInteger(0);
 		this.checkPoint = new ConcurrentSkipListSet<ConcurrentEventIterator>(new EventComparator());
 		this.checkPoint.add(new ConcurrentEventIterator());
-		this.paginationCheckPoint = DEFAULT_PAGINATION_CHECKPOINT;
+		this.tail = checkPoint.first();
+		this.paginationCheckPoint = paginationCheckPoint;
 		this.maxCheckPoints = maxCheckPoints;
+		this.metrics = metrics;
+		this.instrumented = metrics != StoreMetrics.NONE;
 	}
 
 	/**
@@ -115,32 +240,98 @@ public class ConcurrentSortedEventStore implements EventStore {
 			throw new IllegalArgumentException("Type cannot be null or empty");
 		}
 
+		inserts.increment();
+		// subscribers are told before the event is linked, see Subscription.
+		if (!subscriptions.isEmpty()) {
+			subscriptions.publish(event);
+		}
+		long start = startTimer();
+		ConcurrentEventIterator node = new ConcurrentEventIterator(event, registry.intern(event.type()));
+		// indexed before it is linked, see AttributeIndex.
+		if (!indexes.isEmpty()) {
+			indexes.inserted(node);
+		}
+		long nodes;
+		if (append(node)) {
+			appendHits.increment();
+			nodes = 1L;
+		} else {
+			nodes = insertOrdered(node);
+		}
+		if (instrumented) {
+			metrics.inserted(System.nanoTime() - start, nodes);
+		}
+	}
+
+	/**
+	 * Appends the node after the tail of the chain when its event is not older
+	 * than the last one, which is the common case of events arriving in order.
+	 * It locks only the tail and walks no node; the checkpoints are only
+	 * searched to stamp the last span, see {@link SpanCounts}.
+	 * 
+	 * @return false if the node must be inserted through the ordered path.
+	 */
+	private boolean append(ConcurrentEventIterator node) {
+		Event event = node.value;
+		ConcurrentEventIterator last = tail;
+		lock(last);
+		try {
+			// the tail may have been unlinked or have had a node added after it.
+			if (!last.isValid || last.next != null || last.value == null
+					|| last.value.timestamp() > event.timestamp()) {
+				return false;
+			}
+
+			long version = versions.begin();
+			node.linkedAt = version;
+			last.next = node;
+			tail = node;
+			touch(event.timestamp(), event.timestamp(), version);
+			versions.commit(version);
+
+			// keeps creating checkpoints as the ordered path does while walking.
+			if (length.incrementAndGet() % paginationCheckPoint == 0 && (maxCheckPoints <= 0
+					? checkPoint.size() <= Math.floorDiv(length.get(), paginationCheckPoint)
+					: checkPoint.size() <= maxCheckPoints)) {
+				addCheckPoint(node);
+			}
+			return true;
+		} finally {
+			last.lock.unlock();
+		}
+	}
+
+	/**
+	 * Inserts a node walking the chain from the closest checkpoint.
+	 * 
+	 * @return the number of nodes walked.
+	 */
+	private long insertOrdered(ConcurrentEventIterator node) {
+		Event event = node.value;
 		// gets the first element of the chain.
-		ConcurrentEventIterator current = checkPoint.first();
+		ConcurrentEventIterator current = firstCheckPoint();
 
 		// stores checkpoint's position.
 		int posCheckPoint = 0;
 
 		// creates a virtual current event iterator to change checkpoint if needed.
-		ConcurrentEventIterator virtualCurrent = checkPoint.first();
+		ConcurrentEventIterator virtualCurrent = firstCheckPoint();
 
 		// gets the closest checkpoint of the event to be inserted.
 		Iterator<ConcurrentEventIterator> it = checkPoint.descendingIterator();
 		int i = checkPoint.size();
 		while (it.hasNext()) {
 			ConcurrentEventIterator c = it.next();
+			--i;
 			if (c.value != null && c.value.timestamp() < event.timestamp()) {
 				current = c;
 				virtualCurrent = c;
-				posCheckPoint = --i;
+				posCheckPoint = i;
 				break;
 			}
 		}
 
-		// increments chain's size.
-		length.incrementAndGet();
-
-		current.lock.lock();
+		lock(current);
 
 		// this happens when calling removeAll method at the same time of the insertion
 		// operation. When removeAll holds the lock of this element of the chain
@@ -148,15 +339,26 @@ public class ConcurrentSortedEventStore implements EventStore {
 		// element of the chain and this is a invalid element.
 		if (!current.isValid) {
 			current.lock.unlock();
-			insert(event);
-			return;
+			metrics.retried();
+			return insertOrdered(node);
 		}
 
-		// when facing an empty chain, current event is null.
+		// increments chain's size, only once the insertion will not be retried.
+		length.incrementAndGet();
+
+		// when facing an empty chain, the node replaces its empty head.
 		if (current.value == null) {
-			current.value = event;
-			current.lock.unlock();
-			return;
+			long version = versions.begin();
+			try {
+				node.linkedAt = version;
+				replaceHead(current, node);
+				tail = node;
+				touch(event.timestamp(), event.timestamp(), version);
+			} finally {
+				versions.commit(version);
+				current.lock.unlock();
+			}
+			return 1L;
 		}
 
 		ConcurrentEventIterator prev = null;
@@ -169,11 +371,33 @@ public class ConcurrentSortedEventStore implements EventStore {
 			do {
 				// put the event in the ordered chain.
 				if (current.value.timestamp() > event.timestamp()) {
-					ConcurrentEventIterator aux = new ConcurrentEventIterator(current.next, current.value);
-					current.value = event;
-					current.next = aux;
+					if (prev != null) {
+						// links a new node, so checkpoints never see their timestamp change.
+						node.next = current;
+						long version = versions.begin();
+						node.linkedAt = version;
+						prev.next = node;
+						touch(event.timestamp(), event.timestamp(), version);
+						versions.commit(version);
+					} else if (current == firstCheckPoint()) {
+						// nodes never change their event, so the node becomes the head.
+						long version = versions.begin();
+						try {
+							node.linkedAt = version;
+							prepend(current, node);
+							touch(event.timestamp(), event.timestamp(), version);
+						} finally {
+							versions.commit(version);
+						}
+					} else {
+						// another node was prepended meanwhile, look for the position again.
+						length.decrementAndGet();
+						current.lock.unlock();
+						metrics.retried();
+						return insertOrdered(node);
+					}
 					current.lock.unlock();
-					return;
+					return count + 1;
 				}
 
 				count++;
@@ -185,8 +409,10 @@ public class ConcurrentSortedEventStore implements EventStore {
 					if (checkPoint.size() - 1 < pos && maxCheckPoints <= 0
 							? checkPoint.size() <= Math.floorDiv(length.get(), paginationCheckPoint)
 							: checkPoint.size() <= maxCheckPoints) {
-						checkPoint.add(current);
-					} else {
+						addCheckPoint(current);
+					} else if (posCheckPoint > 0 && virtualCurrent != firstCheckPoint()) {
+						// the first checkpoint is the head of the chain and must stay. Its
+						// position is counted on a set changing meanwhile, so it is checked too.
 						replaceCheckPoint(virtualCurrent, current);
 					}
 				}
@@ -198,14 +424,20 @@ public class ConcurrentSortedEventStore implements EventStore {
 
 				prev = current;
 				if (current.next != null) {
-					current.next.lock.lock();
+					lock(current.next);
 				}
 				current = current.next;
 
 			} while (current != null);
 
 			// this code is reached when the event is inserted in the last chain's position.
-			prev.next = new ConcurrentEventIterator(event);
+			long version = versions.begin();
+			node.linkedAt = version;
+			prev.next = node;
+			tail = node;
+			touch(event.timestamp(), event.timestamp(), version);
+			versions.commit(version);
+			return count;
 		} finally {
 			if (prev != null) {
 				prev.lock.unlock();
@@ -213,173 +445,1465 @@ public class ConcurrentSortedEventStore implements EventStore {
 		}
 	}
 
+	/**
+	 * <p>
+	 * Inserts a batch of events in a single pass over the chain.
+	 * 
+	 * <p>
+	 * The batch is sorted by <i>timestamp</i> first, then the chain is walked
+	 * once, hand-over-hand, from the checkpoint closest to the oldest event of the
+	 * batch, and each event is linked when its position is reached. The
+	 * checkpoint search and the locking of the nodes before that position are
+	 * paid once per batch instead of once per event. Checkpoints are created
+	 * along the way as the pagination requires. The batch takes a single
+	 * version, so readers see all of it or none.
+	 */
 	@Override
-	public void removeAll(String type) {
-		if (type == null || type.trim().isEmpty()) {
-			throw new IllegalArgumentException("Type cannot be null or empty");
+	public void insertAll(Collection<Event> events) {
+		Event[] batch = events.toArray(new Event[events.size()]);
+		for (Event event : batch) {
+			if (event == null) {
+				throw new IllegalArgumentException("Event cannot be null");
+			} else if (event.type() == null || event.type().trim().isEmpty()) {
+				throw new IllegalArgumentException("Type cannot be null or empty");
+			}
+		}
+		if (batch.length == 0) {
+			return;
+		}
+		// stable, so events sharing a timestamp keep the batch order.
+		Arrays.sort(batch, Comparator.comparingLong(Event::timestamp));
+		ConcurrentEventIterator[] nodes = new ConcurrentEventIterator[batch.length];
+		for (int j = 0; j < batch.length; j++) {
+			nodes[j] = new ConcurrentEventIterator(batch[j], registry.intern(batch[j].type()));
+			if (!subscriptions.isEmpty()) {
+				subscriptions.publish(batch[j]);
+			}
+			if (!indexes.isEmpty()) {
+				indexes.inserted(nodes[j]);
+			}
+		}
+
+		long start = startTimer();
+		ConcurrentEventIterator current = seek(batch[0].timestamp());
+		lock(current);
+		// the checkpoint was removed concurrently, or the head it fell back to is no
+		// longer first, so look for another one.
+		while (!current.isValid || (current.value != null && current.value.timestamp() > batch[0].timestamp()
+				&& current != firstCheckPoint())) {
+			current.lock.unlock();
+			metrics.retried();
+			current = seek(batch[0].timestamp());
+			lock(current);
 		}
 
-		ConcurrentEventIterator current = checkPoint.first();
+		// readers see the whole batch or none of it.
+		long version = versions.begin();
+		length.addAndGet(batch.length);
+
 		ConcurrentEventIterator prev = null;
-		ConcurrentEventIterator next = null;
+		int i = 0;
 
 		try {
-			current.lock.lock();
-			while (current != null) {
-				// verify if the current node is the last on this chain.
-				next = current.next;
-				if (next != null) {
-					next.lock.lock();
-					// if this occurs, this chain is empty.
-				} else if (current.value == null) {
-					current.lock.unlock();
-					return;
-				}
+			// when facing an empty chain, the first node replaces its empty head.
+			if (current.value == null) {
+				ConcurrentEventIterator node = nodes[i++];
+				node.linkedAt = version;
+				node.lock.lock();
+				replaceHead(current, node);
+				tail = node;
+				current.lock.unlock();
+				prev = node;
+				current = null;
+			}
 
-				boolean permissionToUnlockPrev = true;
-
-				// verifies if this event has the type which needs to be removed.
-				if (current.value.type().equals(type)) {
-					// decrements chain's size.
-					length.decrementAndGet();
-
-					if (prev == null) {
-						// this occurs if the chain has only one element.
-						if (next == null) {
-							current.value = null;
-							current.lock.unlock();
-							return;
-							// this occurs if it is the first element.
-						} else {
-							current.next = null;
-							current.isValid = false;
-							replaceCheckPoint(current, next);
-							current.lock.unlock();
-							current = next;
-							continue;
-						}
-						// this occurs if it is the last element on the chain.
-					} else if (next == null) {
-						prev.next = null;
-						current.isValid = false;
-						replaceCheckPoint(current, prev);
-						current.lock.unlock();
-						return;
+			long count = 0L;
+			while (i < batch.length) {
+				ConcurrentEventIterator node = nodes[i];
+
+				if (current == null) {
+					// appends at the end of the chain.
+					node.linkedAt = version;
+					node.lock.lock();
+					prev.next = node;
+					tail = node;
+					prev.lock.unlock();
+					prev = node;
+					i++;
+				} else if (current.value.timestamp() > node.value.timestamp()) {
+					// put the event in the ordered chain, as insert does.
+					node.linkedAt = version;
+					node.lock.lock();
+					if (prev != null) {
+						node.next = current;
+						prev.next = node;
+						prev.lock.unlock();
 					} else {
-						prev.next = next;
-						current.isValid = false;
-						current.next = null;
-						replaceCheckPoint(current, prev);
-						current.lock.unlock();
-						current = prev;
-						permissionToUnlockPrev = false;
+						prepend(current, node);
 					}
+					prev = node;
+					i++;
+					continue;
 				}
 
-				// if an element was removed from the middle of the chain, there is no need to
-				// unlock the previous element.
-				if (prev != null && permissionToUnlockPrev) {
-					prev.lock.unlock();
+				if (current != null) {
+					ConcurrentEventIterator next = current.next;
+					if (next != null) {
+						lock(next);
+					}
+					if (prev != null) {
+						prev.lock.unlock();
+					}
+					prev = current;
+					current = next;
 				}
 
-				prev = current;
-				current = current.next;
+				if (++count % paginationCheckPoint == 0 && (maxCheckPoints <= 0
+						? checkPoint.size() <= Math.floorDiv(length.get(), paginationCheckPoint)
+						: checkPoint.size() <= maxCheckPoints)) {
+					addCheckPoint(prev);
+				}
+			}
+			if (instrumented) {
+				metrics.insertedAll(System.nanoTime() - start, batch.length, count);
 			}
 		} finally {
+			if (current != null) {
+				current.lock.unlock();
+			}
 			if (prev != null) {
 				prev.lock.unlock();
 			}
+			touch(batch[0].timestamp(), batch[batch.length - 1].timestamp(), version);
+			versions.commit(version);
 		}
 	}
 
 	/**
-	 * Returns a new {@link EventIterator} containing all {@link Event} of the given
-	 * {@param type} and <i>timestamp</i> in the range from {@param startTime} to
-	 * {@param endTime}.
-	 * 
-	 * @param type
-	 * @param startTime
-	 * @param endTime
-	 * 
+	 * <p>
+	 * Removes the events of the given {@param type}, sealed ones included, in a
+	 * single version, so readers see all of them or none. Their nodes are
+	 * marked in one walk from the head of the chain, and unlinked once no
+	 * reader may see them anymore.
 	 */
 	@Override
-	public EventIterator query(String type, long startTime, long endTime) {
-		if (startTime > endTime) {
-			throw new IllegalArgumentException("startTime greater than endTime");
-		} else if (type == null || type.trim().isEmpty()) {
+	public void removeAll(String type) {
+		if (type == null || type.trim().isEmpty()) {
 			throw new IllegalArgumentException("Type cannot be null or empty");
 		}
 
-		ConcurrentEventIterator current = checkPoint.first();
+		long start = startTimer();
+		TypeFilter filter = new TypeFilter(registry, Collections.singleton(type));
+		List<ConcurrentEventIterator> removed = new ArrayList<ConcurrentEventIterator>();
+		long nodes;
+		// the cold tier takes its versions in order.
+		synchronized (cold) {
+			long version = versions.begin();
+			try {
+				nodes = mark(node -> filter.matches(node.typeId), Long.MAX_VALUE, Integer.MAX_VALUE, version, false,
+						removed);
+				length.addAndGet(-removed.size());
+				cold.removeAll(type, version);
+			} finally {
+				versions.commit(version);
+			}
+		}
+		// an insert racing with this one may still link an event with the retired
+		// id, which keeps resolving to the type.
+		registry.retire(type);
+		retire(removed);
+		if (instrumented) {
+			metrics.removedAll(System.nanoTime() - start, nodes);
+		}
+	}
+
+	/**
+	 * @return the types of the stored events.
+	 */
+	Set<String> types() {
+		return registry.types();
+	}
 
-		// gets the closest checkpoint of the event to be inserted.
-		Iterator<ConcurrentEventIterator> it = checkPoint.descendingIterator();
-		while (it.hasNext()) {
-			ConcurrentEventIterator c = it.next();
-			if (c.value != null && c.value.timestamp() < startTime) {
-				current = c;
-				break;
+	/**
+	 * Evicts the events of the given {@param type} older than {@param cutoff},
+	 * see {@link RetentionEvictor}.
+	 */
+	void evictBefore(String type, long cutoff, Eviction eviction) {
+		if (cutoff != Long.MIN_VALUE) {
+			evict(type, cutoff - 1, Long.MAX_VALUE, eviction);
+		}
+	}
+
+	/**
+	 * Evicts the oldest events of the given {@param type} until at most
+	 * {@param maxCount} are left, sealed ones first, see
+	 * {@link RetentionEvictor}.
+	 */
+	void evictOldest(String type, long maxCount, Eviction eviction) {
+		long[] count = new long[1];
+		Versions.Pin pin = versions.pin(null);
+		try {
+			count(pin.version, type, Long.MIN_VALUE, Long.MAX_VALUE, true, 0L, count);
+			count[0] += cold.state(pin.version).count(type);
+		} finally {
+			pin.release();
+		}
+		if (count[0] > maxCount) {
+			evict(type, Long.MAX_VALUE, count[0] - maxCount, eviction);
+		}
+	}
+
+	/**
+	 * Evicts the oldest events of the given {@param type}, up to
+	 * {@param lastTime} (inclusive) and at most {@param limit} of them, in a
+	 * single version, as {@link #removeAll(String)} does: sealed blocks holding
+	 * only evicted events are dropped whole, then nodes are marked in one walk
+	 * from the head of the chain, which stops at {@param lastTime}, and
+	 * unlinked together once no reader may see them anymore.
+	 */
+	private void evict(String type, long lastTime, long limit, Eviction eviction) {
+		TypeFilter filter = new TypeFilter(registry, Collections.singleton(type));
+		List<ConcurrentEventIterator> evicted = new ArrayList<ConcurrentEventIterator>();
+		// the cold tier takes its versions in order.
+		synchronized (cold) {
+			long version = versions.begin();
+			try {
+				long sealed = cold.evict(type, lastTime, limit, version, eviction);
+				if (sealed < limit) {
+					mark(node -> filter.matches(node.typeId), lastTime, (int) Math.min(limit - sealed, Integer.MAX_VALUE),
+							version, false, evicted);
+					length.addAndGet(-evicted.size());
+				}
+			} finally {
+				versions.commit(version);
 			}
 		}
+		eviction.add(evicted.size(), evicted.size() * NODE_BYTES);
+		retire(evicted);
+	}
 
-		// occurs if the chain is empty.
-		if (current.value == null) {
-			return null;
+	/**
+	 * Marks as removed in the given {@param version} every node matching the
+	 * given {@param condition} and not removed yet, walking the chain
+	 * hand-over-hand from its head up to {@param lastTime}. An insert links a
+	 * node holding the lock of the node before it, so none linked before the
+	 * version is missed.
+	 * 
+	 * @param limit  the most nodes to mark.
+	 * @param sealed whether they are being sealed.
+	 * @param marked receives the nodes marked, in order.
+	 * @return the number of nodes walked.
+	 */
+	private long mark(Predicate<ConcurrentEventIterator> condition, long lastTime, int limit, long version,
+			boolean sealed, List<ConcurrentEventIterator> marked) {
+		long nodes = 0L;
+		ConcurrentEventIterator current = firstCheckPoint();
+		lock(current);
+		// a node may have been prepended before the head found, which stays valid.
+		while (!current.isValid || current != firstCheckPoint()) {
+			current.lock.unlock();
+			metrics.retried();
+			current = firstCheckPoint();
+			lock(current);
+		}
+
+		try {
+			while (marked.size() < limit) {
+				nodes++;
+				// only the head of an empty chain has no value.
+				if (current.value == null || current.value.timestamp() > lastTime) {
+					return nodes;
+				}
+				if (current.removedAt == 0L && condition.test(current)) {
+					current.removedAt = version;
+					current.sealed = sealed;
+					marked.add(current);
+				}
+
+				ConcurrentEventIterator next = current.next;
+				if (next == null) {
+					return nodes;
+				}
+				lock(next);
+				current.lock.unlock();
+				current = next;
+			}
+			return nodes;
+		} finally {
+			current.lock.unlock();
+			if (!marked.isEmpty()) {
+				touch(marked.get(0).value.timestamp(), marked.get(marked.size() - 1).value.timestamp(), version);
+			}
+		}
+	}
+
+	/**
+	 * Removes the event of the given {@param node} in the next version. A node
+	 * removed already is left as it is, unless it was sealed meanwhile, in which
+	 * case its copy in the cold tier is removed instead.
+	 */
+	void removeNode(ConcurrentEventIterator node) {
+		boolean sealed;
+		lock(node);
+		try {
+			sealed = node.sealed;
+			if (sealed) {
+				// only once, though it may be removed again.
+				node.sealed = false;
+			} else if (node.removedAt == 0L) {
+				long version = versions.begin();
+				node.removedAt = version;
+				touch(node.value.timestamp(), node.value.timestamp(), version);
+				versions.commit(version);
+				length.decrementAndGet();
+			} else {
+				return;
+			}
+		} finally {
+			node.lock.unlock();
+		}
+
+		// the tier is taken without holding any node, as seal takes them in turn.
+		if (sealed) {
+			cold.remove(node.value);
+		} else {
+			retire(Collections.singletonList(node));
 		}
+	}
 
-		ConcurrentEventIterator newIteratorHead = null;
-		ConcurrentEventIterator newIteratorCurrent = null;
+	/**
+	 * Queues the given removed {@param nodes} to be unlinked, see
+	 * {@link #reclaim()}.
+	 */
+	private void retire(List<ConcurrentEventIterator> nodes) {
+		if (!nodes.isEmpty()) {
+			retired.addAll(nodes);
+			reclaim();
+		}
+	}
 
-		// navigate on all Events and get the result of the query.
-		while (current != null) {
-			ReentrantLock lock = current.lock;
-			lock.lock();
+	/**
+	 * Unlinks the retired nodes no reader may see anymore: those removed in
+	 * the oldest pinned version or before it. It runs after every removal and
+	 * whenever a pin is released; a thread finding it running elsewhere leaves
+	 * it there.
+	 */
+	void reclaim() {
+		while (!retired.isEmpty() && reclaiming.tryLock()) {
 			try {
-				if (current.value.timestamp() >= startTime && current.value.timestamp() <= endTime
-						&& current.value.type().equals(type)) {
-					Event event = new Event(current.value.type(), current.value.timestamp());
-					ConcurrentEventIterator newIterator = new ConcurrentEventIterator(event);
-
-					if (newIteratorHead == null) {
-						newIteratorHead = newIterator;
-						newIteratorCurrent = newIteratorHead;
-					} else {
-						newIteratorCurrent.next = newIterator;
-						newIteratorCurrent = newIterator;
+				long oldest = versions.oldest();
+				Set<ConcurrentEventIterator> ready = Collections
+						.newSetFromMap(new IdentityHashMap<ConcurrentEventIterator, Boolean>());
+				long firstTime = Long.MAX_VALUE;
+				long lastTime = Long.MIN_VALUE;
+				for (Iterator<ConcurrentEventIterator> it = retired.iterator(); it.hasNext();) {
+					ConcurrentEventIterator node = it.next();
+					if (node.removedAt <= oldest) {
+						it.remove();
+						ready.add(node);
+						firstTime = Math.min(firstTime, node.value.timestamp());
+						lastTime = Math.max(lastTime, node.value.timestamp());
 					}
-				} else if (current.value.timestamp() > endTime) {
-					break;
 				}
-				current = current.next;
+				if (ready.isEmpty()) {
+					return;
+				}
+				unlinkAll(ready, firstTime, lastTime);
 			} finally {
-				lock.unlock();
+				reclaiming.unlock();
 			}
 		}
-
-		return newIteratorHead;
 	}
 
-	public int length() {
-		return length.get();
+	/**
+	 * Unlinks the given {@param nodes} from the chain, walking it hand-over-hand
+	 * from the closest checkpoint before {@param firstTime} up to
+	 * {@param lastTime}, the first and last timestamps of their events.
+	 */
+	private void unlinkAll(Set<ConcurrentEventIterator> nodes, long firstTime, long lastTime) {
+		ConcurrentEventIterator current = seek(firstTime);
+		lock(current);
+		// the checkpoint was removed concurrently, or the head it fell back to is no
+		// longer first, so look for another one.
+		while (!current.isValid || ((current.value == null || current.value.timestamp() >= firstTime)
+				&& current != firstCheckPoint())) {
+			current.lock.unlock();
+			metrics.retried();
+			current = seek(firstTime);
+			lock(current);
+		}
+
+		// the checkpoint found is before every node, unless it is the head.
+		ConcurrentEventIterator prev = null;
+		try {
+			while (current != null) {
+				ConcurrentEventIterator next = current.next;
+				if (nodes.contains(current)) {
+					if (next != null) {
+						lock(next);
+					}
+					unlink(prev, current);
+					current.lock.unlock();
+					current = next;
+					continue;
+				}
+				if (current.value == null || current.value.timestamp() > lastTime || next == null) {
+					return;
+				}
+				lock(next);
+				if (prev != null) {
+					prev.lock.unlock();
+				}
+				prev = current;
+				current = next;
+			}
+		} finally {
+			if (current != null) {
+				current.lock.unlock();
+			}
+			if (prev != null) {
+				prev.lock.unlock();
+			}
+		}
 	}
 
 	/**
-	 * This method replaces the checkpoint value for the new one if the
-	 * {@param fromElement} is a checkpoint.
+	 * Returns an {@link EventIterator} over all {@link Event} of the given
+	 * {@param type} and <i>timestamp</i> from {@param startTime} (inclusive) to
+	 * {@param endTime} (exclusive), positioned before the first of them.
+	 * 
+	 * <p>
+	 * The result is not copied: the iterator walks the chain as it moves, as of
+	 * the version pinned when it was created (see
+	 * {@link ConcurrentEventCursor}), so finding the first event costs the same
+	 * whatever the width of the range.
+	 * 
+	 * @param type
+	 * @param startTime
+	 * @param endTime
 	 * 
-	 * @param fromElement the {@link ConcurrentEventIterator} that possible will
-	 *                    change.
-	 * @param toElement   the {@link ConcurrentEventIterator} the will be the new
-	 *                    checkpoint.
 	 */
-	private void replaceCheckPoint(ConcurrentEventIterator fromElement, ConcurrentEventIterator toElement) {
-		if (checkPoint.contains(fromElement)) {
-			checkPoint.add(toElement);
+	@Override
+	public EventIterator query(String type, long startTime, long endTime) {
+		if (type == null || type.trim().isEmpty()) {
+			throw new IllegalArgumentException("Type cannot be null or empty");
+		}
+		return range(Collections.singleton(type), startTime, endTime);
+	}
+
+	/**
+	 * <p>
+	 * An ascending query is a lazy cursor stopped after {@param limit} events.
+	 * 
+	 * <p>
+	 * The chain is singly linked, so a descending query walks it forwards one
+	 * checkpoint span at a time, starting with the span before
+	 * {@param endTime} and moving to the previous span while fewer than
+	 * {@param limit} events were found. Each span costs a checkpoint search and
+	 * a walk of up to a pagination of nodes of any type, so the cost grows with
+	 * the part of the chain between {@param endTime} and the oldest event
+	 * returned, not with {@param limit} alone: about one span for the few newest
+	 * events of a frequent type, but a span per pagination of the chain for a
+	 * rare type or a large limit. The events are read before the iterator is
+	 * returned, newest first.
+	 */
+	@Override
+	public EventIterator query(String type, long startTime, long endTime, Order order, int limit) {
+		if (startTime > endTime) {
+			throw new IllegalArgumentException("startTime greater than endTime");
+		} else if (type == null || type.trim().isEmpty()) {
+			throw new IllegalArgumentException("Type cannot be null or empty");
+		} else if (order == null) {
+			throw new IllegalArgumentException("Order cannot be null");
+		} else if (limit <= 0) {
+			throw new IllegalArgumentException("Limit must be positive");
+		}
+
+		if (order == Order.ASCENDING) {
+			return new LimitedEventIterator(range(Collections.singleton(type), startTime, endTime), limit);
+		}
+		Versions.Pin pin = versions.pin(null);
+		try {
+			Event[] newest = newest(pin.version, type, startTime, endTime, limit);
+			ColdTier.State state = cold.state(pin.version);
+			if (!state.isEmpty()) {
+				newest = merge(newest, state.newest(type, startTime, endTime, limit), limit);
+			}
+			return new BufferedEventIterator(newest, this::remove);
+		} finally {
+			pin.release();
+		}
+	}
+
+	/**
+	 * @return the newest {@param limit} events of two lists sorted newest first.
+	 */
+	private static Event[] merge(Event[] hot, List<Event> cold, int limit) {
+		Event[] merged = new Event[Math.min(limit, hot.length + cold.size())];
+		int i = 0;
+		int j = 0;
+		for (int k = 0; k < merged.length; k++) {
+			merged[k] = j == cold.size() || (i < hot.length && hot[i].timestamp() >= cold.get(j).timestamp()) ? hot[i++]
+					: cold.get(j++);
+		}
+		return merged;
+	}
+
+	/**
+	 * @return the newest {@param limit} events of the given {@param type} in the
+	 *         range as of the given {@param version}, newest first.
+	 */
+	private Event[] newest(long version, String type, long startTime, long endTime, int limit) {
+		long start = startTimer();
+		long nodes = 0L;
+		List<Event> newest = new ArrayList<Event>();
+		List<Event> span = new ArrayList<Event>();
+		long bound = endTime;
+
+		while (newest.size() < limit && bound > startTime) {
+			ConcurrentEventIterator checkpoint = entry(bound);
+			// nothing comes before the head, so its span is the last one.
+			long lower = checkpoint == firstCheckPoint() || checkpoint.value == null ? Long.MIN_VALUE
+					: checkpoint.value.timestamp();
+
+			span.clear();
+			nodes += walk(version, type, Math.max(lower, startTime), bound, false, node -> span.add(node.value));
+			for (int i = span.size() - 1; i >= 0 && newest.size() < limit; i--) {
+				newest.add(span.get(i));
+			}
+
+			if (lower == Long.MIN_VALUE) {
+				break;
+			}
+			bound = lower;
+		}
+		queried(start, nodes);
+		return newest.toArray(new Event[newest.size()]);
+	}
+
+	/**
+	 * Removes the given {@param event}, found by identity in the chain, or else
+	 * an equal sealed event.
+	 */
+	void remove(Event event) {
+		long timestamp = event.timestamp();
+		for (ConcurrentEventIterator current = entry(timestamp); current != null && current.value != null
+				&& current.value.timestamp() <= timestamp; current = current.next) {
+			if (current.value == event) {
+				removeNode(current);
+				return;
+			}
+		}
+		cold.remove(event);
+	}
+
+	/**
+	 * <p>
+	 * The chain already holds every type in timestamp order, so this walks the
+	 * range once and skips the other types, instead of one walk per type.
+	 */
+	@Override
+	public EventIterator query(Set<String> types, long startTime, long endTime) {
+		return range(TypeRegistry.validated(types), startTime, endTime);
+	}
+
+	/**
+	 * <p>
+	 * As {@link #query(Set, long, long)}, for every type.
+	 */
+	@Override
+	public EventIterator queryAll(long startTime, long endTime) {
+		return range(null, startTime, endTime);
+	}
+
+	/**
+	 * <p>
+	 * When the query is on a single type holding an index on an attribute the
+	 * {@param filter} pins to a value (see {@link EventFilter#requiredValue}),
+	 * only the events indexed under that value in the range are read, see
+	 * {@link IndexedEventIterator}. Otherwise the filter is evaluated by the
+	 * cursor on each node it walks, see {@link ConcurrentEventCursor}.
+	 */
+	@Override
+	public EventIterator query(Set<String> types, long startTime, long endTime, EventFilter filter) {
+		if (startTime > endTime) {
+			throw new IllegalArgumentException("startTime greater than endTime");
+		} else if (filter == null) {
+			throw new IllegalArgumentException("Filter cannot be null");
+		}
+		types = TypeRegistry.validated(types);
+		if (startTime == endTime) {
+			return EmptyEventIterator.INSTANCE;
+		}
+
+		if (types.size() == 1 && !indexes.isEmpty()) {
+			String type = types.iterator().next();
+			AttributeIndex index = indexes.usableBy(type, filter);
+			if (index != null) {
+				Object value = filter.requiredValue(index.attribute());
+				IndexedEventIterator indexed = new IndexedEventIterator(
+						index.segments(value, startTime, endTime - 1).values().iterator(), startTime, endTime - 1,
+						filter, versions, this::removeNode);
+				// sealed events are not indexed.
+				ColdTier.State state = cold.state(indexed.version());
+				return state.isEmpty() ? indexed
+						: new MergingEventIterator(Arrays.asList(
+								new ColdEventIterator(cold, state, types, startTime, endTime - 1, filter), indexed));
+			}
+		}
+		return scan(types, startTime, endTime - 1, filter);
+	}
+
+	/**
+	 * As {@link #createIndex(String, String, long)}, with segments of
+	 * {@link #DEFAULT_INDEX_SEGMENT_WIDTH}.
+	 */
+	public boolean createIndex(String type, String attribute) {
+		return createIndex(type, attribute, DEFAULT_INDEX_SEGMENT_WIDTH);
+	}
+
+	/**
+	 * <p>
+	 * Indexes the events of the given {@param type} by the value of their
+	 * {@param attribute}, so the filtered queries pinning it read only the
+	 * matching events, see {@link #query(Set, long, long, EventFilter)}. The
+	 * index is kept up to date by every insert and removal from now on, and
+	 * survives {@link #removeAll(String)}.
+	 * 
+	 * <p>
+	 * The events already stored are indexed in a single walk, as of the last
+	 * version. As for {@link Subscription}, an event whose insert
+	 * overlaps this call may be missed by the index, so indexes are best
+	 * created before the events are loaded.
+	 * 
+	 * @param segmentWidth the time span of each segment of the index. Narrow
+	 *                     segments cost memory, wide ones make queries on
+	 *                     narrow ranges read events outside of them.
+	 * @return false if the type already had an index on this attribute.
+	 */
+	public boolean createIndex(String type, String attribute, long segmentWidth) {
+		if (type == null || type.trim().isEmpty()) {
+			throw new IllegalArgumentException("Type cannot be null or empty");
+		} else if (attribute == null || attribute.isEmpty()) {
+			throw new IllegalArgumentException("Attribute cannot be null or empty");
+		} else if (segmentWidth <= 0) {
+			throw new IllegalArgumentException("Segment width must be positive");
+		}
+
+		AttributeIndex index = new AttributeIndex(attribute, segmentWidth);
+		if (!indexes.add(type, index)) {
+			return false;
+		}
+		Versions.Pin pin = versions.pin(null);
+		try {
+			walk(pin.version, type, Long.MIN_VALUE, Long.MAX_VALUE, true, node -> {
+				index.add(node);
+				return true;
+			});
+		} finally {
+			pin.release();
+		}
+		return true;
+	}
+
+	/**
+	 * @return false if the type had no index on this attribute.
+	 */
+	public boolean dropIndex(String type, String attribute) {
+		return indexes.remove(type, attribute);
+	}
+
+	private EventIterator range(Set<String> types, long startTime, long endTime) {
+		if (startTime > endTime) {
+			throw new IllegalArgumentException("startTime greater than endTime");
+		} else if (startTime == endTime) {
+			return EmptyEventIterator.INSTANCE;
+		}
+		// the cursor takes an inclusive end.
+		return scan(types, startTime, endTime - 1, null);
+	}
+
+	/**
+	 * @param types   the types of the events to return, or {@code null} for all
+	 *                of them.
+	 * @param endTime inclusive.
+	 * @param filter  the condition the payloads of the events must meet, or
+	 *                {@code null} for none.
+	 * @return a cursor over the chain, merged with the sealed events if there
+	 *         were any in the version it pinned. Both tiers are read as of that
+	 *         version, so an event sealed while the iterator is open is
+	 *         returned once.
+	 */
+	private EventIterator scan(Set<String> types, long startTime, long endTime, EventFilter filter) {
+		ConcurrentEventCursor hot = new ConcurrentEventCursor(this, types, startTime, endTime, filter);
+		ColdTier.State state = cold.state(hot.version());
+		if (state.isEmpty()) {
+			return hot;
+		}
+		return new MergingEventIterator(
+				Arrays.asList(new ColdEventIterator(cold, state, types, startTime, endTime, filter), hot));
+	}
+
+	/**
+	 * <p>
+	 * As {@link #parallelQuery(Set, long, long, ForkJoinPool)}, on the common
+	 * {@link ForkJoinPool}.
+	 */
+	public EventIterator parallelQuery(Set<String> types, long startTime, long endTime) {
+		return parallelQuery(types, startTime, endTime, ForkJoinPool.commonPool());
+	}
+
+	/**
+	 * <p>
+	 * As {@link #query(Set, long, long)}, for wide ranges: the range is split
+	 * at the checkpoints of the chain and at the sealed blocks, and the spans
+	 * are read on the given {@param pool}, a few of them ahead of the caller,
+	 * while the iterator returns their events in order. See
+	 * {@link ParallelScan}.
+	 * 
+	 * <p>
+	 * Each span is read whole before its first event is returned, so the
+	 * memory of an open iterator is a few spans, and it pays off once the range
+	 * covers many of them. As any query, it reads the store as of the version
+	 * pinned when it was created, and should be closed when left before its
+	 * end.
+	 */
+	public EventIterator parallelQuery(Set<String> types, long startTime, long endTime, ForkJoinPool pool) {
+		if (startTime > endTime) {
+			throw new IllegalArgumentException("startTime greater than endTime");
+		} else if (pool == null) {
+			throw new IllegalArgumentException("Pool cannot be null");
+		}
+		types = TypeRegistry.validated(types);
+		if (startTime == endTime) {
+			return EmptyEventIterator.INSTANCE;
+		}
+		return new ParallelScan(this, types, startTime, endTime).iterator(pool, 2 * pool.getParallelism());
+	}
+
+	/**
+	 * <p>
+	 * The events of the given {@param types} with <i>timestamp</i> from
+	 * {@param startTime} (inclusive) to {@param endTime} (exclusive), as a
+	 * parallel, ordered {@link Stream} for aggregations. Its spliterator splits
+	 * between the same spans as {@link #parallelQuery(Set, long, long)}, and
+	 * the stream runs on the pool its terminal operation is called from, the
+	 * common {@link ForkJoinPool} by default.
+	 * 
+	 * <p>
+	 * The stream reads the store as of the version pinned when it was created,
+	 * until it is consumed or closed.
+	 */
+	public Stream<Event> stream(Set<String> types, long startTime, long endTime) {
+		if (startTime > endTime) {
+			throw new IllegalArgumentException("startTime greater than endTime");
+		}
+		types = TypeRegistry.validated(types);
+		if (startTime == endTime) {
+			return Stream.empty();
+		}
+		ParallelScan scan = new ParallelScan(this, types, startTime, endTime);
+		return StreamSupport.stream(scan.spliterator(), true).onClose(scan::close);
+	}
+
+	/**
+	 * <p>
+	 * As
+	 * {@link #subscribe(String, long, long, boolean, int, Executor, Consumer)},
+	 * buffering up to {@link #DEFAULT_SUBSCRIPTION_BUFFER} events and delivering
+	 * them on the common {@link ForkJoinPool}.
+	 */
+	public Subscription subscribe(String type, long startTime, long endTime, boolean replay,
+			Consumer<? super Event> listener) {
+		return subscribe(type, startTime, endTime, replay, DEFAULT_SUBSCRIPTION_BUFFER, ForkJoinPool.commonPool(),
+				listener);
+	}
+
+	/**
+	 * <p>
+	 * Hands to {@param listener} the events of the given {@param type} with
+	 * <i>timestamp</i> from {@param startTime} (inclusive) to {@param endTime}
+	 * (exclusive) inserted from now on, instead of polling with queries. See
+	 * {@link Subscription}.
+	 * 
+	 * @param replay     whether the events already in the range are delivered
+	 *                   first.
+	 * @param bufferSize how many events may wait for the listener before new
+	 *                   ones are dropped.
+	 * @param executor   runs the deliveries.
+	 * @return the subscription, to be closed when no longer needed.
+	 */
+	public Subscription subscribe(String type, long startTime, long endTime, boolean replay, int bufferSize,
+			Executor executor, Consumer<? super Event> listener) {
+		if (startTime > endTime) {
+			throw new IllegalArgumentException("startTime greater than endTime");
+		} else if (type == null || type.trim().isEmpty()) {
+			throw new IllegalArgumentException("Type cannot be null or empty");
+		} else if (executor == null || listener == null) {
+			throw new IllegalArgumentException("Executor and listener cannot be null");
+		} else if (bufferSize <= 0) {
+			throw new IllegalArgumentException("Buffer size must be positive");
+		}
+
+		Subscription subscription = new Subscription(subscriptions, type, startTime, endTime, bufferSize, executor,
+				listener);
+		subscription.start(replay ? () -> range(Collections.singleton(type), startTime, endTime) : null);
+		return subscription;
+	}
+
+	/**
+	 * <p>
+	 * Adds the counts of the checkpoint spans inside the range, and walks the
+	 * spans at both of its ends, without creating any {@link Event} or
+	 * {@link EventIterator}. A span is walked whole the first time it is
+	 * counted, or once it changed, see {@link SpanCounts}.
+	 */
+	@Override
+	public long count(String type, long startTime, long endTime) {
+		long start = startTimer();
+		long[] count = new long[1];
+		Versions.Pin pin = versions.pin(null);
+		try {
+			queried(start, count(pin.version, type, startTime, endTime, false, 0L, count));
+			return count[0] + cold.state(pin.version).count(type, startTime, endTime);
+		} finally {
+			pin.release();
+		}
+	}
+
+	/**
+	 * <p>
+	 * Stops at the first matching node.
+	 */
+	@Override
+	public OptionalLong first(String type, long startTime, long endTime) {
+		long start = startTimer();
+		long[] first = new long[1];
+		boolean[] found = new boolean[1];
+		Versions.Pin pin = versions.pin(null);
+		try {
+			queried(start, walk(pin.version, type, startTime, endTime, false, node -> {
+				first[0] = node.value.timestamp();
+				found[0] = true;
+				return false;
+			}));
+			cold.state(pin.version).forEach(type, startTime, found[0] ? first[0] : endTime, timestamp -> {
+				first[0] = timestamp;
+				found[0] = true;
+				return false;
+			});
+		} finally {
+			pin.release();
+		}
+		return found[0] ? OptionalLong.of(first[0]) : OptionalLong.empty();
+	}
+
+	/**
+	 * <p>
+	 * Walks the range backwards one checkpoint span at a time, as a descending
+	 * query does, and stops at the first span holding an event of the type.
+	 */
+	@Override
+	public OptionalLong last(String type, long startTime, long endTime) {
+		filter(type, startTime, endTime);
+		Versions.Pin pin = versions.pin(null);
+		try {
+			Event[] hot = newest(pin.version, type, startTime, endTime, 1);
+			List<Event> newest = cold.state(pin.version).newest(type,
+					hot.length > 0 ? hot[0].timestamp() + 1 : startTime, endTime, 1);
+			if (!newest.isEmpty()) {
+				return OptionalLong.of(newest.get(0).timestamp());
+			}
+			return hot.length > 0 ? OptionalLong.of(hot[0].timestamp()) : OptionalLong.empty();
+		} finally {
+			pin.release();
+		}
+	}
+
+	/**
+	 * <p>
+	 * A checkpoint span inside the range and inside a single bin adds its counts
+	 * to the bin, as {@link #count(String, long, long)} does; the other spans
+	 * are walked, each node filling its bin.
+	 */
+	@Override
+	public long[] histogram(String type, long startTime, long endTime, long interval) {
+		long start = startTimer();
+		long[] bins = new long[AggregatingEventStore.bins(startTime, endTime, interval)];
+		Versions.Pin pin = versions.pin(null);
+		try {
+			queried(start, count(pin.version, type, startTime, endTime, false, interval, bins));
+			cold.state(pin.version).forEach(type, startTime, endTime, timestamp -> {
+				bins[(int) Long.divideUnsigned(timestamp - startTime, interval)]++;
+				return true;
+			});
+		} finally {
+			pin.release();
+		}
+		return bins;
+	}
+
+	/**
+	 * Walks the chain from the closest checkpoint without locking it, and hands
+	 * each node visible in the given {@param version} whose event is of the
+	 * given {@param type} and in the range from {@param startTime} (inclusive)
+	 * to {@param endTime} (exclusive, or inclusive when {@param inclusive} is
+	 * true) to {@param visitor}, until it returns false. The version must be
+	 * pinned meanwhile.
+	 * 
+	 * @return the number of nodes walked.
+	 */
+	private long walk(long version, String type, long startTime, long endTime, boolean inclusive,
+			Predicate<ConcurrentEventIterator> visitor) {
+		return walk(version, filter(type, startTime, endTime), startTime, endTime, inclusive, visitor);
+	}
+
+	/**
+	 * @return a filter of the given {@param type}, once it and the range are
+	 *         checked.
+	 */
+	private TypeFilter filter(String type, long startTime, long endTime) {
+		if (startTime > endTime) {
+			throw new IllegalArgumentException("startTime greater than endTime");
+		} else if (type == null || type.trim().isEmpty()) {
+			throw new IllegalArgumentException("Type cannot be null or empty");
+		}
+		return new TypeFilter(registry, Collections.singleton(type));
+	}
+
+	/**
+	 * Counts the nodes visible in the given {@param version} whose event is of
+	 * the given {@param type} and in the range from {@param startTime}
+	 * (inclusive) to {@param endTime} (exclusive, or inclusive when
+	 * {@param inclusive} is true) into {@param bins}, one checkpoint span at a
+	 * time. A span inside the range, and inside a single bin, adds its counts
+	 * when they are known as of the version, see {@link SpanCounts}; any other
+	 * span is walked, and a span walked whole keeps its counts for the next
+	 * readers. The version must be pinned meanwhile.
+	 * 
+	 * @param interval the width of the bins, from {@param startTime}, or zero
+	 *                 for a single bin.
+	 * @return the number of nodes walked.
+	 */
+	private long count(long version, String type, long startTime, long endTime, boolean inclusive, long interval,
+			long[] bins) {
+		TypeFilter filter = filter(type, startTime, endTime);
+		long nodes = 0L;
+		// a span holds the events after its checkpoint, up to the next one.
+		ConcurrentEventIterator checkpoint = checkPoint.lower(probe(startTime));
+		// the span of the head also holds the events before it.
+		boolean head = checkpoint == null;
+		if (head) {
+			checkpoint = firstCheckPoint();
+		}
+		// the node the walk stopped at, while the next span goes on from it.
+		ConcurrentEventIterator current = null;
+		while (head || checkpoint.value != null) {
+			ConcurrentEventIterator upper = checkPoint.higher(checkpoint);
+			long last = upper == null || upper.value == null ? Long.MAX_VALUE : upper.value.timestamp();
+			long from = head ? startTime : Math.max(startTime, checkpoint.value.timestamp() + 1);
+			boolean whole = (head ? startTime == Long.MIN_VALUE : from == checkpoint.value.timestamp() + 1)
+					&& (last < endTime || (inclusive && last == endTime)) && bin(from, startTime, interval) == bin(last,
+							startTime, interval);
+
+			long[] counts = whole ? SpanCounts.of(checkpoint).counts(version, upper) : null;
+			if (counts != null) {
+				for (int id = 0; id < counts.length; id++) {
+					if (counts[id] != 0L && filter.matches(id)) {
+						bins[bin(from, startTime, interval)] += counts[id];
+					}
+				}
+				current = null;
+			} else {
+				long[] byType = whole ? new long[registry.size()] : null;
+				if (current == null) {
+					current = checkpoint.isValid ? checkpoint : entry(from);
+				}
+				for (; current != null; current = current.next) {
+					Event value = current.value;
+					// only the head of an empty chain has no value.
+					if (value == null) {
+						return nodes;
+					} else if (value.timestamp() > last) {
+						break;
+					}
+					nodes++;
+					if (value.timestamp() > endTime || (!inclusive && value.timestamp() == endTime)) {
+						return nodes;
+					}
+					if (value.timestamp() >= from && current.visibleAt(version)) {
+						if (byType != null) {
+							if (current.typeId >= byType.length) {
+								byType = Arrays.copyOf(byType, current.typeId + 1);
+							}
+							byType[current.typeId]++;
+						}
+						if (filter.matches(current.typeId)) {
+							bins[bin(value.timestamp(), startTime, interval)]++;
+						}
+					}
+				}
+				if (byType != null) {
+					SpanCounts.of(checkpoint).counted(version, upper, byType);
+				}
+				// the end of the chain.
+				if (current == null) {
+					break;
+				}
+			}
+
+			if (upper == null || upper.value == null || last >= endTime) {
+				break;
+			}
+			checkpoint = upper;
+			head = false;
+		}
+		return nodes;
+	}
+
+	/**
+	 * @return the bin of the given {@param timestamp}, see
+	 *         {@link #count(long, String, long, long, boolean, long, long[])}.
+	 */
+	private static int bin(long timestamp, long startTime, long interval) {
+		return interval == 0L ? 0 : (int) Long.divideUnsigned(timestamp - startTime, interval);
+	}
+
+	/**
+	 * As {@link #walk(long, String, long, long, boolean, Predicate)}, for the
+	 * types the given {@param filter} matches.
+	 */
+	long walk(long version, TypeFilter filter, long startTime, long endTime, boolean inclusive,
+			Predicate<ConcurrentEventIterator> visitor) {
+		long nodes = 0L;
+		for (ConcurrentEventIterator current = entry(startTime); current != null; current = current.next) {
+			nodes++;
+			Event value = current.value;
+			// only the head of an empty chain has no value.
+			if (value == null || value.timestamp() > endTime || (!inclusive && value.timestamp() == endTime)) {
+				break;
+			}
+			if (value.timestamp() >= startTime && filter.matches(current.typeId) && current.visibleAt(version)
+					&& !visitor.test(current)) {
+				break;
+			}
+		}
+		return nodes;
+	}
+
+	/**
+	 * Links the given events, which must be sorted by <i>timestamp</i>, into this
+	 * store while it is empty, one node after the other, creating checkpoints as
+	 * the pagination requires. Nothing is searched, so the load is linear. The
+	 * chain is built apart and then replaces the empty head, whose lock is held
+	 * meanwhile, so concurrent inserts wait for it, and readers see all of it or
+	 * none.
+	 * 
+	 * @return the number of events loaded.
+	 * @throws IllegalStateException if this store is not empty.
+	 */
+	int load(Iterator<Event> sorted) {
+		ConcurrentEventIterator head = firstCheckPoint();
+		lock(head);
+		try {
+			if (!head.isValid || head.value != null || !cold.isEmpty()) {
+				throw new IllegalStateException("Store is not empty");
+			}
+			if (!sorted.hasNext()) {
+				return 0;
+			}
+
+			long version = versions.begin();
+			try {
+				ConcurrentEventIterator first = null;
+				ConcurrentEventIterator last = null;
+				int count = 0;
+				List<ConcurrentEventIterator> checkPoints = new ArrayList<ConcurrentEventIterator>();
+				while (sorted.hasNext()) {
+					Event event = sorted.next();
+					if (!subscriptions.isEmpty()) {
+						subscriptions.publish(event);
+					}
+					ConcurrentEventIterator node = new ConcurrentEventIterator(event, registry.intern(event.type()));
+					node.linkedAt = version;
+					if (!indexes.isEmpty()) {
+						indexes.inserted(node);
+					}
+					if (first == null) {
+						first = node;
+					} else {
+						last.next = node;
+					}
+					last = node;
+					if (++count % paginationCheckPoint == 0 && (maxCheckPoints <= 0
+							? checkPoint.size() + checkPoints.size() <= Math.floorDiv(count, paginationCheckPoint)
+							: checkPoint.size() + checkPoints.size() <= maxCheckPoints)) {
+						checkPoints.add(node);
+					}
+				}
+
+				replaceHead(head, first);
+				tail = last;
+				for (ConcurrentEventIterator node : checkPoints) {
+					addCheckPoint(node);
+				}
+				touch(first.value.timestamp(), last.value.timestamp(), version);
+				length.addAndGet(count);
+				return count;
+			} finally {
+				versions.commit(version);
+			}
+		} finally {
+			head.lock.unlock();
+		}
+	}
+
+	/**
+	 * @return a lazy iterator over all events of this store, in timestamp order,
+	 *         {@link Long#MAX_VALUE} included.
+	 */
+	EventIterator all() {
+		return scan(null, Long.MIN_VALUE, Long.MAX_VALUE, null);
+	}
+
+	/**
+	 * @param timestamp the timestamp being searched.
+	 * @return the closest checkpoint before the given {@param timestamp}, or the
+	 *         first element of the chain.
+	 */
+	ConcurrentEventIterator seek(long timestamp) {
+		Iterator<ConcurrentEventIterator> it = checkPoint.descendingIterator();
+		while (it.hasNext()) {
+			ConcurrentEventIterator c = it.next();
+			if (c.value != null && c.value.timestamp() < timestamp) {
+				return c;
+			}
+		}
+		return firstCheckPoint();
+	}
+
+	/**
+	 * @param timestamp the timestamp being searched.
+	 * @return as {@link #seek(long)}, a node still linked, where readers enter
+	 *         the chain.
+	 */
+	ConcurrentEventIterator entry(long timestamp) {
+		ConcurrentEventIterator entry = seek(timestamp);
+		while (!entry.isValid) {
+			// the checkpoint was removed concurrently, look for another one.
+			metrics.retried();
+			entry = seek(timestamp);
+		}
+		return entry;
+	}
+
+	/**
+	 * Unlinks {@param current} from the chain. The caller must hold the lock of
+	 * {@param current} and, when it is not the head of the chain, the lock of
+	 * {@param prev}. The node keeps its next node, for the readers standing on
+	 * it.
+	 * 
+	 * @param prev    the node before {@param current}, or {@code null} if
+	 *                {@param current} is the head of the chain.
+	 * @param current the node to be removed.
+	 */
+	private void unlink(ConcurrentEventIterator prev, ConcurrentEventIterator current) {
+		ConcurrentEventIterator next = current.next;
+		if (prev == null) {
+			// this occurs if the chain has only one element.
+			if (next == null) {
+				ConcurrentEventIterator empty = new ConcurrentEventIterator();
+				tail = empty;
+				replaceHead(current, empty);
+			} else {
+				replaceCheckPoint(current, next);
+			}
+		} else {
+			prev.next = next;
+			if (next == null) {
+				tail = prev;
+			}
+			replaceCheckPoint(current, prev);
+		}
+		current.isValid = false;
+		if (!indexes.isEmpty()) {
+			indexes.removed(current);
+		}
+	}
+
+	/**
+	 * Replaces the head of the chain, the only node, with the given
+	 * {@param node}, which is either its first node or an empty head. The
+	 * caller must hold the lock of {@param head}.
+	 */
+	private void replaceHead(ConcurrentEventIterator head, ConcurrentEventIterator node) {
+		SpanCounts before = reshaping(node, head);
+		// an empty head compares equal to any node, so it leaves the set first.
+		checkPoint.remove(head);
+		checkPoint.add(node);
+		reshaped(before, node, head);
+		head.isValid = false;
+	}
+
+	/**
+	 * Links the given {@param node} before the head of the chain, as its new
+	 * head. The caller must hold the lock of {@param head}.
+	 */
+	private void prepend(ConcurrentEventIterator head, ConcurrentEventIterator node) {
+		node.next = head;
+		SpanCounts before = reshaping(node, head);
+		checkPoint.add(node);
+		checkPoint.remove(head);
+		reshaped(before, node, head);
+	}
+
+	/**
+	 * @return the number of events of this store, sealed ones included.
+	 */
+	public int length() {
+		return length.get() + (int) cold.count();
+	}
+
+	/**
+	 * <p>
+	 * Seals the events older than {@param before}: they are moved from the chain
+	 * into the compressed blocks of the cold tier, {@link #COLD_BLOCK_SIZE} at a
+	 * time, so they take a few bytes each instead of a chain node. Sealed events
+	 * are still returned by every query, aggregate and snapshot of this store,
+	 * and can be removed, but reading them decodes their blocks. Events inserted
+	 * later with an older timestamp stay in the chain until the next call.
+	 * 
+	 * <p>
+	 * Each batch takes a single version: its nodes are marked as removed in one
+	 * walk from the head of the chain and the blocks holding them are published
+	 * in the cold tier as of that version, so a reader sees each event in one
+	 * tier only. The nodes are unlinked once no reader may see them anymore.
+	 * Batches are serialized on the cold tier. {@link ColdSealer} calls this
+	 * periodically.
+	 * 
+	 * @return the number of events sealed.
+	 */
+	public long seal(long before) {
+		long sealed = 0L;
+		if (before == Long.MIN_VALUE) {
+			return sealed;
+		}
+		while (true) {
+			List<ConcurrentEventIterator> batch = new ArrayList<ConcurrentEventIterator>(COLD_BLOCK_SIZE);
+			synchronized (cold) {
+				long version = versions.begin();
+				try {
+					mark(node -> true, before - 1, COLD_BLOCK_SIZE, version, true, batch);
+					if (batch.isEmpty()) {
+						return sealed;
+					}
+					List<Event> events = new ArrayList<Event>(batch.size());
+					for (ConcurrentEventIterator node : batch) {
+						events.add(node.value);
+					}
+					cold.seal(events, version);
+					length.addAndGet(-batch.size());
+				} finally {
+					versions.commit(version);
+				}
+			}
+			retire(batch);
+			sealed += batch.size();
+		}
+	}
+
+	/**
+	 * @return the number of sealed events, see {@link #seal(long)}.
+	 */
+	public long coldEventCount() {
+		return cold.count();
+	}
+
+	/**
+	 * @return an estimate of the heap taken by the sealed events.
+	 */
+	public long coldBytes() {
+		return cold.bytes();
+	}
+
+	/**
+	 * @return how many calls to {@link #insert(Event)} were appended through the
+	 *         tail of the chain.
+	 */
+	public long appendFastPathHits() {
+		return appendHits.sum();
+	}
+
+	/**
+	 * @return the ratio of calls to {@link #insert(Event)} appended through the
+	 *         tail of the chain, or zero before the first insert.
+	 */
+	public double appendFastPathHitRate() {
+		long total = inserts.sum();
+		return total == 0 ? 0d : appendHits.sum() / (double) total;
+	}
+
+	/**
+	 * @return the current number of checkpoints, the head of the chain included.
+	 */
+	public int checkPointCount() {
+		return checkPoint.size();
+	}
+
+	/**
+	 * Locks the given {@param node}. When instrumented, a lock held by another
+	 * thread is timed and reported, while a free one costs no clock read.
+	 */
+	void lock(ConcurrentEventIterator node) {
+		if (!instrumented) {
+			node.lock.lock();
+		} else if (!node.lock.tryLock()) {
+			long start = System.nanoTime();
+			node.lock.lock();
+			metrics.lockWaited(System.nanoTime() - start);
+		}
+	}
+
+	/**
+	 * @return the start of an operation to be reported, or zero when not
+	 *         instrumented.
+	 */
+	long startTimer() {
+		return instrumented ? System.nanoTime() : 0L;
+	}
+
+	/**
+	 * Reports a query started at {@param start}, see {@link #startTimer()}.
+	 */
+	void queried(long start, long nodes) {
+		if (instrumented) {
+			metrics.queried(System.nanoTime() - start, nodes);
+		}
+	}
+
+	private void addCheckPoint(ConcurrentEventIterator node) {
+		SpanCounts before = reshaping(node, null);
+		// a checkpoint with the same timestamp may be in the set already.
+		if (checkPoint.add(node)) {
+			metrics.checkPointAdded();
+		}
+		reshaped(before, node, null);
+	}
+
+	/**
+	 * This method replaces the checkpoint value for the new one if the
+	 * {@param fromElement} is a checkpoint.
+	 * 
+	 * @param fromElement the {@link ConcurrentEventIterator} that possible will
+	 *                    change.
+	 * @param toElement   the {@link ConcurrentEventIterator} the will be the new
+	 *                    checkpoint.
+	 */
+	private void replaceCheckPoint(ConcurrentEventIterator fromElement, ConcurrentEventIterator toElement) {
+		// checkpoints are compared by timestamp, so another node with the same
+		// timestamp as fromElement may be the one in the set.
+		if (checkPoint.ceiling(fromElement) != fromElement) {
+			return;
+		}
+
+		metrics.checkPointMoved();
+		SpanCounts before = reshaping(toElement, fromElement);
+		if (checkPoint.comparator().compare(fromElement, toElement) == 0) {
+			// both cannot be in the set at the same time.
+			checkPoint.remove(fromElement);
+			checkPoint.add(toElement);
+		} else {
+			checkPoint.add(toElement);
 			checkPoint.remove(fromElement);
 			if (checkPoint.isEmpty()) {
 				this.checkPoint.add(new ConcurrentEventIterator());
 			}
 		}
+		reshaped(before, toElement, fromElement);
+	}
+
+	/**
+	 * Starts a change of the checkpoints, adding {@param added} and removing
+	 * {@param removed}, either of which may be {@code null}: the counts of the
+	 * spans it reshapes are ignored until it ends, see {@link SpanCounts}.
+	 * 
+	 * @return the span of the checkpoint before {@param removed}, to be handed
+	 *         to
+	 *         {@link #reshaped(SpanCounts, ConcurrentEventIterator, ConcurrentEventIterator)}.
+	 */
+	private SpanCounts reshaping(ConcurrentEventIterator added, ConcurrentEventIterator removed) {
+		if (added != null) {
+			SpanCounts.of(added).reshaping(true);
+		}
+		ConcurrentEventIterator owner = removed == null ? null : checkPoint.lower(removed);
+		if (owner == null) {
+			return null;
+		}
+		SpanCounts span = SpanCounts.of(owner);
+		span.reshaping(false);
+		return span;
+	}
+
+	/**
+	 * Ends a change of the checkpoints started with
+	 * {@link #reshaping(ConcurrentEventIterator, ConcurrentEventIterator)}. A
+	 * writer may have stamped the span of a checkpoint it found before the
+	 * change, while its event now falls in the span of {@param added}, or of
+	 * the checkpoint before {@param removed}: both are stamped with the last
+	 * version begun, which is not older than the version of that writer.
+	 */
+	private void reshaped(SpanCounts before, ConcurrentEventIterator added, ConcurrentEventIterator removed) {
+		long latest = versions.latest();
+		if (added != null) {
+			SpanCounts.of(added).reshaped(latest);
+		}
+		if (removed != null) {
+			ConcurrentEventIterator owner = checkPoint.lower(removed);
+			SpanCounts.of(owner == null ? firstCheckPoint() : owner).touch(latest);
+		}
+		if (before != null) {
+			before.reshaped(latest);
+		}
+	}
+
+	/**
+	 * Stamps the spans holding the events from {@param firstTime} to
+	 * {@param lastTime} with the given {@param version}, before it is
+	 * committed, see {@link SpanCounts}.
+	 */
+	private void touch(long firstTime, long lastTime, long version) {
+		ConcurrentEventIterator from = checkPoint.lower(probe(firstTime));
+		if (from == null) {
+			from = firstCheckPoint();
+		}
+		SpanCounts.of(from).touch(version);
+		for (ConcurrentEventIterator checkpoint : checkPoint.tailSet(from, false)) {
+			if (checkpoint.value == null || checkpoint.value.timestamp() >= lastTime) {
+				break;
+			}
+			SpanCounts.of(checkpoint).touch(version);
+		}
+	}
+
+	/**
+	 * @return a node to search the checkpoints with.
+	 */
+	private static ConcurrentEventIterator probe(long timestamp) {
+		return new ConcurrentEventIterator(new Event(null, timestamp));
+	}
+
+	/**
+	 * @return the first checkpoint, which is the head of the chain. The set can
+	 *         be empty for a moment while its only checkpoint is replaced.
+	 */
+	private ConcurrentEventIterator firstCheckPoint() {
+		while (true) {
+			try {
+				return checkPoint.first();
+			} catch (NoSuchElementException e) {
+				Thread.yield();
+			}
+		}
 	}
 
 	/**
@@ -390,7 +1914,7 @@ public class ConcurrentSortedEventStore implements EventStore {
 
 		@Override
 		public int compare(ConcurrentEventIterator o1, ConcurrentEventIterator o2) {
-			return (int) (o1.value == null || o2.value == null ? 0 : (o1.value.timestamp() - o2.value.timestamp()));
+			return o1.value == null || o2.value == null ? 0 : Long.compare(o1.value.timestamp(), o2.value.timestamp());
 		}
 
 	}
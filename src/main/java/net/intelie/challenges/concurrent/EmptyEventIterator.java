@@ -0,0 +1,36 @@
+package net.intelie.challenges.concurrent;
+
+import net.intelie.challenges.Event;
+import net.intelie.challenges.EventIterator;
+
+/**
+ * <p>
+ * An {@link EventIterator} without events. It is stateless, so a single
+ * instance is shared by every query that has nothing to return.
+ */
+final class EmptyEventIterator implements EventIterator {
+
+	static final EmptyEventIterator INSTANCE = new EmptyEventIterator();
+
+	private EmptyEventIterator() {
+	}
+
+	@Override
+	public boolean moveNext() {
+		return false;
+	}
+
+	@Override
+	public Event current() {
+		throw new IllegalStateException();
+	}
+
+	@Override
+	public void remove() {
+		throw new IllegalStateException();
+	}
+
+	@Override
+	public void close() {
+	}
+}
@@ -0,0 +1,51 @@
+package net.intelie.challenges.concurrent;
+
+/**
+ * <p>
+ * Sort key of an event inside an ordered index: its <i>timestamp</i> followed
+ * by an insertion sequence, so events sharing a timestamp get distinct keys
+ * and keep their arrival order.
+ */
+final class EventKey implements Comparable<EventKey> {
+
+	final long timestamp;
+	final long sequence;
+
+	EventKey(long timestamp, long sequence) {
+		this.timestamp = timestamp;
+		this.sequence = sequence;
+	}
+
+	/**
+	 * @return a key lower than every stored key of the given {@param timestamp},
+	 *         used as a bound when seeking a time range.
+	 */
+	static EventKey lowest(long timestamp) {
+		return new EventKey(timestamp, Long.MIN_VALUE);
+	}
+
+	@Override
+	public int compareTo(EventKey o) {
+		int c = Long.compare(timestamp, o.timestamp);
+		return c != 0 ? c : Long.compare(sequence, o.sequence);
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		if (!(obj instanceof EventKey)) {
+			return false;
+		}
+		EventKey o = (EventKey) obj;
+		return timestamp == o.timestamp && sequence == o.sequence;
+	}
+
+	@Override
+	public int hashCode() {
+		return Long.hashCode(timestamp) * 31 + Long.hashCode(sequence);
+	}
+
+	@Override
+	public String toString() {
+		return "EventKey [timestamp=" + timestamp + ", sequence=" + sequence + "]";
+	}
+}
@@ -0,0 +1,289 @@
+package net.intelie.challenges.concurrent;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.function.Consumer;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedInputStream;
+import java.util.zip.CheckedOutputStream;
+
+import net.intelie.challenges.Event;
+import net.intelie.challenges.EventIterator;
+import net.intelie.challenges.Payload;
+
+/**
+ * 
+ * <p>
+ * Writes a {@link ConcurrentSortedEventStore} to a compact binary file and
+ * loads it back.
+ * 
+ * <p>
+ * <br>
+ * The chain is already sorted, so each event is written as the varint of its
+ * type id followed by the varint of the difference to the previous
+ * <i>timestamp</i> and by the varint length and the encoding of its
+ * {@link Payload}. A type is written by name the first time it appears, when
+ * its id is the next one of the dictionary. A zero id ends the events, and is
+ * followed by their count and the CRC32 of the whole file.
+ * 
+ * <p>
+ * <br>
+ * {@link #write(ConcurrentSortedEventStore, Path)} streams the chain through a
+ * lazy cursor, so writers are never stopped: the cursor takes no lock. The
+ * snapshot is consistent, as the cursor is: it holds the events of the store
+ * as of the version pinned when it started, whatever is inserted or removed
+ * while it runs. The file is written aside, forced to disk and moved into
+ * place once complete. {@link #read(Path, ConcurrentSortedEventStore)} checks
+ * the whole file in a first pass, which keeps none of its events, and then
+ * decodes it again straight into an empty store, linking the events in a
+ * single pass, so they are never held twice.
+ *
+ */
+public final class EventSnapshot {
+
+	private static final int MAGIC = 0x45565332;
+
+	private EventSnapshot() {
+	}
+
+	/**
+	 * @return the number of events written.
+	 */
+	public static long write(ConcurrentSortedEventStore store, Path file) throws IOException {
+		return write(store.all(), file);
+	}
+
+	/**
+	 * Writes the events of the given {@param sorted} iterator, which returns
+	 * them in timestamp order, see {@link WriteAheadLogEventStore#checkpoint()}.
+	 * 
+	 * @return the number of events written.
+	 */
+	static long write(EventIterator sorted, Path file) throws IOException {
+		Path partial = file.resolveSibling(file.getFileName() + ".partial");
+		CRC32 crc = new CRC32();
+		long count = 0;
+
+		boolean written = false;
+		try (FileChannel channel = FileChannel.open(partial, StandardOpenOption.CREATE,
+				StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+			OutputStream output = Channels.newOutputStream(channel);
+			CheckedOutputStream checked = new CheckedOutputStream(new BufferedOutputStream(output, 1 << 16), crc);
+			DataOutputStream data = new DataOutputStream(checked);
+			data.writeInt(MAGIC);
+
+			Map<String, Integer> types = new HashMap<String, Integer>();
+			long previous = 0;
+			while (sorted.moveNext()) {
+				Event event = sorted.current();
+				Integer id = types.get(event.type());
+				if (id == null) {
+					id = types.size() + 1;
+					types.put(event.type(), id);
+					writeVarLong(data, id);
+					byte[] name = event.type().getBytes(StandardCharsets.UTF_8);
+					writeVarLong(data, name.length);
+					data.write(name);
+				} else {
+					writeVarLong(data, id);
+				}
+				writeVarLong(data, event.timestamp() - previous);
+				Payload payload = sorted.payload();
+				writeVarLong(data, payload.encodedSize());
+				data.write(payload.toByteArray());
+				previous = event.timestamp();
+				count++;
+			}
+
+			writeVarLong(data, 0);
+			writeVarLong(data, count);
+			data.flush();
+			// the checksum itself is not part of the checksum.
+			DataOutputStream trailer = new DataOutputStream(output);
+			trailer.writeInt((int) crc.getValue());
+			trailer.flush();
+			// on disk before it replaces the previous file.
+			channel.force(true);
+			written = true;
+		} finally {
+			if (!written) {
+				Files.deleteIfExists(partial);
+			}
+		}
+
+		Files.move(partial, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		return count;
+	}
+
+	/**
+	 * Loads a snapshot into the given empty {@param store}. The file is checked
+	 * whole before any event is linked, so the store is left as it was if it is
+	 * not valid.
+	 * 
+	 * @return the number of events loaded.
+	 * @throws IOException if the file is not a valid snapshot.
+	 */
+	public static int read(Path file, ConcurrentSortedEventStore store) throws IOException {
+		check(file);
+		try (InputStream input = new BufferedInputStream(Files.newInputStream(file), 1 << 16)) {
+			return store.load(new Reader(new DataInputStream(input)));
+		} catch (UncheckedIOException e) {
+			// the file changed since it was checked, and nothing was linked.
+			throw e.getCause();
+		}
+	}
+
+	/**
+	 * Hands the events of a snapshot to the given {@param sink}, in order. The
+	 * file is checked whole before the first one.
+	 * 
+	 * @return the number of events read.
+	 * @throws IOException if the file is not a valid snapshot.
+	 */
+	static long read(Path file, Consumer<Event> sink) throws IOException {
+		check(file);
+		try (InputStream input = new BufferedInputStream(Files.newInputStream(file), 1 << 16)) {
+			Reader reader = new Reader(new DataInputStream(input));
+			long count = 0;
+			while (reader.hasNext()) {
+				sink.accept(reader.next());
+				count++;
+			}
+			return count;
+		} catch (UncheckedIOException e) {
+			throw e.getCause();
+		}
+	}
+
+	/**
+	 * Decodes the whole file, keeping none of its events, and checks their
+	 * count and the checksum.
+	 * 
+	 * @throws IOException if the file is not a valid snapshot.
+	 */
+	private static void check(Path file) throws IOException {
+		try (InputStream input = new BufferedInputStream(Files.newInputStream(file), 1 << 16)) {
+			CRC32 crc = new CRC32();
+			DataInputStream data = new DataInputStream(new CheckedInputStream(input, crc));
+			Reader reader = new Reader(data);
+			while (reader.decode() != null) {
+				// only checked.
+			}
+			long count = readVarLong(data);
+			int expected = (int) crc.getValue();
+			if (new DataInputStream(input).readInt() != expected || count != reader.count) {
+				throw new IOException("Corrupt snapshot file");
+			}
+		}
+	}
+
+	/**
+	 * Decodes the events of a snapshot one at a time, up to the zero id ending
+	 * them. As an {@link Iterator}, it throws an {@link UncheckedIOException} if
+	 * the file is not valid.
+	 */
+	private static final class Reader implements Iterator<Event> {
+
+		private final DataInputStream data;
+		private final List<String> types = new ArrayList<String>();
+		private long previous;
+		private long count;
+		private Event next;
+		private boolean ended;
+
+		Reader(DataInputStream data) throws IOException {
+			if (data.readInt() != MAGIC) {
+				throw new IOException("Not a snapshot file");
+			}
+			this.data = data;
+		}
+
+		@Override
+		public boolean hasNext() {
+			if (next == null && !ended) {
+				try {
+					next = decode();
+				} catch (IOException e) {
+					throw new UncheckedIOException(e);
+				}
+				ended = next == null;
+			}
+			return next != null;
+		}
+
+		@Override
+		public Event next() {
+			if (!hasNext()) {
+				throw new NoSuchElementException();
+			}
+			Event event = next;
+			next = null;
+			return event;
+		}
+
+		private Event decode() throws IOException {
+			long id = readVarLong(data);
+			if (id == 0) {
+				return null;
+			} else if (id == types.size() + 1) {
+				byte[] name = new byte[(int) readVarLong(data)];
+				data.readFully(name);
+				types.add(new String(name, StandardCharsets.UTF_8));
+			} else if (id > types.size()) {
+				throw new IOException("Corrupt snapshot file");
+			}
+
+			long timestamp = previous + readVarLong(data);
+			if (count++ > 0 && timestamp < previous) {
+				throw new IOException("Corrupt snapshot file");
+			}
+			previous = timestamp;
+			long length = readVarLong(data);
+			if (length > Integer.MAX_VALUE) {
+				throw new IOException("Corrupt snapshot file");
+			}
+			byte[] encoded = new byte[(int) length];
+			data.readFully(encoded);
+			return new Event(types.get((int) id - 1), timestamp, Payload.wrap(encoded));
+		}
+	}
+
+	private static void writeVarLong(DataOutputStream data, long value) throws IOException {
+		while ((value & ~0x7FL) != 0) {
+			data.writeByte((int) (value & 0x7F) | 0x80);
+			value >>>= 7;
+		}
+		data.writeByte((int) value);
+	}
+
+	private static long readVarLong(DataInputStream data) throws IOException {
+		long value = 0;
+		for (int shift = 0; shift < 64; shift += 7) {
+			int b = data.readUnsignedByte();
+			value |= (long) (b & 0x7F) << shift;
+			if ((b & 0x80) == 0) {
+				return value;
+			}
+		}
+		throw new IOException("Corrupt snapshot file");
+	}
+}
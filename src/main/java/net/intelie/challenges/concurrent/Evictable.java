@@ -0,0 +1,26 @@
+package net.intelie.challenges.concurrent;
+
+import java.util.Set;
+
+/**
+ * A store whose events a {@link RetentionEvictor} can evict, oldest first,
+ * in bulk.
+ */
+interface Evictable {
+
+	/**
+	 * @return the types currently held.
+	 */
+	Set<String> types();
+
+	/**
+	 * Evicts the events of the given {@param type} older than {@param cutoff}.
+	 */
+	void evictBefore(String type, long cutoff, Eviction eviction);
+
+	/**
+	 * Evicts the oldest events of the given {@param type} until at most
+	 * {@param maxCount} are left.
+	 */
+	void evictOldest(String type, long maxCount, Eviction eviction);
+}
@@ -0,0 +1,16 @@
+package net.intelie.challenges.concurrent;
+
+/**
+ * Accumulates what an eviction run removed. Not thread-safe: each run uses
+ * its own instance.
+ */
+final class Eviction {
+
+	long events;
+	long bytes;
+
+	void add(long events, long bytes) {
+		this.events += events;
+		this.bytes += bytes;
+	}
+}
@@ -0,0 +1,122 @@
+package net.intelie.challenges.concurrent;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.function.Consumer;
+
+import net.intelie.challenges.Event;
+import net.intelie.challenges.EventFilter;
+import net.intelie.challenges.EventIterator;
+
+/**
+ *
+ * <p>
+ * {@link EventIterator} over the events an {@link AttributeIndex} holds under
+ * one value, in a time range.
+ *
+ * <p>
+ * <br>
+ * Segments are visited in time order. Each one is copied when reached,
+ * keeping the events in the range which match the whole filter, and sorted
+ * by timestamp, so the memory of an open iterator is one segment. Events
+ * sharing a timestamp come in no particular order.
+ *
+ * <p>
+ * <br>
+ * The iterator pins a version of the store when created, see
+ * {@link Versions}, and keeps only the nodes visible in it, so it sees the
+ * events as they were then. Removed nodes stay indexed until they are
+ * unlinked, which waits for the pin to be released once the iterator is
+ * exhausted or closed.
+ *
+ */
+class IndexedEventIterator implements EventIterator {
+
+	private static final Comparator<ConcurrentEventIterator> BY_TIMESTAMP = Comparator
+			.comparingLong(node -> node.value.timestamp());
+
+	private final Iterator<Set<ConcurrentEventIterator>> segments;
+	private final long startTime;
+	private final long endTime;
+	private final EventFilter filter;
+	private final Versions.Pin pin;
+	private final Consumer<ConcurrentEventIterator> remover;
+
+	private final List<ConcurrentEventIterator> segment = new ArrayList<ConcurrentEventIterator>();
+	private int position;
+	private ConcurrentEventIterator node;
+	private boolean closed;
+
+	/**
+	 * @param endTime inclusive.
+	 * @param remover removes the event of a node from the store.
+	 */
+	IndexedEventIterator(Iterator<Set<ConcurrentEventIterator>> segments, long startTime, long endTime,
+			EventFilter filter, Versions versions, Consumer<ConcurrentEventIterator> remover) {
+		this.segments = segments;
+		this.startTime = startTime;
+		this.endTime = endTime;
+		this.filter = filter;
+		this.pin = versions.pin(this);
+		this.remover = remover;
+	}
+
+	/**
+	 * @return the version this iterator reads.
+	 */
+	long version() {
+		return pin.version;
+	}
+
+	@Override
+	public boolean moveNext() {
+		while (position == segment.size()) {
+			segment.clear();
+			position = 0;
+			if (closed || !segments.hasNext()) {
+				node = null;
+				pin.release();
+				return false;
+			}
+			for (ConcurrentEventIterator candidate : segments.next()) {
+				Event value = candidate.value;
+				if (value.timestamp() >= startTime && value.timestamp() <= endTime
+						&& candidate.visibleAt(pin.version) && filter.test(value.payload())) {
+					segment.add(candidate);
+				}
+			}
+			segment.sort(BY_TIMESTAMP);
+		}
+		node = segment.get(position++);
+		return true;
+	}
+
+	@Override
+	public Event current() {
+		if (node == null) {
+			throw new IllegalStateException();
+		}
+		return node.value;
+	}
+
+	@Override
+	public void remove() {
+		if (node == null) {
+			throw new IllegalStateException();
+		}
+		remover.accept(node);
+		node = null;
+	}
+
+	@Override
+	public void close() {
+		closed = true;
+		node = null;
+		segment.clear();
+		position = 0;
+		pin.release();
+	}
+}
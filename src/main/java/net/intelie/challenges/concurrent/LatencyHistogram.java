@@ -0,0 +1,95 @@
+package net.intelie.challenges.concurrent;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ *
+ * <p>
+ * A thread-safe histogram of non-negative values, such as latencies in
+ * nanoseconds.
+ *
+ * <p>
+ * <br>
+ * Values are counted in power-of-two buckets, so recording is a few
+ * instructions and the memory is fixed, and every value is known within a
+ * factor of two: {@link #percentile(double)} answers with the upper bound of
+ * the bucket.
+ *
+ */
+public final class LatencyHistogram {
+
+	private final AtomicLongArray buckets = new AtomicLongArray(Long.SIZE);
+	private final LongAdder sum = new LongAdder();
+
+	/**
+	 * Counts the given {@param value}. Negative values count as zero.
+	 */
+	public void record(long value) {
+		if (value < 0) {
+			value = 0;
+		}
+		buckets.incrementAndGet(Long.SIZE - Long.numberOfLeadingZeros(value));
+		sum.add(value);
+	}
+
+	public long count() {
+		long count = 0L;
+		for (int i = 0; i < buckets.length(); i++) {
+			count += buckets.get(i);
+		}
+		return count;
+	}
+
+	/**
+	 * @return the sum of the recorded values.
+	 */
+	public long sum() {
+		return sum.sum();
+	}
+
+	/**
+	 * @return the mean of the recorded values, or zero if there is none.
+	 */
+	public double mean() {
+		long count = count();
+		return count == 0 ? 0d : sum() / (double) count;
+	}
+
+	/**
+	 * @param quantile between zero and one, as 0.99 for the 99th percentile.
+	 * @return a value not lower than the given {@param quantile} of the recorded
+	 *         values, and lower than twice it, or zero if there is none.
+	 */
+	public long percentile(double quantile) {
+		if (quantile < 0d || quantile > 1d) {
+			throw new IllegalArgumentException("Quantile must be between 0 and 1");
+		}
+		long[] counts = new long[buckets.length()];
+		long count = 0L;
+		for (int i = 0; i < counts.length; i++) {
+			counts[i] = buckets.get(i);
+			count += counts[i];
+		}
+		if (count == 0) {
+			return 0L;
+		}
+
+		long rank = Math.max(1L, (long) Math.ceil(quantile * count));
+		long seen = 0L;
+		for (int i = 0; i < counts.length; i++) {
+			seen += counts[i];
+			if (seen >= rank) {
+				// bucket i holds the values with i significant bits.
+				return i == 0 ? 0L : i == Long.SIZE - 1 ? Long.MAX_VALUE : (1L << i) - 1;
+			}
+		}
+		return Long.MAX_VALUE;
+	}
+
+	@Override
+	public String toString() {
+		return "LatencyHistogram [count=" + count() + ", mean=" + mean() + ", p50=" + percentile(0.5) + ", p99="
+				+ percentile(0.99) + "]";
+	}
+}
@@ -0,0 +1,41 @@
+package net.intelie.challenges.concurrent;
+
+import net.intelie.challenges.Event;
+import net.intelie.challenges.EventIterator;
+
+/**
+ * <p>
+ * {@link EventIterator} of a {@link WriteAheadLogEventStore}. It iterates the
+ * delegate's iterator as is, but routes {@link #remove()} through the store so
+ * the removal is logged.
+ */
+class LoggedEventIterator implements EventIterator {
+
+	private final WriteAheadLogEventStore store;
+	private final EventIterator iterator;
+
+	LoggedEventIterator(WriteAheadLogEventStore store, EventIterator iterator) {
+		this.store = store;
+		this.iterator = iterator;
+	}
+
+	@Override
+	public boolean moveNext() {
+		return iterator.moveNext();
+	}
+
+	@Override
+	public Event current() {
+		return iterator.current();
+	}
+
+	@Override
+	public void remove() {
+		store.remove(iterator);
+	}
+
+	@Override
+	public void close() throws Exception {
+		iterator.close();
+	}
+}
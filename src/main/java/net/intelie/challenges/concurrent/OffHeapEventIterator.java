@@ -0,0 +1,131 @@
+package net.intelie.challenges.concurrent;
+
+import java.nio.ByteBuffer;
+
+import net.intelie.challenges.Event;
+import net.intelie.challenges.EventIterator;
+import net.intelie.challenges.Payload;
+
+/**
+ * 
+ * <p>
+ * {@link EventIterator} over the events of one type of an
+ * {@link OffHeapEventStore}.
+ * 
+ * <p>
+ * <br>
+ * Matching timestamps are copied from the segments in batches of
+ * {@value #BATCH_SIZE} under the store read lock. The {@link Event} returned
+ * by {@link #current()} is created on demand, with the interned type name,
+ * and so is the view of its {@link Payload}, over the page which holds it.
+ * Iteration is weakly consistent in the same way as
+ * {@link ColumnarEventIterator}.
+ *
+ */
+class OffHeapEventIterator implements EventIterator {
+
+	static final int BATCH_SIZE = 64;
+
+	private final OffHeapEventStore store;
+	private final String type;
+	private final int typeId;
+	private final long endTime;
+
+	private final long[] batch = new long[BATCH_SIZE];
+	private final ByteBuffer[] pages = new ByteBuffer[BATCH_SIZE];
+	private final int[] offsets = new int[BATCH_SIZE];
+	private int batchSize;
+	private int batchPos;
+
+	private long fromTime;
+	private int skip;
+
+	private boolean positioned;
+	private long timestamp;
+	private ByteBuffer page;
+	private int offset;
+	private Payload payload;
+	private Event event;
+
+	OffHeapEventIterator(OffHeapEventStore store, String type, int typeId, long startTime, long endTime) {
+		this.store = store;
+		this.type = type;
+		this.typeId = typeId;
+		this.fromTime = startTime;
+		this.endTime = endTime;
+	}
+
+	@Override
+	public boolean moveNext() {
+		if (batchPos == batchSize) {
+			batchSize = store.read(typeId, fromTime, skip, endTime, batch, pages, offsets);
+			batchPos = 0;
+			if (batchSize == 0) {
+				positioned = false;
+				event = null;
+				return false;
+			}
+		}
+
+		page = pages[batchPos];
+		offset = offsets[batchPos];
+		pages[batchPos] = null;
+		timestamp = batch[batchPos++];
+		payload = null;
+		event = null;
+		positioned = true;
+
+		// remembers where the next batch starts.
+		if (timestamp == fromTime) {
+			++skip;
+		} else {
+			fromTime = timestamp;
+			skip = 1;
+		}
+		return true;
+	}
+
+	@Override
+	public Event current() {
+		if (!positioned) {
+			throw new IllegalStateException();
+		}
+		if (event == null) {
+			event = new Event(type, timestamp, payload());
+		}
+		return event;
+	}
+
+	@Override
+	public Payload payload() {
+		if (!positioned) {
+			throw new IllegalStateException();
+		}
+		if (payload == null) {
+			payload = page == null ? Payload.EMPTY : PayloadArena.view(page, offset);
+		}
+		return payload;
+	}
+
+	@Override
+	public void remove() {
+		if (!positioned) {
+			throw new IllegalStateException();
+		}
+		positioned = false;
+		event = null;
+
+		if (store.remove(typeId, timestamp, skip - 1)) {
+			--skip;
+		}
+	}
+
+	@Override
+	public void close() {
+		positioned = false;
+		page = null;
+		payload = null;
+		event = null;
+		batchPos = batchSize;
+	}
+}
@@ -0,0 +1,524 @@
+package net.intelie.challenges.concurrent;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import net.intelie.challenges.Event;
+import net.intelie.challenges.EventIterator;
+import net.intelie.challenges.EventStore;
+import net.intelie.challenges.Payload;
+
+/**
+ * 
+ * <p>
+ * An {@link EventStore} which keeps its events outside of the Java heap.
+ * 
+ * <p>
+ * <br>
+ * Each event is a 16 bytes record, its <i>timestamp</i> followed by the id of
+ * its type (see {@link TypeRegistry}) and the reference of its
+ * {@link Payload} in a {@link PayloadArena}, written into direct
+ * {@link ByteBuffer} segments. Records are sorted by timestamp across
+ * segments, which are found by binary search on their first timestamp. The
+ * garbage collector only sees one {@link Segment} and one buffer per
+ * {@value #DEFAULT_SEGMENT_CAPACITY} events, however many events are stored,
+ * so a large retention window does not make collections longer.
+ * 
+ * <p>
+ * <br>
+ * The store is guarded by a single {@link ReentrantReadWriteLock}: queries
+ * share it and copy matching records out in batches, writers are exclusive.
+ * An insert shifts the records of a single segment in bulk; appends fill
+ * segments completely and a full segment receiving an older event is split
+ * in two. {@link #removeAll(String)} compacts every segment in one pass.
+ * 
+ * <p>
+ * <br>
+ * This lock is the limit of the store: inserts never run in parallel, even
+ * into different segments, and each batch copied by a query waits for the
+ * writer in progress, so under concurrent writers it scales far less than
+ * {@link ConcurrentSortedEventStore}, whose writers lock a few nodes only.
+ * Locking each segment would lift it, at the cost of splits and of
+ * {@link #removeAll(String)} taking several locks.
+ * 
+ * <p>
+ * <br>
+ * The memory of a segment is released when its buffer is collected, which
+ * happens once it is dropped from the store. The payloads read by a query are
+ * views over the pages of the arena, which are not copied and only decoded
+ * as their attributes are read.
+ *
+ */
+public class OffHeapEventStore implements EventStore {
+
+	static final int DEFAULT_SEGMENT_CAPACITY = 8192;
+
+	static final int RECORD_SIZE = 16;
+
+	private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+	private final TypeRegistry types = new TypeRegistry();
+	private final PayloadArena payloads = new PayloadArena();
+	private final ArrayList<Segment> segments = new ArrayList<Segment>();
+	private final int segmentCapacity;
+	private int length;
+
+	public OffHeapEventStore() {
+		this(DEFAULT_SEGMENT_CAPACITY);
+	}
+
+	/**
+	 * 
+	 * @param segmentCapacity the number of events of each segment.
+	 */
+	public OffHeapEventStore(int segmentCapacity) {
+		if (segmentCapacity < 2) {
+			throw new IllegalArgumentException("Segment capacity must be at least 2");
+		}
+		this.segmentCapacity = segmentCapacity;
+	}
+
+	@Override
+	public void insert(Event event) {
+		if (event == null) {
+			throw new IllegalArgumentException("Event cannot be null");
+		} else if (event.type() == null || event.type().trim().isEmpty()) {
+			throw new IllegalArgumentException("Type cannot be null or empty");
+		}
+
+		int typeId = types.intern(event.type());
+
+		lock.writeLock().lock();
+		try {
+			insertLocked(event.timestamp(), typeId, payloads.add(event.payload()));
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * <p>
+	 * Sorts the batch by <i>timestamp</i> and inserts it under a single
+	 * acquisition of the store lock.
+	 */
+	@Override
+	public void insertAll(Collection<Event> events) {
+		Event[] batch = events.toArray(new Event[events.size()]);
+		for (Event event : batch) {
+			if (event == null) {
+				throw new IllegalArgumentException("Event cannot be null");
+			} else if (event.type() == null || event.type().trim().isEmpty()) {
+				throw new IllegalArgumentException("Type cannot be null or empty");
+			}
+		}
+		Arrays.sort(batch, Comparator.comparingLong(Event::timestamp));
+
+		int[] typeIds = new int[batch.length];
+		for (int i = 0; i < batch.length; i++) {
+			typeIds[i] = types.intern(batch[i].type());
+		}
+
+		lock.writeLock().lock();
+		try {
+			for (int i = 0; i < batch.length; i++) {
+				insertLocked(batch[i].timestamp(), typeIds[i], payloads.add(batch[i].payload()));
+			}
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	private void insertLocked(long timestamp, int typeId, int payloadRef) {
+		if (segments.isEmpty()) {
+			segments.add(new Segment(segmentCapacity));
+		}
+
+		int s = segmentFor(timestamp);
+		Segment segment = segments.get(s);
+		int pos = segment.upperBound(timestamp);
+		if (segment.size == segmentCapacity) {
+			if (s == segments.size() - 1 && pos == segment.size) {
+				// appending: start a new segment and keep this one full.
+				segment = new Segment(segmentCapacity);
+				segments.add(segment);
+				pos = 0;
+			} else {
+				Segment upper = segment.split(segmentCapacity);
+				segments.add(s + 1, upper);
+				if (pos > segment.size) {
+					pos -= segment.size;
+					segment = upper;
+				}
+			}
+		}
+
+		segment.insert(pos, timestamp, typeId, payloadRef);
+		++length;
+	}
+
+	@Override
+	public void removeAll(String type) {
+		if (type == null || type.trim().isEmpty()) {
+			throw new IllegalArgumentException("Type cannot be null or empty");
+		}
+
+		int typeId = types.idOf(type);
+		if (typeId == TypeRegistry.UNKNOWN) {
+			return;
+		}
+
+		lock.writeLock().lock();
+		try {
+			for (int s = segments.size() - 1; s >= 0; s--) {
+				Segment segment = segments.get(s);
+				length -= segment.removeAll(typeId, payloads);
+				if (segment.size == 0) {
+					segments.remove(s);
+				}
+			}
+			compactPayloads();
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * Returns an {@link EventIterator} positioned before the first {@link Event}
+	 * of the given {@param type} with <i>timestamp</i> in the range from
+	 * {@param startTime} (inclusive) to {@param endTime} (exclusive).
+	 */
+	@Override
+	public EventIterator query(String type, long startTime, long endTime) {
+		if (startTime > endTime) {
+			throw new IllegalArgumentException("startTime greater than endTime");
+		} else if (type == null || type.trim().isEmpty()) {
+			throw new IllegalArgumentException("Type cannot be null or empty");
+		}
+
+		int typeId = types.idOf(type);
+		if (typeId == TypeRegistry.UNKNOWN) {
+			return EmptyEventIterator.INSTANCE;
+		}
+		return new OffHeapEventIterator(this, type, typeId, startTime, endTime);
+	}
+
+	/**
+	 * <p>
+	 * Merges every type registered when called.
+	 */
+	@Override
+	public EventIterator queryAll(long startTime, long endTime) {
+		Set<String> all = new HashSet<String>();
+		for (int id = 0; id < types.size(); id++) {
+			all.add(types.nameOf(id));
+		}
+		return query(all, startTime, endTime);
+	}
+
+	public int length() {
+		lock.readLock().lock();
+		try {
+			return length;
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * @return the number of off-heap segments.
+	 */
+	public int segmentCount() {
+		lock.readLock().lock();
+		try {
+			return segments.size();
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * @return the bytes held off the Java heap, by the segments and the pages
+	 *         of payloads.
+	 */
+	public long offHeapBytes() {
+		lock.readLock().lock();
+		try {
+			return (long) segments.size() * segmentCapacity * RECORD_SIZE + payloads.allocated();
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * Copies into {@param into} the timestamps of the given type lower than
+	 * {@param endTime} that follow the first {@param skip} ones of that type
+	 * greater or equal than {@param fromTime}. The payload of each is given by
+	 * the page copied into {@param pagesInto}, or {@code null} if it has none,
+	 * and the offset copied into {@param offsetsInto}, see
+	 * {@link PayloadArena#view(ByteBuffer, int)}.
+	 * 
+	 * @return how many timestamps were copied.
+	 */
+	int read(int typeId, long fromTime, int skip, long endTime, long[] into, ByteBuffer[] pagesInto,
+			int[] offsetsInto) {
+		lock.readLock().lock();
+		try {
+			int count = 0;
+			for (int s = firstSegment(fromTime); s < segments.size() && count < into.length; s++) {
+				Segment segment = segments.get(s);
+				for (int pos = segment.lowerBound(fromTime); pos < segment.size && count < into.length; pos++) {
+					long timestamp = segment.timestamp(pos);
+					if (timestamp >= endTime) {
+						return count;
+					}
+					if (segment.typeId(pos) != typeId) {
+						continue;
+					}
+					if (skip > 0 && timestamp == fromTime) {
+						--skip;
+						continue;
+					}
+					int ref = segment.payloadRef(pos);
+					if (ref == PayloadArena.NONE) {
+						pagesInto[count] = null;
+					} else {
+						// the page itself, since its slot may be reused once released.
+						pagesInto[count] = payloads.page(ref);
+						offsetsInto[count] = PayloadArena.offset(ref);
+					}
+					into[count++] = timestamp;
+				}
+			}
+			return count;
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * Removes the {@param occurrence}-th (zero based) event of the given type
+	 * with the given {@param timestamp}.
+	 * 
+	 * @return false if there is no such event.
+	 */
+	boolean remove(int typeId, long timestamp, int occurrence) {
+		lock.writeLock().lock();
+		try {
+			for (int s = firstSegment(timestamp); s < segments.size(); s++) {
+				Segment segment = segments.get(s);
+				for (int pos = segment.lowerBound(timestamp); pos < segment.size; pos++) {
+					if (segment.timestamp(pos) != timestamp) {
+						return false;
+					}
+					if (segment.typeId(pos) == typeId && occurrence-- == 0) {
+						payloads.release(segment.payloadRef(pos));
+						segment.remove(pos);
+						--length;
+						if (segment.size == 0) {
+							segments.remove(s);
+						}
+						compactPayloads();
+						return true;
+					}
+				}
+			}
+			return false;
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * Moves the payloads of the sparse pages of the arena into new pages once it
+	 * is fragmented, so the sparse pages are dropped, see
+	 * {@link PayloadArena#fragmented()}. Each payload moved has its reference
+	 * rewritten in its record; the views given to queries keep the old pages.
+	 * The caller must hold the write lock.
+	 */
+	private void compactPayloads() {
+		if (!payloads.fragmented()) {
+			return;
+		}
+		payloads.seal();
+		for (Segment segment : segments) {
+			for (int pos = 0; pos < segment.size; pos++) {
+				int ref = segment.payloadRef(pos);
+				if (payloads.sparse(ref)) {
+					segment.payloadRef(pos, payloads.move(ref));
+				}
+			}
+		}
+	}
+
+	/**
+	 * @return the index of the segment a new timestamp belongs to: the last one
+	 *         whose first timestamp is not greater than it.
+	 */
+	private int segmentFor(long timestamp) {
+		int low = 0;
+		int high = segments.size() - 1;
+		while (low < high) {
+			int mid = (low + high + 1) >>> 1;
+			if (segments.get(mid).timestamp(0) <= timestamp) {
+				low = mid;
+			} else {
+				high = mid - 1;
+			}
+		}
+		return low;
+	}
+
+	/**
+	 * @return the index of the first segment whose last timestamp is not lower
+	 *         than the given one.
+	 */
+	private int firstSegment(long timestamp) {
+		int low = 0;
+		int high = segments.size();
+		while (low < high) {
+			int mid = (low + high) >>> 1;
+			Segment segment = segments.get(mid);
+			if (segment.timestamp(segment.size - 1) < timestamp) {
+				low = mid + 1;
+			} else {
+				high = mid;
+			}
+		}
+		return low;
+	}
+
+	/**
+	 * A sorted run of records in a direct buffer. Not thread-safe: guarded by
+	 * the store lock.
+	 */
+	static final class Segment {
+		private final ByteBuffer buffer;
+		int size;
+
+		Segment(int capacity) {
+			this.buffer = ByteBuffer.allocateDirect(capacity * RECORD_SIZE);
+		}
+
+		long timestamp(int pos) {
+			return buffer.getLong(pos * RECORD_SIZE);
+		}
+
+		int typeId(int pos) {
+			return buffer.getInt(pos * RECORD_SIZE + 8);
+		}
+
+		int payloadRef(int pos) {
+			return buffer.getInt(pos * RECORD_SIZE + 12);
+		}
+
+		void payloadRef(int pos, int payloadRef) {
+			buffer.putInt(pos * RECORD_SIZE + 12, payloadRef);
+		}
+
+		void insert(int pos, long timestamp, int typeId, int payloadRef) {
+			copy(this, pos, pos + 1, size - pos);
+			write(pos, timestamp, typeId, payloadRef);
+			++size;
+		}
+
+		void remove(int pos) {
+			copy(this, pos + 1, pos, size - pos - 1);
+			--size;
+		}
+
+		/**
+		 * Releases the payloads of the removed records from {@param payloads}.
+		 * 
+		 * @return how many records were removed.
+		 */
+		int removeAll(int typeId, PayloadArena payloads) {
+			int kept = 0;
+			for (int i = 0; i < size;) {
+				if (typeId(i) == typeId) {
+					payloads.release(payloadRef(i++));
+					continue;
+				}
+				// each run of kept records is moved down at once.
+				int start = i;
+				while (i < size && typeId(i) != typeId) {
+					i++;
+				}
+				if (kept != start) {
+					copy(this, start, kept, i - start);
+				}
+				kept += i - start;
+			}
+			int removed = size - kept;
+			size = kept;
+			return removed;
+		}
+
+		/**
+		 * Moves the upper half of the records to a new segment.
+		 */
+		Segment split(int capacity) {
+			Segment upper = new Segment(capacity);
+			int half = size / 2;
+			upper.copy(this, half, 0, size - half);
+			upper.size = size - half;
+			size = half;
+			return upper;
+		}
+
+		int lowerBound(long timestamp) {
+			int low = 0;
+			int high = size;
+			while (low < high) {
+				int mid = (low + high) >>> 1;
+				if (timestamp(mid) < timestamp) {
+					low = mid + 1;
+				} else {
+					high = mid;
+				}
+			}
+			return low;
+		}
+
+		int upperBound(long timestamp) {
+			int low = 0;
+			int high = size;
+			while (low < high) {
+				int mid = (low + high) >>> 1;
+				if (timestamp(mid) <= timestamp) {
+					low = mid + 1;
+				} else {
+					high = mid;
+				}
+			}
+			return low;
+		}
+
+		/**
+		 * Copies {@param count} records of the {@param source} segment, from
+		 * {@param from}, to {@param to} in this one, in bulk. The ranges may
+		 * overlap when the source is this segment: a buffer put into itself is
+		 * copied as if through an intermediate buffer.
+		 */
+		private void copy(Segment source, int from, int to, int count) {
+			if (count <= 0) {
+				return;
+			}
+			ByteBuffer records = source.buffer.duplicate();
+			records.limit((from + count) * RECORD_SIZE).position(from * RECORD_SIZE);
+			ByteBuffer target = buffer.duplicate();
+			target.position(to * RECORD_SIZE);
+			target.put(records);
+		}
+
+		private void write(int pos, long timestamp, int typeId, int payloadRef) {
+			buffer.putLong(pos * RECORD_SIZE, timestamp);
+			buffer.putInt(pos * RECORD_SIZE + 8, typeId);
+			buffer.putInt(pos * RECORD_SIZE + 12, payloadRef);
+		}
+	}
+}
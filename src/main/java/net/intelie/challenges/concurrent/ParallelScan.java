@@ -0,0 +1,277 @@
+package net.intelie.challenges.concurrent;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.Spliterator;
+import java.util.TreeSet;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+import net.intelie.challenges.Event;
+import net.intelie.challenges.EventIterator;
+
+/**
+ *
+ * <p>
+ * A range query of a {@link ConcurrentSortedEventStore} split into spans
+ * scanned in parallel.
+ *
+ * <p>
+ * <br>
+ * The range is cut at the checkpoints of the chain and at the first
+ * timestamps of the sealed blocks within it, so each span is entered from its
+ * own checkpoint or block, and walks about one pagination of the chain or one
+ * block. A checkpoint cuts right after its <i>timestamp</i>, since events
+ * sharing it may come before it in the chain. Spans are disjoint and ordered,
+ * so their events, each span read whole into a list, are in order once
+ * concatenated.
+ *
+ * <p>
+ * <br>
+ * The scan pins a version when created, see {@link Versions}, and every span
+ * reads the chain and the cold tier as of it, whatever thread runs it. The
+ * pin is released once every span was read, when the scan is closed, or when
+ * it is garbage collected.
+ *
+ */
+final class ParallelScan {
+
+	private final ConcurrentSortedEventStore store;
+	private final Set<String> types;
+	private final Versions.Pin pin;
+	private final ColdTier.State cold;
+
+	/**
+	 * Span {@code i} goes from {@code bounds[i]} (inclusive) to
+	 * {@code bounds[i + 1]} (exclusive).
+	 */
+	private final long[] bounds;
+
+	private final AtomicInteger unread;
+	private final LongAdder nodes = new LongAdder();
+	private final long start;
+
+	/**
+	 * @param types   the types of the events to return.
+	 * @param endTime exclusive, greater than {@param startTime}.
+	 */
+	ParallelScan(ConcurrentSortedEventStore store, Set<String> types, long startTime, long endTime) {
+		this.store = store;
+		this.types = types;
+		this.start = store.startTimer();
+		this.pin = store.versions.pin(this);
+		this.cold = store.cold.state(pin.version);
+
+		TreeSet<Long> cuts = new TreeSet<Long>();
+		for (ConcurrentEventIterator checkpoint : store.checkPoint) {
+			Event value = checkpoint.value;
+			if (value != null && value.timestamp() >= startTime && value.timestamp() < endTime - 1) {
+				cuts.add(value.timestamp() + 1);
+			}
+		}
+		for (ColdBlock block : cold.blocks) {
+			if (block.minTime > startTime && block.minTime < endTime) {
+				cuts.add(block.minTime);
+			}
+		}
+		bounds = new long[cuts.size() + 2];
+		bounds[0] = startTime;
+		int i = 1;
+		for (long cut : cuts) {
+			bounds[i++] = cut;
+		}
+		bounds[i] = endTime;
+		unread = new AtomicInteger(spans());
+	}
+
+	int spans() {
+		return bounds.length - 1;
+	}
+
+	/**
+	 * @return the events of the given {@param span}, in order: the sealed ones
+	 *         first among those sharing a <i>timestamp</i>, as in the other
+	 *         queries.
+	 */
+	List<Event> read(int span) {
+		long from = bounds[span];
+		long to = bounds[span + 1];
+		List<Event> hot = new ArrayList<Event>();
+		// type filters cache their verdicts, so each span has its own.
+		nodes.add(store.walk(pin.version, new TypeFilter(store.registry, types), from, to, false, node -> {
+			hot.add(node.value);
+			return true;
+		}));
+
+		List<Event> events = hot;
+		if (!cold.isEmpty()) {
+			events = new ArrayList<Event>(hot.size());
+			EventIterator sealed = new ColdEventIterator(store.cold, cold, types, from, to - 1, null);
+			int i = 0;
+			while (sealed.moveNext()) {
+				Event event = sealed.current();
+				while (i < hot.size() && hot.get(i).timestamp() < event.timestamp()) {
+					events.add(hot.get(i++));
+				}
+				events.add(event);
+			}
+			events.addAll(hot.subList(i, hot.size()));
+		}
+
+		if (unread.decrementAndGet() == 0) {
+			store.queried(start, nodes.sum());
+			close();
+		}
+		return events;
+	}
+
+	void close() {
+		pin.release();
+	}
+
+	/**
+	 * @return an iterator over the events of every span, in order, reading up
+	 *         to {@param window} spans ahead on the given {@param pool}.
+	 */
+	EventIterator iterator(ForkJoinPool pool, int window) {
+		return new OrderedIterator(pool, window);
+	}
+
+	/**
+	 * @return a spliterator over the events of every span, in order, split
+	 *         between spans.
+	 */
+	Spliterator<Event> spliterator() {
+		return new SpanSpliterator(0, spans());
+	}
+
+	/**
+	 * Submits the spans in order, keeping a bounded number of them in flight,
+	 * and returns their events as each one is joined in turn.
+	 */
+	private final class OrderedIterator implements EventIterator {
+		private final ForkJoinPool pool;
+		private final int window;
+		private final ArrayDeque<ForkJoinTask<List<Event>>> pending = new ArrayDeque<ForkJoinTask<List<Event>>>();
+		private int submitted;
+		private List<Event> span;
+		private int position;
+		private Event event;
+		private boolean finished;
+
+		OrderedIterator(ForkJoinPool pool, int window) {
+			this.pool = pool;
+			this.window = window;
+		}
+
+		@Override
+		public boolean moveNext() {
+			event = null;
+			if (finished) {
+				return false;
+			}
+			while (span == null || position == span.size()) {
+				while (pending.size() < window && submitted < spans()) {
+					int next = submitted++;
+					pending.add(pool.submit(() -> read(next)));
+				}
+				if (pending.isEmpty()) {
+					finished = true;
+					span = null;
+					return false;
+				}
+				span = pending.poll().join();
+				position = 0;
+			}
+			event = span.get(position++);
+			return true;
+		}
+
+		@Override
+		public Event current() {
+			if (event == null) {
+				throw new IllegalStateException();
+			}
+			return event;
+		}
+
+		@Override
+		public void remove() {
+			if (event == null) {
+				throw new IllegalStateException();
+			}
+			store.remove(event);
+			event = null;
+		}
+
+		@Override
+		public void close() {
+			finished = true;
+			event = null;
+			span = null;
+			for (ForkJoinTask<List<Event>> task : pending) {
+				task.cancel(false);
+			}
+			pending.clear();
+			ParallelScan.this.close();
+		}
+	}
+
+	/**
+	 * Covers the spans from {@link #from} (inclusive) to {@link #to}
+	 * (exclusive), and splits off the first half of those not started yet.
+	 */
+	private final class SpanSpliterator implements Spliterator<Event> {
+		private int from;
+		private final int to;
+		private List<Event> span;
+		private int position;
+
+		SpanSpliterator(int from, int to) {
+			this.from = from;
+			this.to = to;
+		}
+
+		@Override
+		public boolean tryAdvance(Consumer<? super Event> action) {
+			while (span == null || position == span.size()) {
+				if (from == to) {
+					span = null;
+					return false;
+				}
+				span = read(from++);
+				position = 0;
+			}
+			action.accept(span.get(position++));
+			return true;
+		}
+
+		@Override
+		public Spliterator<Event> trySplit() {
+			// a span being read comes before the others, so it is never split off.
+			if ((span != null && position < span.size()) || to - from < 2) {
+				return null;
+			}
+			int middle = (from + to) >>> 1;
+			SpanSpliterator prefix = new SpanSpliterator(from, middle);
+			from = middle;
+			return prefix;
+		}
+
+		@Override
+		public long estimateSize() {
+			// in spans, which hold about a pagination or a block each.
+			return to - from + (span != null && position < span.size() ? 1 : 0);
+		}
+
+		@Override
+		public int characteristics() {
+			return ORDERED | NONNULL | IMMUTABLE;
+		}
+	}
+}
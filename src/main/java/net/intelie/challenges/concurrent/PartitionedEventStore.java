@@ -0,0 +1,191 @@
+package net.intelie.challenges.concurrent;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+import net.intelie.challenges.Event;
+import net.intelie.challenges.EventIterator;
+import net.intelie.challenges.EventStore;
+import net.intelie.challenges.MergingEventIterator;
+import net.intelie.challenges.Order;
+
+/**
+ * 
+ * <p>
+ * An {@link EventStore} partitioned by event type.
+ * 
+ * <p>
+ * <br>
+ * Each type owns its own time-ordered store, created on demand by the
+ * <i>partitionFactory</i> given on the constructor and kept in a
+ * {@link ConcurrentHashMap}. A query only touches the partition of the
+ * requested type, so its cost no longer depends on how many events of other
+ * types share the same time range. {@link #removeAll(String)} detaches the
+ * whole partition from the map in O(1); the detached events become garbage
+ * once no open iterator references them.
+ * 
+ * <p>
+ * <br>
+ * An insert racing with {@link #removeAll(String)} of the same type may land
+ * in the partition being detached. This is the same outcome as the insert
+ * being ordered before the removal, which is allowed since both operations
+ * overlap in time.
+ *
+ */
+public class PartitionedEventStore implements EventStore {
+
+	private final ConcurrentHashMap<String, EventStore> partitions = new ConcurrentHashMap<String, EventStore>();
+
+	private final Supplier<? extends EventStore> partitionFactory;
+
+	/**
+	 * <p>
+	 * This constructor keeps each type in its own
+	 * {@link ConcurrentSortedEventStore} with the default configuration.
+	 */
+	public PartitionedEventStore() {
+		this(ConcurrentSortedEventStore::new);
+	}
+
+	/**
+	 * 
+	 * @param partitionFactory creates the store of a type the first time an event
+	 *                         of that type is inserted.
+	 */
+	public PartitionedEventStore(Supplier<? extends EventStore> partitionFactory) {
+		if (partitionFactory == null) {
+			throw new IllegalArgumentException("Partition factory cannot be null");
+		}
+		this.partitionFactory = partitionFactory;
+	}
+
+	@Override
+	public void insert(Event event) {
+		if (event == null) {
+			throw new IllegalArgumentException("Event cannot be null");
+		} else if (event.type() == null || event.type().trim().isEmpty()) {
+			throw new IllegalArgumentException("Type cannot be null or empty");
+		}
+
+		partitions.computeIfAbsent(event.type(), type -> partitionFactory.get()).insert(event);
+	}
+
+	/**
+	 * <p>
+	 * Groups the batch by type and hands each group to its partition as a
+	 * single batch.
+	 */
+	@Override
+	public void insertAll(Collection<Event> events) {
+		Map<String, List<Event>> groups = new HashMap<String, List<Event>>();
+		for (Event event : events) {
+			if (event == null) {
+				throw new IllegalArgumentException("Event cannot be null");
+			} else if (event.type() == null || event.type().trim().isEmpty()) {
+				throw new IllegalArgumentException("Type cannot be null or empty");
+			}
+			groups.computeIfAbsent(event.type(), type -> new ArrayList<Event>()).add(event);
+		}
+
+		for (Map.Entry<String, List<Event>> group : groups.entrySet()) {
+			partitions.computeIfAbsent(group.getKey(), type -> partitionFactory.get()).insertAll(group.getValue());
+		}
+	}
+
+	@Override
+	public void removeAll(String type) {
+		if (type == null || type.trim().isEmpty()) {
+			throw new IllegalArgumentException("Type cannot be null or empty");
+		}
+
+		partitions.remove(type);
+	}
+
+	/**
+	 * <p>
+	 * Delegates to the partition of the given {@param type}. The returned
+	 * {@link EventIterator} is never {@code null} and starts before the first
+	 * event, whether the type has no partition, the partition has no event in
+	 * the range or it has some.
+	 */
+	@Override
+	public EventIterator query(String type, long startTime, long endTime) {
+		if (startTime > endTime) {
+			throw new IllegalArgumentException("startTime greater than endTime");
+		} else if (type == null || type.trim().isEmpty()) {
+			throw new IllegalArgumentException("Type cannot be null or empty");
+		}
+
+		EventStore partition = partitions.get(type);
+		if (partition == null) {
+			return EmptyEventIterator.INSTANCE;
+		}
+		return partition.query(type, startTime, endTime);
+	}
+
+	@Override
+	public EventIterator query(String type, long startTime, long endTime, Order order, int limit) {
+		if (startTime > endTime) {
+			throw new IllegalArgumentException("startTime greater than endTime");
+		} else if (type == null || type.trim().isEmpty()) {
+			throw new IllegalArgumentException("Type cannot be null or empty");
+		} else if (order == null) {
+			throw new IllegalArgumentException("Order cannot be null");
+		} else if (limit <= 0) {
+			throw new IllegalArgumentException("Limit must be positive");
+		}
+
+		EventStore partition = partitions.get(type);
+		if (partition == null) {
+			return EmptyEventIterator.INSTANCE;
+		}
+		return partition.query(type, startTime, endTime, order, limit);
+	}
+
+	/**
+	 * <p>
+	 * Merges the partitions of the given {@param types} lazily. Each partition is
+	 * read through its own multi-type query, which follows the
+	 * {@link EventStore} contract whatever its single-type query does.
+	 */
+	@Override
+	public EventIterator query(Set<String> types, long startTime, long endTime) {
+		if (startTime > endTime) {
+			throw new IllegalArgumentException("startTime greater than endTime");
+		}
+		return merge(TypeRegistry.validated(types), startTime, endTime);
+	}
+
+	@Override
+	public EventIterator queryAll(long startTime, long endTime) {
+		if (startTime > endTime) {
+			throw new IllegalArgumentException("startTime greater than endTime");
+		}
+		return merge(new ArrayList<String>(partitions.keySet()), startTime, endTime);
+	}
+
+	private EventIterator merge(Collection<String> types, long startTime, long endTime) {
+		List<EventIterator> iterators = new ArrayList<EventIterator>(types.size());
+		for (String type : types) {
+			EventStore partition = partitions.get(type);
+			if (partition != null) {
+				iterators.add(partition.query(Collections.singleton(type), startTime, endTime));
+			}
+		}
+		return new MergingEventIterator(iterators);
+	}
+
+	/**
+	 * @return the number of types which currently own a partition.
+	 */
+	public int partitionCount() {
+		return partitions.size();
+	}
+}
@@ -0,0 +1,258 @@
+package net.intelie.challenges.concurrent;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import net.intelie.challenges.Payload;
+
+/**
+ *
+ * <p>
+ * The encoded {@link Payload} of the events of an {@link OffHeapEventStore},
+ * appended to direct {@link ByteBuffer} pages of {@value #PAGE_SIZE} bytes.
+ *
+ * <p>
+ * <br>
+ * A payload is referred to by an int, its page shifted by {@value #PAGE_SHIFT}
+ * bits and its offset in the page, where it is stored as a varint length
+ * followed by its encoding. A payload larger than a page gets a page of its
+ * own. Bytes are never overwritten once written, so a {@link Payload} viewing
+ * a page stays valid after its event is removed: the page is only dropped by
+ * the arena, once none of its payloads is referred to, and is collected with
+ * the last view of it.
+ *
+ * <p>
+ * <br>
+ * Removed payloads leave holes in their pages. Once the holes take more than
+ * half of the arena, see {@link #fragmented()}, the store seals the current
+ * page and moves the payloads of the pages less than half used into new ones,
+ * see {@link #move(int)}, and those pages are dropped as their last payload
+ * leaves. At least one page is then less than half used, so each compaction
+ * drops a page.
+ *
+ * <p>
+ * <br>
+ * Not thread-safe: guarded by the store lock.
+ *
+ */
+final class PayloadArena {
+
+	static final int PAGE_SHIFT = 20;
+	static final int PAGE_SIZE = 1 << PAGE_SHIFT;
+	static final int MAX_PAGES = 1 << (31 - PAGE_SHIFT);
+
+	/**
+	 * The reference of an empty payload, which takes no room.
+	 */
+	static final int NONE = -1;
+
+	private ByteBuffer[] pages = new ByteBuffer[16];
+	/**
+	 * The number of payloads referred to in each page, and the bytes they take.
+	 */
+	private int[] live = new int[16];
+	private int[] liveBytes = new int[16];
+	private int current = -1;
+	private int position;
+	private long allocated;
+	private long used;
+
+	/**
+	 * Copies the encoding of the given {@param payload} into the current page.
+	 *
+	 * @return its reference, or {@link #NONE} if it is empty.
+	 */
+	int add(Payload payload) {
+		if (payload.isEmpty()) {
+			return NONE;
+		}
+		int size = payload.encodedSize();
+		int ref = allocate(varintSize(size) + size);
+
+		ByteBuffer target = target(ref);
+		for (int value = size; ; value >>>= 7) {
+			if ((value & ~0x7F) == 0) {
+				target.put((byte) value);
+				break;
+			}
+			target.put((byte) ((value & 0x7F) | 0x80));
+		}
+		payload.writeTo(target);
+		return ref;
+	}
+
+	/**
+	 * Copies the payload of the given {@param ref} into the current page in
+	 * bulk, and releases it.
+	 *
+	 * @return its new reference.
+	 */
+	int move(int ref) {
+		ByteBuffer source = page(ref).duplicate();
+		int offset = offset(ref);
+		source.limit(offset + stored(source, offset)).position(offset);
+
+		int moved = allocate(source.remaining());
+		target(moved).put(source);
+		release(ref);
+		return moved;
+	}
+
+	/**
+	 * @return whether the payloads released leave holes taking more than half
+	 *         of the pages, and at least a page.
+	 */
+	boolean fragmented() {
+		long free = current < 0 ? 0 : pages[current].capacity() - position;
+		long holes = allocated - used - free;
+		return holes >= PAGE_SIZE && holes * 2 > allocated;
+	}
+
+	/**
+	 * Stops writing to the current page, so its payloads can be moved too, and
+	 * drops it if none is left. The next payload starts a new page.
+	 */
+	void seal() {
+		if (current >= 0 && live[current] == 0) {
+			drop(current);
+		}
+		current = -1;
+	}
+
+	/**
+	 * @return whether the payload of the given {@param ref} is in a page, other
+	 *         than the current one, which is less than half used, so it is
+	 *         worth moving, see {@link #move(int)}.
+	 */
+	boolean sparse(int ref) {
+		int page = ref >>> PAGE_SHIFT;
+		return ref != NONE && page != current && liveBytes[page] * 2L < pages[page].capacity();
+	}
+
+	/**
+	 * Drops the payload of the given {@param ref}, releasing its page when it
+	 * was the last one in use and the page is no longer written to.
+	 */
+	void release(int ref) {
+		if (ref == NONE) {
+			return;
+		}
+		int page = ref >>> PAGE_SHIFT;
+		int size = stored(pages[page], offset(ref));
+		liveBytes[page] -= size;
+		used -= size;
+		if (--live[page] == 0 && page != current) {
+			drop(page);
+		}
+	}
+
+	ByteBuffer page(int ref) {
+		return pages[ref >>> PAGE_SHIFT];
+	}
+
+	static int offset(int ref) {
+		return ref & (PAGE_SIZE - 1);
+	}
+
+	/**
+	 * @return a view over the payload at {@param offset} of the given
+	 *         {@param page}, without copying it.
+	 */
+	static Payload view(ByteBuffer page, int offset) {
+		int length = 0;
+		for (int shift = 0;; shift += 7) {
+			byte b = page.get(offset++);
+			length |= (b & 0x7F) << shift;
+			if (b >= 0) {
+				break;
+			}
+		}
+		return Payload.wrap(page, offset, length);
+	}
+
+	/**
+	 * @return the bytes of the pages held, which are off the Java heap.
+	 */
+	long allocated() {
+		return allocated;
+	}
+
+	/**
+	 * Reserves {@param needed} bytes, in the current page if they fit.
+	 *
+	 * @return the reference of the bytes.
+	 */
+	private int allocate(int needed) {
+		if (current < 0 || position + needed > pages[current].capacity()) {
+			newPage(Math.max(PAGE_SIZE, needed));
+		}
+		int ref = (current << PAGE_SHIFT) | position;
+		position += needed;
+		++live[current];
+		liveBytes[current] += needed;
+		used += needed;
+		return ref;
+	}
+
+	private ByteBuffer target(int ref) {
+		ByteBuffer target = page(ref).duplicate();
+		target.position(offset(ref));
+		return target;
+	}
+
+	private void newPage(int capacity) {
+		if (current >= 0 && live[current] == 0) {
+			drop(current);
+		}
+
+		int page = 0;
+		while (page < pages.length && pages[page] != null) {
+			page++;
+		}
+		if (page == MAX_PAGES) {
+			throw new IllegalStateException("Too many payload pages");
+		} else if (page == pages.length) {
+			int length = Math.min(pages.length * 2, MAX_PAGES);
+			pages = Arrays.copyOf(pages, length);
+			live = Arrays.copyOf(live, length);
+			liveBytes = Arrays.copyOf(liveBytes, length);
+		}
+
+		pages[page] = ByteBuffer.allocateDirect(capacity);
+		live[page] = 0;
+		liveBytes[page] = 0;
+		allocated += capacity;
+		current = page;
+		position = 0;
+	}
+
+	private void drop(int page) {
+		allocated -= pages[page].capacity();
+		pages[page] = null;
+	}
+
+	/**
+	 * @return the bytes taken by the payload at {@param offset} of the given
+	 *         {@param page}: its varint length and its encoding.
+	 */
+	private static int stored(ByteBuffer page, int offset) {
+		int length = 0;
+		int size = 0;
+		for (int shift = 0;; shift += 7) {
+			byte b = page.get(offset + size++);
+			length |= (b & 0x7F) << shift;
+			if (b >= 0) {
+				return size + length;
+			}
+		}
+	}
+
+	private static int varintSize(int value) {
+		int size = 1;
+		while ((value & ~0x7F) != 0) {
+			value >>>= 7;
+			size++;
+		}
+		return size;
+	}
+}
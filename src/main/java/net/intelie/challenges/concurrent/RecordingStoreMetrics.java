@@ -0,0 +1,156 @@
+package net.intelie.challenges.concurrent;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ *
+ * <p>
+ * {@link StoreMetrics} kept in memory, to be read while the store runs.
+ *
+ * <p>
+ * <br>
+ * Latencies and the nodes walked per operation go to {@link LatencyHistogram},
+ * and everything else is counted. The current number of checkpoints is read
+ * from the store itself, see
+ * {@link ConcurrentSortedEventStore#checkPointCount()}.
+ *
+ */
+public class RecordingStoreMetrics implements StoreMetrics {
+
+	private final LatencyHistogram insertLatency = new LatencyHistogram();
+	private final LatencyHistogram insertAllLatency = new LatencyHistogram();
+	private final LatencyHistogram queryLatency = new LatencyHistogram();
+	private final LatencyHistogram removeAllLatency = new LatencyHistogram();
+	private final LatencyHistogram lockWait = new LatencyHistogram();
+	private final LatencyHistogram insertNodes = new LatencyHistogram();
+	private final LatencyHistogram insertAllNodes = new LatencyHistogram();
+	private final LatencyHistogram queryNodes = new LatencyHistogram();
+	private final LatencyHistogram removeAllNodes = new LatencyHistogram();
+
+	private final LongAdder insertedAllEvents = new LongAdder();
+	private final LongAdder checkPointsAdded = new LongAdder();
+	private final LongAdder checkPointsMoved = new LongAdder();
+	private final LongAdder retries = new LongAdder();
+
+	@Override
+	public void inserted(long nanos, long nodes) {
+		insertLatency.record(nanos);
+		insertNodes.record(nodes);
+	}
+
+	@Override
+	public void insertedAll(long nanos, long events, long nodes) {
+		insertAllLatency.record(nanos);
+		insertAllNodes.record(nodes);
+		insertedAllEvents.add(events);
+	}
+
+	@Override
+	public void queried(long nanos, long nodes) {
+		queryLatency.record(nanos);
+		queryNodes.record(nodes);
+	}
+
+	@Override
+	public void removedAll(long nanos, long nodes) {
+		removeAllLatency.record(nanos);
+		removeAllNodes.record(nodes);
+	}
+
+	@Override
+	public void lockWaited(long nanos) {
+		lockWait.record(nanos);
+	}
+
+	@Override
+	public void checkPointAdded() {
+		checkPointsAdded.increment();
+	}
+
+	@Override
+	public void checkPointMoved() {
+		checkPointsMoved.increment();
+	}
+
+	@Override
+	public void retried() {
+		retries.increment();
+	}
+
+	public LatencyHistogram insertLatency() {
+		return insertLatency;
+	}
+
+	/**
+	 * @return the latencies of whole batches, see
+	 *         {@link ConcurrentSortedEventStore#insertAll(java.util.Collection)}.
+	 */
+	public LatencyHistogram insertAllLatency() {
+		return insertAllLatency;
+	}
+
+	public LatencyHistogram queryLatency() {
+		return queryLatency;
+	}
+
+	public LatencyHistogram removeAllLatency() {
+		return removeAllLatency;
+	}
+
+	/**
+	 * @return the waits for node locks held by other threads.
+	 */
+	public LatencyHistogram lockWait() {
+		return lockWait;
+	}
+
+	public LatencyHistogram insertNodes() {
+		return insertNodes;
+	}
+
+	public LatencyHistogram insertAllNodes() {
+		return insertAllNodes;
+	}
+
+	public LatencyHistogram queryNodes() {
+		return queryNodes;
+	}
+
+	public LatencyHistogram removeAllNodes() {
+		return removeAllNodes;
+	}
+
+	/**
+	 * @return the number of events inserted in batches.
+	 */
+	public long insertedAllEvents() {
+		return insertedAllEvents.sum();
+	}
+
+	public long checkPointsAdded() {
+		return checkPointsAdded.sum();
+	}
+
+	/**
+	 * @return how many times a checkpoint was moved to another node.
+	 */
+	public long checkPointsMoved() {
+		return checkPointsMoved.sum();
+	}
+
+	/**
+	 * @return how many times an operation started over because its starting
+	 *         node was unlinked.
+	 */
+	public long retries() {
+		return retries.sum();
+	}
+
+	@Override
+	public String toString() {
+		return "RecordingStoreMetrics [insertLatency=" + insertLatency + ", insertAllLatency=" + insertAllLatency
+				+ ", queryLatency=" + queryLatency + ", removeAllLatency=" + removeAllLatency + ", lockWait="
+				+ lockWait + ", checkPointsAdded=" + checkPointsAdded() + ", checkPointsMoved=" + checkPointsMoved()
+				+ ", retries=" + retries() + "]";
+	}
+}
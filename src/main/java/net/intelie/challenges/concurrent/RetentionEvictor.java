@@ -0,0 +1,205 @@
+package net.intelie.challenges.concurrent;
+
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+/**
+ * 
+ * <p>
+ * Enforces a {@link RetentionPolicy} on a {@link BucketedEventStore} or a
+ * {@link ConcurrentSortedEventStore}.
+ * 
+ * <p>
+ * <br>
+ * On a {@link BucketedEventStore}, each run drops, for every type, the
+ * buckets entirely older than the maximum age in one operation on the bucket
+ * map, trims the prefix of the bucket holding the age limit, and then drops
+ * the oldest buckets, and the prefix of the next one, while the type holds
+ * more events than the maximum count. Nothing is unlinked event by event.
+ * 
+ * <p>
+ * <br>
+ * On a {@link ConcurrentSortedEventStore}, whose chain mixes every type, each
+ * eviction of a type takes a single version: the sealed blocks holding only
+ * evicted events are dropped without being decoded, and the evicted nodes
+ * are marked in one walk from the head of the chain, which stops at the age
+ * limit, and unlinked together once no reader sees them anymore. Counting the
+ * events of a type for the maximum count adds the counts of the checkpoint
+ * spans, walking only those which changed, see {@link SpanCounts}.
+ * 
+ * <p>
+ * <br>
+ * Runs happen on a single daemon thread once {@link #start(long, TimeUnit)}
+ * is called, or on demand through {@link #run()}. An event inserted
+ * concurrently into a bucket being dropped is evicted with it. A run which
+ * fails is counted, see {@link #failures()}, and does not stop the next ones.
+ *
+ */
+public class RetentionEvictor implements Runnable, AutoCloseable {
+
+	private final Evictable store;
+	private final RetentionPolicy policy;
+	private final LongSupplier clock;
+
+	private final LongAdder runs = new LongAdder();
+	private final LongAdder failures = new LongAdder();
+	private final LongAdder evictedEvents = new LongAdder();
+	private final LongAdder reclaimedBytes = new LongAdder();
+
+	private ScheduledExecutorService scheduler;
+
+	/**
+	 * This constructor measures ages against {@link System#currentTimeMillis()}.
+	 */
+	public RetentionEvictor(BucketedEventStore store, RetentionPolicy policy) {
+		this(store, policy, System::currentTimeMillis);
+	}
+
+	/**
+	 * 
+	 * @param clock gives the current time, in the unit of the event timestamps.
+	 */
+	public RetentionEvictor(BucketedEventStore store, RetentionPolicy policy, LongSupplier clock) {
+		this(store == null ? null : new Evictable() {
+			@Override
+			public Set<String> types() {
+				return store.types();
+			}
+
+			@Override
+			public void evictBefore(String type, long cutoff, Eviction eviction) {
+				store.evictBefore(type, cutoff, eviction);
+			}
+
+			@Override
+			public void evictOldest(String type, long maxCount, Eviction eviction) {
+				store.evictOldest(type, maxCount, eviction);
+			}
+		}, policy, clock);
+	}
+
+	/**
+	 * This constructor measures ages against {@link System#currentTimeMillis()}.
+	 */
+	public RetentionEvictor(ConcurrentSortedEventStore store, RetentionPolicy policy) {
+		this(store, policy, System::currentTimeMillis);
+	}
+
+	/**
+	 * 
+	 * @param clock gives the current time, in the unit of the event timestamps.
+	 */
+	public RetentionEvictor(ConcurrentSortedEventStore store, RetentionPolicy policy, LongSupplier clock) {
+		this(store == null ? null : new Evictable() {
+			@Override
+			public Set<String> types() {
+				return store.types();
+			}
+
+			@Override
+			public void evictBefore(String type, long cutoff, Eviction eviction) {
+				store.evictBefore(type, cutoff, eviction);
+			}
+
+			@Override
+			public void evictOldest(String type, long maxCount, Eviction eviction) {
+				store.evictOldest(type, maxCount, eviction);
+			}
+		}, policy, clock);
+	}
+
+	private RetentionEvictor(Evictable store, RetentionPolicy policy, LongSupplier clock) {
+		if (store == null || policy == null || clock == null) {
+			throw new IllegalArgumentException("Store, policy and clock cannot be null");
+		}
+		this.store = store;
+		this.policy = policy;
+		this.clock = clock;
+	}
+
+	/**
+	 * Starts running this evictor periodically.
+	 */
+	public synchronized void start(long period, TimeUnit unit) {
+		if (scheduler != null) {
+			throw new IllegalStateException("Already started");
+		}
+		scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+			Thread thread = new Thread(runnable, "retention-evictor");
+			thread.setDaemon(true);
+			return thread;
+		});
+		try {
+			scheduler.scheduleWithFixedDelay(this, period, period, unit);
+		} catch (RuntimeException e) {
+			// a period which is not positive, for instance; no thread is left behind.
+			scheduler.shutdownNow();
+			scheduler = null;
+			throw e;
+		}
+	}
+
+	/**
+	 * Evicts once, in the calling thread. A failure, of the clock for instance,
+	 * is counted instead of thrown, as it would cancel the periodic runs; what
+	 * was evicted before it is still counted.
+	 */
+	@Override
+	public void run() {
+		Eviction eviction = new Eviction();
+		try {
+			long now = clock.getAsLong();
+			for (String type : store.types()) {
+				long maxAge = policy.maxAge(type);
+				// an age reaching before Long.MIN_VALUE leaves nothing to evict.
+				if (maxAge != RetentionPolicy.UNLIMITED && now - maxAge <= now) {
+					store.evictBefore(type, now - maxAge, eviction);
+				}
+				if (policy.maxCount() != RetentionPolicy.UNLIMITED) {
+					store.evictOldest(type, policy.maxCount(), eviction);
+				}
+			}
+			runs.increment();
+		} catch (RuntimeException e) {
+			failures.increment();
+		} finally {
+			evictedEvents.add(eviction.events);
+			reclaimedBytes.add(eviction.bytes);
+		}
+	}
+
+	@Override
+	public synchronized void close() {
+		if (scheduler != null) {
+			scheduler.shutdownNow();
+			scheduler = null;
+		}
+	}
+
+	public long runs() {
+		return runs.sum();
+	}
+
+	/**
+	 * @return the number of runs which failed, which {@link #runs()} does not
+	 *         count.
+	 */
+	public long failures() {
+		return failures.sum();
+	}
+
+	public long evictedEvents() {
+		return evictedEvents.sum();
+	}
+
+	/**
+	 * @return an estimate of the heap released by the evicted events.
+	 */
+	public long reclaimedBytes() {
+		return reclaimedBytes.sum();
+	}
+}
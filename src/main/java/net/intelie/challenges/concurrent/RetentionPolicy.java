@@ -0,0 +1,76 @@
+package net.intelie.challenges.concurrent;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * 
+ * <p>
+ * How long, and how many, events of each type a store retains.
+ * 
+ * <p>
+ * <br>
+ * The maximum age is measured in the unit of the event timestamps against the
+ * clock of the {@link RetentionEvictor}; a type may override the global age.
+ * The maximum count is per type. A limit of {@link #UNLIMITED} disables it,
+ * while a limit of zero keeps no event at all. Instances are immutable: the
+ * {@code with} methods return a new policy.
+ *
+ */
+public final class RetentionPolicy {
+
+	public static final long UNLIMITED = Long.MAX_VALUE;
+
+	private final long maxAge;
+	private final long maxCount;
+	private final Map<String, Long> maxAgeByType;
+
+	/**
+	 * 
+	 * @param maxAge   the maximum age of an event, or {@link #UNLIMITED}.
+	 * @param maxCount the maximum number of events of a type, or
+	 *                 {@link #UNLIMITED}.
+	 */
+	public RetentionPolicy(long maxAge, long maxCount) {
+		this(maxAge, maxCount, new HashMap<String, Long>());
+	}
+
+	private RetentionPolicy(long maxAge, long maxCount, Map<String, Long> maxAgeByType) {
+		if (maxAge < 0) {
+			throw new IllegalArgumentException("Max age cannot be negative");
+		} else if (maxCount < 0) {
+			throw new IllegalArgumentException("Max count cannot be negative");
+		}
+		this.maxAge = maxAge;
+		this.maxCount = maxCount;
+		this.maxAgeByType = maxAgeByType;
+	}
+
+	/**
+	 * @return a copy of this policy where events of the given {@param type} have
+	 *         their own maximum age.
+	 */
+	public RetentionPolicy withMaxAge(String type, long maxAge) {
+		if (type == null || type.trim().isEmpty()) {
+			throw new IllegalArgumentException("Type cannot be null or empty");
+		} else if (maxAge < 0) {
+			throw new IllegalArgumentException("Max age cannot be negative");
+		}
+		Map<String, Long> byType = new HashMap<String, Long>(maxAgeByType);
+		byType.put(type, maxAge);
+		return new RetentionPolicy(this.maxAge, maxCount, byType);
+	}
+
+	/**
+	 * @return the maximum age of events of the given {@param type}, or
+	 *         {@link #UNLIMITED}.
+	 */
+	public long maxAge(String type) {
+		Long age = maxAgeByType.get(type);
+		return age == null ? maxAge : age;
+	}
+
+	public long maxCount() {
+		return maxCount;
+	}
+}
@@ -0,0 +1,89 @@
+package net.intelie.challenges.concurrent;
+
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import net.intelie.challenges.EventFilter;
+
+/**
+ * The {@link AttributeIndex} of a store, by type. While there is none, an
+ * insert or a removal pays a single volatile read.
+ */
+final class SecondaryIndexes {
+
+	private final ConcurrentHashMap<String, List<AttributeIndex>> byType = new ConcurrentHashMap<String, List<AttributeIndex>>();
+	private final AtomicInteger count = new AtomicInteger();
+
+	boolean isEmpty() {
+		return count.get() == 0;
+	}
+
+	/**
+	 * @return false if the type already has an index on this attribute.
+	 */
+	synchronized boolean add(String type, AttributeIndex index) {
+		List<AttributeIndex> indexes = byType.computeIfAbsent(type, t -> new CopyOnWriteArrayList<AttributeIndex>());
+		if (find(indexes, index.attribute()) != null) {
+			return false;
+		}
+		indexes.add(index);
+		count.incrementAndGet();
+		return true;
+	}
+
+	synchronized boolean remove(String type, String attribute) {
+		List<AttributeIndex> indexes = byType.get(type);
+		AttributeIndex index = indexes == null ? null : find(indexes, attribute);
+		if (index == null) {
+			return false;
+		}
+		indexes.remove(index);
+		count.decrementAndGet();
+		return true;
+	}
+
+	void inserted(ConcurrentEventIterator node) {
+		List<AttributeIndex> indexes = byType.get(node.value.type());
+		if (indexes != null) {
+			for (AttributeIndex index : indexes) {
+				index.add(node);
+			}
+		}
+	}
+
+	void removed(ConcurrentEventIterator node) {
+		List<AttributeIndex> indexes = byType.get(node.value.type());
+		if (indexes != null) {
+			for (AttributeIndex index : indexes) {
+				index.remove(node);
+			}
+		}
+	}
+
+	/**
+	 * @return an index of the given {@param type} on an attribute the given
+	 *         {@param filter} pins to a single value, or {@code null}.
+	 */
+	AttributeIndex usableBy(String type, EventFilter filter) {
+		List<AttributeIndex> indexes = byType.get(type);
+		if (indexes != null) {
+			for (AttributeIndex index : indexes) {
+				if (filter.requiredValue(index.attribute()) != null) {
+					return index;
+				}
+			}
+		}
+		return null;
+	}
+
+	private static AttributeIndex find(List<AttributeIndex> indexes, String attribute) {
+		for (AttributeIndex index : indexes) {
+			if (index.attribute().equals(attribute)) {
+				return index;
+			}
+		}
+		return null;
+	}
+}
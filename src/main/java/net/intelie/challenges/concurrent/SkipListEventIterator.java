@@ -0,0 +1,74 @@
+package net.intelie.challenges.concurrent;
+
+import java.util.Iterator;
+import java.util.Map.Entry;
+import java.util.Set;
+
+import net.intelie.challenges.Event;
+import net.intelie.challenges.EventIterator;
+
+/**
+ * <p>
+ * {@link EventIterator} over a range of a {@link SkipListEventStore} index.
+ * It walks the live index lazily, keeping only the current entry, and skips
+ * events of other types on the way.
+ * 
+ * <p>
+ * <br>
+ * Iteration is weakly consistent: it never throws because of concurrent
+ * changes, and events inserted or removed ahead of the iterator while it is
+ * open may or may not be seen. {@link #remove()} deletes the current entry
+ * from the index in O(log n).
+ */
+class SkipListEventIterator implements EventIterator {
+
+	private final SkipListEventStore store;
+	private final Iterator<Entry<EventKey, Event>> entries;
+	private final Set<String> types;
+	private Entry<EventKey, Event> current;
+
+	/**
+	 * @param types the types of the events to return, or {@code null} for all of
+	 *              them.
+	 */
+	SkipListEventIterator(SkipListEventStore store, Iterator<Entry<EventKey, Event>> entries, Set<String> types) {
+		this.store = store;
+		this.entries = entries;
+		this.types = types;
+	}
+
+	@Override
+	public boolean moveNext() {
+		while (entries.hasNext()) {
+			Entry<EventKey, Event> entry = entries.next();
+			if (types == null || types.contains(entry.getValue().type())) {
+				current = entry;
+				return true;
+			}
+		}
+		current = null;
+		return false;
+	}
+
+	@Override
+	public Event current() {
+		if (current == null) {
+			throw new IllegalStateException();
+		}
+		return current.getValue();
+	}
+
+	@Override
+	public void remove() {
+		if (current == null) {
+			throw new IllegalStateException();
+		}
+		store.remove(current.getKey(), current.getValue());
+		current = null;
+	}
+
+	@Override
+	public void close() {
+		current = null;
+	}
+}
@@ -0,0 +1,164 @@
+package net.intelie.challenges.concurrent;
+
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.Map.Entry;
+import java.util.Set;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import net.intelie.challenges.Event;
+import net.intelie.challenges.EventIterator;
+import net.intelie.challenges.EventStore;
+import net.intelie.challenges.LimitedEventIterator;
+import net.intelie.challenges.Order;
+
+/**
+ * 
+ * <p>
+ * An {@link EventStore} backed by a lock-free ordered index.
+ * 
+ * <p>
+ * <br>
+ * Events are kept in a {@link ConcurrentSkipListMap} keyed by
+ * <i>timestamp</i> and an insertion sequence (see {@link EventKey}), so events
+ * with the same timestamp are all kept, in arrival order. Inserting and seeking
+ * the start of a query range are O(log n) whatever the arrival order, and no
+ * thread ever waits on a lock: the skip list relies on CAS only.
+ * 
+ * <p>
+ * <br>
+ * Events of every type share the same index, so a query still skips other
+ * types inside its time range and {@link #removeAll(String)} walks the whole
+ * index. Combine it with {@link PartitionedEventStore} to keep one index per
+ * type.
+ *
+ */
+public class SkipListEventStore implements EventStore {
+
+	private final ConcurrentSkipListMap<EventKey, Event> index = new ConcurrentSkipListMap<EventKey, Event>();
+
+	/**
+	 * Tie breaker of events sharing the same timestamp.
+	 */
+	private final AtomicLong sequence = new AtomicLong();
+
+	/**
+	 * Stores the size of this {@link SkipListEventStore}. The skip list size is
+	 * O(n) to compute.
+	 */
+	private final AtomicInteger length = new AtomicInteger();
+
+	@Override
+	public void insert(Event event) {
+		if (event == null) {
+			throw new IllegalArgumentException("Event cannot be null");
+		} else if (event.type() == null || event.type().trim().isEmpty()) {
+			throw new IllegalArgumentException("Type cannot be null or empty");
+		}
+
+		index.put(new EventKey(event.timestamp(), sequence.getAndIncrement()), event);
+		length.incrementAndGet();
+	}
+
+	@Override
+	public void removeAll(String type) {
+		if (type == null || type.trim().isEmpty()) {
+			throw new IllegalArgumentException("Type cannot be null or empty");
+		}
+
+		Iterator<Entry<EventKey, Event>> it = index.entrySet().iterator();
+		while (it.hasNext()) {
+			Entry<EventKey, Event> entry = it.next();
+			if (entry.getValue().type().equals(type)) {
+				remove(entry.getKey(), entry.getValue());
+			}
+		}
+	}
+
+	/**
+	 * Returns an {@link EventIterator} positioned before the first {@link Event}
+	 * of the given {@param type} with <i>timestamp</i> in the range from
+	 * {@param startTime} (inclusive) to {@param endTime} (exclusive). Events are
+	 * read from the index as the iterator moves.
+	 */
+	@Override
+	public EventIterator query(String type, long startTime, long endTime) {
+		if (startTime > endTime) {
+			throw new IllegalArgumentException("startTime greater than endTime");
+		} else if (type == null || type.trim().isEmpty()) {
+			throw new IllegalArgumentException("Type cannot be null or empty");
+		}
+
+		return new SkipListEventIterator(this,
+				index.subMap(EventKey.lowest(startTime), EventKey.lowest(endTime)).entrySet().iterator(),
+				Collections.singleton(type));
+	}
+
+	/**
+	 * <p>
+	 * A descending query walks the index backwards from {@param endTime}.
+	 */
+	@Override
+	public EventIterator query(String type, long startTime, long endTime, Order order, int limit) {
+		if (startTime > endTime) {
+			throw new IllegalArgumentException("startTime greater than endTime");
+		} else if (type == null || type.trim().isEmpty()) {
+			throw new IllegalArgumentException("Type cannot be null or empty");
+		} else if (order == null) {
+			throw new IllegalArgumentException("Order cannot be null");
+		} else if (limit <= 0) {
+			throw new IllegalArgumentException("Limit must be positive");
+		}
+
+		ConcurrentNavigableMap<EventKey, Event> range = index.subMap(EventKey.lowest(startTime),
+				EventKey.lowest(endTime));
+		if (order == Order.DESCENDING) {
+			range = range.descendingMap();
+		}
+		return new LimitedEventIterator(
+				new SkipListEventIterator(this, range.entrySet().iterator(), Collections.singleton(type)), limit);
+	}
+
+	/**
+	 * <p>
+	 * All types share the index, which is already ordered, so this walks the
+	 * range once and skips the other types.
+	 */
+	@Override
+	public EventIterator query(Set<String> types, long startTime, long endTime) {
+		if (startTime > endTime) {
+			throw new IllegalArgumentException("startTime greater than endTime");
+		}
+
+		return new SkipListEventIterator(this,
+				index.subMap(EventKey.lowest(startTime), EventKey.lowest(endTime)).entrySet().iterator(),
+				TypeRegistry.validated(types));
+	}
+
+	@Override
+	public EventIterator queryAll(long startTime, long endTime) {
+		if (startTime > endTime) {
+			throw new IllegalArgumentException("startTime greater than endTime");
+		}
+
+		return new SkipListEventIterator(this,
+				index.subMap(EventKey.lowest(startTime), EventKey.lowest(endTime)).entrySet().iterator(), null);
+	}
+
+	/**
+	 * Removes a single entry. An entry removed concurrently by someone else is
+	 * not counted twice.
+	 */
+	void remove(EventKey key, Event event) {
+		if (index.remove(key, event)) {
+			length.decrementAndGet();
+		}
+	}
+
+	public int length() {
+		return length.get();
+	}
+}
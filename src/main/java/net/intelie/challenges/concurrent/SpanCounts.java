@@ -0,0 +1,132 @@
+package net.intelie.challenges.concurrent;
+
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+import java.util.concurrent.atomic.AtomicLongFieldUpdater;
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
+
+/**
+ *
+ * <p>
+ * The number of events of each type in the span of a checkpoint of a
+ * {@link ConcurrentSortedEventStore}: the events after the timestamp of the
+ * checkpoint, up to the timestamp of the next checkpoint (inclusive), as of a
+ * version. Aggregates add the counts of the spans they cover whole instead of
+ * walking them.
+ *
+ * <p>
+ * <br>
+ * The counts are kept along with the last version which changed the span,
+ * its stamp: every writer stamps the spans of the events it links or removes
+ * before committing its version, and adding or removing a checkpoint stamps
+ * the spans it reshapes once it is done, the counts being ignored meanwhile.
+ * Counts taken as of a version are then valid for any reader of a version no
+ * older than the stamp, as long as the span still ends at the same
+ * checkpoint. Counts are only computed by readers, so a span changed often
+ * is simply walked.
+ *
+ */
+final class SpanCounts {
+
+	private static final AtomicReferenceFieldUpdater<ConcurrentEventIterator, SpanCounts> SPAN = AtomicReferenceFieldUpdater
+			.newUpdater(ConcurrentEventIterator.class, SpanCounts.class, "span");
+
+	private static final AtomicLongFieldUpdater<SpanCounts> STAMP = AtomicLongFieldUpdater.newUpdater(SpanCounts.class,
+			"stamp");
+
+	private static final AtomicIntegerFieldUpdater<SpanCounts> RESHAPING = AtomicIntegerFieldUpdater
+			.newUpdater(SpanCounts.class, "reshaping");
+
+	/**
+	 * Counts by type id as of a version, for the span ending at a checkpoint.
+	 */
+	private static final class Counts {
+		final long version;
+		final ConcurrentEventIterator upper;
+		final long[] byType;
+
+		Counts(long version, ConcurrentEventIterator upper, long[] byType) {
+			this.version = version;
+			this.upper = upper;
+			this.byType = byType;
+		}
+	}
+
+	private volatile long stamp;
+	private volatile Counts counts;
+
+	/**
+	 * The number of changes of the checkpoints reshaping the span.
+	 */
+	private volatile int reshaping;
+
+	/**
+	 * @return the span of the given {@param checkpoint}, created once.
+	 */
+	static SpanCounts of(ConcurrentEventIterator checkpoint) {
+		SpanCounts span = checkpoint.span;
+		if (span == null) {
+			SPAN.compareAndSet(checkpoint, null, new SpanCounts());
+			span = checkpoint.span;
+		}
+		return span;
+	}
+
+	/**
+	 * Records that the span was changed in the given {@param version}.
+	 */
+	void touch(long version) {
+		long current;
+		while ((current = stamp) < version && !STAMP.compareAndSet(this, current, version)) {
+		}
+	}
+
+	/**
+	 * Ignores the counts until {@link #reshaped(long)}, as a change of the
+	 * checkpoints is reshaping the span.
+	 * 
+	 * @param added whether the node is becoming a checkpoint, so its counts
+	 *              are dropped.
+	 */
+	void reshaping(boolean added) {
+		RESHAPING.incrementAndGet(this);
+		if (added) {
+			counts = null;
+		}
+	}
+
+	/**
+	 * Ends {@link #reshaping(boolean)}, recording the change in the given
+	 * {@param version}.
+	 */
+	void reshaped(long version) {
+		touch(version);
+		RESHAPING.decrementAndGet(this);
+	}
+
+	/**
+	 * @param upper the checkpoint the span ends at, read before this call, or
+	 *              {@code null} if it is the last span.
+	 * @return the counts by type id a reader of the given {@param version} sees,
+	 *         or {@code null} if they are unknown.
+	 */
+	long[] counts(long version, ConcurrentEventIterator upper) {
+		// a change of the checkpoints is done once not reshaping, and then stamped.
+		if (reshaping != 0) {
+			return null;
+		}
+		Counts counts = this.counts;
+		long stamp = this.stamp;
+		return counts != null && counts.upper == upper && stamp <= counts.version && stamp <= version ? counts.byType
+				: null;
+	}
+
+	/**
+	 * Keeps the counts by type id of the span ending at {@param upper}, as of
+	 * the given {@param version}.
+	 */
+	void counted(long version, ConcurrentEventIterator upper, long[] byType) {
+		if (stamp <= version) {
+			counts = new Counts(version, upper, byType);
+		}
+	}
+}
@@ -0,0 +1,94 @@
+package net.intelie.challenges.concurrent;
+
+/**
+ *
+ * <p>
+ * Receives what happens inside a {@link ConcurrentSortedEventStore}.
+ *
+ * <p>
+ * <br>
+ * Every method does nothing by default, so an implementation overrides only
+ * what it records. Methods are called by the thread doing the operation, some
+ * of them while it holds node locks, so they must be thread-safe and cheap.
+ * <br>
+ * {@link #NONE} is the default of the store, which then reads no clock at all:
+ * the cost of disabled metrics is a field check per operation.
+ *
+ */
+public interface StoreMetrics {
+
+	/**
+	 * Records nothing.
+	 */
+	StoreMetrics NONE = new StoreMetrics() {
+	};
+
+	/**
+	 * An event was inserted on its own.
+	 *
+	 * @param nanos the time taken by the insert.
+	 * @param nodes the nodes of the chain it walked.
+	 */
+	default void inserted(long nanos, long nodes) {
+	}
+
+	/**
+	 * A batch of events was inserted in a single pass. It is not reported to
+	 * {@link #inserted(long, long)}, whose latencies are those of single
+	 * events.
+	 *
+	 * @param nanos  the time taken by the whole batch.
+	 * @param events the number of events of the batch.
+	 * @param nodes  the nodes of the chain it walked.
+	 */
+	default void insertedAll(long nanos, long events, long nodes) {
+	}
+
+	/**
+	 * A query found its first event, or found that there is none, or an
+	 * aggregation walked its range.
+	 *
+	 * @param nanos the time taken until then.
+	 * @param nodes the nodes of the chain it walked until then.
+	 */
+	default void queried(long nanos, long nodes) {
+	}
+
+	/**
+	 * The events of a type were removed.
+	 *
+	 * @param nanos the time taken by the removal.
+	 * @param nodes the nodes of the chain it walked.
+	 */
+	default void removedAll(long nanos, long nodes) {
+	}
+
+	/**
+	 * A node lock was held by another thread. Locks taken without waiting are
+	 * not reported.
+	 *
+	 * @param nanos the time waited for the lock.
+	 */
+	default void lockWaited(long nanos) {
+	}
+
+	/**
+	 * A new checkpoint was created.
+	 */
+	default void checkPointAdded() {
+	}
+
+	/**
+	 * A checkpoint was moved to another node of the chain, on a rebalance or
+	 * because its node was removed.
+	 */
+	default void checkPointMoved() {
+	}
+
+	/**
+	 * An operation found its starting node unlinked from the chain and started
+	 * over.
+	 */
+	default void retried() {
+	}
+}
@@ -0,0 +1,248 @@
+package net.intelie.challenges.concurrent;
+
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+import net.intelie.challenges.Event;
+import net.intelie.challenges.EventIterator;
+
+/**
+ *
+ * <p>
+ * A live query on a {@link ConcurrentSortedEventStore}: receives the
+ * {@link Event} of a type in a time window as they are inserted.
+ *
+ * <p>
+ * <br>
+ * The inserting thread only offers the event to the bounded buffer of the
+ * subscription and, if no delivery is running, hands one to the
+ * {@link Executor} of the subscription. It never waits for the listener. When
+ * the buffer is full the event is dropped for this subscription and counted
+ * in {@link #dropped()}. The listener is called by one thread at a time, in
+ * insertion order. If the executor rejects a delivery, the subscription fails
+ * and is closed, and the insert goes on.
+ *
+ * <p>
+ * <br>
+ * With replay, the events already in the window are delivered first, in
+ * timestamp order, and then the live ones. Events inserted while the replay
+ * runs are buffered and delivered after it, exactly once: the store offers
+ * an event before linking it, so the replay skips the events it finds
+ * already buffered, and delivers those dropped from the buffer. An event
+ * whose insert overlaps the call to subscribe may be missed.
+ *
+ */
+public class Subscription implements AutoCloseable {
+
+	private final Subscriptions owner;
+	private final String type;
+	private final long startTime;
+	private final long endTime;
+	private final Consumer<? super Event> listener;
+	private final Executor executor;
+	private final BlockingQueue<Event> buffer;
+
+	/**
+	 * The events offered while replaying, or {@code null} once live. Guarded by
+	 * this subscription.
+	 */
+	private Set<Event> offeredDuringReplay;
+	private volatile boolean replaying;
+
+	/**
+	 * Whether a delivery is running or was handed to the executor.
+	 */
+	private final AtomicBoolean scheduled = new AtomicBoolean();
+	private volatile boolean closed;
+	private volatile Throwable failure;
+
+	private final LongAdder delivered = new LongAdder();
+	private final LongAdder dropped = new LongAdder();
+
+	Subscription(Subscriptions owner, String type, long startTime, long endTime, int bufferSize,
+			Executor executor, Consumer<? super Event> listener) {
+		this.owner = owner;
+		this.type = type;
+		this.startTime = startTime;
+		this.endTime = endTime;
+		this.listener = listener;
+		this.executor = executor;
+		this.buffer = new ArrayBlockingQueue<Event>(bufferSize);
+	}
+
+	String type() {
+		return type;
+	}
+
+	/**
+	 * Registers this subscription and, if {@param history} is not
+	 * {@code null}, delivers the events it returns before the live ones. The
+	 * history is read only once registered, so no event falls between them.
+	 */
+	void start(Supplier<EventIterator> history) {
+		if (history == null) {
+			owner.add(this);
+			return;
+		}
+
+		offeredDuringReplay = Collections.newSetFromMap(new IdentityHashMap<Event, Boolean>());
+		replaying = true;
+		scheduled.set(true);
+		owner.add(this);
+		schedule(() -> {
+			try (EventIterator it = history.get()) {
+				while (!closed && it.moveNext()) {
+					Event event = it.current();
+					synchronized (this) {
+						if (offeredDuringReplay.contains(event)) {
+							continue;
+						}
+					}
+					deliver(event);
+				}
+			} catch (Throwable e) {
+				fail(e);
+			}
+			synchronized (this) {
+				replaying = false;
+				offeredDuringReplay = null;
+			}
+			drain();
+		});
+	}
+
+	/**
+	 * Called by the inserting thread, before the event is linked.
+	 */
+	void offer(Event event) {
+		if (closed || event.timestamp() < startTime || event.timestamp() >= endTime) {
+			return;
+		}
+		if (replaying) {
+			synchronized (this) {
+				if (replaying) {
+					// a dropped event is left for the replay, which delivers it if it finds it.
+					if (push(event)) {
+						offeredDuringReplay.add(event);
+					}
+					return;
+				}
+			}
+		}
+		push(event);
+		if (scheduled.compareAndSet(false, true)) {
+			schedule(this::drain);
+		}
+	}
+
+	/**
+	 * @return false if the buffer was full and the event was dropped.
+	 */
+	private boolean push(Event event) {
+		if (!buffer.offer(event)) {
+			dropped.increment();
+			return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Hands a delivery to the executor. If it is rejected this subscription
+	 * fails, and the insert which offered the event goes on.
+	 */
+	private void schedule(Runnable delivery) {
+		try {
+			executor.execute(delivery);
+		} catch (RejectedExecutionException e) {
+			scheduled.set(false);
+			fail(e);
+		}
+	}
+
+	/**
+	 * Delivers the buffered events until there are none left, and then lets the
+	 * next offer schedule a delivery again.
+	 */
+	private void drain() {
+		while (true) {
+			Event event;
+			while (!closed && (event = buffer.poll()) != null) {
+				deliver(event);
+			}
+			scheduled.set(false);
+			// an offer may have seen the flag set just before it was cleared.
+			if (closed || buffer.isEmpty() || !scheduled.compareAndSet(false, true)) {
+				return;
+			}
+		}
+	}
+
+	private void deliver(Event event) {
+		try {
+			listener.accept(event);
+			delivered.increment();
+		} catch (Throwable e) {
+			fail(e);
+		}
+	}
+
+	private void fail(Throwable e) {
+		failure = e;
+		close();
+	}
+
+	/**
+	 * @return how many events were handed to the listener.
+	 */
+	public long delivered() {
+		return delivered.sum();
+	}
+
+	/**
+	 * @return how many events were lost because the buffer was full.
+	 */
+	public long dropped() {
+		return dropped.sum();
+	}
+
+	/**
+	 * @return what the listener or the replay threw, or the rejection of a
+	 *         delivery by the executor, which closed this subscription, or
+	 *         {@code null}.
+	 */
+	public Throwable failure() {
+		return failure;
+	}
+
+	/**
+	 * @return true until this subscription is closed. Events still buffered
+	 *         are not delivered once closed.
+	 */
+	public boolean isActive() {
+		return !closed;
+	}
+
+	@Override
+	public void close() {
+		if (!closed) {
+			closed = true;
+			owner.remove(this);
+			buffer.clear();
+		}
+	}
+
+	@Override
+	public String toString() {
+		return "Subscription [type=" + type + ", startTime=" + startTime + ", endTime=" + endTime + ", delivered="
+				+ delivered() + ", dropped=" + dropped() + "]";
+	}
+}
@@ -0,0 +1,47 @@
+package net.intelie.challenges.concurrent;
+
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import net.intelie.challenges.Event;
+
+/**
+ * The {@link Subscription} of a store, by type. While there is none, an
+ * insert pays a single volatile read.
+ */
+final class Subscriptions {
+
+	private final ConcurrentHashMap<String, List<Subscription>> byType = new ConcurrentHashMap<String, List<Subscription>>();
+	private final AtomicInteger count = new AtomicInteger();
+
+	boolean isEmpty() {
+		return count.get() == 0;
+	}
+
+	void add(Subscription subscription) {
+		byType.computeIfAbsent(subscription.type(), type -> new CopyOnWriteArrayList<Subscription>()).add(subscription);
+		count.incrementAndGet();
+	}
+
+	void remove(Subscription subscription) {
+		List<Subscription> subscriptions = byType.get(subscription.type());
+		if (subscriptions != null && subscriptions.remove(subscription)) {
+			count.decrementAndGet();
+		}
+	}
+
+	/**
+	 * Offers the given {@param event} to the subscriptions of its type. Must be
+	 * called before the event is linked, see {@link Subscription}.
+	 */
+	void publish(Event event) {
+		List<Subscription> subscriptions = byType.get(event.type());
+		if (subscriptions != null) {
+			for (Subscription subscription : subscriptions) {
+				subscription.offer(event);
+			}
+		}
+	}
+}
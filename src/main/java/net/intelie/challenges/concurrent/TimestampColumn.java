@@ -0,0 +1,638 @@
+package net.intelie.challenges.concurrent;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.OptionalLong;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import net.intelie.challenges.Event;
+import net.intelie.challenges.Payload;
+
+/**
+ * 
+ * <p>
+ * A sorted column of <i>timestamps</i> kept in fixed-size {@code long[]}
+ * chunks.
+ * 
+ * <p>
+ * <br>
+ * A timestamp costs 8 bytes plus the unused tail of its chunk: there is no
+ * boxing, no node object and no lock per event. Chunks are found by binary
+ * search on their first timestamp, and an insert only shifts the timestamps
+ * of its own chunk. Appending at the end fills chunks completely, and a full
+ * chunk receiving an older timestamp is split in two halves. Each chunk keeps
+ * the number of timestamps before it, so a rank is found by binary search as
+ * well; an insert or a removal updates it in the chunks after its own.
+ * 
+ * <p>
+ * <br>
+ * Every method is atomic, guarded by a {@link ReentrantReadWriteLock}: reads
+ * share the lock and writes are exclusive. Readers copy timestamps out in
+ * batches (see {@link #read(long, int, long, long[], Payload[])}) so they
+ * take the lock once per batch instead of once per event.
+ * 
+ * <p>
+ * <br>
+ * The {@link Payload} of each timestamp is kept in a parallel column of
+ * chunks, which only exists from the first non-empty payload on, and a chunk
+ * of it only once one of its timestamps has a payload. A column without
+ * payloads costs nothing more.
+ *
+ */
+class TimestampColumn {
+
+	static final int DEFAULT_CHUNK_CAPACITY = 1024;
+
+	private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+	private final int chunkCapacity;
+
+	private long[][] chunks = new long[4][];
+	private int[] sizes = new int[4];
+	/**
+	 * The number of timestamps in the chunks before each chunk.
+	 */
+	private int[] starts = new int[4];
+	/**
+	 * Parallel to {@link #chunks}, {@code null} until needed. A {@code null}
+	 * entry stands for {@link Payload#EMPTY}.
+	 */
+	private Payload[][] payloads;
+	private int chunkCount;
+	private int size;
+
+	TimestampColumn() {
+		this(DEFAULT_CHUNK_CAPACITY);
+	}
+
+	TimestampColumn(int chunkCapacity) {
+		if (chunkCapacity < 2) {
+			throw new IllegalArgumentException("Chunk capacity must be at least 2");
+		}
+		this.chunkCapacity = chunkCapacity;
+	}
+
+	/**
+	 * Inserts a timestamp after every equal one already stored.
+	 */
+	void insert(long timestamp) {
+		insert(timestamp, Payload.EMPTY);
+	}
+
+	void insert(long timestamp, Payload payload) {
+		lock.writeLock().lock();
+		try {
+			insertLocked(timestamp, payload);
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * Inserts sorted timestamps under a single acquisition of the lock.
+	 */
+	void insertAll(long[] sorted) {
+		insertAll(sorted, null);
+	}
+
+	/**
+	 * @param payloads the payload of each timestamp, or {@code null} if none
+	 *                 has one.
+	 */
+	void insertAll(long[] sorted, Payload[] payloads) {
+		lock.writeLock().lock();
+		try {
+			for (int i = 0; i < sorted.length; i++) {
+				insertLocked(sorted[i], payloads == null ? Payload.EMPTY : payloads[i]);
+			}
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	private void insertLocked(long timestamp, Payload payload) {
+		if (chunkCount == 0) {
+			addChunk(0);
+		}
+
+		int c = chunkFor(timestamp);
+		int pos = upperBound(chunks[c], sizes[c], timestamp);
+		if (sizes[c] == chunkCapacity) {
+			if (c == chunkCount - 1 && pos == sizes[c]) {
+				// appending: start a new chunk and keep this one full.
+				addChunk(++c);
+				pos = 0;
+			} else {
+				split(c);
+				if (pos > sizes[c]) {
+					pos -= sizes[c];
+					++c;
+				}
+			}
+		}
+
+		long[] chunk = chunks[c];
+		System.arraycopy(chunk, pos, chunk, pos + 1, sizes[c] - pos);
+		chunk[pos] = timestamp;
+		if (!payload.isEmpty() && payloads == null) {
+			payloads = new Payload[chunks.length][];
+		}
+		if (payloads != null) {
+			if (!payload.isEmpty() && payloads[c] == null) {
+				payloads[c] = new Payload[chunkCapacity];
+			}
+			Payload[] payloadChunk = payloads[c];
+			if (payloadChunk != null) {
+				System.arraycopy(payloadChunk, pos, payloadChunk, pos + 1, sizes[c] - pos);
+				payloadChunk[pos] = payload.isEmpty() ? null : payload;
+			}
+		}
+		++sizes[c];
+		++size;
+		for (int i = c + 1; i < chunkCount; i++) {
+			++starts[i];
+		}
+	}
+
+	/**
+	 * Removes the {@param occurrence}-th (zero based) timestamp equal to
+	 * {@param timestamp}.
+	 * 
+	 * @return false if there is no such timestamp.
+	 */
+	boolean remove(long timestamp, int occurrence) {
+		lock.writeLock().lock();
+		try {
+			return removeLocked(timestamp, occurrence);
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * Removes the {@param occurrence}-th (zero based) timestamp equal to
+	 * {@param timestamp}, counting from the last one.
+	 * 
+	 * @return false if there is no such timestamp.
+	 */
+	boolean removeFromEnd(long timestamp, int occurrence) {
+		lock.writeLock().lock();
+		try {
+			int equal = upperIndex(timestamp) - index(timestamp);
+			return occurrence < equal && removeLocked(timestamp, equal - 1 - occurrence);
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	private boolean removeLocked(long timestamp, int occurrence) {
+		long position = skip(lowerBound(timestamp), occurrence);
+		if (position < 0) {
+			return false;
+		}
+		int c = (int) (position >>> 32);
+		int pos = (int) position;
+		if (chunks[c][pos] != timestamp) {
+			return false;
+		}
+
+		long[] chunk = chunks[c];
+		System.arraycopy(chunk, pos + 1, chunk, pos, sizes[c] - pos - 1);
+		if (payloads != null && payloads[c] != null) {
+			Payload[] payloadChunk = payloads[c];
+			System.arraycopy(payloadChunk, pos + 1, payloadChunk, pos, sizes[c] - pos - 1);
+			payloadChunk[sizes[c] - 1] = null;
+		}
+		--sizes[c];
+		--size;
+		for (int i = c + 1; i < chunkCount; i++) {
+			--starts[i];
+		}
+		if (sizes[c] == 0) {
+			removeChunk(c);
+		}
+		return true;
+	}
+
+	/**
+	 * @return how many timestamps are in the range from {@param fromTime}
+	 *         (inclusive) to {@param endTime} (exclusive), found by two binary
+	 *         searches.
+	 */
+	int count(long fromTime, long endTime) {
+		lock.readLock().lock();
+		try {
+			return Math.max(0, index(endTime) - index(fromTime));
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * @return the lowest timestamp in the range from {@param fromTime}
+	 *         (inclusive) to {@param endTime} (exclusive), if any.
+	 */
+	OptionalLong first(long fromTime, long endTime) {
+		lock.readLock().lock();
+		try {
+			long position = lowerBound(fromTime);
+			if (position < 0) {
+				return OptionalLong.empty();
+			}
+			long timestamp = chunks[(int) (position >>> 32)][(int) position];
+			return timestamp < endTime ? OptionalLong.of(timestamp) : OptionalLong.empty();
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * @return the highest timestamp in the range from {@param fromTime}
+	 *         (inclusive) to {@param endTime} (exclusive), if any.
+	 */
+	OptionalLong last(long fromTime, long endTime) {
+		lock.readLock().lock();
+		try {
+			int index = index(endTime) - 1;
+			if (index < 0) {
+				return OptionalLong.empty();
+			}
+			long position = skip(position(0, 0), index);
+			long timestamp = chunks[(int) (position >>> 32)][(int) position];
+			return timestamp >= fromTime ? OptionalLong.of(timestamp) : OptionalLong.empty();
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * Removes, in bulk, every timestamp lower than {@param cutoff}: whole chunks
+	 * are dropped and only the chunk holding the cutoff is shifted.
+	 */
+	void removeBefore(long cutoff, Eviction eviction) {
+		lock.writeLock().lock();
+		try {
+			removeFirst(index(cutoff), eviction);
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * Removes, in bulk, the {@param count} oldest timestamps.
+	 */
+	void removeFirst(int count, Eviction eviction) {
+		lock.writeLock().lock();
+		try {
+			count = Math.min(count, size);
+			if (count <= 0) {
+				return;
+			}
+			long before = footprintLocked();
+
+			int dropped = 0;
+			int remaining = count;
+			while (dropped < chunkCount && sizes[dropped] <= remaining) {
+				remaining -= sizes[dropped++];
+			}
+			System.arraycopy(chunks, dropped, chunks, 0, chunkCount - dropped);
+			System.arraycopy(sizes, dropped, sizes, 0, chunkCount - dropped);
+			Arrays.fill(chunks, chunkCount - dropped, chunkCount, null);
+			if (payloads != null) {
+				System.arraycopy(payloads, dropped, payloads, 0, chunkCount - dropped);
+				Arrays.fill(payloads, chunkCount - dropped, chunkCount, null);
+			}
+			chunkCount -= dropped;
+			if (remaining > 0) {
+				System.arraycopy(chunks[0], remaining, chunks[0], 0, sizes[0] - remaining);
+				if (payloads != null && payloads[0] != null) {
+					System.arraycopy(payloads[0], remaining, payloads[0], 0, sizes[0] - remaining);
+					Arrays.fill(payloads[0], sizes[0] - remaining, sizes[0], null);
+				}
+				sizes[0] -= remaining;
+			}
+			size -= count;
+			for (int c = 0, start = 0; c < chunkCount; start += sizes[c++]) {
+				starts[c] = start;
+			}
+
+			eviction.add(count, before - footprintLocked());
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * Copies into {@param into} the timestamps lower than {@param endTime} that
+	 * follow the first {@param skip} timestamps greater or equal than
+	 * {@param fromTime}, and their payloads into {@param payloadsInto} unless it
+	 * is {@code null}.
+	 * 
+	 * @return how many timestamps were copied.
+	 */
+	int read(long fromTime, int skip, long endTime, long[] into, Payload[] payloadsInto) {
+		lock.readLock().lock();
+		try {
+			long position = skip(lowerBound(fromTime), skip);
+			if (position < 0) {
+				return 0;
+			}
+			int c = (int) (position >>> 32);
+			int pos = (int) position;
+			int count = 0;
+			while (count < into.length && c < chunkCount) {
+				long[] chunk = chunks[c];
+				int chunkSize = sizes[c];
+				while (count < into.length && pos < chunkSize) {
+					long timestamp = chunk[pos];
+					if (timestamp >= endTime) {
+						return count;
+					}
+					if (payloadsInto != null) {
+						payloadsInto[count] = payloadLocked(c, pos);
+					}
+					into[count++] = timestamp;
+					++pos;
+				}
+				++c;
+				pos = 0;
+			}
+			return count;
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * Copies into {@param into}, newest first, the timestamps not lower than
+	 * {@param startTime} that come before the position given by
+	 * {@param toTime} and {@param skip}: the last timestamp not greater than
+	 * {@param toTime}, moved back by {@param skip} timestamps, and their
+	 * payloads into {@param payloadsInto} unless it is {@code null}.
+	 * 
+	 * @return how many timestamps were copied.
+	 */
+	int readBackward(long toTime, int skip, long startTime, long[] into, Payload[] payloadsInto) {
+		lock.readLock().lock();
+		try {
+			int index = upperIndex(toTime) - 1 - skip;
+			if (index < 0) {
+				return 0;
+			}
+			long position = skip(position(0, 0), index);
+			int c = (int) (position >>> 32);
+			int pos = (int) position;
+			int count = 0;
+			while (count < into.length && c >= 0) {
+				long[] chunk = chunks[c];
+				while (count < into.length && pos >= 0) {
+					long timestamp = chunk[pos];
+					if (timestamp < startTime) {
+						return count;
+					}
+					if (payloadsInto != null) {
+						payloadsInto[count] = payloadLocked(c, pos);
+					}
+					into[count++] = timestamp;
+					--pos;
+				}
+				if (--c >= 0) {
+					pos = sizes[c] - 1;
+				}
+			}
+			return count;
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	int size() {
+		lock.readLock().lock();
+		try {
+			return size;
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * @return an estimate of the heap used by the timestamps of this column.
+	 */
+	long footprint() {
+		lock.readLock().lock();
+		try {
+			return footprintLocked();
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	private long footprintLocked() {
+		// 16 bytes of array header plus 8 bytes per slot, per chunk.
+		long footprint = (long) chunkCount * (16 + 8L * chunkCapacity);
+		if (payloads != null) {
+			for (int c = 0; c < chunkCount; c++) {
+				if (payloads[c] != null) {
+					// the references only, payloads are shared with the events.
+					footprint += 16 + 4L * chunkCapacity;
+				}
+			}
+		}
+		return footprint;
+	}
+
+	/**
+	 * @return the payloads of the given {@param events}, or {@code null} if all
+	 *         of them are empty, as taken by {@link #insertAll(long[], Payload[])}.
+	 */
+	static Payload[] payloads(List<Event> events) {
+		Payload[] payloads = null;
+		for (int i = 0; i < events.size(); i++) {
+			Payload payload = events.get(i).payload();
+			if (!payload.isEmpty()) {
+				if (payloads == null) {
+					payloads = new Payload[events.size()];
+					Arrays.fill(payloads, Payload.EMPTY);
+				}
+				payloads[i] = payload;
+			}
+		}
+		return payloads;
+	}
+
+	private Payload payloadLocked(int chunk, int offset) {
+		Payload payload = payloads == null || payloads[chunk] == null ? null : payloads[chunk][offset];
+		return payload == null ? Payload.EMPTY : payload;
+	}
+
+	/**
+	 * @return the index of the chunk a new timestamp belongs to: the last one
+	 *         whose first timestamp is not greater than it.
+	 */
+	private int chunkFor(long timestamp) {
+		int low = 0;
+		int high = chunkCount - 1;
+		while (low < high) {
+			int mid = (low + high + 1) >>> 1;
+			if (chunks[mid][0] <= timestamp) {
+				low = mid;
+			} else {
+				high = mid - 1;
+			}
+		}
+		return low;
+	}
+
+	/**
+	 * @return the position of the first timestamp not lower than
+	 *         {@param timestamp}, encoded as chunk index and offset, or -1.
+	 */
+	private long lowerBound(long timestamp) {
+		int low = 0;
+		int high = chunkCount;
+		// first chunk whose last timestamp is not lower than the given one.
+		while (low < high) {
+			int mid = (low + high) >>> 1;
+			if (chunks[mid][sizes[mid] - 1] < timestamp) {
+				low = mid + 1;
+			} else {
+				high = mid;
+			}
+		}
+		if (low == chunkCount) {
+			return -1;
+		}
+		return position(low, lowerBound(chunks[low], sizes[low], timestamp));
+	}
+
+	/**
+	 * @return the given {@param position} moved forward by {@param count}
+	 *         timestamps, or -1 if it goes past the end.
+	 */
+	private long skip(long position, int count) {
+		if (position < 0) {
+			return -1;
+		}
+		int index = offset(position) + count;
+		if (index >= size) {
+			return -1;
+		}
+		// the last chunk starting at or before the index; none of them is empty.
+		int low = 0;
+		int high = chunkCount - 1;
+		while (low < high) {
+			int mid = (low + high + 1) >>> 1;
+			if (starts[mid] <= index) {
+				low = mid;
+			} else {
+				high = mid - 1;
+			}
+		}
+		return position(low, index - starts[low]);
+	}
+
+	/**
+	 * @return how many timestamps are lower than the given {@param timestamp}.
+	 */
+	private int index(long timestamp) {
+		long position = lowerBound(timestamp);
+		return position < 0 ? size : offset(position);
+	}
+
+	/**
+	 * @return how many timestamps are not greater than the given
+	 *         {@param timestamp}.
+	 */
+	private int upperIndex(long timestamp) {
+		return timestamp == Long.MAX_VALUE ? size : index(timestamp + 1);
+	}
+
+	/**
+	 * @return how many timestamps come before the given {@param position}.
+	 */
+	private int offset(long position) {
+		return starts[(int) (position >>> 32)] + (int) position;
+	}
+
+	private static long position(int chunk, int offset) {
+		return ((long) chunk << 32) | offset;
+	}
+
+	private void addChunk(int index) {
+		if (chunkCount == chunks.length) {
+			chunks = Arrays.copyOf(chunks, chunkCount * 2);
+			sizes = Arrays.copyOf(sizes, chunkCount * 2);
+			starts = Arrays.copyOf(starts, chunkCount * 2);
+			if (payloads != null) {
+				payloads = Arrays.copyOf(payloads, chunkCount * 2);
+			}
+		}
+		System.arraycopy(chunks, index, chunks, index + 1, chunkCount - index);
+		System.arraycopy(sizes, index, sizes, index + 1, chunkCount - index);
+		System.arraycopy(starts, index, starts, index + 1, chunkCount - index);
+		if (payloads != null) {
+			System.arraycopy(payloads, index, payloads, index + 1, chunkCount - index);
+			payloads[index] = null;
+		}
+		chunks[index] = new long[chunkCapacity];
+		sizes[index] = 0;
+		starts[index] = index == 0 ? 0 : starts[index - 1] + sizes[index - 1];
+		++chunkCount;
+	}
+
+	private void removeChunk(int index) {
+		System.arraycopy(chunks, index + 1, chunks, index, chunkCount - index - 1);
+		System.arraycopy(sizes, index + 1, sizes, index, chunkCount - index - 1);
+		System.arraycopy(starts, index + 1, starts, index, chunkCount - index - 1);
+		--chunkCount;
+		chunks[chunkCount] = null;
+		if (payloads != null) {
+			System.arraycopy(payloads, index + 1, payloads, index, chunkCount - index);
+			payloads[chunkCount] = null;
+		}
+	}
+
+	/**
+	 * Moves the upper half of a full chunk to a new chunk right after it.
+	 */
+	private void split(int index) {
+		addChunk(index + 1);
+		int half = sizes[index] / 2;
+		System.arraycopy(chunks[index], half, chunks[index + 1], 0, sizes[index] - half);
+		if (payloads != null && payloads[index] != null) {
+			payloads[index + 1] = new Payload[chunkCapacity];
+			System.arraycopy(payloads[index], half, payloads[index + 1], 0, sizes[index] - half);
+			Arrays.fill(payloads[index], half, sizes[index], null);
+		}
+		sizes[index + 1] = sizes[index] - half;
+		sizes[index] = half;
+		starts[index + 1] = starts[index] + half;
+	}
+
+	private static int lowerBound(long[] chunk, int size, long timestamp) {
+		int low = 0;
+		int high = size;
+		while (low < high) {
+			int mid = (low + high) >>> 1;
+			if (chunk[mid] < timestamp) {
+				low = mid + 1;
+			} else {
+				high = mid;
+			}
+		}
+		return low;
+	}
+
+	private static int upperBound(long[] chunk, int size, long timestamp) {
+		int low = 0;
+		int high = size;
+		while (low < high) {
+			int mid = (low + high) >>> 1;
+			if (chunk[mid] <= timestamp) {
+				low = mid + 1;
+			} else {
+				high = mid;
+			}
+		}
+		return low;
+	}
+}
@@ -0,0 +1,52 @@
+package net.intelie.challenges.concurrent;
+
+import java.util.Arrays;
+import java.util.Set;
+
+/**
+ *
+ * <p>
+ * Tells whether a type id of a {@link TypeRegistry} is one of a set of types,
+ * comparing no {@link String} once an id was seen.
+ *
+ * <p>
+ * <br>
+ * Ids never change name, so the answer for an id is kept for good. Not
+ * thread-safe: each walk over the chain has its own.
+ *
+ */
+final class TypeFilter {
+
+	private static final byte UNSEEN = 0;
+	private static final byte MATCH = 1;
+	private static final byte MISMATCH = 2;
+
+	private final TypeRegistry registry;
+	private final Set<String> types;
+
+	private byte[] verdicts;
+
+	/**
+	 * @param types the types to match, or {@code null} for all of them.
+	 */
+	TypeFilter(TypeRegistry registry, Set<String> types) {
+		this.registry = registry;
+		this.types = types;
+		this.verdicts = new byte[Math.max(registry.size(), 1)];
+	}
+
+	boolean matches(int id) {
+		if (types == null) {
+			return true;
+		}
+		if (id >= verdicts.length) {
+			verdicts = Arrays.copyOf(verdicts, Math.max(id + 1, verdicts.length * 2));
+		}
+		byte verdict = verdicts[id];
+		if (verdict == UNSEEN) {
+			verdict = types.contains(registry.nameOf(id)) ? MATCH : MISMATCH;
+			verdicts[id] = verdict;
+		}
+		return verdict == MATCH;
+	}
+}
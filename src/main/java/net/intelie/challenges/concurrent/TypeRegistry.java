@@ -0,0 +1,128 @@
+package net.intelie.challenges.concurrent;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 
+ * <p>
+ * Interns event types into small {@code int} ids, so a store can keep and
+ * compare an id per event instead of a {@link String} reference.
+ * 
+ * <p>
+ * <br>
+ * Lookups by name go through a {@link ConcurrentHashMap}; lookups by id read
+ * a copy-on-write array, which is replaced only when a new type is
+ * registered.
+ * 
+ * <p>
+ * <br>
+ * A type can be retired, for instance once its events were removed, and gets
+ * its old id back if it is registered again, so a type removed and inserted
+ * over and over does not grow the registry. Ids never change name, so an
+ * event which got the id from a concurrent {@link #intern(String)} still
+ * resolves to its type.
+ *
+ */
+class TypeRegistry {
+
+	/**
+	 * Id of a type which was never registered.
+	 */
+	static final int UNKNOWN = -1;
+
+	private final ConcurrentHashMap<String, Integer> ids = new ConcurrentHashMap<String, Integer>();
+
+	/**
+	 * The ids of the retired types, guarded by this.
+	 */
+	private final Map<String, Integer> retired = new HashMap<String, Integer>();
+
+	private volatile String[] names = new String[0];
+
+	/**
+	 * @return the id of the given {@param type}, registering it if needed.
+	 */
+	int intern(String type) {
+		Integer id = ids.get(type);
+		if (id != null) {
+			return id;
+		}
+		synchronized (this) {
+			id = ids.get(type);
+			if (id == null) {
+				id = retired.remove(type);
+				if (id == null) {
+					String[] current = names;
+					String[] grown = Arrays.copyOf(current, current.length + 1);
+					grown[current.length] = type;
+					// the name must be readable before the id is published.
+					names = grown;
+					id = current.length;
+				}
+				ids.put(type, id);
+			}
+			return id;
+		}
+	}
+
+	/**
+	 * Retires the given {@param type}, if it is registered. Its id keeps its
+	 * name, and is given back to the type if it is registered again.
+	 */
+	synchronized void retire(String type) {
+		Integer id = ids.remove(type);
+		if (id != null) {
+			retired.put(type, id);
+		}
+	}
+
+	/**
+	 * @return the types registered and not retired.
+	 */
+	Set<String> types() {
+		return new HashSet<String>(ids.keySet());
+	}
+
+	/**
+	 * @return the id of the given {@param type}, or {@link #UNKNOWN}.
+	 */
+	int idOf(String type) {
+		Integer id = ids.get(type);
+		return id == null ? UNKNOWN : id;
+	}
+
+	/**
+	 * @return the name registered with the given {@param id}.
+	 */
+	String nameOf(int id) {
+		return names[id];
+	}
+
+	/**
+	 * @return the number of ids given so far, those of retired types included.
+	 */
+	int size() {
+		return names.length;
+	}
+
+	/**
+	 * @return a copy of {@param types}, which cannot be null nor hold a null or
+	 *         empty type.
+	 */
+	static Set<String> validated(Set<String> types) {
+		if (types == null) {
+			throw new IllegalArgumentException("Types cannot be null");
+		}
+		for (String type : types) {
+			if (type == null || type.trim().isEmpty()) {
+				throw new IllegalArgumentException("Type cannot be null or empty");
+			}
+		}
+		return new HashSet<String>(types);
+	}
+}
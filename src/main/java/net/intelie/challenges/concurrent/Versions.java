@@ -0,0 +1,254 @@
+package net.intelie.challenges.concurrent;
+
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ *
+ * <p>
+ * The version clock of a {@link ConcurrentSortedEventStore}, which makes its
+ * reads snapshots. It takes no lock.
+ *
+ * <p>
+ * <br>
+ * Every change of the store takes a version: a node records the version in
+ * which it was linked and the one in which it was removed, see
+ * {@link ConcurrentEventIterator#visibleAt(long)}. A change, of a single
+ * node or of many, takes a version with {@link #begin()} and makes it
+ * readable with {@link #commit(long)} once it is done. Versions are taken
+ * from an {@link AtomicLong}, and each commit sets a flag in a ring indexed
+ * by version; the committed watermark then moves over the flags in order, so
+ * readers are handed only versions older than every change still in flight,
+ * and never see part of a change, nor a change without the older ones.
+ *
+ * <p>
+ * <br>
+ * A reader pins the watermark in an epoch slot and sees the store as it was
+ * then. Slots are striped by thread, so readers of different threads write
+ * different cache lines. A removed node stays linked, so older readers still
+ * walk through it, until the oldest pinned version is not older than its
+ * removal, see {@link #oldest()}. A pin is released by its reader once done,
+ * or once the reader is garbage collected, so an iterator that is abandoned
+ * only delays the reclamation.
+ *
+ */
+final class Versions {
+
+	/**
+	 * The number of commit flags. A change committed this far ahead of the
+	 * watermark is flagged in {@link #overflow} instead.
+	 */
+	private static final int RING = 1 << 12;
+
+	/**
+	 * The number of epoch slots of a {@link Slots} segment, and the spacing of
+	 * two slots in its array, a cache line apart.
+	 */
+	private static final int SLOTS = 64;
+	private static final int PAD = 8;
+
+	/**
+	 * The value of a slot pinning no version.
+	 */
+	private static final long FREE = Long.MAX_VALUE;
+
+	private static final AtomicIntegerFieldUpdater<Pin> RELEASED = AtomicIntegerFieldUpdater.newUpdater(Pin.class,
+			"released");
+
+	/**
+	 * A pinned version, released once.
+	 */
+	final class Pin extends WeakReference<Object> {
+		final long version;
+		private final Slots slots;
+		private final int slot;
+		volatile int released;
+
+		private Pin(Object owner, long version, Slots slots, int slot) {
+			super(owner, owner == null ? null : abandoned);
+			this.version = version;
+			this.slots = slots;
+			this.slot = slot;
+		}
+
+		/**
+		 * Releases the version, and lets the store reclaim what only this reader
+		 * could still see. Later calls do nothing.
+		 */
+		void release() {
+			if (free()) {
+				reclaimer.run();
+			}
+		}
+
+		/**
+		 * @return false if the pin was released already.
+		 */
+		private boolean free() {
+			if (!RELEASED.compareAndSet(this, 0, 1)) {
+				return false;
+			}
+			clear();
+			slots.pins.set(slot, null);
+			slots.versions.set(slot, FREE);
+			return true;
+		}
+	}
+
+	/**
+	 * A segment of epoch slots. Segments are appended when every slot is taken,
+	 * and never removed.
+	 */
+	private static final class Slots {
+		final AtomicLongArray versions = new AtomicLongArray(SLOTS * PAD);
+		/**
+		 * The pins of readers released when collected, kept reachable here.
+		 */
+		final AtomicReferenceArray<Pin> pins = new AtomicReferenceArray<Pin>(SLOTS * PAD);
+		final AtomicReference<Slots> next = new AtomicReference<Slots>();
+
+		Slots() {
+			for (int i = 0; i < SLOTS; i++) {
+				versions.set(i * PAD, FREE);
+			}
+		}
+	}
+
+	private final AtomicLong clock = new AtomicLong();
+	private final AtomicLong committed = new AtomicLong();
+
+	/**
+	 * The commit flag of a version is the version itself, at its index modulo
+	 * {@link #RING}.
+	 */
+	private final AtomicLongArray flags = new AtomicLongArray(RING);
+	private final ConcurrentSkipListSet<Long> overflow = new ConcurrentSkipListSet<Long>();
+
+	private final Slots slots = new Slots();
+	private final ReferenceQueue<Object> abandoned = new ReferenceQueue<Object>();
+	private final Runnable reclaimer;
+
+	/**
+	 * @param reclaimer run after a pin is released.
+	 */
+	Versions(Runnable reclaimer) {
+		this.reclaimer = reclaimer;
+	}
+
+	/**
+	 * @return the version of a change, which readers do not see until
+	 *         {@link #commit(long)}, nor any later one.
+	 */
+	long begin() {
+		return clock.incrementAndGet();
+	}
+
+	/**
+	 * @return the last version begun, committed or not.
+	 */
+	long latest() {
+		return clock.get();
+	}
+
+	void commit(long version) {
+		// the flag held by the version one ring before is free once the watermark
+		// passed it.
+		if (version - committed.get() < RING) {
+			flags.set((int) version & (RING - 1), version);
+		} else {
+			overflow.add(version);
+		}
+
+		// moves the watermark over every version flagged after it. A flag set
+		// after a thread gave up is seen by the thread which set it.
+		while (true) {
+			long current = committed.get();
+			long next = current + 1;
+			boolean flagged = flags.get((int) next & (RING - 1)) == next;
+			if (!flagged && (overflow.isEmpty() || !overflow.contains(next))) {
+				return;
+			}
+			if (committed.compareAndSet(current, next) && !flagged) {
+				overflow.remove(next);
+			}
+		}
+	}
+
+	/**
+	 * @param owner the reader, released when it is garbage collected, or
+	 *              {@code null} if it always releases the pin itself.
+	 * @return the last committed version, pinned until released.
+	 */
+	Pin pin(Object owner) {
+		int stripe = (int) Thread.currentThread().getId();
+		long version = committed.get();
+		Slots segment = slots;
+		while (true) {
+			for (int i = 0; i < SLOTS; i++) {
+				int slot = ((stripe + i) & (SLOTS - 1)) * PAD;
+				if (segment.versions.get(slot) != FREE || !segment.versions.compareAndSet(slot, FREE, version)) {
+					continue;
+				}
+				// a reclaimer which read the slot free read the watermark before it,
+				// so the pin is safe once the watermark is the version published.
+				long latest;
+				while ((latest = committed.get()) != version) {
+					version = latest;
+					segment.versions.set(slot, version);
+				}
+				Pin pin = new Pin(owner, version, segment, slot);
+				if (owner != null) {
+					segment.pins.set(slot, pin);
+				}
+				return pin;
+			}
+			Slots next = segment.next.get();
+			if (next == null) {
+				segment.next.compareAndSet(null, new Slots());
+				next = segment.next.get();
+			}
+			segment = next;
+		}
+	}
+
+	/**
+	 * @return the oldest version a reader may see: a node removed in it, or
+	 *         before it, can be unlinked.
+	 */
+	long oldest() {
+		Reference<?> reference;
+		while ((reference = abandoned.poll()) != null) {
+			((Pin) reference).free();
+		}
+		// the watermark is read before the slots, see pin(Object).
+		long oldest = committed.get();
+		for (Slots segment = slots; segment != null; segment = segment.next.get()) {
+			for (int i = 0; i < SLOTS; i++) {
+				oldest = Math.min(oldest, segment.versions.get(i * PAD));
+			}
+		}
+		return oldest;
+	}
+
+	/**
+	 * @return the number of pinned versions, each reader counted once.
+	 */
+	int pinned() {
+		int pinned = 0;
+		for (Slots segment = slots; segment != null; segment = segment.next.get()) {
+			for (int i = 0; i < SLOTS; i++) {
+				if (segment.versions.get(i * PAD) != FREE) {
+					pinned++;
+				}
+			}
+		}
+		return pinned;
+	}
+}
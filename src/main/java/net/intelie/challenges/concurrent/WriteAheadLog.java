@@ -0,0 +1,387 @@
+package net.intelie.challenges.concurrent;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.zip.CRC32;
+
+import net.intelie.challenges.Event;
+import net.intelie.challenges.Payload;
+
+/**
+ * 
+ * <p>
+ * Append-only log of store mutations, kept in fixed-size segment files mapped
+ * with {@link FileChannel#map}.
+ * 
+ * <p>
+ * <br>
+ * Each record is its payload length, the CRC32 of the payload and the payload
+ * itself: a kind byte, the UTF-8 type and, but for {@link #REMOVE_ALL}, the
+ * timestamp. An {@link #INSERT} or a {@link #REMOVE} is followed by the
+ * encoding of the {@link Payload} of its event, if any, up to the end of the
+ * record. Segment files are zero-filled when mapped, so a zero length marks
+ * the end of a segment; a torn or corrupt record ends it as well.
+ * 
+ * <p>
+ * <br>
+ * Records are encoded outside of any lock; the append lock only covers copying
+ * them into the mapped segment. {@link #sync(long)} implements group commit:
+ * the first waiter forces the segment on behalf of everyone who appended
+ * before it started, the others wait for that force to finish.
+ * 
+ * <p>
+ * <br>
+ * A checkpoint is a file written aside the segments, holding the state of the
+ * store as of the start of a segment, see {@link #startSegment()}. Once it is
+ * complete, {@link #truncate(long)} deletes the segments before it, and
+ * recovery starts from the newest checkpoint and replays only the segments
+ * after it.
+ *
+ */
+final class WriteAheadLog implements Closeable {
+
+	static final byte INSERT = 1;
+	static final byte REMOVE = 2;
+	static final byte REMOVE_ALL = 3;
+
+	private static final int HEADER = 8;
+	private static final String SUFFIX = ".wal";
+	private static final String CHECKPOINT_SUFFIX = ".checkpoint";
+
+	interface Visitor {
+
+		/**
+		 * Called first, with the newest checkpoint, if any.
+		 */
+		void restore(Path checkpoint) throws IOException;
+
+		void insert(Event event);
+
+		void remove(Event event);
+
+		void removeAll(String type);
+
+		/**
+		 * Called once the whole log was replayed.
+		 */
+		void flush();
+	}
+
+	private final Path directory;
+	private final int segmentSize;
+
+	private final ReentrantLock appendLock = new ReentrantLock();
+	private long segmentIndex;
+	private FileChannel channel;
+	private MappedByteBuffer buffer;
+	private long written;
+	private boolean closed;
+
+	private final Object syncMonitor = new Object();
+	private long synced;
+	private boolean syncing;
+
+	/**
+	 * Restores the newest checkpoint found in {@param directory} and replays the
+	 * segments after it into {@param visitor}, in the order they were written,
+	 * and opens the last one for appending.
+	 */
+	WriteAheadLog(Path directory, int segmentSize, Visitor visitor) throws IOException {
+		if (segmentSize <= HEADER) {
+			throw new IllegalArgumentException("Segment size must be greater than " + HEADER);
+		}
+		this.directory = Files.createDirectories(directory);
+		this.segmentSize = segmentSize;
+
+		List<Path> checkpoints = list(CHECKPOINT_SUFFIX);
+		long first = 0;
+		if (!checkpoints.isEmpty()) {
+			Path checkpoint = checkpoints.get(checkpoints.size() - 1);
+			first = index(checkpoint, CHECKPOINT_SUFFIX);
+			visitor.restore(checkpoint);
+		}
+		// what a checkpoint covers may be left over by a crash before truncating.
+		truncate(first);
+
+		List<Path> segments = list(SUFFIX);
+		for (int i = 0; i < segments.size() - 1; i++) {
+			try (FileChannel channel = FileChannel.open(segments.get(i), StandardOpenOption.READ)) {
+				replay(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()), visitor);
+			}
+		}
+
+		if (segments.isEmpty()) {
+			open(first);
+		} else {
+			open(index(segments.get(segments.size() - 1), SUFFIX));
+			if (!replay(buffer, visitor)) {
+				// a torn tail would look like garbage once new records are appended before it.
+				for (int p = buffer.position(); p < buffer.limit(); p++) {
+					buffer.put(p, (byte) 0);
+				}
+			}
+		}
+		visitor.flush();
+	}
+
+	static byte[] encode(byte kind, String type, long timestamp) {
+		return encode(kind, type, timestamp, Payload.EMPTY);
+	}
+
+	static byte[] encode(byte kind, String type, long timestamp, Payload attributes) {
+		byte[] name = type.getBytes(StandardCharsets.UTF_8);
+		int length = 1 + 4 + name.length + (kind == REMOVE_ALL ? 0 : 8) + attributes.encodedSize();
+
+		ByteBuffer record = ByteBuffer.allocate(HEADER + length);
+		record.putInt(length).putInt(0).put(kind).putInt(name.length).put(name);
+		if (kind != REMOVE_ALL) {
+			record.putLong(timestamp);
+		}
+		attributes.writeTo(record);
+
+		CRC32 crc = new CRC32();
+		crc.update(record.array(), HEADER, length);
+		record.putInt(4, (int) crc.getValue());
+		return record.array();
+	}
+
+	/**
+	 * Appends the given records atomically with respect to other appends.
+	 * 
+	 * @return the log position to pass to {@link #sync(long)} to make them
+	 *         durable.
+	 */
+	long append(byte[]... records) throws IOException {
+		appendLock.lock();
+		try {
+			if (closed) {
+				throw new IllegalStateException("Log is closed");
+			}
+			// checked before any is written, so a batch is appended whole or not at all.
+			for (byte[] record : records) {
+				if (record.length > segmentSize) {
+					throw new IllegalArgumentException("Record larger than a segment");
+				}
+			}
+			for (byte[] record : records) {
+				if (buffer.remaining() < record.length) {
+					roll();
+				}
+				buffer.put(record);
+				written += record.length;
+			}
+			return written;
+		} finally {
+			appendLock.unlock();
+		}
+	}
+
+	/**
+	 * Returns once everything appended up to {@param position} is on disk.
+	 */
+	void sync(long position) throws IOException {
+		synchronized (syncMonitor) {
+			while (syncing && synced < position) {
+				try {
+					syncMonitor.wait();
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					throw new IOException("Interrupted waiting for sync", e);
+				}
+			}
+			if (synced >= position) {
+				return;
+			}
+			syncing = true;
+		}
+
+		MappedByteBuffer target;
+		long upTo;
+		appendLock.lock();
+		try {
+			target = buffer;
+			upTo = written;
+		} finally {
+			appendLock.unlock();
+		}
+
+		// forced without holding any lock, so later appenders queue up for the next force.
+		try {
+			target.force();
+		} catch (RuntimeException e) {
+			synchronized (syncMonitor) {
+				// a roll forces and releases the segment on its own.
+				if (synced < upTo) {
+					throw e;
+				}
+			}
+		} finally {
+			synchronized (syncMonitor) {
+				synced = Math.max(synced, upTo);
+				syncing = false;
+				syncMonitor.notifyAll();
+			}
+		}
+	}
+
+	/**
+	 * Starts a new segment, unless the current one is still empty, so every
+	 * record appended from now on is in it or after it.
+	 * 
+	 * @return the index of the segment.
+	 */
+	long startSegment() throws IOException {
+		appendLock.lock();
+		try {
+			if (closed) {
+				throw new IllegalStateException("Log is closed");
+			}
+			if (buffer.position() > 0) {
+				roll();
+			}
+			return segmentIndex;
+		} finally {
+			appendLock.unlock();
+		}
+	}
+
+	/**
+	 * @return the file of the checkpoint holding the state of the store as of
+	 *         the start of the given {@param segment}.
+	 */
+	Path checkpoint(long segment) {
+		return path(segment, CHECKPOINT_SUFFIX);
+	}
+
+	/**
+	 * Deletes the segments, and the checkpoints, before the given
+	 * {@param segment}, which a complete checkpoint covers.
+	 */
+	void truncate(long segment) throws IOException {
+		for (String suffix : new String[] { SUFFIX, CHECKPOINT_SUFFIX }) {
+			for (Path file : list(suffix)) {
+				if (index(file, suffix) < segment) {
+					Files.delete(file);
+				}
+			}
+		}
+	}
+
+	@Override
+	public void close() throws IOException {
+		appendLock.lock();
+		try {
+			if (closed) {
+				return;
+			}
+			closed = true;
+			buffer.force();
+			channel.close();
+		} finally {
+			appendLock.unlock();
+		}
+	}
+
+	private void roll() throws IOException {
+		buffer.force();
+		channel.close();
+		synchronized (syncMonitor) {
+			synced = Math.max(synced, written);
+			syncMonitor.notifyAll();
+		}
+		open(segmentIndex + 1);
+	}
+
+	private void open(long index) throws IOException {
+		segmentIndex = index;
+		channel = FileChannel.open(path(index, SUFFIX), StandardOpenOption.CREATE, StandardOpenOption.READ,
+				StandardOpenOption.WRITE);
+		buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, Math.max(channel.size(), segmentSize));
+	}
+
+	/**
+	 * Feeds the records of a segment to {@param visitor}, leaving
+	 * {@param buffer} positioned after the last valid one.
+	 * 
+	 * @return false if the segment ends on a torn or corrupt record.
+	 */
+	private static boolean replay(ByteBuffer buffer, Visitor visitor) {
+		CRC32 crc = new CRC32();
+		while (buffer.remaining() >= HEADER) {
+			int start = buffer.position();
+			int length = buffer.getInt(start);
+			if (length == 0) {
+				return true;
+			}
+			if (length < 5 || length > buffer.remaining() - HEADER) {
+				return false;
+			}
+
+			ByteBuffer payload = buffer.duplicate();
+			payload.position(start + HEADER).limit(start + HEADER + length);
+			crc.reset();
+			crc.update(payload.duplicate());
+			if ((int) crc.getValue() != buffer.getInt(start + 4)) {
+				return false;
+			}
+
+			byte kind = payload.get();
+			byte[] name = new byte[payload.getInt()];
+			payload.get(name);
+			String type = new String(name, StandardCharsets.UTF_8);
+			if (kind == REMOVE_ALL) {
+				visitor.removeAll(type);
+			} else {
+				long timestamp = payload.getLong();
+				// copied, so the events do not keep the segment mapped: a mapping is only
+				// released once its buffer is garbage collected.
+				byte[] attributes = new byte[payload.remaining()];
+				payload.get(attributes);
+				Event event = new Event(type, timestamp, Payload.wrap(attributes));
+				if (kind == INSERT) {
+					visitor.insert(event);
+				} else {
+					visitor.remove(event);
+				}
+			}
+			buffer.position(start + HEADER + length);
+		}
+		return true;
+	}
+
+	/**
+	 * @return the files of the log with the given {@param suffix}, in the order
+	 *         they were written.
+	 */
+	private List<Path> list(String suffix) throws IOException {
+		List<Path> files = new ArrayList<Path>();
+		try (DirectoryStream<Path> found = Files.newDirectoryStream(directory, "*" + suffix)) {
+			for (Path file : found) {
+				files.add(file);
+			}
+		}
+		Collections.sort(files);
+		return files;
+	}
+
+	private Path path(long index, String suffix) {
+		return directory.resolve(String.format("%016d%s", index, suffix));
+	}
+
+	private static long index(Path file, String suffix) {
+		String name = file.getFileName().toString();
+		return Long.parseLong(name.substring(0, name.length() - suffix.length()));
+	}
+}
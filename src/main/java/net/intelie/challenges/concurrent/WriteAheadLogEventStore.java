@@ -0,0 +1,316 @@
+package net.intelie.challenges.concurrent;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import net.intelie.challenges.Event;
+import net.intelie.challenges.EventIterator;
+import net.intelie.challenges.EventStore;
+import net.intelie.challenges.Order;
+
+/**
+ * 
+ * <p>
+ * A durable {@link EventStore}: every mutation is appended to a
+ * {@link WriteAheadLog} before being applied to an in-memory delegate, and the
+ * delegate is rebuilt from the log when the store is opened again.
+ * 
+ * <p>
+ * <br>
+ * When <i>sync</i> is set, a mutation only returns once its record is on disk.
+ * Concurrent writers share a single force of the mapped segment (group
+ * commit), so the cost of the fsync is spread over everyone who appended
+ * while the previous one was running. Otherwise records reach the disk when
+ * the operating system writes the mapped pages back, on segment roll or on
+ * {@link #close()}.
+ * 
+ * <p>
+ * <br>
+ * Inserts are logged and applied under a shared lock and
+ * {@link #removeAll(String)} under an exclusive one, so the log never orders a
+ * removal differently from the delegate. Removals through
+ * {@link EventIterator#remove()} are logged as well, with the payload of the
+ * event removed, so recovery removes an equal one. Recovery hands runs of
+ * inserts to {@link EventStore#insertAll(Collection)}.
+ * 
+ * <p>
+ * <br>
+ * {@link #checkpoint()} writes the events of the delegate to an
+ * {@link EventSnapshot} and deletes the log segments it covers, so the log
+ * does not grow forever and recovery only replays what came after it.
+ *
+ */
+public class WriteAheadLogEventStore implements EventStore, Closeable {
+
+	public static final int DEFAULT_SEGMENT_SIZE = 64 << 20;
+
+	private static final int REPLAY_BATCH = 1 << 16;
+
+	private final EventStore delegate;
+	private final WriteAheadLog log;
+	private final boolean sync;
+	private final ReentrantReadWriteLock order = new ReentrantReadWriteLock();
+
+	/**
+	 * <p>
+	 * This constructor keeps events in a {@link SkipListEventStore}, uses
+	 * segments of {@link #DEFAULT_SEGMENT_SIZE} bytes and syncs every mutation.
+	 */
+	public WriteAheadLogEventStore(Path directory) throws IOException {
+		this(directory, new SkipListEventStore(), DEFAULT_SEGMENT_SIZE, true);
+	}
+
+	/**
+	 * 
+	 * @param directory   holds the log segments; created if missing.
+	 * @param delegate    an empty store, filled with the events recovered from
+	 *                    the log.
+	 * @param segmentSize the size of each segment file, in bytes.
+	 * @param sync        whether mutations wait for their records to be on disk.
+	 */
+	public WriteAheadLogEventStore(Path directory, EventStore delegate, int segmentSize, boolean sync)
+			throws IOException {
+		if (directory == null || delegate == null) {
+			throw new IllegalArgumentException("Directory and delegate cannot be null");
+		}
+		this.delegate = delegate;
+		this.sync = sync;
+		this.log = new WriteAheadLog(directory, segmentSize, new Recovery(delegate));
+	}
+
+	@Override
+	public void insert(Event event) {
+		validate(event);
+		byte[] record = WriteAheadLog.encode(WriteAheadLog.INSERT, event.type(), event.timestamp(),
+				event.payload());
+
+		long position;
+		order.readLock().lock();
+		try {
+			position = append(record);
+			delegate.insert(event);
+		} finally {
+			order.readLock().unlock();
+		}
+		sync(position);
+	}
+
+	/**
+	 * <p>
+	 * Appends the whole batch in one go and waits for a single sync.
+	 */
+	@Override
+	public void insertAll(Collection<Event> events) {
+		byte[][] records = new byte[events.size()][];
+		int i = 0;
+		for (Event event : events) {
+			validate(event);
+			records[i++] = WriteAheadLog.encode(WriteAheadLog.INSERT, event.type(), event.timestamp(),
+					event.payload());
+		}
+
+		long position;
+		order.readLock().lock();
+		try {
+			position = append(records);
+			delegate.insertAll(events);
+		} finally {
+			order.readLock().unlock();
+		}
+		sync(position);
+	}
+
+	@Override
+	public void removeAll(String type) {
+		if (type == null || type.trim().isEmpty()) {
+			throw new IllegalArgumentException("Type cannot be null or empty");
+		}
+		byte[] record = WriteAheadLog.encode(WriteAheadLog.REMOVE_ALL, type, 0);
+
+		long position;
+		order.writeLock().lock();
+		try {
+			position = append(record);
+			delegate.removeAll(type);
+		} finally {
+			order.writeLock().unlock();
+		}
+		sync(position);
+	}
+
+	@Override
+	public EventIterator query(String type, long startTime, long endTime) {
+		return new LoggedEventIterator(this, delegate.query(type, startTime, endTime));
+	}
+
+	@Override
+	public EventIterator query(String type, long startTime, long endTime, Order order, int limit) {
+		return new LoggedEventIterator(this, delegate.query(type, startTime, endTime, order, limit));
+	}
+
+	@Override
+	public EventIterator query(Set<String> types, long startTime, long endTime) {
+		return new LoggedEventIterator(this, delegate.query(types, startTime, endTime));
+	}
+
+	@Override
+	public EventIterator queryAll(long startTime, long endTime) {
+		return new LoggedEventIterator(this, delegate.queryAll(startTime, endTime));
+	}
+
+	/**
+	 * Removes the current event of {@param iterator}, logging the removal.
+	 */
+	void remove(EventIterator iterator) {
+		Event event = iterator.current();
+		byte[] record = WriteAheadLog.encode(WriteAheadLog.REMOVE, event.type(), event.timestamp(),
+				event.payload());
+
+		long position;
+		order.readLock().lock();
+		try {
+			position = append(record);
+			iterator.remove();
+		} finally {
+			order.readLock().unlock();
+		}
+		sync(position);
+	}
+
+	/**
+	 * <p>
+	 * Writes the events of the delegate to a checkpoint, and deletes the log
+	 * segments before it. Mutations go on while a
+	 * {@link ConcurrentSortedEventStore} is written, as its iterators are
+	 * snapshots; other delegates are written with mutations waiting, so the
+	 * checkpoint matches the log. As no query returns them, events at
+	 * {@link Long#MAX_VALUE} of other delegates are not kept.
+	 * 
+	 * @return the number of events written.
+	 */
+	public synchronized long checkpoint() throws IOException {
+		long segment;
+		long count = 0;
+		EventIterator events = null;
+		order.writeLock().lock();
+		try {
+			segment = log.startSegment();
+			if (delegate instanceof ConcurrentSortedEventStore) {
+				events = ((ConcurrentSortedEventStore) delegate).all();
+			} else {
+				count = EventSnapshot.write(delegate.queryAll(Long.MIN_VALUE, Long.MAX_VALUE), log.checkpoint(segment));
+			}
+		} finally {
+			order.writeLock().unlock();
+		}
+		if (events != null) {
+			count = EventSnapshot.write(events, log.checkpoint(segment));
+		}
+		log.truncate(segment);
+		return count;
+	}
+
+	@Override
+	public void close() throws IOException {
+		log.close();
+	}
+
+	private long append(byte[]... records) {
+		try {
+			return log.append(records);
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	private void sync(long position) {
+		if (!sync) {
+			return;
+		}
+		try {
+			log.sync(position);
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	private static void validate(Event event) {
+		if (event == null) {
+			throw new IllegalArgumentException("Event cannot be null");
+		} else if (event.type() == null || event.type().trim().isEmpty()) {
+			throw new IllegalArgumentException("Type cannot be null or empty");
+		}
+	}
+
+	/**
+	 * Applies replayed records to the delegate, batching runs of inserts.
+	 */
+	private static final class Recovery implements WriteAheadLog.Visitor {
+
+		private final EventStore delegate;
+		private final List<Event> pending = new ArrayList<Event>();
+
+		Recovery(EventStore delegate) {
+			this.delegate = delegate;
+		}
+
+		@Override
+		public void restore(Path checkpoint) throws IOException {
+			if (delegate instanceof ConcurrentSortedEventStore) {
+				EventSnapshot.read(checkpoint, (ConcurrentSortedEventStore) delegate);
+			} else {
+				EventSnapshot.read(checkpoint, this::insert);
+			}
+		}
+
+		@Override
+		public void insert(Event event) {
+			pending.add(event);
+			if (pending.size() == REPLAY_BATCH) {
+				flush();
+			}
+		}
+
+		/**
+		 * Removes an event of the same type, <i>timestamp</i> and payload. An
+		 * event at {@link Long#MAX_VALUE} is past every exclusive end, so no
+		 * query of the delegate finds it.
+		 */
+		@Override
+		public void remove(Event event) {
+			flush();
+			long timestamp = event.timestamp();
+			if (timestamp == Long.MAX_VALUE) {
+				return;
+			}
+			EventIterator it = delegate.query(event.type(), timestamp, timestamp + 1);
+			while (it.moveNext()) {
+				if (it.current().payload().equals(event.payload())) {
+					it.remove();
+					return;
+				}
+			}
+		}
+
+		@Override
+		public void removeAll(String type) {
+			flush();
+			delegate.removeAll(type);
+		}
+
+		@Override
+		public void flush() {
+			if (!pending.isEmpty()) {
+				delegate.insertAll(pending);
+				pending.clear();
+			}
+		}
+	}
+}
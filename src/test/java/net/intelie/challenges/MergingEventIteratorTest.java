@@ -0,0 +1,96 @@
+package net.intelie.challenges;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class MergingEventIteratorTest {
+
+	@Test
+	public void mergeTest() {
+		List<Event> a = events("a", 1, 4, 4, 9);
+		List<Event> b = events("b", 2, 4, 10);
+		List<Event> c = events("c");
+
+		MergingEventIterator it = new MergingEventIterator(Arrays.asList(of(a), of(b), of(c)));
+
+		StringBuilder merged = new StringBuilder();
+		while (it.moveNext()) {
+			merged.append(it.current().type()).append(it.current().timestamp()).append(' ');
+		}
+		// ties keep the order of the sources.
+		Assert.assertEquals("a1 b2 a4 a4 b4 a9 b10 ", merged.toString());
+		Assert.assertFalse(it.moveNext());
+	}
+
+	@Test
+	public void removeTest() {
+		List<Event> a = events("a", 1, 3);
+		List<Event> b = events("b", 2);
+
+		MergingEventIterator it = new MergingEventIterator(Arrays.asList(of(a), of(b)));
+		Assert.assertTrue(it.moveNext());
+		Assert.assertTrue(it.moveNext());
+		it.remove();
+		Assert.assertTrue(it.moveNext());
+		Assert.assertEquals(3L, it.current().timestamp());
+
+		Assert.assertEquals(2, a.size());
+		Assert.assertTrue(b.isEmpty());
+	}
+
+	@Test(expected = IllegalStateException.class)
+	public void currentAfterRemoveTest() {
+		MergingEventIterator it = new MergingEventIterator(Arrays.asList(of(events("a", 1, 3)), of(events("b", 2))));
+		Assert.assertTrue(it.moveNext());
+		it.remove();
+		it.current();
+	}
+
+	@Test(expected = IllegalStateException.class)
+	public void emptyTest() {
+		MergingEventIterator it = new MergingEventIterator(Collections.<EventIterator>emptyList());
+		Assert.assertFalse(it.moveNext());
+		it.current();
+	}
+
+	private static List<Event> events(String type, long... timestamps) {
+		List<Event> events = new ArrayList<Event>();
+		for (long timestamp : timestamps) {
+			events.add(new Event(type, timestamp));
+		}
+		return events;
+	}
+
+	private static EventIterator of(List<Event> events) {
+		Iterator<Event> iterator = events.iterator();
+		return new EventIterator() {
+			private Event current;
+
+			@Override
+			public boolean moveNext() {
+				current = iterator.hasNext() ? iterator.next() : null;
+				return current != null;
+			}
+
+			@Override
+			public Event current() {
+				return current;
+			}
+
+			@Override
+			public void remove() {
+				iterator.remove();
+			}
+
+			@Override
+			public void close() {
+			}
+		};
+	}
+}
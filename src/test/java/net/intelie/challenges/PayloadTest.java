@@ -0,0 +1,71 @@
+package net.intelie.challenges;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class PayloadTest {
+
+	@Test
+	public void roundTripTest() {
+		Payload payload = Payload.builder()
+				.put("count", -3L)
+				.put("ratio", 0.25)
+				.put("host", "a\u00e7\u00e3o-01")
+				.put("ok", true)
+				.put("big", Long.MIN_VALUE)
+				.build();
+
+		Assert.assertEquals(-3L, payload.getLong("count", 0));
+		Assert.assertEquals(0.25, payload.getDouble("ratio", 0), 0);
+		Assert.assertEquals("a\u00e7\u00e3o-01", payload.getString("host"));
+		Assert.assertTrue(payload.getBoolean("ok", false));
+		Assert.assertEquals(Long.MIN_VALUE, payload.getLong("big", 0));
+		Assert.assertEquals(Arrays.asList("count", "ratio", "host", "ok", "big"), payload.names());
+
+		Assert.assertFalse(payload.has("missing"));
+		Assert.assertEquals(7L, payload.getLong("missing", 7L));
+		Assert.assertNull(payload.getString("missing"));
+		Assert.assertEquals(payload, Payload.wrap(payload.toByteArray()));
+	}
+
+	@Test
+	public void viewOverBufferTest() {
+		Payload payload = Payload.builder().put("name", "x").put("value", 42L).build();
+		ByteBuffer buffer = ByteBuffer.allocateDirect(64);
+		buffer.position(10);
+		payload.writeTo(buffer);
+
+		Payload view = Payload.wrap(buffer, 10, payload.encodedSize());
+		Assert.assertEquals(42L, view.getLong("value", 0));
+		Assert.assertEquals("x", view.getString("name"));
+		Assert.assertEquals(payload, view);
+		Assert.assertEquals(payload.hashCode(), view.hashCode());
+	}
+
+	@Test
+	public void emptyTest() {
+		Assert.assertSame(Payload.EMPTY, Payload.builder().build());
+		Assert.assertSame(Payload.EMPTY, new Event("a", 1).payload());
+		Assert.assertTrue(Payload.EMPTY.names().isEmpty());
+	}
+
+	@Test
+	public void lastPutWinsTest() {
+		Payload payload = Payload.builder().put("a", 1L).put("a", "one").build();
+		Assert.assertEquals("one", payload.getString("a"));
+		Assert.assertEquals(1, payload.names().size());
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void wrongTypeTest() {
+		Payload.builder().put("a", 1L).build().getString("a");
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void emptyNameTest() {
+		Payload.builder().put("", 1L);
+	}
+}
@@ -0,0 +1,152 @@
+package net.intelie.challenges.concurrent;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import net.intelie.challenges.Event;
+
+public class AsyncEventStoreTest {
+
+	@Test
+	public void insertAndQueryTest() throws Exception {
+		ConcurrentSortedEventStore store = new ConcurrentSortedEventStore(100, 0);
+		try (AsyncEventStore async = new AsyncEventStore(store)) {
+			List<CompletableFuture<Boolean>> futures = new ArrayList<CompletableFuture<Boolean>>();
+			for (int i = 0; i < 1000; i++) {
+				futures.add(async.insert(new Event(i % 2 == 0 ? "a" : "b", 1000 - i)));
+			}
+			for (CompletableFuture<Boolean> future : futures) {
+				Assert.assertTrue(future.get(10, TimeUnit.SECONDS));
+			}
+
+			List<Event> events = async.query("a", 0, 2000).get(10, TimeUnit.SECONDS);
+			Assert.assertEquals(500, events.size());
+			for (int i = 1; i < events.size(); i++) {
+				Assert.assertTrue(events.get(i - 1).timestamp() <= events.get(i).timestamp());
+			}
+			Assert.assertEquals(1000, store.length());
+		}
+	}
+
+	@Test
+	public void removeAllAfterInsertsTest() throws Exception {
+		SkipListEventStore store = new SkipListEventStore();
+		try (AsyncEventStore async = new AsyncEventStore(store)) {
+			for (int i = 0; i < 100; i++) {
+				async.insert(new Event("a", i));
+				async.insert(new Event("b", i));
+			}
+			// applied after the inserts of its type, before the ones that follow.
+			async.removeAll("a");
+			async.insert(new Event("a", 500));
+			async.flush().get(10, TimeUnit.SECONDS);
+
+			Assert.assertEquals(1, async.query("a", 0, 1000).get().size());
+			Assert.assertEquals(100, async.query("b", 0, 1000).get().size());
+			Assert.assertEquals(0, async.pending());
+		}
+	}
+
+	@Test
+	public void rejectTest() throws Exception {
+		BlockingStore store = new BlockingStore();
+		try (AsyncEventStore async = new AsyncEventStore(store, 2, 1, Backpressure.REJECT, Runnable::run)) {
+			CompletableFuture<Boolean> first = fill(async, store);
+			CompletableFuture<Boolean> rejected = async.insert(new Event("a", 3));
+
+			try {
+				rejected.get();
+				Assert.fail();
+			} catch (ExecutionException e) {
+				Assert.assertTrue(e.getCause() instanceof RejectedExecutionException);
+			}
+			Assert.assertEquals(1, async.rejected());
+
+			store.release.countDown();
+			Assert.assertTrue(first.get(10, TimeUnit.SECONDS));
+			async.flush().get(10, TimeUnit.SECONDS);
+			Assert.assertEquals(3, store.length());
+		}
+	}
+
+	@Test
+	public void dropTest() throws Exception {
+		BlockingStore store = new BlockingStore();
+		try (AsyncEventStore async = new AsyncEventStore(store, 2, 1, Backpressure.DROP, Runnable::run)) {
+			fill(async, store);
+
+			Assert.assertFalse(async.insert(new Event("a", 3)).get());
+			Assert.assertEquals(1, async.dropped());
+
+			store.release.countDown();
+			async.flush().get(10, TimeUnit.SECONDS);
+			Assert.assertEquals(3, store.length());
+		}
+	}
+
+	@Test
+	public void closeTest() throws Exception {
+		SkipListEventStore store = new SkipListEventStore();
+		AsyncEventStore async = new AsyncEventStore(store, 16, 2, Backpressure.BLOCK, Runnable::run);
+		CompletableFuture<Boolean> inserted = async.insert(new Event("a", 1));
+		async.close();
+
+		// queued operations are applied before the writers stop.
+		Assert.assertTrue(inserted.isDone());
+		Assert.assertEquals(1, store.query("a", 0, 10).moveNext() ? 1 : 0);
+		try {
+			async.insert(new Event("a", 2));
+			Assert.fail();
+		} catch (IllegalStateException e) {
+			Assert.assertEquals("Store is closed", e.getMessage());
+		}
+		async.close();
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void nullEventTest() {
+		try (AsyncEventStore async = new AsyncEventStore(new SkipListEventStore())) {
+			async.insert(null);
+		}
+	}
+
+	/**
+	 * Inserts an event which keeps the writer busy, then fills its queue.
+	 */
+	private CompletableFuture<Boolean> fill(AsyncEventStore async, BlockingStore store) throws InterruptedException {
+		CompletableFuture<Boolean> first = async.insert(new Event("a", 0));
+		Assert.assertTrue(store.entered.await(10, TimeUnit.SECONDS));
+		async.insert(new Event("a", 1));
+		async.insert(new Event("a", 2));
+		Assert.assertEquals(2, async.pending());
+		return first;
+	}
+
+	/**
+	 * Holds the first batch until released.
+	 */
+	private static class BlockingStore extends SkipListEventStore {
+		private final CountDownLatch entered = new CountDownLatch(1);
+		private final CountDownLatch release = new CountDownLatch(1);
+
+		@Override
+		public void insertAll(Collection<Event> events) {
+			entered.countDown();
+			try {
+				release.await();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			super.insertAll(events);
+		}
+	}
+}
@@ -0,0 +1,146 @@
+package net.intelie.challenges.concurrent;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.OptionalLong;
+import java.util.Random;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import net.intelie.challenges.Event;
+import net.intelie.challenges.EventIterator;
+
+public class BucketedEventStoreTest {
+
+	@Test
+	public void aggregateTest() {
+		BucketedEventStore store = new BucketedEventStore(64, 8);
+		List<Long> expected = new ArrayList<Long>();
+		Random random = new Random(11);
+		for (int i = 0; i < 2000; i++) {
+			long timestamp = random.nextInt(1000) - 500;
+			store.insert(new Event(i % 2 == 0 ? "a" : "b", timestamp));
+			if (i % 2 == 0) {
+				expected.add(timestamp);
+			}
+		}
+		Collections.sort(expected);
+
+		for (int i = 0; i < 50; i++) {
+			long start = random.nextInt(1200) - 600;
+			long end = start + random.nextInt(600);
+
+			long count = 0;
+			long[] bins = new long[(int) ((end - start + 99) / 100)];
+			Long first = null;
+			Long last = null;
+			for (long timestamp : expected) {
+				if (timestamp >= start && timestamp < end) {
+					count++;
+					bins[(int) ((timestamp - start) / 100)]++;
+					first = first == null ? timestamp : first;
+					last = timestamp;
+				}
+			}
+
+			Assert.assertEquals(count, store.count("a", start, end));
+			Assert.assertArrayEquals(bins, store.histogram("a", start, end, 100));
+			Assert.assertEquals(first == null ? OptionalLong.empty() : OptionalLong.of(first),
+					store.first("a", start, end));
+			Assert.assertEquals(last == null ? OptionalLong.empty() : OptionalLong.of(last),
+					store.last("a", start, end));
+		}
+		Assert.assertEquals(0, store.count("c", 0, 100));
+		Assert.assertFalse(store.first("c", 0, 100).isPresent());
+	}
+
+	@Test
+	public void queryAcrossBucketsTest() {
+		BucketedEventStore store = new BucketedEventStore(10, 4);
+
+		for (int i = 99; i >= -20; i--) {
+			store.insert(new Event(i % 2 == 0 ? "a" : "b", i));
+		}
+
+		Assert.assertEquals(12, store.bucketCount("a"));
+
+		EventIterator it = store.query("a", -5L, 25L);
+		long expected = -4;
+		while (it.moveNext()) {
+			Assert.assertEquals("a", it.current().type());
+			Assert.assertEquals(expected, it.current().timestamp());
+			expected += 2;
+		}
+		Assert.assertEquals(26L, expected);
+	}
+
+	@Test
+	public void queryBucketBoundariesTest() {
+		BucketedEventStore store = new BucketedEventStore(10);
+
+		store.insert(new Event("a", 9));
+		store.insert(new Event("a", 10));
+		store.insert(new Event("a", 20));
+
+		EventIterator it = store.query("a", 10L, 20L);
+
+		Assert.assertTrue(it.moveNext());
+		Assert.assertEquals(10L, it.current().timestamp());
+		Assert.assertFalse(it.moveNext());
+		Assert.assertFalse(store.query("a", 10L, 10L).moveNext());
+		Assert.assertFalse(store.query("b", 0L, 100L).moveNext());
+	}
+
+	@Test
+	public void insertAllAndRemoveTest() {
+		BucketedEventStore store = new BucketedEventStore(10, 4);
+
+		List<Event> batch = new ArrayList<Event>();
+		for (int i = 0; i < 100; i++) {
+			batch.add(new Event("a", 99 - i));
+		}
+		store.insertAll(batch);
+
+		EventIterator it = store.query("a", 0L, 100L);
+		while (it.moveNext()) {
+			if (it.current().timestamp() % 2 == 0) {
+				it.remove();
+			}
+		}
+
+		Assert.assertEquals(50, store.length());
+		store.removeAll("a");
+		Assert.assertEquals(0, store.length());
+		Assert.assertEquals(0, store.bucketCount("a"));
+	}
+
+	@Test
+	public void concurrentInsertTest() throws InterruptedException {
+		BucketedEventStore store = new BucketedEventStore(1000);
+
+		Thread[] threads = new Thread[5];
+		for (int i = 0; i < threads.length; i++) {
+			final String type = "type" + i;
+			threads[i] = new Thread(() -> {
+				Random random = new Random();
+				for (int j = 0; j < 5000; j++) {
+					store.insert(new Event(random.nextBoolean() ? type : "shared", random.nextInt(2000000)));
+				}
+			});
+			threads[i].start();
+		}
+		for (Thread t : threads) {
+			t.join();
+		}
+
+		Assert.assertEquals(25000, store.length());
+		EventIterator it = store.query("shared", 0L, 2000000L);
+		long prev = Long.MIN_VALUE;
+		while (it.moveNext()) {
+			Assert.assertTrue(prev <= it.current().timestamp());
+			prev = it.current().timestamp();
+		}
+	}
+}
@@ -0,0 +1,258 @@
+package net.intelie.challenges.concurrent;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.OptionalLong;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import net.intelie.challenges.Event;
+import net.intelie.challenges.EventFilter;
+import net.intelie.challenges.EventIterator;
+import net.intelie.challenges.Order;
+import net.intelie.challenges.Payload;
+
+public class ColdTierTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void encodeAndDecodeTest() {
+		Random random = new Random(3);
+		List<Event> events = new ArrayList<Event>();
+		long timestamp = Long.MIN_VALUE;
+		for (int i = 0; i < 1000; i++) {
+			Payload payload = i % 7 == 0 ? Payload.builder().put("n", i).build() : Payload.EMPTY;
+			events.add(new Event(i % 3 == 0 ? "a" : "b", timestamp, payload));
+			timestamp += i == 500 ? Long.MAX_VALUE : random.nextInt(1000);
+		}
+		events.add(new Event("c", Long.MAX_VALUE));
+
+		ColdBlock block = ColdBlock.encode(events);
+		Assert.assertEquals(Long.MIN_VALUE, block.minTime);
+		Assert.assertEquals(Long.MAX_VALUE, block.maxTime);
+		Assert.assertEquals(334, block.count("a"));
+		Assert.assertEquals(1, block.count("c"));
+		Assert.assertEquals(0, block.count("d"));
+
+		List<Event> decoded = block.decode();
+		Assert.assertEquals(events.size(), decoded.size());
+		for (int i = 0; i < events.size(); i++) {
+			Assert.assertEquals(events.get(i).type(), decoded.get(i).type());
+			Assert.assertEquals(events.get(i).timestamp(), decoded.get(i).timestamp());
+			Assert.assertEquals(events.get(i).payload(), decoded.get(i).payload());
+		}
+	}
+
+	@Test
+	public void compressionTest() {
+		ConcurrentSortedEventStore store = new ConcurrentSortedEventStore(1000, 0);
+		for (int i = 0; i < 100000; i++) {
+			store.insert(new Event("a", 1_600_000_000_000L + i * 1000L + (i % 10 == 0 ? 3 : 0)));
+		}
+
+		Assert.assertEquals(100000, store.seal(Long.MAX_VALUE));
+		Assert.assertEquals(100000, store.coldEventCount());
+		Assert.assertEquals(100000, store.length());
+		Assert.assertTrue(store.coldBytes() / 100000d < 5);
+		Assert.assertEquals(0, store.seal(Long.MAX_VALUE));
+	}
+
+	@Test
+	public void queryAcrossTiersTest() {
+		ConcurrentSortedEventStore store = new ConcurrentSortedEventStore(100, 0);
+		for (int i = 0; i < 10000; i++) {
+			store.insert(new Event(i % 2 == 0 ? "a" : "b", i, Payload.builder().put("i", i).build()));
+		}
+		Assert.assertEquals(6000, store.seal(6000));
+		Assert.assertEquals(6000, store.coldEventCount());
+		Assert.assertEquals(10000, store.length());
+
+		Assert.assertEquals(range(0, 10000, 2), timestamps(store.query(Collections.singleton("a"), 0, 10000)));
+		Assert.assertEquals(range(5001, 6999, 2), timestamps(store.query(Collections.singleton("b"), 5000, 6999)));
+		Assert.assertEquals(range(5990, 6010, 1), timestamps(store.queryAll(5990, 6010)));
+		Assert.assertEquals(Arrays.asList(5996L, 6000L, 6004L), timestamps(store.query(Collections.singleton("a"), 5995,
+				6005, payload -> payload.getLong("i", -1) % 4 == 0)));
+
+		EventIterator legacy = store.query("a", 5998, 6003);
+		Assert.assertTrue(legacy.moveNext());
+		Assert.assertEquals(5998L, legacy.current().timestamp());
+		Assert.assertEquals(5998L, legacy.current().payload().getLong("i", -1));
+		Assert.assertTrue(legacy.moveNext());
+		Assert.assertEquals(6000L, legacy.current().timestamp());
+		Assert.assertTrue(legacy.moveNext());
+		Assert.assertEquals(6002L, legacy.current().timestamp());
+		Assert.assertFalse(legacy.moveNext());
+
+		Assert.assertEquals(Arrays.asList(6004L, 6002L, 6000L, 5998L, 5996L),
+				timestamps(store.query("a", 0, 6005, Order.DESCENDING, 5)));
+		Assert.assertEquals(Arrays.asList(5998L, 5996L), timestamps(store.query("a", 0, 5999, Order.DESCENDING, 2)));
+
+		Assert.assertEquals(5000, store.count("a", 0, 10000));
+		Assert.assertEquals(5, store.count("a", 5990, 6000));
+		Assert.assertEquals(OptionalLong.of(5002), store.first("a", 5001, 10000));
+		Assert.assertEquals(OptionalLong.of(7000), store.first("a", 7000, 10000));
+		Assert.assertEquals(OptionalLong.of(5998), store.last("a", 0, 6000));
+		Assert.assertEquals(OptionalLong.of(9998), store.last("a", 0, 10000));
+		Assert.assertEquals(OptionalLong.empty(), store.last("c", 0, 10000));
+		Assert.assertArrayEquals(new long[] { 5, 5, 5, 5 }, store.histogram("a", 5980, 6020, 10));
+	}
+
+	@Test
+	public void indexedQueryAcrossTiersTest() {
+		ConcurrentSortedEventStore store = new ConcurrentSortedEventStore(100, 0);
+		store.createIndex("a", "host", 100);
+		for (int i = 0; i < 1000; i++) {
+			store.insert(new Event("a", i, Payload.builder().put("host", "h" + (i % 4)).build()));
+		}
+		store.seal(500);
+
+		Assert.assertEquals(range(490, 510, 4), timestamps(
+				store.query(Collections.singleton("a"), 490, 510, EventFilter.equalTo("host", "h2"))));
+	}
+
+	@Test
+	public void lateInsertTest() {
+		ConcurrentSortedEventStore store = new ConcurrentSortedEventStore(100, 0);
+		for (int i = 0; i < 10000; i += 2) {
+			store.insert(new Event("a", i));
+		}
+		store.seal(10000);
+
+		// late events are sealed into the blocks holding their timestamps.
+		for (int i = 1; i < 10000; i += 2) {
+			store.insert(new Event("a", i));
+		}
+		Assert.assertEquals(range(0, 10000, 1), timestamps(store.queryAll(0, 10000)));
+		Assert.assertEquals(5000, store.seal(10000));
+		Assert.assertEquals(range(0, 10000, 1), timestamps(store.queryAll(0, 10000)));
+		Assert.assertEquals(10000, store.count("a", 0, 10000));
+
+		ColdBlock[] blocks = store.cold.state().blocks;
+		for (int i = 1; i < blocks.length; i++) {
+			Assert.assertTrue(blocks[i - 1].maxTime <= blocks[i].minTime);
+		}
+	}
+
+	@Test
+	public void removeColdEventsTest() {
+		ConcurrentSortedEventStore store = new ConcurrentSortedEventStore(100, 0);
+		for (int i = 0; i < 1000; i++) {
+			store.insert(new Event(i % 2 == 0 ? "a" : "b", i));
+		}
+		store.seal(600);
+
+		store.removeAll("b");
+		Assert.assertEquals(500, store.length());
+		Assert.assertEquals(300, store.coldEventCount());
+
+		EventIterator it = store.query(Collections.singleton("a"), 0, 1000);
+		while (it.moveNext()) {
+			if (it.current().timestamp() % 4 == 0) {
+				it.remove();
+			}
+		}
+		Assert.assertEquals(range(2, 1000, 4), timestamps(store.queryAll(0, 1000)));
+		Assert.assertEquals(150, store.coldEventCount());
+
+		EventIterator newest = store.query("a", 0, 1000, Order.DESCENDING, 200);
+		while (newest.moveNext()) {
+			newest.remove();
+		}
+		Assert.assertEquals(range(2, 202, 4), timestamps(store.queryAll(0, 1000)));
+	}
+
+	@Test
+	public void snapshotTest() throws IOException {
+		ConcurrentSortedEventStore store = new ConcurrentSortedEventStore(100, 0);
+		for (int i = 0; i < 5000; i++) {
+			store.insert(new Event("a", i, Payload.builder().put("i", i).build()));
+		}
+		store.seal(3000);
+
+		Path file = folder.getRoot().toPath().resolve("store.snapshot");
+		Assert.assertEquals(5000, EventSnapshot.write(store, file));
+		ConcurrentSortedEventStore restored = new ConcurrentSortedEventStore(100, 0);
+		Assert.assertEquals(5000, EventSnapshot.read(file, restored));
+		Assert.assertEquals(range(0, 5000, 1), timestamps(restored.queryAll(0, 5000)));
+
+		restored.seal(Long.MAX_VALUE);
+		try {
+			EventSnapshot.read(file, restored);
+			Assert.fail();
+		} catch (IllegalStateException e) {
+			// the sealed events count as well.
+		}
+	}
+
+	@Test
+	public void sealWhileInsertingTest() throws InterruptedException {
+		ConcurrentSortedEventStore store = new ConcurrentSortedEventStore(100, 0);
+		Thread writer = new Thread(() -> {
+			Random random = new Random(5);
+			for (int i = 0; i < 50000; i++) {
+				// mostly in order, some late.
+				store.insert(new Event(i % 2 == 0 ? "a" : "b", i - (i % 50 == 0 ? random.nextInt(5000) : 0)));
+			}
+		});
+		writer.start();
+		while (writer.isAlive()) {
+			store.seal(store.length() - 1000);
+		}
+		writer.join();
+		store.seal(40000);
+
+		Assert.assertEquals(50000, store.length());
+		Assert.assertEquals(50000, store.count("a", -5000, 50000) + store.count("b", -5000, 50000));
+		List<Long> all = timestamps(store.queryAll(-5000, 50000));
+		Assert.assertEquals(50000, all.size());
+		for (int i = 1; i < all.size(); i++) {
+			Assert.assertTrue(all.get(i - 1) <= all.get(i));
+		}
+	}
+
+	@Test
+	public void sealerTest() {
+		ConcurrentSortedEventStore store = new ConcurrentSortedEventStore(100, 0);
+		AtomicLong now = new AtomicLong(100);
+		ColdSealer sealer = new ColdSealer(store, 50, now::get);
+		for (int i = 0; i < 200; i++) {
+			store.insert(new Event("a", i));
+		}
+
+		sealer.run();
+		Assert.assertEquals(50, store.coldEventCount());
+		now.set(300);
+		sealer.run();
+		Assert.assertEquals(200, store.coldEventCount());
+		Assert.assertEquals(200, sealer.sealedEvents());
+		Assert.assertEquals(2, sealer.runs());
+		Assert.assertEquals(range(0, 200, 1), timestamps(store.queryAll(0, 200)));
+	}
+
+	private static List<Long> range(long from, long to, long step) {
+		List<Long> range = new ArrayList<Long>();
+		for (long i = from; i < to; i += step) {
+			range.add(i);
+		}
+		return range;
+	}
+
+	private static List<Long> timestamps(EventIterator it) {
+		List<Long> timestamps = new ArrayList<Long>();
+		while (it.moveNext()) {
+			timestamps.add(it.current().timestamp());
+		}
+		return timestamps;
+	}
+}
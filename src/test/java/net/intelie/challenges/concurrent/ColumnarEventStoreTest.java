@@ -0,0 +1,235 @@
+package net.intelie.challenges.concurrent;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.OptionalLong;
+import java.util.Random;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import net.intelie.challenges.Event;
+import net.intelie.challenges.EventIterator;
+import net.intelie.challenges.Order;
+
+public class ColumnarEventStoreTest {
+
+	@Test
+	public void aggregateTest() {
+		ColumnarEventStore store = new ColumnarEventStore(16);
+		List<Long> expected = new ArrayList<Long>();
+		Random random = new Random(11);
+		for (int i = 0; i < 2000; i++) {
+			long timestamp = random.nextInt(1000) - 500;
+			store.insert(new Event(i % 2 == 0 ? "a" : "b", timestamp));
+			if (i % 2 == 0) {
+				expected.add(timestamp);
+			}
+		}
+		Collections.sort(expected);
+
+		for (int i = 0; i < 50; i++) {
+			long start = random.nextInt(1200) - 600;
+			long end = start + random.nextInt(600);
+
+			long count = 0;
+			long[] bins = new long[(int) ((end - start + 99) / 100)];
+			Long first = null;
+			Long last = null;
+			for (long timestamp : expected) {
+				if (timestamp >= start && timestamp < end) {
+					count++;
+					bins[(int) ((timestamp - start) / 100)]++;
+					first = first == null ? timestamp : first;
+					last = timestamp;
+				}
+			}
+
+			Assert.assertEquals(count, store.count("a", start, end));
+			Assert.assertArrayEquals(bins, store.histogram("a", start, end, 100));
+			Assert.assertEquals(first == null ? OptionalLong.empty() : OptionalLong.of(first),
+					store.first("a", start, end));
+			Assert.assertEquals(last == null ? OptionalLong.empty() : OptionalLong.of(last),
+					store.last("a", start, end));
+		}
+		Assert.assertEquals(0, store.count("c", 0, 100));
+		Assert.assertFalse(store.first("c", 0, 100).isPresent());
+	}
+
+	@Test
+	public void aggregateAfterRemovalsTest() throws Exception {
+		// small chunks so removals empty some of them and shift the others.
+		ColumnarEventStore store = new ColumnarEventStore(4);
+		List<Long> expected = new ArrayList<Long>();
+		Random random = new Random(5);
+		for (int i = 0; i < 600; i++) {
+			long timestamp = random.nextInt(300);
+			store.insert(new Event("a", timestamp));
+			expected.add(timestamp);
+		}
+		EventIterator it = store.query("a", 0, 300);
+		while (it.moveNext()) {
+			if (random.nextInt(3) > 0) {
+				expected.remove(it.current().timestamp());
+				it.remove();
+			}
+		}
+		for (int i = 0; i < 100; i++) {
+			long timestamp = random.nextInt(300);
+			store.insert(new Event("a", timestamp));
+			expected.add(timestamp);
+		}
+		Collections.sort(expected);
+
+		for (int i = 0; i < 50; i++) {
+			long start = random.nextInt(300);
+			long end = start + random.nextInt(100);
+			List<Long> range = new ArrayList<Long>();
+			for (long timestamp : expected) {
+				if (timestamp >= start && timestamp < end) {
+					range.add(timestamp);
+				}
+			}
+
+			Assert.assertEquals(range.size(), store.count("a", start, end));
+			Assert.assertEquals(range.isEmpty() ? OptionalLong.empty() : OptionalLong.of(range.get(range.size() - 1)),
+					store.last("a", start, end));
+			List<Long> newest = new ArrayList<Long>();
+			EventIterator descending = store.query("a", start, end, Order.DESCENDING, 5);
+			while (descending.moveNext()) {
+				newest.add(descending.current().timestamp());
+			}
+			Collections.reverse(range);
+			Assert.assertEquals(range.subList(0, Math.min(5, range.size())), newest);
+		}
+	}
+
+	@Test
+	public void outOfOrderInsertsSplitChunksTest() {
+		// small chunks so splits and multi-chunk reads happen.
+		ColumnarEventStore store = new ColumnarEventStore(4);
+
+		Random random = new Random(42);
+		for (int i = 0; i < 1000; i++) {
+			store.insert(new Event("a", random.nextInt(300)));
+		}
+
+		Assert.assertEquals(1000, store.length());
+
+		EventIterator it = store.query("a", 0L, 300L);
+		long prev = Long.MIN_VALUE;
+		int count = 0;
+		while (it.moveNext()) {
+			Assert.assertEquals("a", it.current().type());
+			Assert.assertTrue(prev <= it.current().timestamp());
+			prev = it.current().timestamp();
+			++count;
+		}
+		Assert.assertEquals(1000, count);
+	}
+
+	@Test
+	public void queryIsHalfOpenTest() {
+		ColumnarEventStore store = new ColumnarEventStore(4);
+
+		for (int i = 0; i < 10; i++) {
+			store.insert(new Event("a", i));
+			store.insert(new Event("b", i));
+		}
+
+		EventIterator it = store.query("a", 3L, 6L);
+
+		Assert.assertTrue(it.moveNext());
+		Assert.assertEquals(3L, it.current().timestamp());
+		Assert.assertTrue(it.moveNext());
+		Assert.assertEquals(4L, it.current().timestamp());
+		Assert.assertTrue(it.moveNext());
+		Assert.assertEquals(5L, it.current().timestamp());
+		Assert.assertFalse(it.moveNext());
+		Assert.assertFalse(store.query("c", 0L, 10L).moveNext());
+	}
+
+	@Test
+	public void iteratorRemoveKeepsDuplicatesTest() {
+		ColumnarEventStore store = new ColumnarEventStore(4);
+
+		for (int i = 0; i < 100; i++) {
+			store.insert(new Event("a", i / 10));
+		}
+
+		// removes every other event, duplicates included.
+		EventIterator it = store.query("a", 0L, 10L);
+		int seen = 0;
+		while (it.moveNext()) {
+			if (seen++ % 2 == 0) {
+				it.remove();
+			}
+		}
+
+		Assert.assertEquals(100, seen);
+		Assert.assertEquals(50, store.length());
+	}
+
+	@Test
+	public void insertAllTest() {
+		ColumnarEventStore store = new ColumnarEventStore(4);
+
+		List<Event> batch = new ArrayList<Event>();
+		for (int i = 100; i > 0; i--) {
+			batch.add(new Event(i % 2 == 0 ? "a" : "b", i));
+		}
+		store.insert(new Event("a", 50));
+		store.insertAll(batch);
+
+		Assert.assertEquals(101, store.length());
+		EventIterator it = store.query("a", 0L, 1000L);
+		long prev = Long.MIN_VALUE;
+		int count = 0;
+		while (it.moveNext()) {
+			Assert.assertTrue(prev <= it.current().timestamp());
+			prev = it.current().timestamp();
+			++count;
+		}
+		Assert.assertEquals(51, count);
+	}
+
+	@Test
+	public void removeAllTest() {
+		ColumnarEventStore store = new ColumnarEventStore();
+
+		store.insert(new Event("delete", 1));
+		store.insert(new Event("teste", 2));
+		store.removeAll("delete");
+
+		Assert.assertEquals(1, store.length());
+		Assert.assertFalse(store.query("delete", 0L, 10L).moveNext());
+	}
+
+	@Test
+	public void concurrentInsertTest() throws InterruptedException {
+		ColumnarEventStore store = new ColumnarEventStore(64);
+
+		Thread[] threads = new Thread[5];
+		for (int i = 0; i < threads.length; i++) {
+			threads[i] = new Thread(() -> {
+				Random random = new Random();
+				for (int j = 0; j < 5000; j++) {
+					store.insert(new Event("teste", random.nextInt(2000000)));
+				}
+			});
+			threads[i].start();
+		}
+		for (Thread t : threads) {
+			t.join();
+		}
+
+		Assert.assertEquals(25000, store.length());
+		EventIterator it = store.query("teste", 0L, 2000000L);
+		long prev = Long.MIN_VALUE;
+		while (it.moveNext()) {
+			Assert.assertTrue(prev <= it.current().timestamp());
+			prev = it.current().timestamp();
+		}
+	}
+}
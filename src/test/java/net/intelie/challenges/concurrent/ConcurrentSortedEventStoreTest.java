@@ -1,5 +1,10 @@
 package net.intelie.challenges.concurrent;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.OptionalLong;
 import java.util.Random;
 
 import org.junit.Assert;
@@ -10,6 +15,100 @@ import net.intelie.challenges.EventIterator;
 
 public class ConcurrentSortedEventStoreTest {
 	
+	@Test
+	public void aggregateTest() {
+		ConcurrentSortedEventStore store = new ConcurrentSortedEventStore(50, 0);
+		List<Long> expected = new ArrayList<Long>();
+		Random random = new Random(11);
+		for (int i = 0; i < 2000; i++) {
+			long timestamp = random.nextInt(1000) - 500;
+			store.insert(new Event(i % 2 == 0 ? "a" : "b", timestamp));
+			if (i % 2 == 0) {
+				expected.add(timestamp);
+			}
+		}
+		Collections.sort(expected);
+
+		for (int i = 0; i < 50; i++) {
+			long start = random.nextInt(1200) - 600;
+			long end = start + random.nextInt(600);
+
+			long count = 0;
+			long[] bins = new long[(int) ((end - start + 99) / 100)];
+			Long first = null;
+			Long last = null;
+			for (long timestamp : expected) {
+				if (timestamp >= start && timestamp < end) {
+					count++;
+					bins[(int) ((timestamp - start) / 100)]++;
+					first = first == null ? timestamp : first;
+					last = timestamp;
+				}
+			}
+
+			Assert.assertEquals(count, store.count("a", start, end));
+			Assert.assertArrayEquals(bins, store.histogram("a", start, end, 100));
+			Assert.assertEquals(first == null ? OptionalLong.empty() : OptionalLong.of(first),
+					store.first("a", start, end));
+			Assert.assertEquals(last == null ? OptionalLong.empty() : OptionalLong.of(last),
+					store.last("a", start, end));
+		}
+		Assert.assertEquals(0, store.count("c", 0, 100));
+		Assert.assertFalse(store.first("c", 0, 100).isPresent());
+	}
+
+	@Test
+	public void spanCountsTest() {
+		RecordingStoreMetrics metrics = new RecordingStoreMetrics();
+		ConcurrentSortedEventStore store = new ConcurrentSortedEventStore(100, 0, metrics);
+		List<Event> events = new ArrayList<Event>();
+		for (int i = 0; i < 10000; i++) {
+			events.add(new Event(i % 3 == 0 ? "a" : "b", i));
+		}
+		store.insertAll(events);
+
+		Assert.assertEquals(3334, store.count("a", Long.MIN_VALUE, Long.MAX_VALUE));
+		long walked = metrics.queryNodes().sum();
+		Assert.assertTrue(walked >= 10000);
+		// the spans inside the range are counted once they were walked.
+		Assert.assertEquals(2000, store.count("a", 2000, 8000));
+		Assert.assertEquals(6000, store.count("b", 1000, 10000));
+		Assert.assertTrue(metrics.queryNodes().sum() - walked < 1000);
+
+		Random random = new Random(5);
+		EventIterator it = store.queryAll(0, 10000);
+		while (it.moveNext()) {
+			if (random.nextInt(10) == 0) {
+				it.remove();
+			}
+		}
+		for (int i = 0; i < 500; i++) {
+			store.insert(new Event(random.nextBoolean() ? "a" : "c", random.nextInt(12000) - 1000));
+		}
+		store.seal(1500);
+		store.removeAll("c");
+		store.insert(new Event("a", 9999));
+
+		for (int i = 0; i < 50; i++) {
+			long start = random.nextInt(12000) - 1000;
+			long end = start + random.nextInt(6000);
+			long count = 0;
+			long[] bins = new long[(int) ((end - start + 999) / 1000)];
+			Long last = null;
+			for (EventIterator all = store.queryAll(start, end); all.moveNext();) {
+				if (all.current().type().equals("a")) {
+					count++;
+					bins[(int) ((all.current().timestamp() - start) / 1000)]++;
+					last = all.current().timestamp();
+				}
+			}
+			Assert.assertEquals(count, store.count("a", start, end));
+			Assert.assertArrayEquals(bins, store.histogram("a", start, end, 1000));
+			Assert.assertEquals(last == null ? OptionalLong.empty() : OptionalLong.of(last),
+					store.last("a", start, end));
+		}
+	}
+
 	@Test
 	public void ordinationAndLengthTest() throws InterruptedException {
 		ConcurrentSortedEventStore con = new ConcurrentSortedEventStore(500);
@@ -507,6 +606,302 @@ public class ConcurrentSortedEventStoreTest {
 		Assert.assertTrue(isSorted(con.checkPoint.first()));
 	}
 	
+	@Test
+	public void queryIsLazyTest() {
+		ConcurrentSortedEventStore con = new ConcurrentSortedEventStore(500);
+
+		con.insert(new Event("teste", 1));
+		con.insert(new Event("other", 2));
+		con.insert(new Event("teste", 4));
+
+		EventIterator it = con.query("teste", 0L, 10L);
+		Assert.assertTrue(it.moveNext());
+		Assert.assertEquals(1L, it.current().timestamp());
+
+		// inserted after the query, ahead of the cursor or behind it: not seen.
+		con.insert(new Event("teste", 3));
+		con.insert(new Event("teste", 0));
+
+		Assert.assertTrue(it.moveNext());
+		Assert.assertEquals(4L, it.current().timestamp());
+		Assert.assertFalse(it.moveNext());
+
+		it = con.query("teste", 0L, 10L);
+		Assert.assertTrue(it.moveNext());
+		Assert.assertEquals(0L, it.current().timestamp());
+		Assert.assertTrue(it.moveNext());
+		Assert.assertEquals(1L, it.current().timestamp());
+		Assert.assertTrue(it.moveNext());
+		Assert.assertEquals(3L, it.current().timestamp());
+	}
+
+	@Test
+	public void queryAfterCurrentIsRemovedTest() {
+		ConcurrentSortedEventStore con = new ConcurrentSortedEventStore(500);
+
+		con.insert(new Event("teste", 1));
+		con.insert(new Event("delete", 2));
+		con.insert(new Event("teste", 3));
+		con.insert(new Event("delete", 4));
+		con.insert(new Event("teste", 5));
+
+		EventIterator it = con.query("delete", 0L, 10L);
+		Assert.assertTrue(it.moveNext());
+		Assert.assertEquals(2L, it.current().timestamp());
+
+		con.removeAll("delete");
+
+		// the query still sees the store as it was when created.
+		Assert.assertTrue(it.moveNext());
+		Assert.assertEquals(4L, it.current().timestamp());
+		Assert.assertFalse(it.moveNext());
+		Assert.assertFalse(con.query("delete", 0L, 10L).moveNext());
+	}
+
+	@Test(expected = IllegalStateException.class)
+	public void currentAfterEndTest() {
+		ConcurrentSortedEventStore con = new ConcurrentSortedEventStore(500);
+		con.insert(new Event("teste", 1));
+
+		EventIterator it = con.query("teste", 0L, 10L);
+		Assert.assertTrue(it.moveNext());
+		Assert.assertFalse(it.moveNext());
+		it.current();
+	}
+
+	@Test
+	public void iteratorRemoveTest() {
+		ConcurrentSortedEventStore con = new ConcurrentSortedEventStore(500);
+
+		con.insert(new Event("delete", 1));
+		con.insert(new Event("teste", 2));
+		con.insert(new Event("delete", 2));
+		con.insert(new Event("delete", 2));
+		con.insert(new Event("teste", 3));
+		con.insert(new Event("delete", 4));
+
+		int removed = 0;
+		EventIterator it = con.query("delete", 0L, 10L);
+		while (it.moveNext()) {
+			it.remove();
+			++removed;
+		}
+
+		Assert.assertEquals(4, removed);
+		Assert.assertFalse(con.query("delete", 0L, 10L).moveNext());
+		Assert.assertEquals(2, con.length());
+		Assert.assertEquals(con.length(), size(con.checkPoint.first()));
+		Assert.assertTrue(isSorted(con.checkPoint.first()));
+	}
+
+	@Test(expected = IllegalStateException.class)
+	public void iteratorRemoveTwiceTest() {
+		ConcurrentSortedEventStore con = new ConcurrentSortedEventStore(500);
+		con.insert(new Event("teste", 1));
+
+		EventIterator it = con.query("teste", 0L, 10L);
+		Assert.assertTrue(it.moveNext());
+		it.remove();
+		it.remove();
+	}
+
+	@Test
+	public void iteratorRemoveWhileInsertingTest() throws InterruptedException {
+		ConcurrentSortedEventStore con = new ConcurrentSortedEventStore(500);
+
+		Thread t1 = new Thread(new MyRunnableInsert(con, "delete", 0L));
+		Thread t2 = new Thread(new MyRunnableInsert(con, 5000L));
+		Thread t3 = new Thread(new MyRunnableInsert(con, "delete", 10000L));
+
+		t1.start();
+		t2.start();
+		t3.start();
+		t1.join();
+
+		int removed = 0;
+		EventIterator it = con.query("delete", 0L, 5000L);
+		while (it.moveNext()) {
+			it.remove();
+			++removed;
+		}
+
+		t2.join();
+		t3.join();
+
+		Assert.assertEquals(5000, removed);
+		Assert.assertEquals(10000, con.length());
+		Assert.assertEquals(con.length(), size(con.checkPoint.first()));
+		Assert.assertTrue(isSorted(con.checkPoint.first()));
+	}
+
+	@Test
+	public void insertAllMergesIntoChainTest() {
+		ConcurrentSortedEventStore con = new ConcurrentSortedEventStore(100, 0);
+
+		for (int i = 0; i < 1000; i += 2) {
+			con.insert(new Event("teste", i));
+		}
+
+		List<Event> batch = new ArrayList<Event>();
+		Random random = new Random(3);
+		for (int i = 0; i < 2000; i++) {
+			batch.add(new Event("batch", random.nextInt(1200) - 100));
+		}
+		con.insertAll(batch);
+
+		Assert.assertEquals(2500, con.length());
+		Assert.assertEquals(2500, size(con.checkPoint.first()));
+		Assert.assertTrue(isSorted(con.checkPoint.first()));
+		Assert.assertTrue(con.checkPoint.size() > 1);
+	}
+
+	@Test
+	public void insertAllOnEmptyStoreTest() {
+		ConcurrentSortedEventStore con = new ConcurrentSortedEventStore(500);
+
+		con.insertAll(Arrays.asList(new Event("teste", 3), new Event("teste", 1), new Event("teste", 2)));
+
+		EventIterator it = con.query("teste", 0L, 10L);
+		Assert.assertTrue(it.moveNext());
+		Assert.assertEquals(1L, it.current().timestamp());
+		Assert.assertTrue(it.moveNext());
+		Assert.assertEquals(2L, it.current().timestamp());
+		Assert.assertTrue(it.moveNext());
+		Assert.assertEquals(3L, it.current().timestamp());
+		Assert.assertFalse(it.moveNext());
+	}
+
+	@Test
+	public void insertAllTogetherTest() throws InterruptedException {
+		ConcurrentSortedEventStore con = new ConcurrentSortedEventStore(500);
+
+		Thread[] threads = new Thread[5];
+		for (int t = 0; t < threads.length; t++) {
+			threads[t] = new Thread(() -> {
+				Random random = new Random();
+				for (int b = 0; b < 10; b++) {
+					List<Event> batch = new ArrayList<Event>();
+					for (int i = 0; i < 500; i++) {
+						batch.add(new Event("teste", random.nextInt(2000000)));
+					}
+					con.insertAll(batch);
+				}
+			});
+			threads[t].start();
+		}
+		for (Thread t : threads) {
+			t.join();
+		}
+
+		Assert.assertEquals(25000, con.length());
+		Assert.assertEquals(25000, size(con.checkPoint.first()));
+		Assert.assertTrue(isSorted(con.checkPoint.first()));
+	}
+
+	@Test
+	public void randomOrderCheckPointsTest() {
+		ConcurrentSortedEventStore con = new ConcurrentSortedEventStore(3, 0);
+		Random random = new Random(7);
+
+		for (int i = 0; i < 5000; i++) {
+			con.insert(new Event("a", random.nextInt(100) - 50));
+		}
+
+		// the first checkpoint must still be the head of a chain holding every event.
+		Assert.assertEquals(5000, size(con.checkPoint.first()));
+		Assert.assertTrue(isSorted(con.checkPoint.first()));
+		Assert.assertEquals(5000, size(con.query("a", -50L, 50L)));
+	}
+
+	@Test
+	public void appendFastPathTest() {
+		ConcurrentSortedEventStore con = new ConcurrentSortedEventStore(100, 0);
+
+		for (int i = 0; i < 1000; i++) {
+			con.insert(new Event("teste", i));
+		}
+		// a late event takes the ordered path.
+		con.insert(new Event("teste", 500));
+		// the tail follows the removal of the last event.
+		con.removeAll("teste");
+		con.insert(new Event("teste", 1));
+		con.insert(new Event("teste", 2));
+
+		// the first insert into an empty chain is not an append.
+		Assert.assertEquals(1000, con.appendFastPathHits());
+		Assert.assertEquals(1000 / 1003d, con.appendFastPathHitRate(), 1e-9);
+		Assert.assertEquals(2, con.length());
+		Assert.assertEquals(2, size(con.checkPoint.first()));
+		Assert.assertTrue(isSorted(con.checkPoint.first()));
+	}
+
+	@Test
+	public void appendAndRemoveLastTogetherTest() throws InterruptedException {
+		ConcurrentSortedEventStore con = new ConcurrentSortedEventStore(500);
+
+		Thread t1 = new Thread(new MyRunnableInsert(con, 0L));
+		Thread t2 = new Thread(new MyRunnableInsert(con, "delete", 0L));
+		Thread t3 = new Thread(new MyRunnableInsert(con, 5000L));
+
+		t1.start();
+		t2.start();
+		t3.start();
+
+		Thread.sleep(50);
+		Thread tr = new Thread(new MyRunnableRemove(con, "delete"));
+		tr.start();
+
+		t1.join();
+		t2.join();
+		t3.join();
+		tr.join();
+		con.removeAll("delete");
+
+		Assert.assertEquals(10000, con.length());
+		Assert.assertEquals(10000, size(con.checkPoint.first()));
+		Assert.assertTrue(isSorted(con.checkPoint.first()));
+	}
+
+	@Test
+	public void typeRetiredByRemoveAllTest() {
+		ConcurrentSortedEventStore con = new ConcurrentSortedEventStore(2, 0);
+		con.insert(new Event("a", 1));
+		con.insert(new Event("b", 2));
+		con.insert(new Event("a", 3));
+
+		con.removeAll("a");
+		Assert.assertEquals(Collections.singleton("b"), con.registry.types());
+
+		con.insert(new Event("a", 4));
+		con.insert(new Event("a", 0));
+		Assert.assertEquals(2, con.count("a", 0, 10));
+		Assert.assertEquals(1, con.count("b", 0, 10));
+		Assert.assertEquals(3, con.length());
+	}
+
+	@Test
+	public void typeFilterTest() {
+		TypeRegistry registry = new TypeRegistry();
+		int a = registry.intern("a");
+		int b = registry.intern("b");
+		registry.retire("a");
+
+		// an event linked with the retired id still belongs to the type.
+		TypeFilter filter = new TypeFilter(registry, Collections.singleton("a"));
+		Assert.assertTrue(filter.matches(a));
+		Assert.assertFalse(filter.matches(b));
+		Assert.assertEquals("a", registry.nameOf(a));
+		Assert.assertEquals(Collections.singleton("b"), registry.types());
+		Assert.assertTrue(new TypeFilter(registry, null).matches(b));
+
+		// registered again, the type gets its id back, however many times.
+		for (int i = 0; i < 1000; i++) {
+			Assert.assertEquals(a, registry.intern("a"));
+			registry.retire("a");
+		}
+		Assert.assertEquals(2, registry.size());
+	}
+
 	private int size(ConcurrentEventIterator current) {
 		int count = 0;
 		
@@ -525,13 +920,9 @@ public class ConcurrentSortedEventStoreTest {
 	private int size(EventIterator current) {
 		int count = 0;
 
-		if (current == null) {
-			return 0;
-		}
-
-		do {
+		while (current.moveNext()) {
 			++count;
-		} while (current.moveNext());
+		}
 
 		return count;
 	}
@@ -552,19 +943,19 @@ public class ConcurrentSortedEventStoreTest {
 
 	private boolean isSorted(EventIterator it) {
 
-		if (it == null || it.current() == null) {
+		if (!it.moveNext()) {
 			return false;
 		}
 
 		Event prev = it.current();
 
-		do {
+		while (it.moveNext()) {
 			Event current = it.current();
 			if (current.timestamp() < prev.timestamp()) {
 				return false;
 			}
 			prev = current;
-		} while (it.moveNext());
+		}
 
 		return true;
 	}
@@ -0,0 +1,151 @@
+package net.intelie.challenges.concurrent;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import net.intelie.challenges.Event;
+import net.intelie.challenges.EventIterator;
+
+public class EventSnapshotTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void writeAndReadTest() throws IOException {
+		ConcurrentSortedEventStore store = new ConcurrentSortedEventStore(100, 0);
+		Random random = new Random(7);
+		for (int i = 0; i < 5000; i++) {
+			store.insert(new Event(i % 3 == 0 ? "a" : "b", random.nextInt(100000) - 50000));
+		}
+		store.insert(new Event("c", Long.MIN_VALUE));
+		store.insert(new Event("c", Long.MAX_VALUE));
+
+		Path file = folder.getRoot().toPath().resolve("store.snapshot");
+		Assert.assertEquals(5002, EventSnapshot.write(store, file));
+		Assert.assertTrue(Files.size(file) < 5002 * 4);
+
+		ConcurrentSortedEventStore restored = new ConcurrentSortedEventStore(100, 0);
+		Assert.assertEquals(5002, EventSnapshot.read(file, restored));
+		Assert.assertEquals(5002, restored.length());
+
+		EventIterator expected = store.all();
+		EventIterator actual = restored.all();
+		while (expected.moveNext()) {
+			Assert.assertTrue(actual.moveNext());
+			Assert.assertEquals(expected.current().type(), actual.current().type());
+			Assert.assertEquals(expected.current().timestamp(), actual.current().timestamp());
+		}
+		Assert.assertFalse(actual.moveNext());
+
+		// the restored chain keeps working as a regular store.
+		restored.insert(new Event("a", 0));
+		restored.removeAll("b");
+		EventIterator it = restored.query("a", -50000L, 50000L);
+		long previous = Long.MIN_VALUE;
+		int count = 0;
+		while (it.moveNext()) {
+			Assert.assertTrue(it.current().timestamp() >= previous);
+			previous = it.current().timestamp();
+			count++;
+		}
+		Assert.assertEquals(1668, count);
+	}
+
+	@Test
+	public void writeWhileInsertingTest() throws Exception {
+		ConcurrentSortedEventStore store = new ConcurrentSortedEventStore();
+		for (int i = 0; i < 10000; i++) {
+			store.insert(new Event("a", i * 2));
+		}
+
+		Thread writer = new Thread(() -> {
+			for (int i = 0; i < 10000; i++) {
+				store.insert(new Event("b", i * 2 + 1));
+			}
+		});
+		writer.start();
+		Path file = folder.getRoot().toPath().resolve("store.snapshot");
+		long written = EventSnapshot.write(store, file);
+		writer.join();
+
+		ConcurrentSortedEventStore restored = new ConcurrentSortedEventStore();
+		Assert.assertEquals(written, EventSnapshot.read(file, restored));
+		Assert.assertTrue(written >= 10000);
+		Assert.assertEquals(10000, size(restored.query("a", 0L, Long.MAX_VALUE)));
+	}
+
+	@Test(expected = IOException.class)
+	public void corruptFileTest() throws IOException {
+		ConcurrentSortedEventStore store = new ConcurrentSortedEventStore();
+		for (int i = 0; i < 100; i++) {
+			store.insert(new Event("a", i));
+		}
+		Path file = folder.getRoot().toPath().resolve("store.snapshot");
+		EventSnapshot.write(store, file);
+		try (RandomAccessFile raw = new RandomAccessFile(file.toFile(), "rw")) {
+			raw.seek(20);
+			raw.write(0x05);
+		}
+
+		EventSnapshot.read(file, new ConcurrentSortedEventStore());
+	}
+
+	@Test
+	public void corruptFileLeavesStoreEmptyTest() throws IOException {
+		ConcurrentSortedEventStore store = new ConcurrentSortedEventStore();
+		for (int i = 0; i < 100; i++) {
+			store.insert(new Event("a", i));
+		}
+		Path file = folder.getRoot().toPath().resolve("store.snapshot");
+		EventSnapshot.write(store, file);
+		byte[] valid = Files.readAllBytes(file);
+
+		// a bad checksum, then a file cut in the middle of the events.
+		byte[] badChecksum = valid.clone();
+		badChecksum[badChecksum.length - 1] ^= 1;
+		byte[] truncated = Arrays.copyOf(valid, valid.length / 2);
+		for (byte[] corrupt : new byte[][] { badChecksum, truncated }) {
+			Files.write(file, corrupt);
+			ConcurrentSortedEventStore restored = new ConcurrentSortedEventStore();
+			try {
+				EventSnapshot.read(file, restored);
+				Assert.fail();
+			} catch (IOException e) {
+				// nothing was linked.
+			}
+			Assert.assertEquals(0, restored.length());
+			Assert.assertFalse(restored.queryAll(Long.MIN_VALUE, Long.MAX_VALUE).moveNext());
+
+			Files.write(file, valid);
+			Assert.assertEquals(100, EventSnapshot.read(file, restored));
+		}
+	}
+
+	@Test(expected = IllegalStateException.class)
+	public void readIntoNonEmptyStoreTest() throws IOException {
+		ConcurrentSortedEventStore store = new ConcurrentSortedEventStore();
+		store.insert(new Event("a", 1));
+		Path file = folder.getRoot().toPath().resolve("store.snapshot");
+		EventSnapshot.write(store, file);
+
+		EventSnapshot.read(file, store);
+	}
+
+	private static int size(EventIterator it) {
+		int count = 0;
+		while (it.moveNext()) {
+			count++;
+		}
+		return count;
+	}
+}
@@ -0,0 +1,181 @@
+package net.intelie.challenges.concurrent;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+import java.util.function.Supplier;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import net.intelie.challenges.Event;
+import net.intelie.challenges.EventFilter;
+import net.intelie.challenges.EventIterator;
+import net.intelie.challenges.EventStore;
+import net.intelie.challenges.Payload;
+
+public class FilteredQueryTest {
+
+	private static final List<Supplier<EventStore>> STORES = Arrays.<Supplier<EventStore>>asList(
+			() -> new ConcurrentSortedEventStore(50, 0), PartitionedEventStore::new, SkipListEventStore::new,
+			() -> new ColumnarEventStore(16), OffHeapEventStore::new, () -> new BucketedEventStore(100, 16),
+			FilteredQueryTest::indexed);
+
+	private static final Set<String> A = Collections.singleton("a");
+
+	@Test
+	public void filteredQueryTest() {
+		EventFilter byHost = EventFilter.equalTo("host", "h1");
+		EventFilter byLevel = EventFilter.between("level", 2, 4);
+		for (Supplier<EventStore> factory : STORES) {
+			EventStore store = factory.get();
+			fill(store);
+
+			assertMatches(store.query(A, 0, 1000, byHost), 0, 1000, "h1", -1);
+			assertMatches(store.query(A, 100, 300, byHost.and(byLevel)), 100, 300, "h1", 2, 3);
+			assertMatches(store.query(A, 0, 1000, byLevel.and(byHost.negate())), 0, 1000, null, 2, 3);
+			Assert.assertFalse(store.query(A, 0, 1000, EventFilter.equalTo("host", "missing")).moveNext());
+			Assert.assertFalse(store.query(A, 0, 1000, EventFilter.equalTo("host", 1L)).moveNext());
+			Assert.assertFalse(store.query(A, 500, 500, byHost).moveNext());
+		}
+	}
+
+	@Test
+	public void removeThroughFilterTest() {
+		for (Supplier<EventStore> factory : STORES) {
+			EventStore store = factory.get();
+			fill(store);
+
+			EventIterator it = store.query(A, 0, 1000, EventFilter.equalTo("host", "h1"));
+			int removed = 0;
+			while (it.moveNext()) {
+				it.remove();
+				removed++;
+			}
+			Assert.assertEquals(167, removed);
+			Assert.assertFalse(store.query(A, 0, 1000, EventFilter.equalTo("host", "h1")).moveNext());
+			Assert.assertTrue(store.query(A, 0, 1000, EventFilter.equalTo("host", "h2")).moveNext());
+		}
+	}
+
+	@Test
+	public void indexFollowsMutationsTest() {
+		ConcurrentSortedEventStore store = new ConcurrentSortedEventStore(50, 0);
+		store.insert(event("a", 1, "h1", 0));
+		Assert.assertTrue(store.createIndex("a", "host", 10));
+		Assert.assertFalse(store.createIndex("a", "host", 10));
+
+		store.insert(event("a", 2, "h1", 0));
+		store.insertAll(Arrays.asList(event("a", 25, "h1", 0), event("a", 3, "h2", 0)));
+		Assert.assertEquals(Arrays.asList(1L, 2L, 25L),
+				timestamps(store.query(A, 0, 100, EventFilter.equalTo("host", "h1"))));
+
+		store.removeAll("a");
+		Assert.assertFalse(store.query(A, 0, 100, EventFilter.equalTo("host", "h1")).moveNext());
+
+		// the index survives the removal of its type.
+		store.insert(event("a", 7, "h1", 0));
+		Assert.assertEquals(Collections.singletonList(7L),
+				timestamps(store.query(A, 0, 100, EventFilter.equalTo("host", "h1"))));
+		Assert.assertTrue(store.dropIndex("a", "host"));
+		Assert.assertFalse(store.dropIndex("a", "host"));
+		Assert.assertEquals(Collections.singletonList(7L),
+				timestamps(store.query(A, 0, 100, EventFilter.equalTo("host", "h1"))));
+	}
+
+	@Test
+	public void indexedQueryReadsOnlyItsValueTest() {
+		ConcurrentSortedEventStore store = new ConcurrentSortedEventStore(50, 0);
+		store.createIndex("a", "host", 100);
+		for (int i = 0; i < 10000; i++) {
+			store.insert(event("a", i, i == 5000 ? "rare" : "common", 0));
+		}
+
+		Set<Payload> tested = Collections.newSetFromMap(new IdentityHashMap<Payload, Boolean>());
+		EventFilter rare = EventFilter.equalTo("host", "rare");
+		EventFilter counting = new EventFilter() {
+			@Override
+			public boolean test(Payload payload) {
+				tested.add(payload);
+				return rare.test(payload);
+			}
+
+			@Override
+			public Object requiredValue(String name) {
+				return rare.requiredValue(name);
+			}
+		};
+		Assert.assertEquals(Collections.singletonList(5000L), timestamps(store.query(A, 0, 10000, counting)));
+		Assert.assertEquals(1, tested.size());
+	}
+
+	@Test
+	public void requiredValueTest() {
+		EventFilter host = EventFilter.equalTo("host", "h1");
+		Assert.assertEquals("h1", host.requiredValue("host"));
+		Assert.assertNull(host.requiredValue("level"));
+		Assert.assertEquals("h1", EventFilter.has("level").and(host).requiredValue("host"));
+		Assert.assertEquals("h1", host.or(EventFilter.equalTo("host", "h1")).requiredValue("host"));
+		Assert.assertNull(host.or(EventFilter.equalTo("host", "h2")).requiredValue("host"));
+		Assert.assertNull(host.negate().requiredValue("host"));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void nullFilterTest() {
+		new ConcurrentSortedEventStore().query(A, 0, 1, null);
+	}
+
+	private static EventStore indexed() {
+		ConcurrentSortedEventStore store = new ConcurrentSortedEventStore(50, 0);
+		store.createIndex("a", "host", 64);
+		return store;
+	}
+
+	/**
+	 * Type "a" on even timestamps, "b" on odd ones, hosts h0..h2 and levels
+	 * 0..4 by timestamp.
+	 */
+	private static void fill(EventStore store) {
+		List<Event> events = new ArrayList<Event>();
+		for (int i = 999; i >= 0; i--) {
+			events.add(event(i % 2 == 0 ? "a" : "b", i, "h" + (i / 2 % 3), i / 2 % 5));
+		}
+		store.insertAll(events.subList(0, 500));
+		for (Event event : events.subList(500, 1000)) {
+			store.insert(event);
+		}
+	}
+
+	private static Event event(String type, long timestamp, String host, long level) {
+		return new Event(type, timestamp, Payload.builder().put("host", host).put("level", level).build());
+	}
+
+	private static void assertMatches(EventIterator it, long startTime, long endTime, String host, long... levels) {
+		Set<Long> expectedLevels = new HashSet<Long>();
+		for (long level : levels) {
+			expectedLevels.add(level);
+		}
+		List<Long> expected = new ArrayList<Long>();
+		for (long i = startTime; i < endTime; i += 2) {
+			boolean hostMatches = host == null ? !("h" + (i / 2 % 3)).equals("h1") : ("h" + (i / 2 % 3)).equals(host);
+			boolean levelMatches = expectedLevels.contains(-1L) || expectedLevels.contains(i / 2 % 5);
+			if (hostMatches && levelMatches) {
+				expected.add(i);
+			}
+		}
+		Assert.assertEquals(expected, timestamps(it));
+	}
+
+	private static List<Long> timestamps(EventIterator it) {
+		List<Long> timestamps = new ArrayList<Long>();
+		while (it.moveNext()) {
+			Assert.assertEquals("a", it.current().type());
+			timestamps.add(it.current().timestamp());
+		}
+		return timestamps;
+	}
+}
@@ -0,0 +1,98 @@
+package net.intelie.challenges.concurrent;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.function.Supplier;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import net.intelie.challenges.Event;
+import net.intelie.challenges.EventIterator;
+import net.intelie.challenges.EventStore;
+
+public class MultiTypeQueryTest {
+
+	private static final List<Supplier<EventStore>> STORES = Arrays.<Supplier<EventStore>>asList(
+			() -> new ConcurrentSortedEventStore(50, 0), PartitionedEventStore::new, SkipListEventStore::new,
+			() -> new ColumnarEventStore(16), OffHeapEventStore::new, () -> new BucketedEventStore(100, 16));
+
+	@Test
+	public void multiTypeQueryTest() {
+		for (Supplier<EventStore> factory : STORES) {
+			EventStore store = factory.get();
+			List<Event> events = fill(store);
+			Set<String> types = new HashSet<String>(Arrays.asList("a", "c", "missing"));
+
+			for (long[] range : new long[][] { { 0, 1000 }, { 250, 600 }, { 300, 300 } }) {
+				assertMatches(events, types, range[0], range[1], store.query(types, range[0], range[1]));
+				assertMatches(events, null, range[0], range[1], store.queryAll(range[0], range[1]));
+			}
+		}
+	}
+
+	@Test
+	public void removeThroughMergeTest() {
+		for (Supplier<EventStore> factory : STORES) {
+			EventStore store = factory.get();
+			fill(store);
+
+			EventIterator it = store.queryAll(0, 1000);
+			int removed = 0;
+			while (it.moveNext()) {
+				if (it.current().timestamp() % 2 == 0) {
+					it.remove();
+					removed++;
+				}
+			}
+
+			it = store.queryAll(0, 1000);
+			int left = 0;
+			while (it.moveNext()) {
+				Assert.assertEquals(1, it.current().timestamp() % 2);
+				left++;
+			}
+			Assert.assertEquals(500, removed + left);
+		}
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void invalidTypeTest() {
+		new ConcurrentSortedEventStore().query(new HashSet<String>(Arrays.asList("a", "")), 0, 1);
+	}
+
+	private static List<Event> fill(EventStore store) {
+		List<Event> events = new ArrayList<Event>();
+		Random random = new Random(3);
+		String[] types = { "a", "b", "c", "d" };
+		for (int i = 0; i < 500; i++) {
+			Event event = new Event(types[random.nextInt(types.length)], random.nextInt(1000));
+			store.insert(event);
+			events.add(event);
+		}
+		return events;
+	}
+
+	private static void assertMatches(List<Event> events, Set<String> types, long start, long end,
+			EventIterator it) {
+		List<Long> expected = new ArrayList<Long>();
+		for (Event event : events) {
+			if ((types == null || types.contains(event.type())) && event.timestamp() >= start
+					&& event.timestamp() < end) {
+				expected.add(event.timestamp());
+			}
+		}
+		expected.sort(null);
+
+		List<Long> actual = new ArrayList<Long>();
+		while (it.moveNext()) {
+			Assert.assertTrue(types == null || types.contains(it.current().type()));
+			actual.add(it.current().timestamp());
+		}
+		Assert.assertEquals(expected, actual);
+	}
+}
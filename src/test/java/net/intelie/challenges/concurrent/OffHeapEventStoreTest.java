@@ -0,0 +1,136 @@
+package net.intelie.challenges.concurrent;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import net.intelie.challenges.Event;
+import net.intelie.challenges.EventIterator;
+
+public class OffHeapEventStoreTest {
+
+	@Test
+	public void outOfOrderInsertsAcrossSegmentsTest() {
+		// small segments so splits and multi-segment reads happen.
+		OffHeapEventStore store = new OffHeapEventStore(8);
+
+		Random random = new Random(7);
+		for (int i = 0; i < 2000; i++) {
+			store.insert(new Event(i % 3 == 0 ? "a" : "b", random.nextInt(500)));
+		}
+
+		Assert.assertEquals(2000, store.length());
+		Assert.assertTrue(store.segmentCount() > 1);
+
+		EventIterator it = store.query("a", 0L, 500L);
+		long prev = Long.MIN_VALUE;
+		int count = 0;
+		while (it.moveNext()) {
+			Assert.assertEquals("a", it.current().type());
+			Assert.assertTrue(prev <= it.current().timestamp());
+			prev = it.current().timestamp();
+			++count;
+		}
+		Assert.assertEquals(667, count);
+	}
+
+	@Test
+	public void queryIsHalfOpenTest() {
+		OffHeapEventStore store = new OffHeapEventStore(4);
+
+		for (int i = 0; i < 10; i++) {
+			store.insert(new Event("a", i));
+			store.insert(new Event("b", i));
+		}
+
+		EventIterator it = store.query("a", 3L, 5L);
+
+		Assert.assertTrue(it.moveNext());
+		Assert.assertEquals(3L, it.current().timestamp());
+		Assert.assertTrue(it.moveNext());
+		Assert.assertEquals(4L, it.current().timestamp());
+		Assert.assertFalse(it.moveNext());
+		Assert.assertFalse(store.query("c", 0L, 10L).moveNext());
+	}
+
+	@Test
+	public void removeAllCompactsSegmentsTest() {
+		OffHeapEventStore store = new OffHeapEventStore(4);
+
+		for (int i = 0; i < 40; i++) {
+			store.insert(new Event(i < 20 ? "delete" : "teste", i));
+		}
+
+		store.removeAll("delete");
+
+		Assert.assertEquals(20, store.length());
+		Assert.assertEquals(5, store.segmentCount());
+		Assert.assertFalse(store.query("delete", 0L, 40L).moveNext());
+	}
+
+	@Test
+	public void iteratorRemoveKeepsDuplicatesTest() {
+		OffHeapEventStore store = new OffHeapEventStore(4);
+
+		for (int i = 0; i < 60; i++) {
+			store.insert(new Event(i % 2 == 0 ? "a" : "b", i / 10));
+		}
+
+		EventIterator it = store.query("a", 0L, 10L);
+		int seen = 0;
+		while (it.moveNext()) {
+			if (seen++ % 2 == 0) {
+				it.remove();
+			}
+		}
+
+		Assert.assertEquals(30, seen);
+		Assert.assertEquals(45, store.length());
+	}
+
+	@Test
+	public void insertAllTest() {
+		OffHeapEventStore store = new OffHeapEventStore(4);
+
+		List<Event> batch = new ArrayList<Event>();
+		for (int i = 100; i > 0; i--) {
+			batch.add(new Event(i % 2 == 0 ? "a" : "b", i));
+		}
+		store.insertAll(batch);
+
+		Assert.assertEquals(100, store.length());
+		EventIterator it = store.query("b", 0L, 1000L);
+		long prev = Long.MIN_VALUE;
+		int count = 0;
+		while (it.moveNext()) {
+			Assert.assertTrue(prev <= it.current().timestamp());
+			prev = it.current().timestamp();
+			++count;
+		}
+		Assert.assertEquals(50, count);
+	}
+
+	@Test
+	public void concurrentInsertTest() throws InterruptedException {
+		OffHeapEventStore store = new OffHeapEventStore(256);
+
+		Thread[] threads = new Thread[5];
+		for (int i = 0; i < threads.length; i++) {
+			threads[i] = new Thread(() -> {
+				Random random = new Random();
+				for (int j = 0; j < 5000; j++) {
+					store.insert(new Event("teste", random.nextInt(2000000)));
+				}
+			});
+			threads[i].start();
+		}
+		for (Thread t : threads) {
+			t.join();
+		}
+
+		Assert.assertEquals(25000, store.length());
+	}
+}
@@ -0,0 +1,120 @@
+package net.intelie.challenges.concurrent;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.function.Supplier;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import net.intelie.challenges.Event;
+import net.intelie.challenges.EventIterator;
+import net.intelie.challenges.EventStore;
+import net.intelie.challenges.Order;
+import net.intelie.challenges.Payload;
+
+public class OrderedQueryTest {
+
+	private static final List<Supplier<EventStore>> STORES = Arrays.<Supplier<EventStore>>asList(
+			() -> new ConcurrentSortedEventStore(50, 0), PartitionedEventStore::new, SkipListEventStore::new,
+			() -> new ColumnarEventStore(16), OffHeapEventStore::new, () -> new BucketedEventStore(100, 16));
+
+	@Test
+	public void orderAndLimitTest() {
+		for (Supplier<EventStore> factory : STORES) {
+			EventStore store = factory.get();
+			List<Long> expected = fill(store);
+			Random random = new Random(5);
+
+			for (int i = 0; i < 30; i++) {
+				long start = random.nextInt(1200) - 100;
+				long end = start + random.nextInt(800);
+				int limit = 1 + random.nextInt(i % 2 == 0 ? 10 : 1000);
+
+				List<Long> range = new ArrayList<Long>();
+				for (long timestamp : expected) {
+					if (timestamp >= start && timestamp < end) {
+						range.add(timestamp);
+					}
+				}
+
+				List<Long> ascending = range.subList(0, Math.min(limit, range.size()));
+				Assert.assertEquals(ascending, timestamps(store.query("a", start, end, Order.ASCENDING, limit)));
+
+				Collections.reverse(range);
+				List<Long> descending = range.subList(0, Math.min(limit, range.size()));
+				Assert.assertEquals(descending, timestamps(store.query("a", start, end, Order.DESCENDING, limit)));
+			}
+			Assert.assertFalse(store.query("c", 0, 1000, Order.DESCENDING, 10).moveNext());
+		}
+	}
+
+	@Test
+	public void removeNewestTest() {
+		for (Supplier<EventStore> factory : STORES) {
+			EventStore store = factory.get();
+			List<Long> expected = fill(store);
+
+			EventIterator it = store.query("a", 0, 1000, Order.DESCENDING, 5);
+			while (it.moveNext()) {
+				it.remove();
+			}
+
+			List<Long> left = expected.subList(0, expected.size() - 5);
+			Assert.assertEquals(left, timestamps(store.query("a", 0, 1000, Order.ASCENDING, Integer.MAX_VALUE)));
+		}
+	}
+
+	@Test
+	public void removeNewestOfEqualTimestampsTest() {
+		// decodes a new instance per query, so the default removal matches payloads.
+		EventStore store = new OffHeapEventStore();
+		store.insert(new Event("a", 10, Payload.builder().put("n", 1).build()));
+		store.insert(new Event("a", 10, Payload.builder().put("n", 2).build()));
+
+		EventIterator it = store.query("a", 0, 100, Order.DESCENDING, 1);
+		Assert.assertTrue(it.moveNext());
+		long removed = it.current().payload().getLong("n", 0);
+		it.remove();
+
+		EventIterator left = store.query("a", 0, 100, Order.ASCENDING, Integer.MAX_VALUE);
+		Assert.assertTrue(left.moveNext());
+		Assert.assertEquals(3 - removed, left.current().payload().getLong("n", 0));
+		Assert.assertFalse(left.moveNext());
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void invalidLimitTest() {
+		new SkipListEventStore().query("a", 0, 1, Order.DESCENDING, 0);
+	}
+
+	/**
+	 * @return the sorted timestamps of type "a".
+	 */
+	private static List<Long> fill(EventStore store) {
+		List<Long> expected = new ArrayList<Long>();
+		Random random = new Random(9);
+		for (int i = 0; i < 2000; i++) {
+			long timestamp = random.nextInt(1000);
+			boolean a = random.nextInt(3) == 0;
+			store.insert(new Event(a ? "a" : "b", timestamp));
+			if (a) {
+				expected.add(timestamp);
+			}
+		}
+		Collections.sort(expected);
+		return expected;
+	}
+
+	private static List<Long> timestamps(EventIterator it) {
+		List<Long> timestamps = new ArrayList<Long>();
+		while (it.moveNext()) {
+			Assert.assertEquals("a", it.current().type());
+			timestamps.add(it.current().timestamp());
+		}
+		return timestamps;
+	}
+}
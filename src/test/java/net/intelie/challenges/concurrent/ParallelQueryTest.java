@@ -0,0 +1,130 @@
+package net.intelie.challenges.concurrent;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import net.intelie.challenges.Event;
+import net.intelie.challenges.EventIterator;
+
+public class ParallelQueryTest {
+
+	private static final Set<String> AB = new HashSet<String>(Arrays.asList("a", "b"));
+
+	@Test
+	public void sameAsSequentialTest() throws Exception {
+		ConcurrentSortedEventStore store = store();
+		ForkJoinPool pool = new ForkJoinPool(4);
+		try {
+			for (long[] range : new long[][] { { 0, 10000 }, { 1234, 5678 }, { -10, 5 }, { 9990, 20000 },
+					{ Long.MIN_VALUE, Long.MAX_VALUE } }) {
+				List<String> expected = events(store.query(AB, range[0], range[1]));
+				Assert.assertEquals(expected, events(store.parallelQuery(AB, range[0], range[1], pool)));
+				try (Stream<Event> stream = store.stream(AB, range[0], range[1])) {
+					Assert.assertEquals(expected, stream.map(ParallelQueryTest::key).collect(Collectors.toList()));
+				}
+			}
+			Assert.assertEquals(events(store.query(Collections.singleton("c"), 0, 10000)),
+					events(store.parallelQuery(Collections.singleton("c"), 0, 10000, pool)));
+			Assert.assertFalse(store.parallelQuery(AB, 7, 7, pool).moveNext());
+			Assert.assertEquals(0, store.stream(AB, 7, 7).count());
+		} finally {
+			pool.shutdown();
+		}
+		Assert.assertEquals(0, store.versions.pinned());
+	}
+
+	@Test
+	public void streamAggregationTest() throws Exception {
+		ConcurrentSortedEventStore store = store();
+		long count = store.count("a", 0, 10000) + store.count("b", 0, 10000);
+
+		Assert.assertEquals(count, store.stream(AB, 0, 10000).count());
+		Assert.assertEquals(store.count("a", 0, 10000),
+				store.stream(AB, 0, 10000).filter(event -> event.type().equals("a")).count());
+		try (Stream<Event> stream = store.stream(AB, 0, 10000)) {
+			Assert.assertEquals(events(store.query(AB, 0, 10000)).get(0), key(stream.findFirst().get()));
+		}
+		Assert.assertEquals(0, store.versions.pinned());
+	}
+
+	@Test
+	public void snapshotTest() throws Exception {
+		ConcurrentSortedEventStore store = store();
+		List<String> expected = events(store.query(AB, 0, 10000));
+
+		EventIterator it = store.parallelQuery(AB, 0, 10000);
+		Stream<Event> stream = store.stream(AB, 0, 10000);
+		store.removeAll("a");
+		store.insert(new Event("b", 500));
+		store.seal(Long.MAX_VALUE);
+
+		Assert.assertEquals(expected, events(it));
+		Assert.assertEquals(expected, stream.map(ParallelQueryTest::key).collect(Collectors.toList()));
+		Assert.assertEquals(0, store.count("a", 0, 10000));
+	}
+
+	@Test
+	public void removeAndCloseTest() throws Exception {
+		ConcurrentSortedEventStore store = store();
+		int before = store.length();
+
+		EventIterator it = store.parallelQuery(Collections.singleton("b"), 0, 10000);
+		int removed = 0;
+		while (it.moveNext()) {
+			if (it.current().timestamp() % 3 == 0) {
+				it.remove();
+				removed++;
+			}
+		}
+		Assert.assertEquals(before - removed, store.length());
+		Assert.assertFalse(store.stream(Collections.singleton("b"), 0, 10000)
+				.anyMatch(event -> event.timestamp() % 3 == 0));
+
+		EventIterator closed = store.parallelQuery(AB, 0, 10000);
+		Assert.assertTrue(closed.moveNext());
+		closed.close();
+		Assert.assertFalse(closed.moveNext());
+		Assert.assertEquals(0, store.versions.pinned());
+	}
+
+	/**
+	 * Events of three types, late ones included, the oldest of them sealed.
+	 */
+	private static ConcurrentSortedEventStore store() {
+		ConcurrentSortedEventStore store = new ConcurrentSortedEventStore(50, 0);
+		Random random = new Random(7);
+		for (int i = 0; i < 6000; i++) {
+			String type = i % 3 == 0 ? "a" : i % 3 == 1 ? "b" : "c";
+			store.insert(new Event(type, i % 10 == 0 ? random.nextInt(10000) : i));
+		}
+		store.seal(3000);
+		for (int i = 6000; i < 10000; i++) {
+			store.insert(new Event(i % 2 == 0 ? "a" : "b", i - (i % 7 == 0 ? random.nextInt(5000) : 0)));
+		}
+		return store;
+	}
+
+	private static String key(Event event) {
+		return event.type() + "@" + event.timestamp();
+	}
+
+	private static List<String> events(EventIterator it) throws Exception {
+		List<String> events = new ArrayList<String>();
+		while (it.moveNext()) {
+			events.add(key(it.current()));
+		}
+		it.close();
+		return events;
+	}
+}
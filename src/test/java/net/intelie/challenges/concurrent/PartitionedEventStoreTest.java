@@ -0,0 +1,143 @@
+package net.intelie.challenges.concurrent;
+
+import java.util.Arrays;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import net.intelie.challenges.Event;
+import net.intelie.challenges.EventIterator;
+
+public class PartitionedEventStoreTest {
+
+	@Test
+	public void queryOnlyReturnsTheRequestedTypeTest() {
+		PartitionedEventStore store = new PartitionedEventStore();
+
+		store.insert(new Event("a", 3));
+		store.insert(new Event("b", 2));
+		store.insert(new Event("a", 1));
+		store.insert(new Event("b", 4));
+		store.insert(new Event("a", 5));
+
+		EventIterator it = store.query("a", 0L, 10L);
+
+		Assert.assertEquals(2, store.partitionCount());
+		Assert.assertTrue(it.moveNext());
+		Assert.assertEquals("a", it.current().type());
+		Assert.assertEquals(1L, it.current().timestamp());
+		Assert.assertTrue(it.moveNext());
+		Assert.assertEquals(3L, it.current().timestamp());
+		Assert.assertTrue(it.moveNext());
+		Assert.assertEquals(5L, it.current().timestamp());
+		Assert.assertFalse(it.moveNext());
+	}
+
+	@Test
+	public void queryUnknownTypeTest() {
+		PartitionedEventStore store = new PartitionedEventStore();
+
+		store.insert(new Event("a", 1));
+
+		EventIterator it = store.query("b", 0L, 10L);
+
+		Assert.assertFalse(it.moveNext());
+	}
+
+	@Test
+	public void queryOutOfRangeTest() {
+		PartitionedEventStore store = new PartitionedEventStore();
+
+		store.insert(new Event("a", 1));
+		store.insert(new Event("a", 10));
+
+		EventIterator it = store.query("a", 2L, 10L);
+
+		Assert.assertNotNull(it);
+		Assert.assertFalse(it.moveNext());
+	}
+
+	@Test(expected = IllegalStateException.class)
+	public void currentOnEmptyIteratorTest() {
+		new PartitionedEventStore().query("a", 0L, 10L).current();
+	}
+
+	@Test
+	public void removeAllDetachesPartitionTest() {
+		PartitionedEventStore store = new PartitionedEventStore();
+
+		store.insert(new Event("delete", 1));
+		store.insert(new Event("keep", 2));
+		store.insert(new Event("delete", 3));
+
+		store.removeAll("delete");
+
+		Assert.assertEquals(1, store.partitionCount());
+		Assert.assertFalse(store.query("delete", 0L, 10L).moveNext());
+		EventIterator it = store.query("keep", 0L, 10L);
+		Assert.assertTrue(it.moveNext());
+		Assert.assertEquals(2L, it.current().timestamp());
+	}
+
+	@Test
+	public void concurrentInsertByTypeTest() throws InterruptedException {
+		PartitionedEventStore store = new PartitionedEventStore(() -> new ConcurrentSortedEventStore(500));
+
+		Thread[] threads = new Thread[5];
+		for (int i = 0; i < threads.length; i++) {
+			final String type = "type" + (i % 2);
+			threads[i] = new Thread(() -> {
+				for (int j = 0; j < 2000; j++) {
+					store.insert(new Event(type, j));
+				}
+			});
+			threads[i].start();
+		}
+		for (Thread t : threads) {
+			t.join();
+		}
+
+		Assert.assertEquals(2, store.partitionCount());
+		Assert.assertEquals(6000, count(store.query("type0", 0L, 2000L)));
+		Assert.assertEquals(4000, count(store.query("type1", 0L, 2000L)));
+	}
+
+	@Test
+	public void insertAllGroupsByTypeTest() {
+		PartitionedEventStore store = new PartitionedEventStore(SkipListEventStore::new);
+
+		store.insertAll(Arrays.asList(new Event("a", 3), new Event("b", 1), new Event("a", 2)));
+
+		EventIterator it = store.query("a", 0L, 10L);
+		Assert.assertEquals(2, store.partitionCount());
+		Assert.assertTrue(it.moveNext());
+		Assert.assertEquals(2L, it.current().timestamp());
+		Assert.assertTrue(it.moveNext());
+		Assert.assertEquals(3L, it.current().timestamp());
+		Assert.assertFalse(it.moveNext());
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void insertAllRejectsTheWholeBatchTest() {
+		PartitionedEventStore store = new PartitionedEventStore();
+
+		try {
+			store.insertAll(Arrays.asList(new Event("a", 1), null));
+		} finally {
+			Assert.assertEquals(0, store.partitionCount());
+		}
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void insertWithoutTypeTest() {
+		new PartitionedEventStore().insert(new Event(" ", 1));
+	}
+
+	private int count(EventIterator it) {
+		int count = 0;
+		while (it.moveNext()) {
+			++count;
+		}
+		return count;
+	}
+}
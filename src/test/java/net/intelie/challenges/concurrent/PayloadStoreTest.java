@@ -0,0 +1,193 @@
+package net.intelie.challenges.concurrent;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.Supplier;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import net.intelie.challenges.Event;
+import net.intelie.challenges.EventIterator;
+import net.intelie.challenges.EventStore;
+import net.intelie.challenges.Payload;
+
+public class PayloadStoreTest {
+
+	private static final List<Supplier<EventStore>> STORES = Arrays.<Supplier<EventStore>>asList(
+			() -> new ConcurrentSortedEventStore(50, 0), PartitionedEventStore::new, SkipListEventStore::new,
+			() -> new ColumnarEventStore(4), () -> new OffHeapEventStore(4), () -> new BucketedEventStore(10, 4));
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void payloadsSurviveInsertsAndSplitsTest() {
+		for (Supplier<EventStore> factory : STORES) {
+			EventStore store = factory.get();
+			// descending inserts, so every chunk and segment is shifted and split.
+			for (int i = 99; i >= 0; i--) {
+				store.insert(event("a", i));
+			}
+			List<Event> batch = new ArrayList<Event>();
+			for (int i = 100; i < 150; i++) {
+				batch.add(event("a", i));
+			}
+			store.insertAll(batch);
+
+			EventIterator it = store.queryAll(0, 150);
+			int count = 0;
+			while (it.moveNext()) {
+				assertPayload(it.current().timestamp(), it.payload());
+				Assert.assertEquals(it.payload(), it.current().payload());
+				count++;
+			}
+			Assert.assertEquals(store.getClass().getSimpleName(), 150, count);
+		}
+	}
+
+	@Test
+	public void payloadsFollowRemovalsTest() {
+		for (Supplier<EventStore> factory : STORES) {
+			EventStore store = factory.get();
+			for (int i = 0; i < 60; i++) {
+				store.insert(event(i % 2 == 0 ? "a" : "b", i));
+			}
+			store.removeAll("b");
+			EventIterator it = store.queryAll(0, 60);
+			while (it.moveNext()) {
+				if (it.current().timestamp() % 4 == 0) {
+					it.remove();
+				}
+			}
+
+			it = store.queryAll(0, 60);
+			int count = 0;
+			while (it.moveNext()) {
+				Assert.assertEquals(2, it.current().timestamp() % 4);
+				assertPayload(it.current().timestamp(), it.payload());
+				count++;
+			}
+			Assert.assertEquals(15, count);
+		}
+	}
+
+	@Test
+	public void offHeapReleasesPagesTest() {
+		OffHeapEventStore store = new OffHeapEventStore(16);
+		store.insert(new Event("a", 0));
+		long segmentsOnly = store.offHeapBytes();
+
+		// large payloads, so several pages are filled.
+		char[] text = new char[100000];
+		Arrays.fill(text, 'x');
+		Payload large = Payload.builder().put("text", new String(text)).build();
+		for (int i = 1; i <= 30; i++) {
+			store.insert(new Event("b", i, large));
+		}
+		Assert.assertTrue(store.offHeapBytes() > segmentsOnly + 2 * PayloadArena.PAGE_SIZE);
+
+		EventIterator it = store.query("b", 0, 100);
+		Assert.assertTrue(it.moveNext());
+		Payload view = it.payload();
+
+		store.removeAll("b");
+		// only the page still written to is kept.
+		Assert.assertTrue(store.offHeapBytes() <= segmentsOnly + PayloadArena.PAGE_SIZE);
+		// a view outlives the event it was read from.
+		Assert.assertEquals(large, view);
+	}
+
+	@Test
+	public void offHeapCompactsSparsePagesTest() {
+		OffHeapEventStore store = new OffHeapEventStore(16);
+		char[] text = new char[10000];
+		Arrays.fill(text, 'x');
+		Payload large = Payload.builder().put("text", new String(text)).build();
+		for (int i = 0; i < 1000; i++) {
+			store.insert(new Event("a", i, large));
+		}
+		long full = store.offHeapBytes();
+		Assert.assertTrue(full > 8 * PayloadArena.PAGE_SIZE);
+
+		EventIterator it = store.queryAll(0, 1000);
+		Assert.assertTrue(it.moveNext());
+		Payload view = it.payload();
+		// one payload in ten is kept, in every page.
+		do {
+			if (it.current().timestamp() % 10 != 0) {
+				it.remove();
+			}
+		} while (it.moveNext());
+
+		Assert.assertTrue(store.offHeapBytes() < full / 2);
+		it = store.queryAll(0, 1000);
+		int count = 0;
+		while (it.moveNext()) {
+			Assert.assertEquals(0, it.current().timestamp() % 10);
+			Assert.assertEquals(large, it.payload());
+			count++;
+		}
+		Assert.assertEquals(100, count);
+		// a view outlives the page its payload was moved from.
+		Assert.assertEquals(large, view);
+	}
+
+	@Test
+	public void writeAheadLogReplaysPayloadsTest() throws IOException {
+		Path directory = folder.getRoot().toPath();
+		try (WriteAheadLogEventStore store = new WriteAheadLogEventStore(directory, new SkipListEventStore(), 1024, false)) {
+			for (int i = 0; i < 50; i++) {
+				store.insert(event("a", i));
+			}
+		}
+
+		try (WriteAheadLogEventStore store = new WriteAheadLogEventStore(directory, new SkipListEventStore(), 1024, false)) {
+			EventIterator it = store.query("a", 0, 50);
+			int count = 0;
+			while (it.moveNext()) {
+				assertPayload(it.current().timestamp(), it.payload());
+				count++;
+			}
+			Assert.assertEquals(50, count);
+		}
+	}
+
+	@Test
+	public void snapshotKeepsPayloadsTest() throws IOException {
+		ConcurrentSortedEventStore store = new ConcurrentSortedEventStore(10, 0);
+		for (int i = 0; i < 100; i++) {
+			store.insert(i % 3 == 0 ? new Event("a", i) : event("a", i));
+		}
+
+		Path file = folder.getRoot().toPath().resolve("store.snapshot");
+		EventSnapshot.write(store, file);
+		ConcurrentSortedEventStore restored = new ConcurrentSortedEventStore(10, 0);
+		Assert.assertEquals(100, EventSnapshot.read(file, restored));
+
+		EventIterator it = restored.all();
+		while (it.moveNext()) {
+			long timestamp = it.current().timestamp();
+			if (timestamp % 3 == 0) {
+				Assert.assertTrue(it.payload().isEmpty());
+			} else {
+				assertPayload(timestamp, it.payload());
+			}
+		}
+	}
+
+	private static Event event(String type, long timestamp) {
+		return new Event(type, timestamp,
+				Payload.builder().put("id", timestamp).put("label", "event-" + timestamp).build());
+	}
+
+	private static void assertPayload(long timestamp, Payload payload) {
+		Assert.assertEquals(timestamp, payload.getLong("id", -1));
+		Assert.assertEquals("event-" + timestamp, payload.getString("label"));
+	}
+}
@@ -0,0 +1,203 @@
+package net.intelie.challenges.concurrent;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import net.intelie.challenges.Event;
+import net.intelie.challenges.EventIterator;
+import net.intelie.challenges.EventStore;
+
+public class RetentionEvictorTest {
+
+	@Test
+	public void maxAgeTest() {
+		BucketedEventStore store = new BucketedEventStore(10, 4);
+		AtomicLong now = new AtomicLong(100);
+		RetentionPolicy policy = new RetentionPolicy(50, RetentionPolicy.UNLIMITED).withMaxAge("b", 10);
+		RetentionEvictor evictor = new RetentionEvictor(store, policy, now::get);
+
+		for (int i = 0; i < 100; i++) {
+			store.insert(new Event("a", i));
+			store.insert(new Event("b", i));
+		}
+
+		evictor.run();
+
+		Assert.assertEquals(50L, first(store, "a"));
+		Assert.assertEquals(90L, first(store, "b"));
+		Assert.assertEquals(50 + 10, store.length());
+		Assert.assertEquals(50 + 90, evictor.evictedEvents());
+		Assert.assertTrue(evictor.reclaimedBytes() > 0);
+		Assert.assertEquals(5, store.bucketCount("a"));
+
+		now.set(200);
+		evictor.run();
+
+		Assert.assertEquals(0, store.length());
+		Assert.assertEquals(200, evictor.evictedEvents());
+		Assert.assertEquals(2, evictor.runs());
+	}
+
+	@Test
+	public void maxCountTest() {
+		BucketedEventStore store = new BucketedEventStore(10, 4);
+		RetentionEvictor evictor = new RetentionEvictor(store, new RetentionPolicy(RetentionPolicy.UNLIMITED, 25),
+				() -> 0L);
+
+		for (int i = 0; i < 100; i++) {
+			store.insert(new Event("a", i));
+		}
+		store.insert(new Event("b", 0));
+
+		evictor.run();
+
+		Assert.assertEquals(26, store.length());
+		Assert.assertEquals(75, evictor.evictedEvents());
+		Assert.assertEquals(75L, first(store, "a"));
+		Assert.assertEquals(0L, first(store, "b"));
+		Assert.assertEquals(3, store.bucketCount("a"));
+	}
+
+	@Test
+	public void scheduledTest() throws InterruptedException {
+		BucketedEventStore store = new BucketedEventStore(10);
+		try (RetentionEvictor evictor = new RetentionEvictor(store, new RetentionPolicy(10, RetentionPolicy.UNLIMITED), () -> 100L)) {
+			for (int i = 0; i < 100; i++) {
+				store.insert(new Event("a", i));
+			}
+			evictor.start(1, TimeUnit.MILLISECONDS);
+
+			long deadline = System.currentTimeMillis() + 5000;
+			while (store.length() > 10 && System.currentTimeMillis() < deadline) {
+				Thread.sleep(1);
+			}
+			Assert.assertEquals(10, store.length());
+		}
+	}
+
+	@Test
+	public void zeroLimitsTest() {
+		BucketedEventStore store = new BucketedEventStore(10, 4);
+		for (int i = 0; i < 100; i++) {
+			store.insert(new Event("a", i));
+			store.insert(new Event("b", i));
+		}
+
+		new RetentionEvictor(store, new RetentionPolicy(RetentionPolicy.UNLIMITED, RetentionPolicy.UNLIMITED)
+				.withMaxAge("a", 0), () -> 100L).run();
+		Assert.assertEquals(100, store.length());
+		Assert.assertEquals(0, store.count("a", Long.MIN_VALUE, Long.MAX_VALUE));
+
+		new RetentionEvictor(store, new RetentionPolicy(Long.MAX_VALUE - 1, 0), () -> -100L).run();
+		Assert.assertEquals(0, store.length());
+	}
+
+	@Test
+	public void sortedStoreMaxAgeTest() {
+		ConcurrentSortedEventStore store = new ConcurrentSortedEventStore(10, 0);
+		AtomicLong now = new AtomicLong(100);
+		RetentionPolicy policy = new RetentionPolicy(50, RetentionPolicy.UNLIMITED).withMaxAge("b", 10);
+		RetentionEvictor evictor = new RetentionEvictor(store, policy, now::get);
+
+		for (int i = 0; i < 100; i++) {
+			store.insert(new Event("a", i));
+			store.insert(new Event("b", i));
+		}
+		// half of each type is sealed, so both tiers are evicted.
+		store.seal(50);
+
+		evictor.run();
+
+		Assert.assertEquals(50L, first(store, "a"));
+		Assert.assertEquals(90L, first(store, "b"));
+		Assert.assertEquals(50 + 10, store.length());
+		Assert.assertEquals(0, store.coldEventCount());
+		Assert.assertEquals(50 + 90, evictor.evictedEvents());
+		Assert.assertTrue(evictor.reclaimedBytes() > 0);
+
+		now.set(200);
+		evictor.run();
+
+		Assert.assertEquals(0, store.length());
+		Assert.assertEquals(200, evictor.evictedEvents());
+	}
+
+	@Test
+	public void sortedStoreMaxCountTest() {
+		ConcurrentSortedEventStore store = new ConcurrentSortedEventStore(10, 0);
+		RetentionEvictor evictor = new RetentionEvictor(store, new RetentionPolicy(RetentionPolicy.UNLIMITED, 25),
+				() -> 0L);
+
+		for (int i = 0; i < 100; i++) {
+			store.insert(new Event("a", i));
+		}
+		store.insert(new Event("b", 0));
+		store.seal(60);
+
+		evictor.run();
+
+		Assert.assertEquals(26, store.length());
+		Assert.assertEquals(75, evictor.evictedEvents());
+		Assert.assertEquals(75L, first(store, "a"));
+		Assert.assertEquals(0L, first(store, "b"));
+		Assert.assertEquals(1, store.coldEventCount());
+	}
+
+	@Test
+	public void failedRunTest() {
+		BucketedEventStore store = new BucketedEventStore(10);
+		AtomicLong now = new AtomicLong(-1);
+		RetentionEvictor evictor = new RetentionEvictor(store, new RetentionPolicy(10, RetentionPolicy.UNLIMITED),
+				() -> {
+					if (now.get() < 0) {
+						throw new IllegalStateException("No clock");
+					}
+					return now.get();
+				});
+		for (int i = 0; i < 100; i++) {
+			store.insert(new Event("a", i));
+		}
+
+		evictor.run();
+		Assert.assertEquals(1, evictor.failures());
+		Assert.assertEquals(0, evictor.runs());
+
+		now.set(100);
+		evictor.run();
+		Assert.assertEquals(1, evictor.runs());
+		Assert.assertEquals(10, store.length());
+	}
+
+	@Test
+	public void startWithBadPeriodTest() {
+		try (RetentionEvictor evictor = new RetentionEvictor(new BucketedEventStore(10),
+				new RetentionPolicy(10, RetentionPolicy.UNLIMITED))) {
+			try {
+				evictor.start(0, TimeUnit.MILLISECONDS);
+				Assert.fail();
+			} catch (IllegalArgumentException e) {
+				// the evictor can still be started.
+			}
+			evictor.start(1, TimeUnit.SECONDS);
+		}
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void negativeAgeTest() {
+		new RetentionPolicy(-1, 0);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void negativeTypeAgeTest() {
+		new RetentionPolicy(10, 0).withMaxAge("a", -1);
+	}
+
+	private static long first(EventStore store, String type) {
+		EventIterator it = store.query(type, Long.MIN_VALUE, Long.MAX_VALUE);
+		Assert.assertTrue(it.moveNext());
+		return it.current().timestamp();
+	}
+}
@@ -0,0 +1,123 @@
+package net.intelie.challenges.concurrent;
+
+import java.util.Random;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import net.intelie.challenges.Event;
+import net.intelie.challenges.EventIterator;
+
+public class SkipListEventStoreTest {
+
+	@Test
+	public void queryIsSortedAndHalfOpenTest() {
+		SkipListEventStore store = new SkipListEventStore();
+
+		store.insert(new Event("a", 5));
+		store.insert(new Event("a", 1));
+		store.insert(new Event("b", 2));
+		store.insert(new Event("a", 3));
+		store.insert(new Event("a", 10));
+
+		EventIterator it = store.query("a", 1L, 10L);
+
+		Assert.assertTrue(it.moveNext());
+		Assert.assertEquals(1L, it.current().timestamp());
+		Assert.assertTrue(it.moveNext());
+		Assert.assertEquals(3L, it.current().timestamp());
+		Assert.assertTrue(it.moveNext());
+		Assert.assertEquals(5L, it.current().timestamp());
+		Assert.assertFalse(it.moveNext());
+	}
+
+	@Test
+	public void duplicateTimestampsAreKeptTest() {
+		SkipListEventStore store = new SkipListEventStore();
+
+		Event first = new Event("a", 7);
+		Event second = new Event("a", 7);
+		store.insert(first);
+		store.insert(second);
+
+		EventIterator it = store.query("a", 7L, 8L);
+
+		Assert.assertEquals(2, store.length());
+		Assert.assertTrue(it.moveNext());
+		Assert.assertSame(first, it.current());
+		Assert.assertTrue(it.moveNext());
+		Assert.assertSame(second, it.current());
+		Assert.assertFalse(it.moveNext());
+	}
+
+	@Test(expected = IllegalStateException.class)
+	public void currentBeforeMoveNextTest() {
+		SkipListEventStore store = new SkipListEventStore();
+		store.insert(new Event("a", 1));
+
+		store.query("a", 0L, 10L).current();
+	}
+
+	@Test
+	public void iteratorRemoveTest() {
+		SkipListEventStore store = new SkipListEventStore();
+
+		store.insert(new Event("a", 1));
+		store.insert(new Event("b", 1));
+		store.insert(new Event("a", 2));
+
+		EventIterator it = store.query("a", 0L, 10L);
+		while (it.moveNext()) {
+			it.remove();
+		}
+
+		Assert.assertEquals(1, store.length());
+		Assert.assertFalse(store.query("a", 0L, 10L).moveNext());
+		Assert.assertTrue(store.query("b", 0L, 10L).moveNext());
+	}
+
+	@Test(expected = IllegalStateException.class)
+	public void iteratorRemoveBeforeMoveNextTest() {
+		SkipListEventStore store = new SkipListEventStore();
+		store.insert(new Event("a", 1));
+
+		store.query("a", 0L, 10L).remove();
+	}
+
+	@Test
+	public void concurrentInsertAndRemoveAllTest() throws InterruptedException {
+		SkipListEventStore store = new SkipListEventStore();
+
+		Thread[] threads = new Thread[5];
+		for (int i = 0; i < threads.length; i++) {
+			final String type = i < 3 ? "teste" : "delete";
+			threads[i] = new Thread(() -> {
+				Random random = new Random();
+				for (int j = 0; j < 5000; j++) {
+					store.insert(new Event(type, random.nextInt(2000000)));
+				}
+			});
+			threads[i].start();
+		}
+		for (Thread t : threads) {
+			t.join();
+		}
+
+		Assert.assertEquals(25000, store.length());
+
+		store.removeAll("delete");
+
+		Assert.assertEquals(15000, store.length());
+		Assert.assertFalse(store.query("delete", 0L, 2000000L).moveNext());
+
+		EventIterator it = store.query("teste", 0L, 2000000L);
+		long prev = Long.MIN_VALUE;
+		int count = 0;
+		while (it.moveNext()) {
+			Assert.assertTrue(prev <= it.current().timestamp());
+			prev = it.current().timestamp();
+			++count;
+		}
+		Assert.assertEquals(15000, count);
+	}
+}
@@ -0,0 +1,324 @@
+package net.intelie.challenges.concurrent;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import net.intelie.challenges.Event;
+import net.intelie.challenges.EventFilter;
+import net.intelie.challenges.EventIterator;
+import net.intelie.challenges.Payload;
+
+public class SnapshotReadTest {
+
+	@Test
+	public void queryIsSnapshotTest() {
+		ConcurrentSortedEventStore store = new ConcurrentSortedEventStore(10, 0);
+		for (int i = 0; i < 100; i++) {
+			store.insert(new Event(i % 2 == 0 ? "a" : "b", i));
+		}
+
+		EventIterator all = store.queryAll(0, 100);
+		EventIterator a = store.query(Collections.singleton("a"), 0, 100);
+		Assert.assertTrue(all.moveNext());
+
+		store.insert(new Event("a", 50));
+		store.insertAll(Arrays.asList(new Event("a", -1), new Event("b", 99)));
+		store.removeAll("b");
+		EventIterator removing = store.query(Collections.singleton("a"), 0, 50);
+		while (removing.moveNext()) {
+			removing.remove();
+		}
+
+		Assert.assertEquals(range(1, 100, 1), timestamps(all));
+		Assert.assertEquals(range(0, 100, 2), timestamps(a));
+		List<Long> now = range(50, 100, 2);
+		now.add(1, 50L);
+		Assert.assertEquals(now, timestamps(store.queryAll(0, 100)));
+		Assert.assertEquals(27, store.length());
+	}
+
+	@Test
+	public void removedNodesStayLinkedWhilePinnedTest() throws Exception {
+		ConcurrentSortedEventStore store = new ConcurrentSortedEventStore(10, 0);
+		for (int i = 0; i < 100; i++) {
+			store.insert(new Event("a", i));
+		}
+
+		EventIterator open = store.queryAll(0, 100);
+		Assert.assertTrue(open.moveNext());
+		store.removeAll("a");
+		Assert.assertEquals(0, store.length());
+		Assert.assertEquals(0, store.count("a", 0, 100));
+		Assert.assertEquals(100, chainSize(store));
+
+		open.close();
+		Assert.assertEquals(0, chainSize(store));
+		Assert.assertEquals(0, store.versions.pinned());
+
+		// exhausting an iterator releases it as well.
+		store.insert(new Event("a", 1));
+		EventIterator exhausted = store.queryAll(0, 100);
+		store.removeAll("a");
+		Assert.assertEquals(1, chainSize(store));
+		Assert.assertTrue(exhausted.moveNext());
+		Assert.assertFalse(exhausted.moveNext());
+		Assert.assertEquals(0, chainSize(store));
+	}
+
+	@Test
+	public void abandonedQueryIsReleasedTest() throws InterruptedException {
+		ConcurrentSortedEventStore store = new ConcurrentSortedEventStore(10, 0);
+		for (int i = 0; i < 100; i++) {
+			store.insert(new Event("a", i));
+		}
+
+		store.queryAll(0, 100).moveNext();
+		store.removeAll("a");
+		Assert.assertEquals(100, chainSize(store));
+
+		for (int i = 0; i < 100 && store.versions.pinned() > 0; i++) {
+			System.gc();
+			Thread.sleep(10);
+			store.versions.oldest();
+		}
+		Assert.assertEquals(0, store.versions.pinned());
+
+		// the next removal reclaims what the abandoned query held.
+		store.insert(new Event("a", 1));
+		store.removeAll("a");
+		Assert.assertEquals(0, chainSize(store));
+	}
+
+	@Test
+	public void indexedQueryIsSnapshotTest() {
+		ConcurrentSortedEventStore store = new ConcurrentSortedEventStore(10, 0);
+		store.createIndex("a", "host", 10);
+		for (int i = 0; i < 100; i++) {
+			store.insert(new Event("a", i, Payload.builder().put("host", "h" + (i % 2)).build()));
+		}
+
+		EventIterator it = store.query(Collections.singleton("a"), 0, 100, EventFilter.equalTo("host", "h0"));
+		store.removeAll("a");
+		store.insert(new Event("a", 7, Payload.builder().put("host", "h0").build()));
+
+		Assert.assertEquals(range(0, 100, 2), timestamps(it));
+		Assert.assertEquals(Collections.singletonList(7L), timestamps(
+				store.query(Collections.singleton("a"), 0, 100, EventFilter.equalTo("host", "h0"))));
+	}
+
+	@Test
+	public void sealDuringQueryTest() {
+		ConcurrentSortedEventStore store = new ConcurrentSortedEventStore(10, 0);
+		for (int i = 0; i < 10000; i++) {
+			store.insert(new Event("a", i));
+		}
+
+		EventIterator it = store.queryAll(0, 10000);
+		List<Long> timestamps = new ArrayList<Long>();
+		for (int i = 0; i < 5000 && it.moveNext(); i++) {
+			timestamps.add(it.current().timestamp());
+		}
+		store.seal(8000);
+		while (it.moveNext()) {
+			timestamps.add(it.current().timestamp());
+		}
+
+		// every event once, from the chain of the version pinned.
+		Assert.assertEquals(range(0, 10000, 1), timestamps);
+		Assert.assertEquals(range(0, 10000, 1), timestamps(store.queryAll(0, 10000)));
+		Assert.assertEquals(2000, chainSize(store));
+	}
+
+	@Test
+	public void batchesAreAtomicTest() throws Exception {
+		ConcurrentSortedEventStore store = new ConcurrentSortedEventStore(100, 0);
+		AtomicBoolean done = new AtomicBoolean();
+		AtomicReference<String> failure = new AtomicReference<String>();
+
+		Thread reader = new Thread(() -> {
+			while (!done.get()) {
+				long count = store.count("a", 0, Long.MAX_VALUE);
+				int size = timestamps(store.queryAll(0, Long.MAX_VALUE)).size();
+				if (count % 100 != 0 || size % 100 != 0) {
+					failure.set("count " + count + ", size " + size);
+				}
+			}
+		});
+		reader.start();
+
+		for (int batch = 0; batch < 200; batch++) {
+			List<Event> events = new ArrayList<Event>();
+			for (int i = 0; i < 100; i++) {
+				// interleaved with the events already stored.
+				events.add(new Event("a", i * 1000L + batch));
+			}
+			store.insertAll(events);
+			if (batch % 20 == 19) {
+				store.seal(50_000L);
+			}
+		}
+		done.set(true);
+		reader.join();
+
+		Assert.assertNull(failure.get());
+		Assert.assertEquals(20000, store.length());
+		Assert.assertEquals(20000, store.count("a", 0, Long.MAX_VALUE));
+	}
+
+	@Test
+	public void spanCountsFollowWritersTest() throws Exception {
+		ConcurrentSortedEventStore store = new ConcurrentSortedEventStore(100, 0);
+		AtomicReference<String> failure = new AtomicReference<String>();
+
+		Thread[] writers = new Thread[2];
+		for (int w = 0; w < writers.length; w++) {
+			Random random = new Random(w);
+			writers[w] = new Thread(() -> {
+				for (int batch = 0; batch < 100; batch++) {
+					List<Event> events = new ArrayList<Event>();
+					for (int i = 0; i < 100; i++) {
+						// spread over the chain, so checkpoints are added and moved.
+						events.add(new Event("a", random.nextInt(1000000)));
+						events.add(new Event("b", random.nextInt(1000000)));
+					}
+					store.insertAll(events);
+					if (batch % 10 == 9) {
+						store.removeAll("b");
+					}
+				}
+			});
+			writers[w].start();
+		}
+
+		long previous = 0;
+		while (writers[0].isAlive() || writers[1].isAlive()) {
+			long count = store.count("a", 0, Long.MAX_VALUE);
+			if (count % 100 != 0 || count < previous) {
+				failure.compareAndSet(null, "counted " + count + " after " + previous);
+			}
+			previous = count;
+		}
+		for (Thread writer : writers) {
+			writer.join();
+		}
+
+		Assert.assertNull(failure.get());
+		Assert.assertEquals(20000, store.count("a", 0, Long.MAX_VALUE));
+		for (long start = 0; start < 1000000; start += 99999) {
+			long count = 0;
+			for (EventIterator it = store.query("a", start, start + 250000); it.moveNext();) {
+				count++;
+			}
+			Assert.assertEquals(count, store.count("a", start, start + 250000));
+		}
+	}
+
+	@Test
+	public void readersSeeEveryOlderWriteTest() throws Exception {
+		ConcurrentSortedEventStore store = new ConcurrentSortedEventStore(100, 0);
+		AtomicReference<String> failure = new AtomicReference<String>();
+
+		Thread[] writers = new Thread[4];
+		for (int w = 0; w < writers.length; w++) {
+			Random random = new Random(w);
+			writers[w] = new Thread(() -> {
+				for (int i = 0; i < 10000; i++) {
+					// appended, inserted in the middle and prepended.
+					store.insert(new Event("a", i % 4 == 0 ? random.nextInt(100000) - 50000 : i * 10L));
+				}
+			});
+			writers[w].start();
+		}
+
+		// only inserts of one node each run, so the versions seen must be 1 to the one pinned.
+		TypeFilter filter = new TypeFilter(store.registry, Collections.singleton("a"));
+		while (writers[0].isAlive() || writers[writers.length - 1].isAlive()) {
+			Versions.Pin pin = store.versions.pin(null);
+			try {
+				long[] seen = new long[2];
+				store.walk(pin.version, filter, Long.MIN_VALUE, Long.MAX_VALUE, true, node -> {
+					seen[0]++;
+					seen[1] = Math.max(seen[1], node.linkedAt);
+					return true;
+				});
+				if (seen[0] != pin.version || seen[1] != pin.version) {
+					failure.compareAndSet(null,
+							"pinned " + pin.version + ", saw " + seen[0] + " up to version " + seen[1]);
+				}
+			} finally {
+				pin.release();
+			}
+		}
+		for (Thread writer : writers) {
+			writer.join();
+		}
+
+		Assert.assertNull(failure.get());
+		Assert.assertEquals(40000, store.length());
+	}
+
+	@Test
+	public void prependWhileRemovingHeadTest() throws Exception {
+		ConcurrentSortedEventStore store = new ConcurrentSortedEventStore(100, 0);
+		for (int i = 0; i < 1000; i++) {
+			store.insert(new Event("b", 1000000 + i));
+		}
+		Thread writer = new Thread(() -> {
+			for (int i = 0; i < 20000; i++) {
+				// every insert becomes the head of the chain.
+				store.insert(new Event("a", 1000000 - i));
+			}
+		});
+		writer.start();
+		int removed = 0;
+		while (writer.isAlive()) {
+			EventIterator it = store.query(Collections.singleton("a"), Long.MIN_VALUE, Long.MAX_VALUE);
+			if (it.moveNext()) {
+				it.remove();
+				removed++;
+			}
+			it.close();
+		}
+		writer.join();
+
+		Assert.assertEquals(21000 - removed, store.length());
+		Assert.assertEquals(21000 - removed, chainSize(store));
+		Assert.assertTrue(store.checkPoint.first().isValid);
+		Assert.assertEquals(21000 - removed, store.seal(Long.MAX_VALUE));
+		Assert.assertEquals(20000 - removed, store.count("a", Long.MIN_VALUE, Long.MAX_VALUE));
+	}
+
+	private static int chainSize(ConcurrentSortedEventStore store) {
+		int size = 0;
+		for (ConcurrentEventIterator node = store.checkPoint.first(); node != null; node = node.next) {
+			if (node.value != null) {
+				size++;
+			}
+		}
+		return size;
+	}
+
+	private static List<Long> range(long from, long to, long step) {
+		List<Long> range = new ArrayList<Long>();
+		for (long i = from; i < to; i += step) {
+			range.add(i);
+		}
+		return range;
+	}
+
+	private static List<Long> timestamps(EventIterator it) {
+		List<Long> timestamps = new ArrayList<Long>();
+		while (it.moveNext()) {
+			timestamps.add(it.current().timestamp());
+		}
+		return timestamps;
+	}
+}
@@ -0,0 +1,164 @@
+package net.intelie.challenges.concurrent;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import net.intelie.challenges.Event;
+import net.intelie.challenges.EventIterator;
+
+public class StoreMetricsTest {
+
+	@Test
+	public void recordingTest() {
+		RecordingStoreMetrics metrics = new RecordingStoreMetrics();
+		ConcurrentSortedEventStore store = new ConcurrentSortedEventStore(10, 0, metrics);
+
+		for (int i = 0; i < 100; i++) {
+			store.insert(new Event("a", i));
+		}
+		// out of order, so it walks the chain.
+		store.insert(new Event("b", 55));
+
+		Assert.assertEquals(101, metrics.insertLatency().count());
+		Assert.assertEquals(101, metrics.insertNodes().count());
+		Assert.assertTrue(metrics.insertNodes().percentile(1d) >= 5);
+		Assert.assertEquals(store.checkPointCount() - 1, metrics.checkPointsAdded());
+		Assert.assertTrue(store.checkPointCount() > 1);
+
+		EventIterator it = store.query("b", 0, 100);
+		Assert.assertTrue(it.moveNext());
+		Assert.assertEquals(55, it.current().timestamp());
+		Assert.assertEquals(1, metrics.queryLatency().count());
+		Assert.assertTrue(metrics.queryNodes().sum() > 1);
+		Assert.assertFalse(it.moveNext());
+		Assert.assertEquals(1, metrics.queryLatency().count());
+
+		Assert.assertEquals(100, store.count("a", 0, 100));
+		Assert.assertEquals(2, metrics.queryLatency().count());
+
+		store.removeAll("a");
+		Assert.assertEquals(1, metrics.removeAllLatency().count());
+		Assert.assertEquals(101, metrics.removeAllNodes().sum());
+		Assert.assertTrue(metrics.checkPointsMoved() > 0);
+		Assert.assertEquals(1, store.length());
+	}
+
+	@Test
+	public void insertAllTest() {
+		RecordingStoreMetrics metrics = new RecordingStoreMetrics();
+		ConcurrentSortedEventStore store = new ConcurrentSortedEventStore(10, 0, metrics);
+		store.insert(new Event("a", 0));
+		List<Event> batch = new ArrayList<Event>();
+		for (int i = 1; i <= 50; i++) {
+			batch.add(new Event("a", i));
+		}
+		store.insertAll(batch);
+
+		// the batch is not a sample of the single insert latencies.
+		Assert.assertEquals(1, metrics.insertLatency().count());
+		Assert.assertEquals(1, metrics.insertAllLatency().count());
+		Assert.assertEquals(1, metrics.insertAllNodes().count());
+		Assert.assertEquals(50, metrics.insertedAllEvents());
+		Assert.assertEquals(51, store.length());
+	}
+
+	@Test
+	public void concurrentTest() throws Exception {
+		RecordingStoreMetrics metrics = new RecordingStoreMetrics();
+		ConcurrentSortedEventStore store = new ConcurrentSortedEventStore(100, 0, metrics);
+		ExecutorService executor = Executors.newFixedThreadPool(4);
+		try {
+			List<Future<?>> futures = new ArrayList<Future<?>>();
+			for (int t = 0; t < 4; t++) {
+				int offset = t;
+				futures.add(executor.submit(() -> {
+					for (int i = 0; i < 2000; i++) {
+						store.insert(new Event("t" + offset, (i * 7919L + offset) % 5000));
+					}
+				}));
+			}
+			for (Future<?> future : futures) {
+				future.get();
+			}
+		} finally {
+			executor.shutdown();
+		}
+
+		Assert.assertEquals(8000, store.length());
+		Assert.assertEquals(8000, metrics.insertLatency().count());
+	}
+
+	@Test
+	public void lockWaitTest() throws Exception {
+		RecordingStoreMetrics metrics = new RecordingStoreMetrics();
+		ConcurrentSortedEventStore store = new ConcurrentSortedEventStore(10, 0, metrics);
+		store.insert(new Event("a", 1));
+
+		// the only node is the tail, which an append locks.
+		ConcurrentEventIterator tail = store.checkPoint.first();
+		Thread writer = new Thread(() -> store.insert(new Event("a", 2)));
+		tail.lock.lock();
+		try {
+			writer.start();
+			while (!tail.lock.hasQueuedThreads()) {
+				Thread.sleep(1);
+			}
+		} finally {
+			tail.lock.unlock();
+		}
+		writer.join();
+
+		Assert.assertEquals(1, metrics.lockWait().count());
+		Assert.assertTrue(metrics.lockWait().sum() > 0);
+		Assert.assertEquals(2, store.length());
+	}
+
+	@Test
+	public void checkPointsAddedTest() {
+		RecordingStoreMetrics metrics = new RecordingStoreMetrics();
+		ConcurrentSortedEventStore store = new ConcurrentSortedEventStore(2, 0, metrics);
+		// every event shares a timestamp, so a single checkpoint can hold it.
+		for (int i = 0; i < 20; i++) {
+			store.insert(new Event("a", 7));
+		}
+
+		Assert.assertEquals(store.checkPointCount() - 1, metrics.checkPointsAdded());
+	}
+
+	@Test
+	public void disabledTest() {
+		ConcurrentSortedEventStore store = new ConcurrentSortedEventStore(10, 0, StoreMetrics.NONE);
+		store.insert(new Event("a", 1));
+		Assert.assertEquals(1, store.length());
+		Assert.assertEquals(1, store.checkPointCount());
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void nullMetricsTest() {
+		new ConcurrentSortedEventStore(10, 0, null);
+	}
+
+	@Test
+	public void histogramTest() {
+		LatencyHistogram histogram = new LatencyHistogram();
+		Assert.assertEquals(0, histogram.percentile(0.99));
+
+		for (int i = 1; i <= 100; i++) {
+			histogram.record(i);
+		}
+
+		Assert.assertEquals(100, histogram.count());
+		Assert.assertEquals(5050, histogram.sum());
+		Assert.assertEquals(50.5, histogram.mean(), 0.001);
+		// 50 lies in the bucket from 32 to 63, 99 in the bucket from 64 to 127.
+		Assert.assertEquals(63, histogram.percentile(0.5));
+		Assert.assertEquals(127, histogram.percentile(0.99));
+		Assert.assertEquals(1, histogram.percentile(0d));
+	}
+}
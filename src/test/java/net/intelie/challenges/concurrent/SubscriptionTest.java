@@ -0,0 +1,173 @@
+package net.intelie.challenges.concurrent;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import net.intelie.challenges.Event;
+
+public class SubscriptionTest {
+
+	@Test
+	public void liveTest() {
+		ConcurrentSortedEventStore store = new ConcurrentSortedEventStore(10, 0);
+		List<Event> received = new ArrayList<Event>();
+		Subscription subscription = store.subscribe("a", 0, 100, false, 16, Runnable::run, received::add);
+
+		Event event = new Event("a", 5);
+		store.insert(new Event("a", 1000));
+		store.insert(new Event("b", 5));
+		store.insert(event);
+		store.insertAll(Collections.singletonList(new Event("a", 99)));
+
+		Assert.assertEquals(2, received.size());
+		Assert.assertSame(event, received.get(0));
+		Assert.assertEquals(99, received.get(1).timestamp());
+		Assert.assertEquals(2, subscription.delivered());
+
+		subscription.close();
+		store.insert(new Event("a", 6));
+		Assert.assertEquals(2, received.size());
+		Assert.assertFalse(subscription.isActive());
+	}
+
+	@Test
+	public void replayTest() {
+		ConcurrentSortedEventStore store = new ConcurrentSortedEventStore(3, 0);
+		for (int i = 10; i > 0; i--) {
+			store.insert(new Event("a", i));
+		}
+		List<Long> received = new ArrayList<Long>();
+		store.subscribe("a", 2, 100, true, 16, Runnable::run, event -> received.add(event.timestamp()));
+		store.insert(new Event("a", 1));
+		store.insert(new Event("a", 11));
+
+		// history in timestamp order, then the live events.
+		Assert.assertEquals(Arrays.asList(2L, 3L, 4L, 5L, 6L, 7L, 8L, 9L, 10L, 11L), received);
+	}
+
+	@Test
+	public void replayWhileInsertingTest() throws Exception {
+		ConcurrentSortedEventStore store = new ConcurrentSortedEventStore(100, 0);
+		for (int i = 0; i < 5000; i++) {
+			store.insert(new Event("a", i * 2));
+		}
+
+		ExecutorService executor = Executors.newSingleThreadExecutor();
+		Set<Event> received = Collections.newSetFromMap(new IdentityHashMap<Event, Boolean>());
+		List<Event> all = Collections.synchronizedList(new ArrayList<Event>());
+		Thread inserter = new Thread(() -> {
+			for (int i = 0; i < 5000; i++) {
+				store.insert(new Event("a", i * 2 + 1));
+			}
+		});
+		inserter.start();
+		Subscription subscription = store.subscribe("a", Long.MIN_VALUE, Long.MAX_VALUE, true, 20000, executor,
+				event -> {
+					all.add(event);
+					received.add(event);
+				});
+		inserter.join();
+
+		long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+		while (System.nanoTime() < deadline && all.size() < 10000) {
+			Thread.sleep(10);
+		}
+		executor.shutdown();
+
+		// every event once, unless its insert overlapped the subscribe call.
+		Assert.assertEquals(all.size(), received.size());
+		Assert.assertTrue(all.size() >= 9999);
+		Assert.assertEquals(0, subscription.dropped());
+	}
+
+	@Test
+	public void overflowTest() {
+		ConcurrentSortedEventStore store = new ConcurrentSortedEventStore(10, 0);
+		List<Runnable> pending = new ArrayList<Runnable>();
+		List<Event> received = new ArrayList<Event>();
+		Subscription subscription = store.subscribe("a", 0, 100, false, 2, pending::add, received::add);
+
+		for (int i = 0; i < 5; i++) {
+			store.insert(new Event("a", i));
+		}
+
+		// the inserts never waited for the delivery.
+		Assert.assertEquals(1, pending.size());
+		Assert.assertEquals(3, subscription.dropped());
+
+		pending.get(0).run();
+		Assert.assertEquals(2, received.size());
+		Assert.assertEquals(5, store.length());
+	}
+
+	@Test
+	public void failingListenerTest() {
+		ConcurrentSortedEventStore store = new ConcurrentSortedEventStore(10, 0);
+		Subscription subscription = store.subscribe("a", 0, 100, false, 2, Runnable::run, event -> {
+			throw new IllegalStateException("boom");
+		});
+
+		store.insert(new Event("a", 1));
+		store.insert(new Event("a", 2));
+
+		Assert.assertFalse(subscription.isActive());
+		Assert.assertEquals("boom", subscription.failure().getMessage());
+		Assert.assertEquals(2, store.length());
+	}
+
+	@Test
+	public void rejectingExecutorTest() {
+		ConcurrentSortedEventStore store = new ConcurrentSortedEventStore(10, 0);
+		Subscription rejected = store.subscribe("a", 0, 100, false, 2, task -> {
+			throw new RejectedExecutionException();
+		}, event -> Assert.fail());
+		List<Event> received = new ArrayList<Event>();
+		Subscription healthy = store.subscribe("a", 0, 100, false, 2, Runnable::run, received::add);
+
+		// the insert goes on, and only the subscription rejected fails.
+		store.insert(new Event("a", 1));
+		store.insert(new Event("a", 2));
+
+		Assert.assertEquals(2, store.length());
+		Assert.assertFalse(rejected.isActive());
+		Assert.assertTrue(rejected.failure() instanceof RejectedExecutionException);
+		Assert.assertTrue(healthy.isActive());
+		Assert.assertEquals(2, received.size());
+	}
+
+	@Test
+	public void droppedDuringReplayTest() {
+		ConcurrentSortedEventStore store = new ConcurrentSortedEventStore(10, 0);
+		List<Runnable> pending = new ArrayList<Runnable>();
+		List<Long> received = new ArrayList<Long>();
+		Subscription subscription = store.subscribe("a", 0, 100, true, 2, pending::add,
+				event -> received.add(event.timestamp()));
+
+		// inserted before the replay runs: two are buffered, three dropped.
+		for (int i = 0; i < 5; i++) {
+			store.insert(new Event("a", i));
+		}
+		Assert.assertEquals(3, subscription.dropped());
+		pending.get(0).run();
+
+		// the replay finds the dropped ones, and skips those buffered.
+		Collections.sort(received);
+		Assert.assertEquals(Arrays.asList(0L, 1L, 2L, 3L, 4L), received);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void nullListenerTest() {
+		new ConcurrentSortedEventStore().subscribe("a", 0, 100, false, null);
+	}
+}
@@ -0,0 +1,128 @@
+package net.intelie.challenges.concurrent;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class VersionsTest {
+
+	@Test
+	public void commitsInOrderTest() {
+		Versions versions = new Versions(() -> {
+		});
+		long first = versions.begin();
+		long second = versions.begin();
+		long third = versions.begin();
+
+		versions.commit(third);
+		versions.commit(second);
+		Assert.assertEquals(0L, version(versions));
+
+		versions.commit(first);
+		Assert.assertEquals(third, version(versions));
+		Assert.assertEquals(third, versions.oldest());
+	}
+
+	@Test
+	public void manyInFlightTest() {
+		Versions versions = new Versions(() -> {
+		});
+		List<Long> begun = new ArrayList<Long>();
+		for (int i = 0; i < 10000; i++) {
+			begun.add(versions.begin());
+		}
+		Long first = begun.remove(0);
+		// far more changes in flight than commit flags.
+		Collections.shuffle(begun, new Random(3));
+		for (long version : begun) {
+			versions.commit(version);
+		}
+		Assert.assertEquals(0L, version(versions));
+
+		versions.commit(first);
+		Assert.assertEquals(10000L, version(versions));
+		versions.commit(versions.begin());
+		Assert.assertEquals(10001L, version(versions));
+	}
+
+	@Test
+	public void pinsHoldTheOldestTest() {
+		Versions versions = new Versions(() -> {
+		});
+		versions.commit(versions.begin());
+		Versions.Pin old = versions.pin(null);
+		List<Versions.Pin> pins = new ArrayList<Versions.Pin>();
+		for (int i = 0; i < 200; i++) {
+			versions.commit(versions.begin());
+			// more readers than slots of a segment.
+			pins.add(versions.pin(null));
+		}
+		Assert.assertEquals(201, versions.pinned());
+		Assert.assertEquals(1L, versions.oldest());
+
+		old.release();
+		old.release();
+		Assert.assertEquals(2L, versions.oldest());
+		for (Versions.Pin pin : pins) {
+			pin.release();
+		}
+		Assert.assertEquals(0, versions.pinned());
+		Assert.assertEquals(201L, versions.oldest());
+	}
+
+	@Test
+	public void concurrentCommitsTest() throws InterruptedException {
+		Versions versions = new Versions(() -> {
+		});
+		int perWriter = 20000;
+		Thread[] writers = new Thread[4];
+		AtomicIntegerArray committed = new AtomicIntegerArray(writers.length * perWriter + 1);
+		for (int w = 0; w < writers.length; w++) {
+			writers[w] = new Thread(() -> {
+				for (int i = 0; i < perWriter; i++) {
+					long version = versions.begin();
+					committed.set((int) version, 1);
+					versions.commit(version);
+				}
+			});
+			writers[w].start();
+		}
+
+		AtomicReference<String> failure = new AtomicReference<String>();
+		long last = 0L;
+		while (last < writers.length * perWriter) {
+			Versions.Pin pin = versions.pin(null);
+			if (pin.version < last) {
+				failure.compareAndSet(null, "went back from " + last + " to " + pin.version);
+			}
+			for (long v = last + 1; v <= pin.version; v++) {
+				if (committed.get((int) v) == 0) {
+					failure.compareAndSet(null, "saw " + v + " before its commit");
+				}
+			}
+			if (versions.oldest() > pin.version) {
+				failure.compareAndSet(null, "reclaimed past " + pin.version);
+			}
+			last = pin.version;
+			pin.release();
+		}
+		for (Thread writer : writers) {
+			writer.join();
+		}
+
+		Assert.assertNull(failure.get());
+		Assert.assertEquals(0, versions.pinned());
+	}
+
+	private static long version(Versions versions) {
+		Versions.Pin pin = versions.pin(null);
+		pin.release();
+		return pin.version;
+	}
+}
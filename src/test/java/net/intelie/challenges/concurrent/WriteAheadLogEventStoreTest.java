@@ -0,0 +1,257 @@
+package net.intelie.challenges.concurrent;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import net.intelie.challenges.Event;
+import net.intelie.challenges.EventIterator;
+import net.intelie.challenges.Payload;
+
+public class WriteAheadLogEventStoreTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void recoveryTest() throws IOException {
+		Path directory = folder.getRoot().toPath();
+
+		try (WriteAheadLogEventStore store = open(directory)) {
+			for (int i = 0; i < 100; i++) {
+				store.insert(new Event(i % 2 == 0 ? "a" : "b", i));
+			}
+			List<Event> batch = new ArrayList<Event>();
+			for (int i = 100; i < 200; i++) {
+				batch.add(new Event("c", i));
+			}
+			store.insertAll(batch);
+			store.removeAll("b");
+
+			EventIterator it = store.query("a", 10L, 12L);
+			Assert.assertTrue(it.moveNext());
+			it.remove();
+		}
+		Assert.assertTrue(segments(directory).size() > 1);
+
+		try (WriteAheadLogEventStore store = open(directory)) {
+			Assert.assertEquals(49, count(store, "a"));
+			Assert.assertEquals(0, count(store, "b"));
+			Assert.assertEquals(100, count(store, "c"));
+			Assert.assertFalse(store.query("a", 10L, 11L).moveNext());
+
+			store.insert(new Event("b", 1));
+		}
+
+		try (WriteAheadLogEventStore store = open(directory)) {
+			Assert.assertEquals(1, count(store, "b"));
+		}
+	}
+
+	@Test
+	public void tornTailTest() throws IOException {
+		Path directory = folder.getRoot().toPath();
+
+		try (WriteAheadLogEventStore store = open(directory)) {
+			store.insert(new Event("a", 1));
+			store.insert(new Event("a", 2));
+		}
+
+		// corrupts the timestamp of the second record.
+		Path segment = segments(directory).get(0);
+		int record = WriteAheadLog.encode(WriteAheadLog.INSERT, "a", 0).length;
+		try (RandomAccessFile file = new RandomAccessFile(segment.toFile(), "rw")) {
+			file.seek(2 * record - 1);
+			file.write(0x7f);
+		}
+
+		try (WriteAheadLogEventStore store = open(directory)) {
+			Assert.assertEquals(1, count(store, "a"));
+			store.insert(new Event("a", 3));
+		}
+
+		try (WriteAheadLogEventStore store = open(directory)) {
+			Assert.assertEquals(2, count(store, "a"));
+		}
+	}
+
+	@Test
+	public void groupCommitTest() throws Exception {
+		Path directory = folder.getRoot().toPath();
+
+		try (WriteAheadLogEventStore store = new WriteAheadLogEventStore(directory)) {
+			List<Thread> threads = new ArrayList<Thread>();
+			for (int t = 0; t < 4; t++) {
+				final int offset = t * 1000;
+				threads.add(new Thread(() -> {
+					for (int i = 0; i < 250; i++) {
+						store.insert(new Event("a", offset + i));
+					}
+				}));
+			}
+			for (Thread thread : threads) {
+				thread.start();
+			}
+			for (Thread thread : threads) {
+				thread.join();
+			}
+		}
+
+		try (WriteAheadLogEventStore store = new WriteAheadLogEventStore(directory)) {
+			Assert.assertEquals(1000, count(store, "a"));
+		}
+	}
+
+	@Test
+	public void recoveryIntoSortedStoreTest() throws IOException {
+		Path directory = folder.getRoot().toPath();
+
+		try (WriteAheadLogEventStore store = new WriteAheadLogEventStore(directory,
+				new ConcurrentSortedEventStore(10, 0), 1024, false)) {
+			store.insert(new Event("a", 10, Payload.builder().put("n", 1).build()));
+			store.insert(new Event("a", 10, Payload.builder().put("n", 2).build()));
+			store.insert(new Event("a", 11));
+			store.insert(new Event("b", 20));
+
+			EventIterator it = store.query(Collections.singleton("a"), 0, 100);
+			while (it.moveNext()) {
+				if (it.current().payload().getLong("n", 0) == 1) {
+					it.remove();
+				}
+			}
+			it = store.query(Collections.singleton("b"), 0, 100);
+			Assert.assertTrue(it.moveNext());
+			it.remove();
+		}
+
+		try (WriteAheadLogEventStore store = new WriteAheadLogEventStore(directory,
+				new ConcurrentSortedEventStore(10, 0), 1024, false)) {
+			// the event removed had the same type and timestamp as another.
+			EventIterator it = store.query(Collections.singleton("a"), 0, 100);
+			Assert.assertTrue(it.moveNext());
+			Assert.assertEquals(10L, it.current().timestamp());
+			Assert.assertEquals(2L, it.current().payload().getLong("n", 0));
+			Assert.assertTrue(it.moveNext());
+			Assert.assertEquals(11L, it.current().timestamp());
+			Assert.assertFalse(it.moveNext());
+			Assert.assertFalse(store.query(Collections.singleton("b"), 0, 100).moveNext());
+		}
+	}
+
+	@Test
+	public void checkpointTest() throws IOException {
+		Path directory = folder.getRoot().toPath();
+
+		try (WriteAheadLogEventStore store = open(directory)) {
+			for (int i = 0; i < 100; i++) {
+				store.insert(new Event(i % 2 == 0 ? "a" : "b", i, Payload.builder().put("i", i).build()));
+			}
+			Assert.assertTrue(segments(directory).size() > 2);
+
+			Assert.assertEquals(100, store.checkpoint());
+			// the checkpoint and the segment started with it.
+			Assert.assertEquals(2, segments(directory).size());
+
+			store.removeAll("b");
+			store.insert(new Event("c", 1));
+		}
+
+		try (WriteAheadLogEventStore store = open(directory)) {
+			Assert.assertEquals(50, count(store, "a"));
+			Assert.assertEquals(0, count(store, "b"));
+			Assert.assertEquals(1, count(store, "c"));
+			EventIterator it = store.query("a", 98L, 99L);
+			Assert.assertTrue(it.moveNext());
+			Assert.assertEquals(98L, it.current().payload().getLong("i", -1));
+
+			Assert.assertEquals(51, store.checkpoint());
+		}
+
+		try (WriteAheadLogEventStore store = open(directory)) {
+			Assert.assertEquals(51, count(store, "a") + count(store, "c"));
+		}
+	}
+
+	@Test
+	public void checkpointWhileInsertingTest() throws Exception {
+		Path directory = folder.getRoot().toPath();
+
+		try (WriteAheadLogEventStore store = new WriteAheadLogEventStore(directory,
+				new ConcurrentSortedEventStore(100, 0), 1024, false)) {
+			Thread writer = new Thread(() -> {
+				for (int i = 0; i < 5000; i++) {
+					store.insert(new Event("a", i));
+				}
+			});
+			writer.start();
+			while (writer.isAlive()) {
+				store.checkpoint();
+			}
+			writer.join();
+		}
+
+		try (WriteAheadLogEventStore store = new WriteAheadLogEventStore(directory,
+				new ConcurrentSortedEventStore(100, 0), 1024, false)) {
+			Assert.assertEquals(5000, count(store, "a"));
+		}
+	}
+
+	@Test
+	public void oversizedBatchTest() throws IOException {
+		Path directory = folder.getRoot().toPath();
+
+		try (WriteAheadLogEventStore store = open(directory)) {
+			byte[] large = new byte[2048];
+			try {
+				store.insertAll(Arrays.asList(new Event("a", 1),
+						new Event("a", 2, Payload.builder().put("large", new String(large)).build())));
+				Assert.fail();
+			} catch (IllegalArgumentException e) {
+				// nothing of the batch was logged.
+			}
+		}
+
+		try (WriteAheadLogEventStore store = open(directory)) {
+			Assert.assertEquals(0, count(store, "a"));
+		}
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void nullEventTest() throws IOException {
+		try (WriteAheadLogEventStore store = open(folder.getRoot().toPath())) {
+			store.insert(null);
+		}
+	}
+
+	private static WriteAheadLogEventStore open(Path directory) throws IOException {
+		return new WriteAheadLogEventStore(directory, new SkipListEventStore(), 1024, false);
+	}
+
+	private static int count(WriteAheadLogEventStore store, String type) {
+		int count = 0;
+		EventIterator it = store.query(type, Long.MIN_VALUE, Long.MAX_VALUE);
+		while (it.moveNext()) {
+			Assert.assertEquals(type, it.current().type());
+			count++;
+		}
+		return count;
+	}
+
+	private static List<Path> segments(Path directory) throws IOException {
+		try (Stream<Path> files = Files.list(directory)) {
+			return files.sorted().collect(Collectors.toList());
+		}
+	}
+}